@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.incremental
 
 import com.intellij.util.containers.MultiMap
+import gnu.trove.TIntHashSet
 import com.intellij.util.containers.StringInterner
 import org.jetbrains.annotations.TestOnly
 import org.jetbrains.kotlin.incremental.components.LookupTracker
@@ -25,42 +26,107 @@ import org.jetbrains.kotlin.incremental.components.ScopeKind
 import org.jetbrains.kotlin.incremental.storage.*
 import org.jetbrains.kotlin.utils.Printer
 import org.jetbrains.kotlin.utils.keysToMap
-import java.io.File
+import java.io.*
 import java.util.*
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
 
 
-open class LookupStorage(private val targetDataDir: File) : BasicMapsOwner() {
+/**
+ * With [batchWrites] lookups added by [addAll] are buffered in memory (striped by key hash, so that concurrent
+ * [get] and [addAll] calls don't block each other) and appended to the lookup map once per [flush], in key order,
+ * without reading the stored values.
+ */
+open class LookupStorage(
+        private val targetDataDir: File,
+        private val batchWrites: Boolean = true
+) : BasicMapsOwner() {
     companion object {
-        private val DELETED_TO_SIZE_TRESHOLD = 0.5
-        private val MINIMUM_GARBAGE_COLLECTIBLE_SIZE = 10000
+        private val MINIMUM_GARBAGE_TO_COLLECT = 1000
+        private val COMPACTED_KEYS_PER_FLUSH = 20000
+        private val NO_COMPACTION_PASS = -1
+        private val LOCK_STRIPES = 16
+    }
+
+    class Counters {
+        val addedLookups = AtomicLong()
+        val addNanos = AtomicLong()
+        val writtenKeys = AtomicLong()
+        val writeNanos = AtomicLong()
+        val compactedKeys = AtomicLong()
+        val purgedIds = AtomicLong()
+        val compactionNanos = AtomicLong()
+
+        @Volatile
+        var compactionProgress: String = "none"
+
+        override fun toString(): String =
+                "added ${addedLookups.get()} lookups in ${TimeUnit.NANOSECONDS.toMillis(addNanos.get())} ms, " +
+                "wrote ${writtenKeys.get()} keys in ${TimeUnit.NANOSECONDS.toMillis(writeNanos.get())} ms, " +
+                "purged ${purgedIds.get()} stale file ids from ${compactedKeys.get()} keys " +
+                "in ${TimeUnit.NANOSECONDS.toMillis(compactionNanos.get())} ms (compaction pass: $compactionProgress)"
     }
 
     private val String.storageFile: File
         get() = File(targetDataDir, this + "." + CACHE_EXTENSION)
 
     private val countersFile = "counters".storageFile
+    private val compactionKeysFile = "compaction-keys".storageFile
     private val idToFile = registerMap(IdToFileMap("id-to-file".storageFile))
     private val fileToId = registerMap(FileToIdMap("file-to-id".storageFile))
     private val lookupMap = registerMap(LookupMap("lookups".storageFile))
 
+    private val stripeLocks = Array(LOCK_STRIPES) { Any() }
+    private val pendingLookups = Array(LOCK_STRIPES) { HashMap<LookupSymbolKey, TIntHashSet>() }
+
+    val counters = Counters()
+
     @Volatile
     private var size: Int = 0
 
     @Volatile
     private var deletedCount: Int = 0
 
+    // Stale file ids are purged from the lookup map by a compaction pass over the keys which existed when it has started,
+    // at most COMPACTED_KEYS_PER_FLUSH keys per flush. The pass purges the ids deleted before it has started: keys added later
+    // contain only ids which were live at that moment. The keys of the pass are stored in compactionKeysFile.
+    @Volatile
+    private var deletedBeforeCompactionPass: Int = NO_COMPACTION_PASS
+
+    // the number of keys of the current pass which are already compacted
+    @Volatile
+    private var compactionCursor: Int = 0
+
+    // the keys of the current pass, read from compactionKeysFile on demand
+    private var compactionKeys: List<LookupSymbolKey>? = null
+
     init {
         if (countersFile.exists()) {
             val lines = countersFile.readLines()
             size = lines[0].toInt()
             deletedCount = lines[1].toInt()
+
+            if (lines.size >= 4 && compactionKeysFile.exists()) {
+                deletedBeforeCompactionPass = lines[2].toInt()
+                compactionCursor = lines[3].toInt()
+            }
         }
     }
 
-    @Synchronized
     fun get(lookupSymbol: LookupSymbol): Collection<String> {
         val key = LookupSymbolKey(lookupSymbol.name, lookupSymbol.scope)
-        val fileIds = lookupMap[key] ?: return emptySet()
+        val stripe = stripe(key)
+
+        val fileIds = synchronized(stripeLocks[stripe]) {
+            val storedIds = lookupMap[key]
+            val pendingIds = pendingLookups[stripe][key]
+
+            when {
+                pendingIds == null -> storedIds
+                storedIds == null -> pendingIds.toArray()
+                else -> TIntHashSet(storedIds).apply { addAll(pendingIds.toArray()) }.toArray()
+            }
+        } ?: return emptySet()
 
         return fileIds.mapNotNull {
             // null means it's outdated
@@ -68,16 +134,36 @@ open class LookupStorage(private val targetDataDir: File) : BasicMapsOwner() {
         }
     }
 
-    @Synchronized
     fun addAll(lookups: Set<Map.Entry<LookupSymbol, Collection<String>>>, allPaths: Set<String>) {
-        val pathToId = allPaths.keysToMap { addFileIfNeeded(File(it)) }
+        val startNanos = System.nanoTime()
+        val pathToId = synchronized(this) { allPaths.keysToMap { addFileIfNeeded(File(it)) } }
 
+        val lookupsByStripe = Array(LOCK_STRIPES) { ArrayList<Pair<LookupSymbolKey, Collection<String>>>() }
         for ((lookupSymbol, paths) in lookups) {
             val key = LookupSymbolKey(lookupSymbol.name, lookupSymbol.scope)
-            val fileIds = paths.mapTo(HashSet<Int>()) { pathToId[it]!! }
-            fileIds.addAll(lookupMap[key] ?: emptySet())
-            lookupMap[key] = fileIds
+            lookupsByStripe[stripe(key)].add(key to paths)
+        }
+
+        for (stripe in 0..LOCK_STRIPES - 1) {
+            val stripeLookups = lookupsByStripe[stripe]
+            if (stripeLookups.isEmpty()) continue
+
+            synchronized(stripeLocks[stripe]) {
+                for ((key, paths) in stripeLookups) {
+                    if (batchWrites) {
+                        val fileIds = pendingLookups[stripe].getOrPut(key) { TIntHashSet() }
+                        paths.forEach { fileIds.add(pathToId[it]!!) }
+                    }
+                    else {
+                        lookupMap.append(key, paths.map { pathToId[it]!! }.toIntArray())
+                        counters.writtenKeys.incrementAndGet()
+                    }
+                }
+            }
         }
+
+        counters.addedLookups.addAndGet(lookups.size.toLong())
+        counters.addNanos.addAndGet(System.nanoTime() - startNanos)
     }
 
     @Synchronized
@@ -92,12 +178,17 @@ open class LookupStorage(private val targetDataDir: File) : BasicMapsOwner() {
 
     @Synchronized
     override fun clean() {
+        withAllStripesLocked {
+            pendingLookups.forEach { it.clear() }
+        }
+
         if (countersFile.exists()) {
             countersFile.delete()
         }
 
         size = 0
         deletedCount = 0
+        finishCompactionPass()
 
         super.clean()
     }
@@ -105,7 +196,10 @@ open class LookupStorage(private val targetDataDir: File) : BasicMapsOwner() {
     @Synchronized
     override fun flush(memoryCachesOnly: Boolean) {
         try {
-            removeGarbageIfNeeded()
+            withAllStripesLocked {
+                writePendingLookups()
+                compactIfNeeded(COMPACTED_KEYS_PER_FLUSH)
+            }
 
             if (size > 0) {
                 if (!countersFile.exists()) {
@@ -113,7 +207,7 @@ open class LookupStorage(private val targetDataDir: File) : BasicMapsOwner() {
                     countersFile.createNewFile()
                 }
 
-                countersFile.writeText("$size\n$deletedCount")
+                countersFile.writeText("$size\n$deletedCount\n$deletedBeforeCompactionPass\n$compactionCursor")
             }
         }
         finally {
@@ -121,6 +215,50 @@ open class LookupStorage(private val targetDataDir: File) : BasicMapsOwner() {
         }
     }
 
+    @Synchronized
+    override fun close() {
+        try {
+            writePendingLookups()
+        }
+        finally {
+            super.close()
+        }
+    }
+
+    fun reportCounters(reporter: ICReporter) {
+        reporter.report { "Lookup storage: $counters" }
+    }
+
+    private fun stripe(key: LookupSymbolKey): Int =
+            (key.hashCode() and Int.MAX_VALUE) % LOCK_STRIPES
+
+    private fun <T> withAllStripesLocked(fn: () -> T): T {
+        fun lockFrom(stripe: Int): T =
+                if (stripe == LOCK_STRIPES) fn() else synchronized(stripeLocks[stripe]) { lockFrom(stripe + 1) }
+
+        return lockFrom(0)
+    }
+
+    private fun writePendingLookups() {
+        withAllStripesLocked {
+            if (pendingLookups.all { it.isEmpty() }) return@withAllStripesLocked
+
+            val startNanos = System.nanoTime()
+            val pending = TreeMap<LookupSymbolKey, TIntHashSet>()
+            pendingLookups.forEach {
+                pending.putAll(it)
+                it.clear()
+            }
+
+            for ((key, pendingIds) in pending) {
+                lookupMap.append(key, pendingIds.toArray())
+                counters.writtenKeys.incrementAndGet()
+            }
+
+            counters.writeNanos.addAndGet(System.nanoTime() - startNanos)
+        }
+    }
+
     private fun addFileIfNeeded(file: File): Int {
         val existing = fileToId[file]
         if (existing != null) return existing
@@ -131,43 +269,111 @@ open class LookupStorage(private val targetDataDir: File) : BasicMapsOwner() {
         return id
     }
 
-    private fun removeGarbageIfNeeded(force: Boolean = false) {
-        if (force || (size > MINIMUM_GARBAGE_COLLECTIBLE_SIZE && deletedCount.toDouble() / size > DELETED_TO_SIZE_TRESHOLD)) {
-            doRemoveGarbage()
-        }
-    }
+    private fun compactIfNeeded(maxKeys: Int, force: Boolean = false) {
+        if (deletedBeforeCompactionPass == NO_COMPACTION_PASS) {
+            if (deletedCount == 0 || !force && deletedCount < MINIMUM_GARBAGE_TO_COLLECT) return
 
-    private fun doRemoveGarbage() {
-        for (hash in lookupMap.keys) {
-            lookupMap[hash] = lookupMap[hash]!!.filter { it in idToFile }.toSet()
+            startCompactionPass()
         }
 
-        val oldFileToId = fileToId.toMap()
-        val oldIdToNewId = HashMap<Int, Int>(oldFileToId.size)
-        idToFile.clean()
-        fileToId.clean()
-        size = 0
-        deletedCount = 0
+        val startNanos = System.nanoTime()
+        val keys = compactionKeys ?: readCompactionKeys().also { compactionKeys = it }
+        val end = if (keys.size - compactionCursor > maxKeys) compactionCursor + maxKeys else keys.size
+        val liveIds = TIntHashSet()
+        val staleIds = TIntHashSet()
+
+        fun isLive(id: Int): Boolean {
+            if (liveIds.contains(id)) return true
+            if (staleIds.contains(id)) return false
 
-        for ((file, oldId) in oldFileToId.entries) {
-            val newId = addFileIfNeeded(file)
-            oldIdToNewId[oldId] = newId
+            val live = id in idToFile
+            (if (live) liveIds else staleIds).add(id)
+            return live
         }
 
-        for (lookup in lookupMap.keys) {
-            val fileIds = lookupMap[lookup]!!.mapNotNull { oldIdToNewId[it] }.toSet()
+        for (index in compactionCursor..end - 1) {
+            val key = keys[index]
+            val fileIds = lookupMap[key] ?: continue
+            val liveFileIds = fileIds.filter { isLive(it) }
+            if (liveFileIds.size == fileIds.size) continue
 
-            if (fileIds.isEmpty()) {
-                lookupMap.remove(lookup)
+            if (liveFileIds.isEmpty()) {
+                lookupMap.remove(key)
             }
             else {
-                lookupMap[lookup] = fileIds
+                lookupMap[key] = liveFileIds.toIntArray()
             }
+
+            counters.compactedKeys.incrementAndGet()
+            counters.purgedIds.addAndGet((fileIds.size - liveFileIds.size).toLong())
+        }
+
+        if (end == keys.size) {
+            deletedCount -= deletedBeforeCompactionPass
+            finishCompactionPass()
+            counters.compactionProgress = "finished"
+        }
+        else {
+            compactionCursor = end
+            counters.compactionProgress = "$end of ${keys.size} keys"
+        }
+
+        counters.compactionNanos.addAndGet(System.nanoTime() - startNanos)
+    }
+
+    // The only enumeration of all keys in a pass
+    private fun startCompactionPass() {
+        val keys = ArrayList(lookupMap.keys)
+
+        compactionKeysFile.parentFile.mkdirs()
+        DataOutputStream(BufferedOutputStream(FileOutputStream(compactionKeysFile))).use { output ->
+            output.writeInt(keys.size)
+            for (key in keys) {
+                output.writeInt(key.nameHash)
+                output.writeInt(key.scopeHash)
+            }
+        }
+
+        deletedBeforeCompactionPass = deletedCount
+        compactionCursor = 0
+        compactionKeys = keys
+    }
+
+    private fun readCompactionKeys(): List<LookupSymbolKey> =
+            DataInputStream(BufferedInputStream(FileInputStream(compactionKeysFile))).use { input ->
+                val count = input.readInt()
+                (1..count).map { LookupSymbolKey(input.readInt(), input.readInt()) }
+            }
+
+    private fun finishCompactionPass() {
+        deletedBeforeCompactionPass = NO_COMPACTION_PASS
+        compactionCursor = 0
+        compactionKeys = null
+
+        if (compactionKeysFile.exists()) {
+            compactionKeysFile.delete()
         }
     }
 
     @TestOnly fun forceGC() {
-        removeGarbageIfNeeded(force = true)
+        synchronized(this) {
+            withAllStripesLocked {
+                writePendingLookups()
+                // the first call may only finish a pass started before some of the deletions
+                compactIfNeeded(Int.MAX_VALUE, force = true)
+                compactIfNeeded(Int.MAX_VALUE, force = true)
+            }
+        }
+        flush(false)
+    }
+
+    @TestOnly fun compactStep(maxKeys: Int) {
+        synchronized(this) {
+            withAllStripesLocked {
+                writePendingLookups()
+                compactIfNeeded(maxKeys, force = true)
+            }
+        }
         flush(false)
     }
 
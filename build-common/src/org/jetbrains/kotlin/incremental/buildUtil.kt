@@ -36,6 +36,7 @@ import org.jetbrains.kotlin.modules.KotlinModuleXmlBuilder
 import org.jetbrains.kotlin.modules.TargetId
 import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.kotlin.progress.CompilationCanceledStatus
+import org.jetbrains.kotlin.util.PerformanceTrace
 import org.jetbrains.kotlin.utils.keysToMap
 import java.io.File
 import java.util.*
@@ -69,7 +70,8 @@ fun makeModuleFile(name: String, isTest: Boolean, outputDir: File, sourcesToComp
 fun makeCompileServices(
         incrementalCaches: Map<TargetId, IncrementalCache>,
         lookupTracker: LookupTracker,
-        compilationCanceledStatus: CompilationCanceledStatus?
+        compilationCanceledStatus: CompilationCanceledStatus?,
+        performanceTrace: PerformanceTrace? = null
 ): Services =
     with(Services.Builder()) {
         register(IncrementalCompilationComponents::class.java, 
@@ -77,6 +79,9 @@ fun makeCompileServices(
         compilationCanceledStatus?.let {
             register(CompilationCanceledStatus::class.java, it)
         }
+        performanceTrace?.let {
+            register(PerformanceTrace::class.java, it)
+        }
         build()
     }
 
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.incremental.storage
+
+import com.intellij.util.io.DataExternalizer
+import com.intellij.util.io.DataInputOutputUtil
+import gnu.trove.TIntHashSet
+import java.io.DataInput
+import java.io.DataInputStream
+import java.io.DataOutput
+
+/**
+ * Stores sets of non-negative ints (file ids) as sorted arrays.
+ *
+ * A value is a sequence of chunks, so new ids can be added with PersistentHashMap.appendData without reading the value.
+ * Each chunk is either delta-encoded varints or, for dense sets, a bitmap starting at the smallest id,
+ * whichever is smaller. [read] merges all chunks into one sorted array without duplicates.
+ */
+object CompactIntArrayExternalizer : DataExternalizer<IntArray> {
+    private val DELTAS = 0
+    private val BITMAP = 1
+    private val EMPTY = IntArray(0)
+
+    override fun save(output: DataOutput, value: IntArray) {
+        val ids = value.sortedDistinct()
+
+        if (ids.isNotEmpty()) {
+            val bitmapWords = (ids.last() - ids.first()) / 64 + 1
+            if (bitmapWords * 8 + varIntSize(ids.first()) < deltasSize(ids)) {
+                writeBitmap(output, ids, bitmapWords)
+                return
+            }
+        }
+
+        writeDeltas(output, ids)
+    }
+
+    override fun read(input: DataInput): IntArray {
+        val stream = input as DataInputStream
+        var result: IntArray? = null
+        var merged: TIntHashSet? = null
+
+        while (stream.available() > 0) {
+            val chunk = readChunk(stream)
+
+            if (result == null) {
+                result = chunk
+            }
+            else {
+                if (merged == null) {
+                    merged = TIntHashSet(result)
+                }
+                merged.addAll(chunk)
+            }
+        }
+
+        if (merged != null) return merged.toArray().apply { sort() }
+
+        return result ?: EMPTY
+    }
+
+    private fun writeDeltas(output: DataOutput, ids: IntArray) {
+        DataInputOutputUtil.writeINT(output, (ids.size shl 1) or DELTAS)
+
+        var previous = 0
+        for (id in ids) {
+            DataInputOutputUtil.writeINT(output, id - previous)
+            previous = id
+        }
+    }
+
+    private fun writeBitmap(output: DataOutput, ids: IntArray, words: Int) {
+        DataInputOutputUtil.writeINT(output, (words shl 1) or BITMAP)
+
+        val base = ids.first()
+        DataInputOutputUtil.writeINT(output, base)
+
+        val bitmap = LongArray(words)
+        for (id in ids) {
+            val offset = id - base
+            bitmap[offset / 64] = bitmap[offset / 64] or (1L shl (offset % 64))
+        }
+        bitmap.forEach { output.writeLong(it) }
+    }
+
+    private fun readChunk(input: DataInput): IntArray {
+        val header = DataInputOutputUtil.readINT(input)
+        val count = header ushr 1
+
+        if (header and 1 == DELTAS) {
+            val ids = IntArray(count)
+            var previous = 0
+            for (i in 0..count - 1) {
+                previous += DataInputOutputUtil.readINT(input)
+                ids[i] = previous
+            }
+            return ids
+        }
+
+        val base = DataInputOutputUtil.readINT(input)
+        val bitmap = LongArray(count) { input.readLong() }
+        val ids = IntArray(bitmap.sumBy { java.lang.Long.bitCount(it) })
+        var index = 0
+        for (word in 0..count - 1) {
+            var bits = bitmap[word]
+            while (bits != 0L) {
+                ids[index++] = base + word * 64 + java.lang.Long.numberOfTrailingZeros(bits)
+                bits = bits and (bits - 1)
+            }
+        }
+        return ids
+    }
+
+    private fun deltasSize(ids: IntArray): Int {
+        var size = varIntSize(ids.size shl 1)
+        var previous = 0
+        for (id in ids) {
+            size += varIntSize(id - previous)
+            previous = id
+        }
+        return size
+    }
+
+    // the size of DataInputOutputUtil.writeINT output
+    private fun varIntSize(value: Int): Int {
+        if (value in 0..191) return 1
+
+        var size = 2
+        var rest = value ushr 6
+        while (rest >= 128) {
+            size++
+            rest = rest ushr 7
+        }
+        return size
+    }
+
+    private fun IntArray.sortedDistinct(): IntArray {
+        if (size < 2) return this
+
+        val sorted = copyOf().apply { sort() }
+        var distinct = 1
+        for (i in 1..sorted.size - 1) {
+            if (sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i]
+            }
+        }
+        return if (distinct == sorted.size) sorted else sorted.copyOf(distinct)
+    }
+}
@@ -18,18 +18,22 @@ package org.jetbrains.kotlin.incremental.storage
 
 import java.io.File
 
-internal class LookupMap(storage: File) : BasicMap<LookupSymbolKey, Collection<Int>>(storage, LookupSymbolKeyDescriptor, IntCollectionExternalizer) {
+internal class LookupMap(storage: File) : BasicMap<LookupSymbolKey, IntArray>(storage, LookupSymbolKeyDescriptor, CompactIntArrayExternalizer) {
     override fun dumpKey(key: LookupSymbolKey): String = key.toString()
 
-    override fun dumpValue(value: Collection<Int>): String = value.toString()
+    override fun dumpValue(value: IntArray): String = value.toList().toString()
 
     fun add(name: String, scope: String, fileId: Int) {
-        storage.append(LookupSymbolKey(name, scope), fileId)
+        append(LookupSymbolKey(name, scope), intArrayOf(fileId))
     }
 
-    operator fun get(key: LookupSymbolKey): Collection<Int>? = storage[key]
+    fun append(key: LookupSymbolKey, fileIds: IntArray) {
+        storage.append(key) { CompactIntArrayExternalizer.save(it, fileIds) }
+    }
+
+    operator fun get(key: LookupSymbolKey): IntArray? = storage[key]
 
-    operator fun set(key: LookupSymbolKey, fileIds: Set<Int>) {
+    operator fun set(key: LookupSymbolKey, fileIds: IntArray) {
         storage[key] = fileIds
     }
 
@@ -18,6 +18,7 @@ package org.jetbrains.kotlin.incremental.storage
 
 import com.intellij.openapi.util.io.FileUtil
 import com.intellij.util.io.DataExternalizer
+import com.intellij.util.io.DataInputOutputUtil
 import com.intellij.util.io.EnumeratorStringDescriptor
 import com.intellij.util.io.IOUtil
 import com.intellij.util.io.KeyDescriptor
@@ -171,6 +172,26 @@ object IntExternalizer : DataExternalizer<Int> {
     }
 }
 
+object VarIntExternalizer : DataExternalizer<Int> {
+    override fun read(input: DataInput): Int = DataInputOutputUtil.readINT(input)
+
+    override fun save(output: DataOutput, value: Int) {
+        DataInputOutputUtil.writeINT(output, value)
+    }
+}
+
+object VarIntKeyDescriptor : KeyDescriptor<Int> {
+    override fun read(input: DataInput): Int = DataInputOutputUtil.readINT(input)
+
+    override fun save(output: DataOutput, value: Int) {
+        DataInputOutputUtil.writeINT(output, value)
+    }
+
+    override fun getHashCode(value: Int): Int = value
+
+    override fun isEqual(val1: Int, val2: Int): Boolean = val1 == val2
+}
+
 object PathStringDescriptor : EnumeratorStringDescriptor() {
     override fun getHashCode(value: String) = FileUtil.pathHashCode(value)
 
@@ -45,6 +45,7 @@ public class ClassFileFactory implements OutputFileCollection {
     private final GenerationState state;
     private final ClassBuilderFactory builderFactory;
     private final Map<String, OutAndSourceFileList> generators = new LinkedHashMap<String, OutAndSourceFileList>();
+    private final ThreadLocal<GenerationUnit> currentUnit = new ThreadLocal<GenerationUnit>();
 
     private boolean isDone = false;
 
@@ -75,13 +76,52 @@ public class ClassFileFactory implements OutputFileCollection {
             @NotNull Collection<? extends PsiFile> sourceFiles
     ) {
         ClassBuilder answer = builderFactory.newClassBuilder(origin);
-        generators.put(
-                asmType.getInternalName() + ".class",
-                new ClassBuilderAndSourceFileList(answer, toIoFilesIgnoringNonPhysical(sourceFiles))
-        );
+        String relativePath = asmType.getInternalName() + ".class";
+        ClassBuilderAndSourceFileList generator = new ClassBuilderAndSourceFileList(answer, toIoFilesIgnoringNonPhysical(sourceFiles));
+
+        GenerationUnit unit = currentUnit.get();
+        if (unit != null) {
+            unit.generators.put(relativePath, generator);
+        }
+        else {
+            synchronized (generators) {
+                generators.put(relativePath, generator);
+            }
+        }
         return answer;
     }
 
+    /**
+     * Runs the given generation task so that all classes created by it are collected in the given unit,
+     * instead of being added to the output immediately. The unit is added to the output by {@link #commitUnit(GenerationUnit)}
+     */
+    void runInUnit(@NotNull GenerationUnit unit, @NotNull Runnable task) {
+        assert currentUnit.get() == null : "Generation units can't be nested";
+        currentUnit.set(unit);
+        try {
+            task.run();
+        }
+        finally {
+            currentUnit.remove();
+        }
+    }
+
+    /**
+     * Adds classes generated in the given unit to the output, as if they were generated at this moment on the current thread.
+     * Committing units in the same order as they would have been generated serially makes the output independent of the scheduling
+     */
+    void commitUnit(@NotNull GenerationUnit unit) {
+        synchronized (generators) {
+            for (String relativePath : unit.removedPaths) {
+                generators.remove(relativePath);
+            }
+            generators.putAll(unit.generators);
+        }
+        for (String[] part : unit.parts) {
+            addPackagePart(part[0], part[1], part[2]);
+        }
+    }
+
     void done() {
         if (!isDone) {
             isDone = true;
@@ -141,7 +181,20 @@ public class ClassFileFactory implements OutputFileCollection {
     @Override
     @Nullable
     public OutputFile get(@NotNull String relativePath) {
-        return generators.containsKey(relativePath) ? new OutputClassFile(relativePath) : null;
+        return findGenerator(relativePath) != null ? new OutputClassFile(relativePath) : null;
+    }
+
+    @Nullable
+    private OutAndSourceFileList findGenerator(@NotNull String relativePath) {
+        // Classes generated in the current unit are visible only to the thread generating it, until the unit is committed
+        GenerationUnit unit = currentUnit.get();
+        if (unit != null && unit.generators.containsKey(relativePath)) {
+            return unit.generators.get(relativePath);
+        }
+
+        synchronized (generators) {
+            return generators.get(relativePath);
+        }
     }
 
     @NotNull
@@ -186,16 +239,28 @@ public class ClassFileFactory implements OutputFileCollection {
         return new PackagePartRegistry() {
             @Override
             public void addPart(@NotNull String partShortName, @Nullable String facadeShortName) {
-                PackageParts packageParts = partsGroupedByPackage.get(packageFqNameAsString);
-                if (packageParts == null) {
-                    packageParts = new PackageParts(packageFqNameAsString);
-                    partsGroupedByPackage.put(packageFqNameAsString, packageParts);
+                GenerationUnit unit = currentUnit.get();
+                if (unit != null) {
+                    unit.parts.add(new String[] {packageFqNameAsString, partShortName, facadeShortName});
+                }
+                else {
+                    addPackagePart(packageFqNameAsString, partShortName, facadeShortName);
                 }
-                packageParts.addPart(partShortName, facadeShortName);
             }
         };
     }
 
+    private void addPackagePart(@NotNull String packageFqName, @NotNull String partShortName, @Nullable String facadeShortName) {
+        synchronized (partsGroupedByPackage) {
+            PackageParts packageParts = partsGroupedByPackage.get(packageFqName);
+            if (packageParts == null) {
+                packageParts = new PackageParts(packageFqName);
+                partsGroupedByPackage.put(packageFqName, packageParts);
+            }
+            packageParts.addPart(partShortName, facadeShortName);
+        }
+    }
+
     private void registerPackagePartSourceFiles(Collection<KtFile> files) {
         packagePartSourceFiles.addAll(toIoFilesIgnoringNonPhysical(PackagePartClassUtils.getFilesWithCallables(files)));
     }
@@ -230,7 +295,7 @@ public class ClassFileFactory implements OutputFileCollection {
         @NotNull
         @Override
         public List<File> getSourceFiles() {
-            OutAndSourceFileList pair = generators.get(relativeClassFilePath);
+            OutAndSourceFileList pair = findGenerator(relativeClassFilePath);
             if (pair == null) {
                 throw new IllegalStateException("No record for binary file " + relativeClassFilePath);
             }
@@ -242,7 +307,7 @@ public class ClassFileFactory implements OutputFileCollection {
         @Override
         public byte[] asByteArray() {
             try {
-                return generators.get(relativeClassFilePath).asBytes(builderFactory);
+                return findGenerator(relativeClassFilePath).asBytes(builderFactory);
             }
             catch (RuntimeException e) {
                 throw new RuntimeException("Error generating class file " + this.toString() + ": " + e.getMessage(), e);
@@ -253,7 +318,7 @@ public class ClassFileFactory implements OutputFileCollection {
         @Override
         public String asText() {
             try {
-                return generators.get(relativeClassFilePath).asText(builderFactory);
+                return findGenerator(relativeClassFilePath).asText(builderFactory);
             }
             catch (RuntimeException e) {
                 throw new RuntimeException("Error generating class file " + this.toString() + ": " + e.getMessage(), e);
@@ -300,11 +365,32 @@ public class ClassFileFactory implements OutputFileCollection {
     }
 
     public void removeClasses(Set<String> classNamesToRemove) {
+        GenerationUnit unit = currentUnit.get();
         for (String classInternalName : classNamesToRemove) {
-            generators.remove(classInternalName + ".class");
+            String relativePath = classInternalName + ".class";
+            if (unit != null) {
+                unit.generators.remove(relativePath);
+                unit.removedPaths.add(relativePath);
+            }
+            else {
+                synchronized (generators) {
+                    generators.remove(relativePath);
+                }
+            }
         }
     }
 
+    /**
+     * Classes generated for a single package or multifile class when the code is generated in parallel.
+     * @see KotlinCodegenFacade#doGenerateFiles
+     */
+    static final class GenerationUnit {
+        private final Map<String, OutAndSourceFileList> generators = new LinkedHashMap<String, OutAndSourceFileList>();
+        private final Set<String> removedPaths = new LinkedHashSet<String>();
+        // (package FQ name, part short name, facade short name or null) for each registered package part
+        private final List<String[]> parts = new ArrayList<String[]>();
+    }
+
     @TestOnly
     public List<KtFile> getInputFiles() {
         return state.getFiles();
@@ -22,10 +22,17 @@ import org.jetbrains.kotlin.descriptors.CallableDescriptor
 import org.jetbrains.kotlin.diagnostics.DiagnosticSink
 import org.jetbrains.kotlin.diagnostics.Errors
 import org.jetbrains.kotlin.resolve.calls.model.ResolvedCall
+import java.util.*
 
 class InlineCycleReporter(val diagnostics: DiagnosticSink) {
 
-    val processingFunctions = linkedMapOf<PsiElement, CallableDescriptor>()
+    // Inline calls being processed form a stack, which is local to the thread generating the code
+    private val processingFunctionsInThread = object : ThreadLocal<LinkedHashMap<PsiElement, CallableDescriptor>>() {
+        override fun initialValue() = linkedMapOf<PsiElement, CallableDescriptor>()
+    }
+
+    val processingFunctions: LinkedHashMap<PsiElement, CallableDescriptor>
+        get() = processingFunctionsInThread.get()
 
     fun enterIntoInlining(call: ResolvedCall<*>?): Boolean {
         //null call for default method inlining
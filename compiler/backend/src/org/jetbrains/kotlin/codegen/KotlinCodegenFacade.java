@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.codegen;
 
 import com.google.common.collect.Sets;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.util.containers.MultiMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.kotlin.codegen.state.GenerationState;
@@ -24,12 +25,14 @@ import org.jetbrains.kotlin.fileClasses.JvmFileClassInfo;
 import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStatus;
 import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.utils.WorkerThreadPools;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class KotlinCodegenFacade {
+    private static final long CHECK_CANCELED_INTERVAL_MS = 50;
 
     public static void compileCorrectFiles(
             @NotNull GenerationState state,
@@ -66,21 +69,145 @@ public class KotlinCodegenFacade {
         }
 
         Set<FqName> obsoleteMultifileClasses = new HashSet<FqName>(state.getObsoleteMultifileClasses());
-        for (FqName multifileClassFqName : Sets.union(filesInMultifileClasses.keySet(), obsoleteMultifileClasses)) {
-            doCheckCancelled(state);
-            generateMultifileClass(state, multifileClassFqName, filesInMultifileClasses.get(multifileClassFqName), errorHandler);
-        }
+        Set<FqName> multifileClassesToGenerate = Sets.union(filesInMultifileClasses.keySet(), obsoleteMultifileClasses);
 
         Set<FqName> packagesWithObsoleteParts = new HashSet<FqName>(state.getPackagesWithObsoleteParts());
-        for (FqName packageFqName : Sets.union(packagesWithObsoleteParts, filesInPackages.keySet())) {
-            doCheckCancelled(state);
-            generatePackage(state, packageFqName, filesInPackages.get(packageFqName), errorHandler);
+        Set<FqName> packagesToGenerate = Sets.union(packagesWithObsoleteParts, filesInPackages.keySet());
+
+        if (state.isParallelCodegenEnabled()) {
+            doGenerateInParallel(state, filesInMultifileClasses, multifileClassesToGenerate, filesInPackages, packagesToGenerate, errorHandler);
+        }
+        else {
+            for (FqName multifileClassFqName : multifileClassesToGenerate) {
+                doCheckCancelled(state);
+                Collection<KtFile> multifileClassFiles = filesInMultifileClasses.get(multifileClassFqName);
+                generateMultifileClass(state, multifileClassFqName, multifileClassFiles, errorHandler);
+                state.afterFilesGenerated(multifileClassFiles);
+            }
+
+            for (FqName packageFqName : packagesToGenerate) {
+                doCheckCancelled(state);
+                Collection<KtFile> packageFiles = filesInPackages.get(packageFqName);
+                generatePackage(state, packageFqName, packageFiles, errorHandler);
+                state.afterFilesGenerated(packageFiles);
+            }
         }
 
         doCheckCancelled(state);
         state.getFactory().done();
     }
 
+    // Each multifile class and each package is generated as a separate unit on a worker thread. The units are committed to the
+    // ClassFileFactory in the same order as they are generated in the serial mode, so that the output doesn't depend on the scheduling
+    private static void doGenerateInParallel(
+            @NotNull final GenerationState state,
+            @NotNull MultiMap<FqName, KtFile> filesInMultifileClasses,
+            @NotNull Set<FqName> multifileClassesToGenerate,
+            @NotNull MultiMap<FqName, KtFile> filesInPackages,
+            @NotNull Set<FqName> packagesToGenerate,
+            @NotNull final CompilationErrorHandler errorHandler
+    ) {
+        final ClassFileFactory factory = state.getFactory();
+        final AtomicBoolean canceled = new AtomicBoolean(false);
+
+        List<Callable<ClassFileFactory.GenerationUnit>> tasks = new ArrayList<Callable<ClassFileFactory.GenerationUnit>>();
+        for (FqName multifileClassFqName : multifileClassesToGenerate) {
+            final MultifileClassCodegen codegen = factory.forMultifileClass(multifileClassFqName, filesInMultifileClasses.get(multifileClassFqName));
+            tasks.add(createGenerationTask(factory, canceled, new Runnable() {
+                @Override
+                public void run() {
+                    codegen.generate(errorHandler);
+                }
+            }));
+        }
+        for (FqName packageFqName : packagesToGenerate) {
+            final PackageCodegen codegen = factory.forPackage(packageFqName, filesInPackages.get(packageFqName));
+            tasks.add(createGenerationTask(factory, canceled, new Runnable() {
+                @Override
+                public void run() {
+                    codegen.generate(errorHandler);
+                }
+            }));
+        }
+
+        ExecutorService executor = WorkerThreadPools.newFixedThreadPool(state.getBackendThreads(), "Kotlin codegen worker");
+        try {
+            List<Future<ClassFileFactory.GenerationUnit>> futures = new ArrayList<Future<ClassFileFactory.GenerationUnit>>(tasks.size());
+            for (Callable<ClassFileFactory.GenerationUnit> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+
+            for (Future<ClassFileFactory.GenerationUnit> future : futures) {
+                factory.commitUnit(awaitUnit(state, future, canceled));
+            }
+        }
+        finally {
+            canceled.set(true);
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+    }
+
+    @NotNull
+    private static Callable<ClassFileFactory.GenerationUnit> createGenerationTask(
+            @NotNull final ClassFileFactory factory,
+            @NotNull final AtomicBoolean canceled,
+            @NotNull final Runnable generate
+    ) {
+        return new Callable<ClassFileFactory.GenerationUnit>() {
+            @Override
+            public ClassFileFactory.GenerationUnit call() {
+                ClassFileFactory.GenerationUnit unit = new ClassFileFactory.GenerationUnit();
+                // Cancellation status (e.g. the IDE progress indicator) is bound to the thread which has started the compilation,
+                // so it's checked there, and the remaining units are skipped
+                if (!canceled.get()) {
+                    factory.runInUnit(unit, generate);
+                }
+                return unit;
+            }
+        };
+    }
+
+    @NotNull
+    private static ClassFileFactory.GenerationUnit awaitUnit(
+            @NotNull GenerationState state,
+            @NotNull Future<ClassFileFactory.GenerationUnit> future,
+            @NotNull AtomicBoolean canceled
+    ) {
+        while (true) {
+            try {
+                doCheckCancelled(state);
+                return future.get(CHECK_CANCELED_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            }
+            catch (TimeoutException ignored) {
+            }
+            catch (InterruptedException e) {
+                canceled.set(true);
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException();
+            }
+            catch (ExecutionException e) {
+                canceled.set(true);
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    private static void awaitTermination(@NotNull ExecutorService executor) {
+        // Units which are being generated at the moment still use the generation state, so they should finish before it's released
+        try {
+            while (!executor.awaitTermination(CHECK_CANCELED_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                // wait for the running units
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private static void doCheckCancelled(GenerationState state) {
         if (state.getClassBuilderMode().generateBodies) {
             ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
@@ -27,6 +27,7 @@ class SamWrapperClasses(private val state: GenerationState) {
 
     private val samInterfaceToWrapperClass = hashMapOf<WrapperKey, Type>()
 
+    @Synchronized
     fun getSamWrapperClass(samType: SamType, file: KtFile, expressionCodegen: ExpressionCodegen): Type {
         val isInsideInline = InlineUtil.isInlineOrContainingInline(expressionCodegen.context.contextDescriptor)
         return samInterfaceToWrapperClass.getOrPut(WrapperKey(samType, file, isInsideInline)) {
@@ -58,11 +58,37 @@ public abstract class TransformationMethodVisitor extends MethodVisitor {
 
         super.visitEnd();
 
+        transformAndEmit();
+    }
+
+    /**
+     * Called when the method node is complete. Subclasses may postpone the transformations,
+     * in which case {@link #transform()} and then {@link #emit()} should be called later.
+     */
+    protected void transformAndEmit() {
+        transform();
+        emit();
+    }
+
+    /**
+     * Transforms the method node. Doesn't touch the delegate, so different methods may be transformed in parallel.
+     */
+    public final void transform() {
         try {
             if (shouldBeTransformed(methodNode)) {
                 performTransformations(methodNode);
             }
+        }
+        catch (Throwable t) {
+            throw new CompilationException("Couldn't transform method node: " + InlineCodegenUtil.getNodeText(methodNode), t, null);
+        }
+    }
 
+    /**
+     * Writes the transformed method node to the delegate.
+     */
+    public final void emit() {
+        try {
             methodNode.accept(new EndIgnoringMethodVisitorDecorator(Opcodes.ASM5, delegate));
 
 
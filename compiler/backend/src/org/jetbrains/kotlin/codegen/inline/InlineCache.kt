@@ -16,23 +16,41 @@
 
 package org.jetbrains.kotlin.codegen.inline
 
+import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.util.containers.SLRUMap
 import org.jetbrains.kotlin.name.ClassId
 import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.org.objectweb.asm.commons.Method
+import java.io.IOException
 
 data class MethodId(val containingFqName: FqName, val method: Method)
 
-class InlineCache {
+class InlineCache(
+        private val sharedClassBytes: InlineClassBytesCache? = InlineClassBytesCache.shared,
+        private val mappedJars: MappedJarClassBytesSource? = MappedJarClassBytesSource.shared
+) {
     val classBytes: SLRUMap<ClassId, ByteArray> = SLRUMap(30, 20)
     val methodNodeById: SLRUMap<MethodId, SMAPAndMethodNode> = SLRUMap(60, 50)
+
+    // The shared cache is used by concurrent compilations, so the lookups of this one are counted separately
+    val sharedClassBytesCounters: InlineClassBytesCache.Counters? = sharedClassBytes?.let { InlineClassBytesCache.Counters() }
+
+    @Throws(IOException::class)
+    fun loadClassBytes(file: VirtualFile): ByteArray =
+            if (sharedClassBytes != null) sharedClassBytes.getOrLoad(file, sharedClassBytesCounters) { readClassBytes(it) } else readClassBytes(file)
+
+    @Throws(IOException::class)
+    private fun readClassBytes(file: VirtualFile): ByteArray =
+            mappedJars?.read(file) ?: file.contentsToByteArray()
 }
 
+// SLRUMap is not thread-safe, so the map itself is used as a lock: see GenerationState.isParallelCodegenEnabled.
+// The value is computed outside of the lock, so two threads may compute it simultaneously, and the last one wins
 inline fun <K, V> SLRUMap<K, V>.getOrPut(key: K, defaultValue: () -> V): V {
-    val value = get(key)
+    val value = synchronized(this) { get(key) }
     return if (value == null) {
         val answer = defaultValue()
-        put(key, answer)
+        synchronized(this) { put(key, answer) }
         answer
     }
     else {
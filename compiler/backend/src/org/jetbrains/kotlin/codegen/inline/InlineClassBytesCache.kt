@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.inline
+
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.util.io.URLUtil
+import java.io.File
+import java.io.IOException
+import java.util.*
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Contents of the class files containing compiled inline functions (together with their SMAPs), shared between compilations
+ * performed in the same process, e.g. by the compile daemon, which installs the [shared] instance.
+ *
+ * Only classes from jars are cached. An entry is keyed by the jar path, the jar modification time and the entry path,
+ * so a rebuilt jar is never served stale. The total size of cached class files is limited by [maxBytes],
+ * the least recently used entries are evicted first.
+ *
+ * [getStatistics] covers all compilations since the cache was created; the lookups of a single compilation are counted
+ * by the [Counters] passed to [getOrLoad].
+ */
+class InlineClassBytesCache(val maxBytes: Long) {
+    private data class Key(val jarPath: String, val jarTimestamp: Long, val entryPath: String)
+
+    class Statistics(
+            val hits: Long,
+            val misses: Long,
+            val loadedBytes: Long,
+            val evictedBytes: Long,
+            val cachedBytes: Long,
+            val entries: Int
+    ) {
+        val hitRate: Double
+            get() = if (hits + misses == 0L) 0.0 else hits.toDouble() / (hits + misses)
+
+        override fun toString(): String =
+                "$hits hits, $misses misses (hit rate ${"%.1f".format(hitRate * 100)}%), " +
+                "loaded ${loadedBytes / 1024} kb, evicted ${evictedBytes / 1024} kb, cached ${cachedBytes / 1024} kb in $entries entries"
+    }
+
+    class Counters {
+        private val hits = AtomicLong()
+        private val misses = AtomicLong()
+        private val loadedBytes = AtomicLong()
+
+        val hitCount: Long get() = hits.get()
+        val missCount: Long get() = misses.get()
+        val loadedByteCount: Long get() = loadedBytes.get()
+
+        internal fun hit() {
+            hits.incrementAndGet()
+        }
+
+        internal fun miss(bytes: Int) {
+            misses.incrementAndGet()
+            loadedBytes.addAndGet(bytes.toLong())
+        }
+
+        override fun toString(): String = "${hits.get()} hits, ${misses.get()} misses, loaded ${loadedBytes.get() / 1024} kb"
+    }
+
+    private val entries = LinkedHashMap<Key, ByteArray>(16, 0.75f, true)
+    private var cachedBytes = 0L
+    private var hits = 0L
+    private var misses = 0L
+    private var loadedBytes = 0L
+    private var evictedBytes = 0L
+
+    @Throws(IOException::class)
+    fun getOrLoad(
+            file: VirtualFile,
+            counters: Counters? = null,
+            load: (VirtualFile) -> ByteArray = { it.contentsToByteArray() }
+    ): ByteArray {
+        val key = createKey(file) ?: return load(file)
+
+        synchronized(this) {
+            val cached = entries[key]
+            if (cached != null) {
+                hits++
+                counters?.hit()
+                return cached
+            }
+            misses++
+        }
+
+        // The file is read outside of the lock, so two threads may read it simultaneously, and the last one wins
+        val bytes = load(file)
+        counters?.miss(bytes.size)
+
+        synchronized(this) {
+            loadedBytes += bytes.size
+            if (bytes.size <= maxBytes) {
+                entries.put(key, bytes)?.let { cachedBytes -= it.size }
+                cachedBytes += bytes.size
+                trimTo(maxBytes)
+            }
+        }
+
+        return bytes
+    }
+
+    @Synchronized
+    fun trimTo(bytes: Long) {
+        val iterator = entries.values.iterator()
+        while (cachedBytes > bytes && iterator.hasNext()) {
+            val evicted = iterator.next()
+            iterator.remove()
+            cachedBytes -= evicted.size
+            evictedBytes += evicted.size
+        }
+    }
+
+    @Synchronized
+    fun clear() {
+        trimTo(0)
+    }
+
+    @Synchronized
+    fun getStatistics(): Statistics = Statistics(hits, misses, loadedBytes, evictedBytes, cachedBytes, entries.size)
+
+    private fun createKey(file: VirtualFile): Key? {
+        val path = file.path
+        val separatorIndex = path.indexOf(URLUtil.JAR_SEPARATOR)
+        if (separatorIndex < 0) return null
+
+        val jarPath = path.substring(0, separatorIndex)
+        val jarTimestamp = File(jarPath).lastModified()
+        if (jarTimestamp == 0L) return null
+
+        return Key(jarPath, jarTimestamp, path.substring(separatorIndex + URLUtil.JAR_SEPARATOR.length))
+    }
+
+    companion object {
+        @JvmStatic
+        @Volatile
+        var shared: InlineClassBytesCache? = null
+    }
+}
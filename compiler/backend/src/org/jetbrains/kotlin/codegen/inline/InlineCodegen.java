@@ -54,6 +54,7 @@ import org.jetbrains.kotlin.serialization.deserialization.descriptors.Deserializ
 import org.jetbrains.kotlin.types.KotlinType;
 import org.jetbrains.kotlin.types.expressions.DoubleColonLHS;
 import org.jetbrains.kotlin.types.expressions.LabelResolver;
+import org.jetbrains.kotlin.util.PerformanceTrace;
 import org.jetbrains.org.objectweb.asm.Label;
 import org.jetbrains.org.objectweb.asm.MethodVisitor;
 import org.jetbrains.org.objectweb.asm.Opcodes;
@@ -174,6 +175,9 @@ public class InlineCodegen extends CallGenerator {
             return;
         }
 
+        // the lambdas and the inline functions called from them are inlined in the nested calls, which are not measured separately
+        PerformanceTrace performanceTrace = state.getPerformanceTrace();
+        PerformanceTrace.Measurement measurement = performanceTrace != null ? performanceTrace.startAggregated("inline") : null;
         SMAPAndMethodNode nodeAndSmap = null;
         try {
             nodeAndSmap = createMethodNode(functionDescriptor, jvmSignature, codegen, context, callDefault, resolvedCall);
@@ -190,6 +194,9 @@ public class InlineCodegen extends CallGenerator {
         }
         finally {
             state.getInlineCycleReporter().exitFromInliningOf(resolvedCall);
+            if (measurement != null) {
+                measurement.finish();
+            }
         }
     }
 
@@ -339,7 +346,7 @@ public class InlineCodegen extends CallGenerator {
                     throw new IllegalStateException("Couldn't find declaration file for " + containerId);
                 }
                 try {
-                    return file.contentsToByteArray();
+                    return state.getInlineCache().loadClassBytes(file);
                 }
                 catch (IOException e) {
                     throw new RuntimeException(e);
@@ -409,7 +409,7 @@ public class InlineCodegenUtil {
             }
             VirtualFile file = findVirtualFileImprecise(state, internalName);
             if (file != null) {
-                return new ClassReader(file.contentsToByteArray());
+                return new ClassReader(state.getInlineCache().loadClassBytes(file));
             }
             throw new RuntimeException("Couldn't find virtual file for " + internalName);
         }
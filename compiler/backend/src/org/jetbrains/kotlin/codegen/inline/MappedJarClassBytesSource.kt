@@ -0,0 +1,213 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.inline
+
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.util.io.URLUtil
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.util.*
+import java.util.zip.DataFormatException
+import java.util.zip.Inflater
+
+/**
+ * Reads class files from jars mapped into memory, instead of going through the jar file system of the VirtualFile.
+ *
+ * The central directory of each jar is parsed once from the mapped buffer, and an entry is read into a byte array
+ * of its exact size: stored entries are copied from the buffer directly, deflated ones are inflated in a single pass.
+ * Jars which can't be handled this way (e.g. Zip64 or malformed ones) are read through the VirtualFile as usual.
+ *
+ * Mapped jars can't be deleted on Windows until the mapping is garbage collected, so this source is disabled by default;
+ * the compile daemon installs the [shared] instance when started with the `mapInlineJars` option.
+ * Only the [maxMappedJars] most recently used jars are kept mapped.
+ */
+class MappedJarClassBytesSource(private val maxMappedJars: Int = MAX_MAPPED_JARS) {
+    private class Entry(val method: Int, val compressedSize: Int, val size: Int, val localHeaderOffset: Int)
+
+    private class MappedJar(val timestamp: Long, val length: Long, val buffer: ByteBuffer, val entries: Map<String, Entry>)
+
+    private val jars = object : LinkedHashMap<String, MappedJar>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, MappedJar>?): Boolean = size > maxMappedJars
+    }
+
+    val mappedJarsCount: Int
+        @Synchronized get() = jars.size
+
+    /**
+     * Returns `null` if the file is not located in a jar which can be mapped.
+     */
+    fun read(file: VirtualFile): ByteArray? {
+        val path = file.path
+        val separatorIndex = path.indexOf(URLUtil.JAR_SEPARATOR)
+        if (separatorIndex < 0) return null
+
+        val jar = getMappedJar(path.substring(0, separatorIndex))
+        val entry = jar.entries[path.substring(separatorIndex + URLUtil.JAR_SEPARATOR.length)] ?: return null
+        return try {
+            readEntry(jar.buffer, entry)
+        }
+        catch (e: IOException) {
+            null
+        }
+    }
+
+    @Synchronized
+    private fun getMappedJar(jarPath: String): MappedJar {
+        val file = File(jarPath)
+        val timestamp = file.lastModified()
+        val length = file.length()
+
+        val existing = jars[jarPath]
+        if (existing != null && existing.timestamp == timestamp && existing.length == length) return existing
+
+        // Jars which can't be mapped are remembered as empty ones, so that they are not mapped again until changed
+        val mapped = try {
+            mapJar(file, timestamp, length)
+        }
+        catch (e: IOException) {
+            null
+        } ?: MappedJar(timestamp, length, EMPTY_BUFFER, emptyMap())
+
+        jars[jarPath] = mapped
+        return mapped
+    }
+
+    private fun mapJar(file: File, timestamp: Long, length: Long): MappedJar? {
+        if (length < END_OF_CENTRAL_DIRECTORY_SIZE || length > Int.MAX_VALUE) return null
+
+        val buffer: MappedByteBuffer = RandomAccessFile(file, "r").use {
+            it.channel.map(FileChannel.MapMode.READ_ONLY, 0, length)
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN)
+
+        val entries = readCentralDirectory(buffer) ?: return null
+        return MappedJar(timestamp, length, buffer, entries)
+    }
+
+    private fun readCentralDirectory(buffer: ByteBuffer): Map<String, Entry>? {
+        val end = findEndOfCentralDirectory(buffer) ?: return null
+        val entriesCount = buffer.getShort(end + 10).toInt() and 0xFFFF
+        val centralDirectoryOffset = buffer.getInt(end + 16)
+        // Zip64 archives store the real values elsewhere
+        if (entriesCount == 0xFFFF || centralDirectoryOffset == -1) return null
+
+        val entries = HashMap<String, Entry>(entriesCount * 2)
+        var offset = centralDirectoryOffset
+        for (i in 0..entriesCount - 1) {
+            if (offset < 0 || offset + CENTRAL_DIRECTORY_HEADER_SIZE > buffer.limit() ||
+                buffer.getInt(offset) != CENTRAL_DIRECTORY_HEADER_SIGNATURE) return null
+
+            val method = buffer.getShort(offset + 10).toInt() and 0xFFFF
+            val compressedSize = buffer.getInt(offset + 20)
+            val size = buffer.getInt(offset + 24)
+            val nameLength = buffer.getShort(offset + 28).toInt() and 0xFFFF
+            val extraLength = buffer.getShort(offset + 30).toInt() and 0xFFFF
+            val commentLength = buffer.getShort(offset + 32).toInt() and 0xFFFF
+            val localHeaderOffset = buffer.getInt(offset + 42)
+
+            val nameBytes = ByteArray(nameLength)
+            buffer.duplicate().apply { position(offset + CENTRAL_DIRECTORY_HEADER_SIZE) }.get(nameBytes)
+
+            if (compressedSize >= 0 && size >= 0 && localHeaderOffset >= 0) {
+                entries[String(nameBytes, Charsets.UTF_8)] = Entry(method, compressedSize, size, localHeaderOffset)
+            }
+
+            offset += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength
+        }
+        return entries
+    }
+
+    private fun findEndOfCentralDirectory(buffer: ByteBuffer): Int? {
+        val last = buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE
+        val first = Math.max(0, last - MAX_COMMENT_LENGTH)
+        for (offset in last downTo first) {
+            if (buffer.getInt(offset) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) return offset
+        }
+        return null
+    }
+
+    @Throws(IOException::class)
+    private fun readEntry(buffer: ByteBuffer, entry: Entry): ByteArray {
+        val header = entry.localHeaderOffset
+        if (header + LOCAL_HEADER_SIZE > buffer.limit() || buffer.getInt(header) != LOCAL_HEADER_SIGNATURE) {
+            throw IOException("Invalid local header at $header")
+        }
+        val dataOffset = header + LOCAL_HEADER_SIZE + (buffer.getShort(header + 26).toInt() and 0xFFFF) +
+                         (buffer.getShort(header + 28).toInt() and 0xFFFF)
+        if (dataOffset + entry.compressedSize > buffer.limit()) throw IOException("Entry data at $dataOffset is out of bounds")
+
+        val data = buffer.duplicate()
+        data.position(dataOffset)
+
+        val result = ByteArray(entry.size)
+        when (entry.method) {
+            STORED -> data.get(result)
+            DEFLATED -> {
+                // An extra zero byte is required by the inflater in the "nowrap" mode
+                val compressed = ByteArray(entry.compressedSize + 1)
+                data.get(compressed, 0, entry.compressedSize)
+                val inflater = Inflater(true)
+                try {
+                    inflater.setInput(compressed)
+                    var read = 0
+                    while (read < result.size) {
+                        val count = inflater.inflate(result, read, result.size - read)
+                        if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                            throw IOException("Unexpected end of the deflated entry")
+                        }
+                        read += count
+                    }
+                }
+                catch (e: DataFormatException) {
+                    throw IOException(e)
+                }
+                finally {
+                    inflater.end()
+                }
+            }
+            else -> throw IOException("Unsupported compression method ${entry.method}")
+        }
+        return result
+    }
+
+    companion object {
+        private const val LOCAL_HEADER_SIGNATURE = 0x04034b50
+        private const val CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50
+        private const val END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50
+        private const val LOCAL_HEADER_SIZE = 30
+        private const val CENTRAL_DIRECTORY_HEADER_SIZE = 46
+        private const val END_OF_CENTRAL_DIRECTORY_SIZE = 22
+        private const val MAX_COMMENT_LENGTH = 0xFFFF
+
+        // The shared source lives as long as the daemon, and sees the classpath of every project compiled by it
+        private const val MAX_MAPPED_JARS = 64
+
+        private const val STORED = 0
+        private const val DEFLATED = 8
+
+        private val EMPTY_BUFFER = ByteBuffer.allocate(0)
+
+        @JvmStatic
+        @Volatile
+        var shared: MappedJarClassBytesSource? = null
+    }
+}
@@ -24,15 +24,15 @@ import org.jetbrains.kotlin.codegen.optimization.common.removeEmptyCatchBlocks
 
 class DeadCodeEliminationMethodTransformer : MethodTransformer() {
     override fun transform(internalClassName: String, methodNode: MethodNode) {
-        val frames = MethodTransformer.analyze(internalClassName, methodNode, OptimizationBasicInterpreter())
+        val frames = MethodTransformer.analyzeFrames(internalClassName, methodNode, OptimizationBasicInterpreter())
         val insnList = methodNode.instructions
         val insnsArray = insnList.toArray()
 
         // Do not remove not meaningful nodes (labels/linenumbers) because they can be referred
         // by try/catch blocks or local variables table.
-        insnsArray.zip(frames).filter {
-            it.second == null && it.first.isMeaningful
-        }.forEach { insnList.remove(it.first) }
+        insnsArray.filterIndexed { index, insn ->
+            !frames.isReachable(index) && insn.isMeaningful
+        }.forEach { insnList.remove(it) }
 
         // Remove empty try-catch blocks to make sure we don't break data flow analysis invariants by dead code elimination.
         methodNode.removeEmptyCatchBlocks()
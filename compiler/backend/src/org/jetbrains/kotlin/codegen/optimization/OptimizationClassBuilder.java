@@ -21,15 +21,31 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.codegen.ClassBuilder;
 import org.jetbrains.kotlin.codegen.DelegatingClassBuilder;
 import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin;
+import org.jetbrains.kotlin.util.PerformanceTrace;
 import org.jetbrains.org.objectweb.asm.MethodVisitor;
 
+import java.util.concurrent.ExecutorService;
+
 public class OptimizationClassBuilder extends DelegatingClassBuilder {
     private final ClassBuilder delegate;
     private final boolean disableOptimization;
+    private final PostponedMethodTransformations postponedTransformations;
+    private final PerformanceTrace performanceTrace;
 
     public OptimizationClassBuilder(@NotNull ClassBuilder delegate, boolean disableOptimization) {
+        this(delegate, disableOptimization, null, null);
+    }
+
+    public OptimizationClassBuilder(
+            @NotNull ClassBuilder delegate,
+            boolean disableOptimization,
+            @Nullable ExecutorService executor,
+            @Nullable PerformanceTrace performanceTrace
+    ) {
         this.delegate = delegate;
         this.disableOptimization = disableOptimization;
+        this.postponedTransformations = executor != null ? new PostponedMethodTransformations(executor) : null;
+        this.performanceTrace = performanceTrace;
     }
 
     @NotNull
@@ -51,7 +67,17 @@ public class OptimizationClassBuilder extends DelegatingClassBuilder {
         return new OptimizationMethodVisitor(
                 super.newMethod(origin, access, name, desc, signature, exceptions),
                 disableOptimization,
+                postponedTransformations,
+                performanceTrace,
                 access, name, desc, signature, exceptions
         );
     }
+
+    @Override
+    public void done() {
+        if (postponedTransformations != null) {
+            postponedTransformations.transformAndEmitAll();
+        }
+        super.done();
+    }
 }
@@ -17,23 +17,49 @@
 package org.jetbrains.kotlin.codegen.optimization;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.codegen.ClassBuilder;
 import org.jetbrains.kotlin.codegen.ClassBuilderFactory;
 import org.jetbrains.kotlin.codegen.ClassBuilderMode;
 import org.jetbrains.kotlin.codegen.DelegatingClassBuilderFactory;
 import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin;
+import org.jetbrains.kotlin.util.PerformanceTrace;
+import org.jetbrains.kotlin.utils.WorkerThreadPools;
+
+import java.util.concurrent.ExecutorService;
 
 public class OptimizationClassBuilderFactory extends DelegatingClassBuilderFactory {
     private final boolean disableOptimization;
+    private final ExecutorService executor;
+    private final PerformanceTrace performanceTrace;
 
     public OptimizationClassBuilderFactory(ClassBuilderFactory delegate, boolean disableOptimization) {
+        this(delegate, disableOptimization, 1, null);
+    }
+
+    public OptimizationClassBuilderFactory(
+            ClassBuilderFactory delegate,
+            boolean disableOptimization,
+            int optimizationThreads,
+            @Nullable PerformanceTrace performanceTrace
+    ) {
         super(delegate);
         this.disableOptimization = disableOptimization;
+        this.performanceTrace = performanceTrace;
+        this.executor = optimizationThreads > 1 ? WorkerThreadPools.newFixedThreadPool(optimizationThreads, "Kotlin bytecode optimization worker") : null;
     }
 
     @NotNull
     @Override
     public OptimizationClassBuilder newClassBuilder(@NotNull JvmDeclarationOrigin origin) {
-        return new OptimizationClassBuilder(getDelegate().newClassBuilder(origin), disableOptimization);
+        return new OptimizationClassBuilder(getDelegate().newClassBuilder(origin), disableOptimization, executor, performanceTrace);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        super.close();
     }
 }
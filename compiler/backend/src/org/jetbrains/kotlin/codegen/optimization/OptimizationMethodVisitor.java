@@ -24,12 +24,11 @@ import org.jetbrains.kotlin.codegen.optimization.boxing.RedundantCoercionToUnitT
 import org.jetbrains.kotlin.codegen.optimization.boxing.RedundantNullCheckMethodTransformer;
 import org.jetbrains.kotlin.codegen.optimization.common.UtilKt;
 import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer;
+import org.jetbrains.kotlin.util.PerformanceTrace;
 import org.jetbrains.org.objectweb.asm.MethodVisitor;
 import org.jetbrains.org.objectweb.asm.tree.MethodNode;
 
 public class OptimizationMethodVisitor extends TransformationMethodVisitor {
-    private static final int MEMORY_LIMIT_BY_METHOD_MB = 50;
-
     private static final MethodTransformer MANDATORY_METHOD_TRANSFORMER = new FixStackWithLabelNormalizationMethodTransformer();
 
     private static final MethodTransformer[] OPTIMIZATION_TRANSFORMERS = new MethodTransformer[] {
@@ -42,6 +41,8 @@ public class OptimizationMethodVisitor extends TransformationMethodVisitor {
     };
 
     private final boolean disableOptimization;
+    private final PostponedMethodTransformations postponedTransformations;
+    private final PerformanceTrace performanceTrace;
 
     public OptimizationMethodVisitor(
             @NotNull MethodVisitor delegate,
@@ -51,24 +52,53 @@ public class OptimizationMethodVisitor extends TransformationMethodVisitor {
             @NotNull String desc,
             @Nullable String signature,
             @Nullable String[] exceptions
+    ) {
+        this(delegate, disableOptimization, null, null, access, name, desc, signature, exceptions);
+    }
+
+    OptimizationMethodVisitor(
+            @NotNull MethodVisitor delegate,
+            boolean disableOptimization,
+            @Nullable PostponedMethodTransformations postponedTransformations,
+            @Nullable PerformanceTrace performanceTrace,
+            int access,
+            @NotNull String name,
+            @NotNull String desc,
+            @Nullable String signature,
+            @Nullable String[] exceptions
     ) {
         super(delegate, access, name, desc, signature, exceptions);
         this.disableOptimization = disableOptimization;
+        this.postponedTransformations = postponedTransformations;
+        this.performanceTrace = performanceTrace;
     }
 
     @Override
-    protected void performTransformations(@NotNull MethodNode methodNode) {
-        MANDATORY_METHOD_TRANSFORMER.transform("fake", methodNode);
-        if (canBeOptimized(methodNode) && !disableOptimization) {
-            for (MethodTransformer transformer : OPTIMIZATION_TRANSFORMERS) {
-                transformer.transform("fake", methodNode);
-            }
+    protected void transformAndEmit() {
+        if (postponedTransformations != null) {
+            postponedTransformations.add(this);
+        }
+        else {
+            super.transformAndEmit();
         }
-        UtilKt.prepareForEmitting(methodNode);
     }
 
-    private static boolean canBeOptimized(@NotNull MethodNode node) {
-        int totalFramesSizeMb = node.instructions.size() * (node.maxLocals + node.maxStack) / (1024 * 1024);
-        return totalFramesSizeMb < MEMORY_LIMIT_BY_METHOD_MB;
+    @Override
+    protected void performTransformations(@NotNull MethodNode methodNode) {
+        PerformanceTrace.Measurement measurement = performanceTrace != null ? performanceTrace.startAggregated("optimization") : null;
+        try {
+            MANDATORY_METHOD_TRANSFORMER.transform("fake", methodNode);
+            if (!disableOptimization) {
+                for (MethodTransformer transformer : OPTIMIZATION_TRANSFORMERS) {
+                    transformer.transform("fake", methodNode);
+                }
+            }
+            UtilKt.prepareForEmitting(methodNode);
+        }
+        finally {
+            if (measurement != null) {
+                measurement.finish();
+            }
+        }
     }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.codegen.TransformationMethodVisitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Methods of a single class, whose transformations are postponed until the class is done.
+ * The methods are then transformed in parallel, and written to the class in the order they were visited,
+ * because the underlying class writer (e.g. its constant pool) is not thread-safe and its output should not depend on the scheduling.
+ */
+class PostponedMethodTransformations {
+    private final ExecutorService executor;
+    private final List<TransformationMethodVisitor> methods = new ArrayList<TransformationMethodVisitor>();
+
+    PostponedMethodTransformations(@NotNull ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    void add(@NotNull TransformationMethodVisitor method) {
+        methods.add(method);
+    }
+
+    void transformAndEmitAll() {
+        try {
+            if (methods.size() == 1) {
+                methods.get(0).transform();
+            }
+            else {
+                transformInParallel();
+            }
+
+            for (TransformationMethodVisitor method : methods) {
+                method.emit();
+            }
+        }
+        finally {
+            methods.clear();
+        }
+    }
+
+    private void transformInParallel() {
+        List<Future<?>> futures = new ArrayList<Future<?>>(methods.size());
+        for (final TransformationMethodVisitor method : methods) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    method.transform();
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while optimizing methods", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+        finally {
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+}
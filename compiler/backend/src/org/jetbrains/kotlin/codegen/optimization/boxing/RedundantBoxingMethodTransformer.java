@@ -22,6 +22,7 @@ import com.intellij.openapi.util.Pair;
 import kotlin.collections.CollectionsKt;
 import kotlin.jvm.functions.Function1;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.codegen.optimization.common.MethodFrames;
 import org.jetbrains.kotlin.codegen.optimization.common.StrictBasicValue;
 import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer;
 import org.jetbrains.org.objectweb.asm.Opcodes;
@@ -38,7 +39,7 @@ public class RedundantBoxingMethodTransformer extends MethodTransformer {
     @Override
     public void transform(@NotNull String internalClassName, @NotNull MethodNode node) {
         RedundantBoxingInterpreter interpreter = new RedundantBoxingInterpreter(node.instructions);
-        Frame<BasicValue>[] frames = analyze(
+        MethodFrames<BasicValue> frames = analyzeFrames(
                 internalClassName, node, interpreter
         );
         interpretPopInstructionsForBoxedValues(interpreter, node, frames);
@@ -60,19 +61,24 @@ public class RedundantBoxingMethodTransformer extends MethodTransformer {
     private static void interpretPopInstructionsForBoxedValues(
             @NotNull RedundantBoxingInterpreter interpreter,
             @NotNull MethodNode node,
-            @NotNull Frame<BasicValue>[] frames
+            @NotNull MethodFrames<BasicValue> frames
     ) {
         for (int i = 0; i < node.instructions.size(); i++) {
             AbstractInsnNode insn = node.instructions.get(i);
-            if ((insn.getOpcode() != Opcodes.POP && insn.getOpcode() != Opcodes.POP2) || frames[i] == null) {
+            if (insn.getOpcode() != Opcodes.POP && insn.getOpcode() != Opcodes.POP2) {
                 continue;
             }
 
-            BasicValue top = frames[i].getStack(frames[i].getStackSize() - 1);
+            Frame<BasicValue> frame = frames.get(i);
+            if (frame == null) {
+                continue;
+            }
+
+            BasicValue top = frame.getStack(frame.getStackSize() - 1);
             interpreter.processPopInstruction(insn, top);
 
             if (top.getSize() == 1 && insn.getOpcode() == Opcodes.POP2) {
-                interpreter.processPopInstruction(insn, frames[i].getStack(frames[i].getStackSize() - 2));
+                interpreter.processPopInstruction(insn, frame.getStack(frame.getStackSize() - 2));
             }
         }
     }
@@ -80,7 +86,7 @@ public class RedundantBoxingMethodTransformer extends MethodTransformer {
     private static void removeValuesClashingWithVariables(
             @NotNull RedundantBoxedValuesCollection values,
             @NotNull MethodNode node,
-            @NotNull Frame<BasicValue>[] frames
+            @NotNull MethodFrames<BasicValue> frames
     ) {
         while (removeValuesClashingWithVariablesPass(values, node, frames)) {
             // do nothing
@@ -90,7 +96,7 @@ public class RedundantBoxingMethodTransformer extends MethodTransformer {
     private static boolean removeValuesClashingWithVariablesPass(
             @NotNull RedundantBoxedValuesCollection values,
             @NotNull MethodNode node,
-            @NotNull Frame<BasicValue>[] frames
+            @NotNull MethodFrames<BasicValue> frames
     ) {
         boolean needToRepeat = false;
 
@@ -134,7 +140,7 @@ public class RedundantBoxingMethodTransformer extends MethodTransformer {
         return needToRepeat;
     }
 
-    private static void adaptLocalVariableTableForBoxedValues(@NotNull MethodNode node, @NotNull Frame<BasicValue>[] frames) {
+    private static void adaptLocalVariableTableForBoxedValues(@NotNull MethodNode node, @NotNull MethodFrames<BasicValue> frames) {
         for (LocalVariableNode localVariableNode : node.localVariables) {
             if (Type.getType(localVariableNode.desc).getSort() != Type.OBJECT) {
                 continue;
@@ -151,14 +157,14 @@ public class RedundantBoxingMethodTransformer extends MethodTransformer {
     private static List<BasicValue> getValuesStoredOrLoadedToVariable(
             @NotNull LocalVariableNode localVariableNode,
             @NotNull MethodNode node,
-            @NotNull Frame<BasicValue>[] frames
+            @NotNull MethodFrames<BasicValue> frames
     ) {
         List<BasicValue> values = new ArrayList<BasicValue>();
         InsnList insnList = node.instructions;
         int from = insnList.indexOf(localVariableNode.start) + 1;
         int to = insnList.indexOf(localVariableNode.end) - 1;
 
-        Frame<BasicValue> frameForFromInstr = frames[from];
+        Frame<BasicValue> frameForFromInstr = frames.get(from);
         if (frameForFromInstr != null) {
             BasicValue localVarValue = frameForFromInstr.getLocal(localVariableNode.index);
             if (localVarValue != null) {
@@ -173,16 +179,17 @@ public class RedundantBoxingMethodTransformer extends MethodTransformer {
             if ((insn.getOpcode() == Opcodes.ASTORE || insn.getOpcode() == Opcodes.ALOAD) &&
                 ((VarInsnNode) insn).var == localVariableNode.index) {
 
-                if (frames[i] == null) {
+                Frame<BasicValue> frame = frames.get(i);
+                if (frame == null) {
                     //unreachable code
                     continue;
                 }
 
                 if (insn.getOpcode() == Opcodes.ASTORE) {
-                    values.add(frames[i].getStack(frames[i].getStackSize() - 1));
+                    values.add(frame.getStack(frame.getStackSize() - 1));
                 }
                 else {
-                    values.add(frames[i].getLocal(((VarInsnNode) insn).var));
+                    values.add(frame.getLocal(((VarInsnNode) insn).var));
                 }
             }
         }
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization.common
+
+import org.jetbrains.kotlin.codegen.inline.InlineCodegenUtil
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.jetbrains.org.objectweb.asm.Type
+import org.jetbrains.org.objectweb.asm.tree.*
+import org.jetbrains.org.objectweb.asm.tree.analysis.AnalyzerException
+import org.jetbrains.org.objectweb.asm.tree.analysis.Frame
+import org.jetbrains.org.objectweb.asm.tree.analysis.Interpreter
+import org.jetbrains.org.objectweb.asm.tree.analysis.Value
+import java.util.*
+
+/**
+ * Forward data flow analysis which stores frames only at the entries of basic blocks.
+ *
+ * Memory required by [MethodAnalyzer] and `org.objectweb.asm.tree.analysis.Analyzer` is proportional to
+ * `instructions * (maxLocals + maxStack)`, which is prohibitive for huge generated methods.
+ * Here the frame of an instruction inside a block is recomputed on demand from the frame at the block entry (see [BlockMethodFrames]).
+ * Interpreter callbacks are invoked again during such recomputation, so they should not have non-idempotent side effects
+ * (which is already required by the fixed-point iteration itself).
+ */
+class BlockFramesMethodAnalyzer<V : Value>(
+        val owner: String,
+        val method: MethodNode,
+        private val interpreter: Interpreter<V>
+) {
+    private val instructions: InsnList = method.instructions
+    private val nInsns: Int = instructions.size()
+
+    // Index of the first instruction of the basic block containing the given instruction
+    private val blockEntries: IntArray = IntArray(nInsns)
+    private val entryFrames: Array<Frame<V>?> = arrayOfNulls(nInsns)
+
+    private val handlers: Array<MutableList<TryCatchBlockNode>?> = arrayOfNulls(nInsns)
+    private val queued: BooleanArray = BooleanArray(nInsns)
+    private val queue: IntArray = IntArray(nInsns)
+    private var top: Int = 0
+
+    @Throws(AnalyzerException::class)
+    fun analyze(): BlockMethodFrames<V> {
+        if (nInsns == 0) return BlockMethodFrames(instructions, interpreter, blockEntries, entryFrames)
+
+        checkAssertions()
+
+        computeBlockEntries()
+        computeExceptionHandlersForEachInsn()
+
+        val current = Frame<V>(method.maxLocals, method.maxStack)
+        val handler = Frame<V>(method.maxLocals, method.maxStack)
+        initControlFlowAnalysis(current)
+
+        while (top > 0) {
+            val entry = queue[--top]
+            queued[entry] = false
+            current.init(entryFrames[entry]!!)
+
+            var insn = entry
+            while (executeInsn(insn, current, handler)) {
+                insn++
+            }
+        }
+
+        return BlockMethodFrames(instructions, interpreter, blockEntries, entryFrames)
+    }
+
+    /**
+     * Returns `true` if the control flows from [insn] to the next instruction of the same basic block.
+     */
+    private fun executeInsn(insn: Int, current: Frame<V>, handler: Frame<V>): Boolean {
+        val insnNode = instructions[insn]
+        try {
+            handlers[insn]?.forEach { tcb ->
+                handler.init(current)
+                handler.clearStack()
+                handler.push(interpreter.newValue(Type.getObjectType(tcb.type ?: "java/lang/Throwable")))
+                mergeControlFlowEdge(instructions.indexOf(tcb.handler), handler)
+            }
+
+            if (!insnNode.isNop()) {
+                current.execute(insnNode, interpreter)
+            }
+
+            when {
+                insnNode is JumpInsnNode -> {
+                    if (insnNode.opcode != Opcodes.GOTO) {
+                        mergeControlFlowEdge(insn + 1, current)
+                    }
+                    mergeControlFlowEdge(instructions.indexOf(insnNode.label), current)
+                }
+                insnNode is LookupSwitchInsnNode -> {
+                    mergeControlFlowEdge(instructions.indexOf(insnNode.dflt), current)
+                    for (label in insnNode.labels) {
+                        mergeControlFlowEdge(instructions.indexOf(label), current)
+                    }
+                }
+                insnNode is TableSwitchInsnNode -> {
+                    mergeControlFlowEdge(instructions.indexOf(insnNode.dflt), current)
+                    // See the comment in MethodAnalyzer.visitTableSwitchInsnNode
+                    for (label in insnNode.labels.reversed()) {
+                        mergeControlFlowEdge(instructions.indexOf(label), current)
+                    }
+                }
+                insnNode.isTerminator() -> {}
+                insn + 1 == nInsns ->
+                    throw AnalyzerException(insnNode, "Execution can fall off end of the code")
+                blockEntries[insn + 1] == insn + 1 ->
+                    mergeControlFlowEdge(insn + 1, current)
+                else ->
+                    return true
+            }
+            return false
+        }
+        catch (e: AnalyzerException) {
+            throw AnalyzerException(e.node, "Error at instruction #" + insn + " ${InlineCodegenUtil.getInsnText(insnNode)}: " + e.message, e)
+        }
+        catch (e: Exception) {
+            throw AnalyzerException(insnNode, "Error at instruction #" + insn + " ${InlineCodegenUtil.getInsnText(insnNode)}: " + e.message, e)
+        }
+    }
+
+    private fun checkAssertions() {
+        if (instructions.toArray().any { it.opcode == Opcodes.JSR || it.opcode == Opcodes.RET })
+            throw AssertionError("Subroutines are deprecated since Java 6")
+    }
+
+    private fun computeBlockEntries() {
+        val isEntry = BooleanArray(nInsns)
+        isEntry[0] = true
+        for (tcb in method.tryCatchBlocks) {
+            isEntry[instructions.indexOf(tcb.handler)] = true
+        }
+
+        for (i in 0..nInsns - 1) {
+            val insnNode = instructions[i]
+            when (insnNode) {
+                is JumpInsnNode ->
+                    isEntry[instructions.indexOf(insnNode.label)] = true
+                is LookupSwitchInsnNode -> {
+                    isEntry[instructions.indexOf(insnNode.dflt)] = true
+                    insnNode.labels.forEach { isEntry[instructions.indexOf(it)] = true }
+                }
+                is TableSwitchInsnNode -> {
+                    isEntry[instructions.indexOf(insnNode.dflt)] = true
+                    insnNode.labels.forEach { isEntry[instructions.indexOf(it)] = true }
+                }
+            }
+            if (i + 1 < nInsns && (insnNode.isTerminator() || insnNode.isBranch())) {
+                isEntry[i + 1] = true
+            }
+        }
+
+        for (i in 0..nInsns - 1) {
+            blockEntries[i] = if (isEntry[i]) i else blockEntries[i - 1]
+        }
+    }
+
+    private fun computeExceptionHandlersForEachInsn() {
+        for (tcb in method.tryCatchBlocks) {
+            val begin = instructions.indexOf(tcb.start)
+            val end = instructions.indexOf(tcb.end)
+            for (j in begin..end - 1) {
+                var insnHandlers: MutableList<TryCatchBlockNode>? = handlers[j]
+                if (insnHandlers == null) {
+                    insnHandlers = ArrayList<TryCatchBlockNode>()
+                    handlers[j] = insnHandlers
+                }
+                insnHandlers.add(tcb)
+            }
+        }
+    }
+
+    private fun initControlFlowAnalysis(current: Frame<V>) {
+        current.setReturn(interpreter.newValue(Type.getReturnType(method.desc)))
+        val args = Type.getArgumentTypes(method.desc)
+        var local = 0
+        if ((method.access and Opcodes.ACC_STATIC) == 0) {
+            current.setLocal(local++, interpreter.newValue(Type.getObjectType(owner)))
+        }
+        for (arg in args) {
+            current.setLocal(local++, interpreter.newValue(arg))
+            if (arg.size == 2) {
+                current.setLocal(local++, interpreter.newValue(null))
+            }
+        }
+        while (local < method.maxLocals) {
+            current.setLocal(local++, interpreter.newValue(null))
+        }
+        mergeControlFlowEdge(0, current)
+    }
+
+    private fun mergeControlFlowEdge(insn: Int, frame: Frame<V>) {
+        assert(blockEntries[insn] == insn) { "Control flow edge to the middle of a basic block: #$insn" }
+
+        val oldFrame = entryFrames[insn]
+        val changes: Boolean
+
+        if (oldFrame == null) {
+            entryFrames[insn] = Frame(frame)
+            changes = true
+        }
+        else {
+            changes = oldFrame.merge(frame, interpreter)
+        }
+        if (changes && !queued[insn]) {
+            queued[insn] = true
+            queue[top++] = insn
+        }
+    }
+}
+
+/**
+ * Frames computed by [BlockFramesMethodAnalyzer].
+ *
+ * The frame of the last requested instruction is cached, so iterating over the instructions of a block
+ * in the increasing order executes each instruction once. Not thread-safe.
+ */
+class BlockMethodFrames<V : Value> internal constructor(
+        private val instructions: InsnList,
+        private val interpreter: Interpreter<V>,
+        private val blockEntries: IntArray,
+        private val entryFrames: Array<Frame<V>?>
+) : MethodFrames<V> {
+    private var cachedIndex = -1
+    private var cachedFrame: Frame<V>? = null
+
+    override val size: Int
+        get() = blockEntries.size
+
+    override fun isReachable(insnIndex: Int): Boolean = entryFrames[blockEntries[insnIndex]] != null
+
+    override fun get(insnIndex: Int): Frame<V>? {
+        val entry = blockEntries[insnIndex]
+        val entryFrame = entryFrames[entry] ?: return null
+
+        val cached = cachedFrame
+        val frame: Frame<V>
+        var index: Int
+        if (cached != null && cachedIndex <= insnIndex && blockEntries[cachedIndex] == entry) {
+            frame = cached
+            index = cachedIndex
+        }
+        else {
+            frame = Frame(entryFrame)
+            index = entry
+        }
+
+        while (index < insnIndex) {
+            val insnNode = instructions[index]
+            if (!insnNode.isNop()) {
+                frame.execute(insnNode, interpreter)
+            }
+            index++
+        }
+
+        cachedFrame = frame
+        cachedIndex = insnIndex
+        return Frame(frame)
+    }
+}
+
+private fun AbstractInsnNode.isNop() =
+        type == AbstractInsnNode.LABEL || type == AbstractInsnNode.LINE || type == AbstractInsnNode.FRAME
+
+private fun AbstractInsnNode.isTerminator() =
+        opcode == Opcodes.ATHROW || opcode in Opcodes.IRETURN..Opcodes.RETURN
+
+private fun AbstractInsnNode.isBranch() =
+        this is JumpInsnNode || this is LookupSwitchInsnNode || this is TableSwitchInsnNode
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization.common
+
+import org.jetbrains.org.objectweb.asm.tree.analysis.Frame
+import org.jetbrains.org.objectweb.asm.tree.analysis.Value
+
+/**
+ * Result of a forward data flow analysis of a method: a frame before each instruction, `null` for unreachable instructions.
+ */
+interface MethodFrames<V : Value> {
+    val size: Int
+
+    operator fun get(insnIndex: Int): Frame<V>?
+
+    fun isReachable(insnIndex: Int): Boolean
+}
+
+/**
+ * Frames of all instructions computed at once, e.g. by `org.objectweb.asm.tree.analysis.Analyzer`.
+ */
+class DenseMethodFrames<V : Value>(private val frames: Array<out Frame<V>?>) : MethodFrames<V> {
+    override val size: Int
+        get() = frames.size
+
+    override fun get(insnIndex: Int): Frame<V>? = frames[insnIndex]
+
+    override fun isReachable(insnIndex: Int): Boolean = frames[insnIndex] != null
+}
@@ -17,10 +17,25 @@
 package org.jetbrains.kotlin.codegen.optimization.transformer;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.codegen.optimization.common.BlockFramesMethodAnalyzer;
+import org.jetbrains.kotlin.codegen.optimization.common.DenseMethodFrames;
+import org.jetbrains.kotlin.codegen.optimization.common.MethodFrames;
 import org.jetbrains.org.objectweb.asm.tree.MethodNode;
 import org.jetbrains.org.objectweb.asm.tree.analysis.*;
 
 public abstract class MethodTransformer {
+    static final int DENSE_FRAMES_MEMORY_LIMIT_MB = 50;
+
+    private static volatile int denseFramesMemoryLimitMb = DENSE_FRAMES_MEMORY_LIMIT_MB;
+
+    /**
+     * Overrides the size of frames above which a method is analyzed with {@link BlockFramesMethodAnalyzer}; tests set it to 0
+     * to run the block analysis on every method.
+     */
+    static void setDenseFramesMemoryLimitMb(int limitMb) {
+        denseFramesMemoryLimitMb = limitMb;
+    }
+
     @NotNull
     protected static <V extends Value> Frame<V>[] runAnalyzer(
             @NotNull Analyzer<V> analyzer,
@@ -44,5 +59,32 @@ public abstract class MethodTransformer {
         return runAnalyzer(new Analyzer<V>(interpreter), internalClassName, node);
     }
 
+    /**
+     * Keeps the frame of each instruction for methods of a reasonable size, and only the frames at the entries of basic blocks
+     * for huge methods, see {@link BlockFramesMethodAnalyzer}.
+     */
+    @NotNull
+    public static <V extends Value> MethodFrames<V> analyzeFrames(
+            @NotNull String internalClassName,
+            @NotNull MethodNode node,
+            @NotNull Interpreter<V> interpreter
+    ) {
+        if (canStoreAllFrames(node)) {
+            return new DenseMethodFrames<V>(analyze(internalClassName, node, interpreter));
+        }
+
+        try {
+            return new BlockFramesMethodAnalyzer<V>(internalClassName, node, interpreter).analyze();
+        }
+        catch (AnalyzerException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean canStoreAllFrames(@NotNull MethodNode node) {
+        long totalFramesSizeMb = (long) node.instructions.size() * (node.maxLocals + node.maxStack) / (1024 * 1024);
+        return totalFramesSizeMb < denseFramesMemoryLimitMb;
+    }
+
     public abstract void transform(@NotNull String internalClassName, @NotNull MethodNode methodNode);
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.state
+
+import com.intellij.psi.PsiElement
+import org.jetbrains.kotlin.descriptors.DeclarationDescriptorWithSource
+import org.jetbrains.kotlin.lexer.KtTokens
+import org.jetbrains.kotlin.psi.*
+import org.jetbrains.kotlin.psi.psiUtil.anyDescendantOfType
+import org.jetbrains.kotlin.resolve.BindingTraceContext
+import org.jetbrains.kotlin.resolve.DelegatingBindingTrace
+import org.jetbrains.kotlin.resolve.source.PsiSourceElement
+import java.util.*
+
+/**
+ * Removes the data recorded for the bodies of the files whose code is already generated from the analysis trace
+ * and from the codegen trace. Everything declared outside of the bodies (top-level and member declarations) is kept,
+ * because other files refer to it. Files with inline declarations are kept as a whole, their bodies are inlined into other files.
+ */
+class GeneratedFilesBindingsReleaser(
+        private val analysisTrace: BindingTraceContext,
+        private val codegenTrace: DelegatingBindingTrace,
+        files: Collection<KtFile>
+) {
+    private val filesToGenerate = HashSet(files)
+    private val filesToRelease = HashSet<KtFile>()
+
+    // Keys of the same file share most of their ancestors, so the answers are cached for the duration of a sweep
+    private val elementsInsideBody = HashMap<PsiElement, Boolean>()
+
+    fun filesGenerated(files: Collection<KtFile>) {
+        for (file in files) {
+            if (filesToGenerate.remove(file) && !file.hasInlineDeclarations()) {
+                filesToRelease.add(file)
+            }
+        }
+
+        // Each sweep goes through all the recorded keys. The files are released in batches of at least 1/SWEEP_RATIO
+        // of the remaining files, so the batches shrink geometrically and there are O(log N) sweeps
+        // (about 78 for 10000 files), each of them proportional to the number of the keys left in the traces
+        if (filesToRelease.isNotEmpty() && filesToRelease.size * SWEEP_RATIO >= filesToGenerate.size) {
+            val predicate = { key: Any? -> isReleased(key) }
+            analysisTrace.removeKeys(predicate)
+            codegenTrace.removeKeys(predicate)
+            filesToRelease.clear()
+            elementsInsideBody.clear()
+        }
+    }
+
+    private fun isReleased(key: Any?): Boolean {
+        val element = when (key) {
+            is PsiElement -> key
+            is Call -> key.callElement
+            is DeclarationDescriptorWithSource -> (key.source as? PsiSourceElement)?.psi
+            else -> null
+        } ?: return false
+
+        // Annotation entries are needed to suppress the diagnostics reported after the code generation
+        if (element is KtAnnotationEntry) return false
+
+        return element.containingFile in filesToRelease && element.isInsideBody()
+    }
+
+    private fun PsiElement.isInsideBody(): Boolean {
+        val visited = ArrayList<PsiElement>()
+        var child = this
+        while (true) {
+            elementsInsideBody[child]?.let { return visited.cacheInsideBody(it) }
+            visited.add(child)
+
+            val parent = child.parent ?: return visited.cacheInsideBody(false)
+            val result = when (parent) {
+                is KtFile -> false
+                is KtDeclarationWithBody -> if (child == parent.bodyExpression) true else null
+                is KtAnonymousInitializer -> if (child == parent.body) true else null
+                // Initializers of constants are evaluated again when they are used in other files
+                is KtProperty -> if (child == parent.delegateExpression ||
+                                     child == parent.initializer && !parent.hasModifier(KtTokens.CONST_KEYWORD)) true else null
+                else -> null
+            }
+            if (result != null) return visited.cacheInsideBody(result)
+            child = parent
+        }
+    }
+
+    private fun List<PsiElement>.cacheInsideBody(result: Boolean): Boolean {
+        for (element in this) {
+            elementsInsideBody[element] = result
+        }
+        return result
+    }
+
+    private fun KtFile.hasInlineDeclarations(): Boolean =
+            anyDescendantOfType<KtModifierListOwner> { it.hasModifier(KtTokens.INLINE_KEYWORD) }
+
+    companion object {
+        private const val SWEEP_RATIO = 8
+    }
+}
@@ -43,10 +43,13 @@ import org.jetbrains.kotlin.psi.KtFile
 import org.jetbrains.kotlin.psi.KtScript
 import org.jetbrains.kotlin.resolve.BindingContext
 import org.jetbrains.kotlin.resolve.BindingTrace
+import org.jetbrains.kotlin.resolve.BindingTraceContext
 import org.jetbrains.kotlin.resolve.BindingTraceFilter
 import org.jetbrains.kotlin.resolve.DelegatingBindingTrace
+import org.jetbrains.kotlin.resolve.ThreadSafeDelegatingBindingTrace
 import org.jetbrains.kotlin.resolve.diagnostics.Diagnostics
 import org.jetbrains.kotlin.resolve.jvm.JvmClassName
+import org.jetbrains.kotlin.util.PerformanceTrace
 import org.jetbrains.org.objectweb.asm.Opcodes
 import java.io.File
 
@@ -67,7 +70,10 @@ class GenerationState @JvmOverloads constructor(
         val outDirectory: File? = null,
         private val onIndependentPartCompilationEnd: GenerationStateEventCallback = GenerationStateEventCallback.DO_NOTHING,
         val codegenFactory: CodegenFactory = if (configuration.getBoolean(JVMConfigurationKeys.IR)) JvmIrCodegenFactory else DefaultCodegenFactory,
-        wantsDiagnostics: Boolean = true
+        wantsDiagnostics: Boolean = true,
+        // The trace which has produced 'bindingContext'. When it's given, the data recorded for the bodies of the files is removed
+        // from it after their code is generated, see JVMConfigurationKeys.RELEASE_BINDINGS_AFTER_CODEGEN
+        analysisTrace: BindingTraceContext? = null
 ) {
     abstract class GenerateClassFilter {
         abstract fun shouldAnnotateClass(processingClassOrObject: KtClassOrObject): Boolean
@@ -91,6 +97,16 @@ class GenerationState @JvmOverloads constructor(
     val fileClassesProvider: CodegenFileClassesProvider = CodegenFileClassesProvider()
     val inlineCache: InlineCache = InlineCache()
 
+    // Packages and multifile classes are generated in parallel only if every class builder factory involved is known to be thread-safe.
+    // Class builder interceptors from plugins and the signature dumping factory are not, so they fall back to the serial generation
+    val isParallelCodegenEnabled: Boolean =
+            configuration.get(JVMConfigurationKeys.PARALLEL_BACKEND_THREADS, 1) > 1 &&
+            builderFactory.classBuilderMode.generateBodies &&
+            !configuration.getBoolean(JVMConfigurationKeys.IR) &&
+            configuration.get(JVMConfigurationKeys.DECLARATIONS_JSON_PATH) == null &&
+            ClassBuilderInterceptorExtension.getInstances(project).isEmpty()
+    val backendThreads: Int = if (isParallelCodegenEnabled) configuration.getNotNull(JVMConfigurationKeys.PARALLEL_BACKEND_THREADS) else 1
+
     val incrementalCacheForThisTarget: IncrementalCache?
     val packagesWithObsoleteParts: Set<FqName>
     val obsoleteMultifileClasses: List<FqName>
@@ -114,7 +130,7 @@ class GenerationState @JvmOverloads constructor(
         }
     }
 
-    val extraJvmDiagnosticsTrace: BindingTrace = DelegatingBindingTrace(bindingContext, "For extra diagnostics in ${this.javaClass}", false)
+    val extraJvmDiagnosticsTrace: BindingTrace = createBindingTrace(bindingContext, "For extra diagnostics in ${this.javaClass}", false)
     private val interceptedBuilderFactory: ClassBuilderFactory
     private var used = false
 
@@ -130,9 +146,15 @@ class GenerationState @JvmOverloads constructor(
 
     val moduleName: String = moduleName ?: JvmCodegenUtil.getModuleName(module)
     val classBuilderMode: ClassBuilderMode = builderFactory.classBuilderMode
-    val bindingTrace: BindingTrace = DelegatingBindingTrace(bindingContext, "trace in GenerationState",
-                                                            filter = if (wantsDiagnostics) BindingTraceFilter.ACCEPT_ALL else BindingTraceFilter.NO_DIAGNOSTICS)
+    val bindingTrace: BindingTrace = createBindingTrace(bindingContext, "trace in GenerationState", true,
+                                                        if (wantsDiagnostics) BindingTraceFilter.ACCEPT_ALL else BindingTraceFilter.NO_DIAGNOSTICS)
     val bindingContext: BindingContext = bindingTrace.bindingContext
+
+    private val bindingsReleaser: GeneratedFilesBindingsReleaser? =
+            if (analysisTrace != null && !isParallelCodegenEnabled && codegenFactory == DefaultCodegenFactory)
+                GeneratedFilesBindingsReleaser(analysisTrace, bindingTrace as DelegatingBindingTrace, files)
+            else null
+
     val typeMapper: KotlinTypeMapper = KotlinTypeMapper(
             this.bindingContext, classBuilderMode, fileClassesProvider, IncompatibleClassTrackerImpl(extraJvmDiagnosticsTrace),
             this.moduleName, isJvm8Target, isJvm8TargetWithDefaults
@@ -168,12 +190,15 @@ class GenerationState @JvmOverloads constructor(
     val generateParametersMetadata: Boolean = configuration.getBoolean(JVMConfigurationKeys.PARAMETERS_METADATA)
 
     val languageVersionSettings = configuration.get(CommonConfigurationKeys.LANGUAGE_VERSION_SETTINGS, LanguageVersionSettingsImpl.DEFAULT)
+    val performanceTrace: PerformanceTrace? = configuration.get(CommonConfigurationKeys.PERFORMANCE_TRACE)
     val shouldInlineConstVals = languageVersionSettings.supportsFeature(LanguageFeature.InlineConstVals)
 
     init {
         this.interceptedBuilderFactory = builderFactory
                 .wrapWith(
-                    { OptimizationClassBuilderFactory(it, configuration.get(JVMConfigurationKeys.DISABLE_OPTIMIZATION, false)) },
+                    { OptimizationClassBuilderFactory(it, configuration.get(JVMConfigurationKeys.DISABLE_OPTIMIZATION, false),
+                                                      configuration.get(JVMConfigurationKeys.PARALLEL_OPTIMIZATION_THREADS, 1),
+                                                      performanceTrace) },
                     ::CoroutineTransformerClassBuilderFactory,
                     { BuilderFactoryForDuplicateSignatureDiagnostics(
                             it, this.bindingContext, diagnostics, fileClassesProvider, this.moduleName
@@ -189,6 +214,17 @@ class GenerationState @JvmOverloads constructor(
         this.factory = ClassFileFactory(this, interceptedBuilderFactory)
     }
 
+    private fun createBindingTrace(
+            parentContext: BindingContext,
+            name: String,
+            withParentDiagnostics: Boolean,
+            filter: BindingTraceFilter = BindingTraceFilter.ACCEPT_ALL
+    ): BindingTrace =
+            if (isParallelCodegenEnabled)
+                ThreadSafeDelegatingBindingTrace(parentContext, name, withParentDiagnostics, filter)
+            else
+                DelegatingBindingTrace(parentContext, name, withParentDiagnostics, filter)
+
     fun beforeCompile() {
         markUsed()
 
@@ -199,6 +235,10 @@ class GenerationState @JvmOverloads constructor(
         onIndependentPartCompilationEnd(this)
     }
 
+    fun afterFilesGenerated(files: Collection<KtFile>) {
+        bindingsReleaser?.filesGenerated(files)
+    }
+
     private fun markUsed() {
         if (used) throw IllegalStateException("${GenerationState::class.java} cannot be used more than once")
 
@@ -35,6 +35,7 @@ interface IncompatibleClassTracker {
 class IncompatibleClassTrackerImpl(val trace: BindingTrace) : IncompatibleClassTracker {
     private val classes = linkedSetOf<String>()
 
+    @Synchronized
     override fun record(binaryClass: KotlinJvmBinaryClass) {
         if (classes.add(binaryClass.location)) {
             val errorData = IncompatibleVersionErrorData(
@@ -91,6 +91,10 @@ public class K2JVMCompilerArguments extends CommonCompilerArguments {
     @Argument(value = "Xreport-perf", description = "Report detailed performance statistics")
     public boolean reportPerf;
 
+    @Argument(value = "Xreport-perf-trace", description = "Write the performance trace of the compilation phases to the given file in Chrome trace format")
+    @ValueDescription("<path>")
+    public String reportPerfTrace;
+
     @Argument(value = "Xmultifile-parts-inherit", description = "Compile multifile classes as a hierarchy of parts and facade")
     public boolean inheritMultifileParts;
 
@@ -116,6 +120,25 @@ public class K2JVMCompilerArguments extends CommonCompilerArguments {
     @Argument(value = "Xload-builtins-from-dependencies", description = "Load definitions of built-in declarations from module dependencies, instead of from the compiler")
     public boolean loadBuiltInsFromDependencies;
 
+    @Argument(value = "Xbackend-threads", description = "Generate bytecode for packages and multifile classes in parallel using the given number of threads (experimental)")
+    @ValueDescription("<count>")
+    public String backendThreads;
+
+    @Argument(value = "Xoptimization-threads", description = "Optimize bytecode of methods of each class in parallel using the given number of threads (experimental)")
+    @ValueDescription("<count>")
+    public String optimizationThreads;
+
+    @Argument(value = "Xparsing-threads", description = "Parse source files in parallel using the given number of threads before the analysis (experimental)")
+    @ValueDescription("<count>")
+    public String parsingThreads;
+
+    @Argument(value = "Xbody-resolve-threads", description = "Resolve function bodies of different files in parallel using the given number of threads (experimental)")
+    @ValueDescription("<count>")
+    public String bodyResolveThreads;
+
+    @Argument(value = "Xrelease-bindings-after-codegen", description = "Release the analysis results for the bodies of the files after their bytecode is generated (experimental)")
+    public boolean releaseBindingsAfterCodegen;
+
     // Paths to output directories for friend modules.
     public String[] friendPaths;
 
@@ -48,6 +48,29 @@ open class GenericReplCompiledEvaluator(baseClasspath: Iterable<File>,
             return@eval ReplEvalResult.HistoryMismatch(compiledLoadedClassesHistory.lines, it)
         }
 
+        doEval(codeLine, compiledClasses, hasResult, classpathAddendum, invokeWrapper)
+    }
+
+    fun eval(codeLine: ReplCodeLine,
+             historyDigest: ReplHistoryDigest,
+             compiledClasses: List<CompiledClassData>,
+             hasResult: Boolean,
+             classpathAddendum: List<File>,
+             invokeWrapper: InvokeWrapper? = null
+    ): ReplEvalResult = evalStateLock.write {
+        if (!checkAndUpdateReplHistoryCollection(compiledLoadedClassesHistory, historyDigest)) {
+            return@eval ReplEvalResult.HistoryMismatch(compiledLoadedClassesHistory.lines, UNKNOWN_REPL_LINE_NO)
+        }
+
+        doEval(codeLine, compiledClasses, hasResult, classpathAddendum, invokeWrapper)
+    }
+
+    private fun doEval(codeLine: ReplCodeLine,
+                       compiledClasses: List<CompiledClassData>,
+                       hasResult: Boolean,
+                       classpathAddendum: List<File>,
+                       invokeWrapper: InvokeWrapper?
+    ): ReplEvalResult {
         var mainLineClassName: String? = null
 
         fun classNameFromPath(path: String) = JvmClassName.byInternalName(path.replaceFirst("\\.class$".toRegex(), ""))
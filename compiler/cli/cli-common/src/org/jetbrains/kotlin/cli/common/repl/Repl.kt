@@ -19,6 +19,8 @@ package org.jetbrains.kotlin.cli.common.repl
 import org.jetbrains.kotlin.cli.common.messages.CompilerMessageLocation
 import java.io.File
 import java.io.Serializable
+import java.nio.ByteBuffer
+import java.security.MessageDigest
 import java.util.*
 import kotlin.reflect.KClass
 
@@ -28,6 +30,32 @@ data class ReplCodeLine(val no: Int, val code: String) : Serializable {
     }
 }
 
+/**
+ * Identifies a REPL history by its size and a SHA-1 hash chained over its lines, so that the history kept by another process
+ * can be validated without sending the lines.
+ */
+class ReplHistoryDigest(val size: Int, val hash: ByteArray) : Serializable {
+    fun next(line: ReplCodeLine): ReplHistoryDigest {
+        val digest = MessageDigest.getInstance("SHA-1")
+        digest.update(hash)
+        digest.update(ByteBuffer.allocate(4).putInt(line.no).array())
+        digest.update(line.code.toByteArray(Charsets.UTF_8))
+        return ReplHistoryDigest(size + 1, digest.digest())
+    }
+
+    override fun equals(other: Any?): Boolean = (other as? ReplHistoryDigest)?.let { size == it.size && Arrays.equals(hash, it.hash) } ?: false
+    override fun hashCode(): Int = size * 31 + Arrays.hashCode(hash)
+    override fun toString(): String = "ReplHistoryDigest(size = $size)"
+
+    companion object {
+        private val serialVersionUID: Long = 1L
+
+        val EMPTY = ReplHistoryDigest(0, ByteArray(0))
+
+        fun of(lines: Iterable<ReplCodeLine>): ReplHistoryDigest = lines.fold(EMPTY) { digest, line -> digest.next(line) }
+    }
+}
+
 data class ClassWithInstance(val klass: KClass<*>, val instance: Any)
 
 // TODO: consider storing code hash where source is not needed
@@ -43,6 +71,7 @@ data class CompiledClassData(val path: String, val bytes: ByteArray) : Serializa
 sealed class ReplCheckResult(val updatedHistory: List<ReplCodeLine>) : Serializable {
     class Ok(updatedHistory: List<ReplCodeLine>) : ReplCheckResult(updatedHistory)
     class Incomplete(updatedHistory: List<ReplCodeLine>) : ReplCheckResult(updatedHistory)
+    class HistoryMismatch(updatedHistory: List<ReplCodeLine>, val lineNo: Int): ReplCheckResult(updatedHistory)
     class Error(updatedHistory: List<ReplCodeLine>,
                 val message: String,
                 val location: CompilerMessageLocation = CompilerMessageLocation.NO_LOCATION
@@ -28,16 +28,30 @@ data class ReplHistory<T>(
     init { assert(isValid()) }
     fun isValid() = lines.size == values.size
 
+    // digests of the history prefixes: digests[i] describes the first i + 1 lines
+    private val digests = arrayListOf<ReplHistoryDigest>().apply {
+        lines.fold(ReplHistoryDigest.EMPTY) { digest, line -> digest.next(line).also { add(it) } }
+    }
+
+    val digest: ReplHistoryDigest
+        get() = digests.lastOrNull() ?: ReplHistoryDigest.EMPTY
+
     fun add(line: ReplCodeLine, value: T) {
+        digests.add(digest.next(line))
         lines.add(line)
         values.add(value)
     }
 
     fun trimAt(idx: Int) {
-        lines.dropLast(lines.size - idx)
-        values.dropLast(lines.size - idx)
+        lines.subList(idx, lines.size).clear()
+        values.subList(idx, values.size).clear()
+        digests.subList(idx, digests.size).clear()
     }
 
+    fun isPrefixDigest(prefixDigest: ReplHistoryDigest): Boolean =
+            prefixDigest.size <= lines.size &&
+            prefixDigest == (if (prefixDigest.size == 0) ReplHistoryDigest.EMPTY else digests[prefixDigest.size - 1])
+
     companion object {
         private val serialVersionUID: Long = 8228357578L
     }
@@ -49,13 +63,51 @@ fun <T> checkAndUpdateReplHistoryCollection(history: ReplHistory<T>, linesHistor
     var idx = 0
     while (linesHistoryIt.hasNext()) {
         val curLine = linesHistoryIt.next()
-        if (history.lines[idx] != curLine) return curLine.no
+        if (idx >= history.lines.size || history.lines[idx] != curLine) return curLine.no
         idx += 1
     }
     history.trimAt(idx)
     return null
 }
 
+/**
+ * Checks the [history] against the digest of the caller's history, rolling back the lines the caller doesn't have anymore.
+ * Returns false if the caller's history is not a prefix of the [history], in this case the caller should send its lines instead.
+ */
+fun <T> checkAndUpdateReplHistoryCollection(history: ReplHistory<T>, historyDigest: ReplHistoryDigest): Boolean {
+    assert(history.isValid())
+    if (!history.isPrefixDigest(historyDigest)) return false
+
+    history.trimAt(historyDigest.size)
+    return true
+}
+
+// used in HistoryMismatch results when the history is checked by digest, and the first mismatched line cannot be determined
+const val UNKNOWN_REPL_LINE_NO = -1
+
+fun ReplCheckResult.withUpdatedHistory(updatedHistory: List<ReplCodeLine>): ReplCheckResult = when (this) {
+    is ReplCheckResult.Ok -> ReplCheckResult.Ok(updatedHistory)
+    is ReplCheckResult.Incomplete -> ReplCheckResult.Incomplete(updatedHistory)
+    is ReplCheckResult.HistoryMismatch -> ReplCheckResult.HistoryMismatch(updatedHistory, lineNo)
+    is ReplCheckResult.Error -> ReplCheckResult.Error(updatedHistory, message, location)
+}
+
+fun ReplCompileResult.withUpdatedHistory(updatedHistory: List<ReplCodeLine>): ReplCompileResult = when (this) {
+    is ReplCompileResult.CompiledClasses -> ReplCompileResult.CompiledClasses(updatedHistory, classes, hasResult, classpathAddendum)
+    is ReplCompileResult.Incomplete -> ReplCompileResult.Incomplete(updatedHistory)
+    is ReplCompileResult.HistoryMismatch -> ReplCompileResult.HistoryMismatch(updatedHistory, lineNo)
+    is ReplCompileResult.Error -> ReplCompileResult.Error(updatedHistory, message, location)
+}
+
+fun ReplEvalResult.withUpdatedHistory(updatedHistory: List<ReplCodeLine>): ReplEvalResult = when (this) {
+    is ReplEvalResult.ValueResult -> ReplEvalResult.ValueResult(updatedHistory, value)
+    is ReplEvalResult.UnitResult -> ReplEvalResult.UnitResult(updatedHistory)
+    is ReplEvalResult.Incomplete -> ReplEvalResult.Incomplete(updatedHistory)
+    is ReplEvalResult.HistoryMismatch -> ReplEvalResult.HistoryMismatch(updatedHistory, lineNo)
+    is ReplEvalResult.Error.Runtime -> ReplEvalResult.Error.Runtime(updatedHistory, message, cause)
+    is ReplEvalResult.Error.CompileTime -> ReplEvalResult.Error.CompileTime(updatedHistory, message, location)
+}
+
 fun renderReplStackTrace(cause: Throwable, startFromMethodName: String): String {
     val newTrace = arrayListOf<StackTraceElement>()
     var skip = true
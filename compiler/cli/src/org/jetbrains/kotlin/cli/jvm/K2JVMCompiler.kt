@@ -43,6 +43,7 @@ import org.jetbrains.kotlin.load.kotlin.incremental.components.IncrementalCompil
 import org.jetbrains.kotlin.script.KotlinScriptDefinitionFromAnnotatedTemplate
 import org.jetbrains.kotlin.script.StandardScriptDefinition
 import org.jetbrains.kotlin.util.PerformanceCounter
+import org.jetbrains.kotlin.util.PerformanceTrace
 import org.jetbrains.kotlin.utils.KotlinPaths
 import org.jetbrains.kotlin.utils.KotlinPathsFromHomeDir
 import org.jetbrains.kotlin.utils.PathUtil
@@ -138,9 +139,14 @@ class K2JVMCompiler : CLICompiler<K2JVMCompilerArguments>() {
             }
         }
 
+        putThreadCount(configuration, JVMConfigurationKeys.PARALLEL_BACKEND_THREADS, arguments.backendThreads, "backend", messageCollector)
+        putThreadCount(configuration, JVMConfigurationKeys.PARALLEL_OPTIMIZATION_THREADS, arguments.optimizationThreads, "optimization", messageCollector)
+        putThreadCount(configuration, JVMConfigurationKeys.PARALLEL_PARSING_THREADS, arguments.parsingThreads, "parsing", messageCollector)
+        putThreadCount(configuration, CommonConfigurationKeys.PARALLEL_BODY_RESOLVE_THREADS, arguments.bodyResolveThreads, "body resolve", messageCollector)
+
         configuration.put(JVMConfigurationKeys.PARAMETERS_METADATA, arguments.javaParameters)
 
-        putAdvancedOptions(configuration, arguments)
+        putAdvancedOptions(configuration, arguments, messageCollector)
 
         messageCollector.report(CompilerMessageSeverity.LOGGING, "Configuring the compilation environment", CompilerMessageLocation.NO_LOCATION)
         try {
@@ -218,6 +224,12 @@ class K2JVMCompiler : CLICompiler<K2JVMCompilerArguments>() {
             )
             return INTERNAL_ERROR
         }
+        finally {
+            // the trace of a failed compilation is written too, it shows where the time was spent before the failure
+            arguments.reportPerfTrace?.let { path ->
+                configuration.get(CommonConfigurationKeys.PERFORMANCE_TRACE)?.writeChromeTrace(File(path))
+            }
+        }
     }
 
     private fun createEnvironmentWithScriptingSupport(rootDisposable: Disposable,
@@ -252,6 +264,12 @@ class K2JVMCompiler : CLICompiler<K2JVMCompilerArguments>() {
     override fun setupPlatformSpecificArgumentsAndServices(
             configuration: CompilerConfiguration, arguments: K2JVMCompilerArguments, services: Services
     ) {
+        // the trace could be passed by the caller, e.g. the daemon, to get the spans of the compilation
+        val performanceTrace = services.get(PerformanceTrace::class.java) ?: arguments.reportPerfTrace?.let { PerformanceTrace() }
+        if (performanceTrace != null) {
+            configuration.put(CommonConfigurationKeys.PERFORMANCE_TRACE, performanceTrace)
+        }
+
         if (IncrementalCompilation.isEnabled()) {
             val components = services.get(IncrementalCompilationComponents::class.java)
             if (components != null) {
@@ -311,7 +329,11 @@ class K2JVMCompiler : CLICompiler<K2JVMCompilerArguments>() {
             elapsedJITTime = currentTime
         }
 
-        private fun putAdvancedOptions(configuration: CompilerConfiguration, arguments: K2JVMCompilerArguments) {
+        private fun putAdvancedOptions(
+                configuration: CompilerConfiguration,
+                arguments: K2JVMCompilerArguments,
+                messageCollector: MessageCollector
+        ) {
             configuration.put(JVMConfigurationKeys.DISABLE_CALL_ASSERTIONS, arguments.noCallAssertions)
             configuration.put(JVMConfigurationKeys.DISABLE_PARAM_ASSERTIONS, arguments.noParamAssertions)
             configuration.put(JVMConfigurationKeys.DISABLE_OPTIMIZATION, arguments.noOptimize)
@@ -322,10 +344,38 @@ class K2JVMCompiler : CLICompiler<K2JVMCompilerArguments>() {
             configuration.put(JVMConfigurationKeys.USE_SINGLE_MODULE, arguments.singleModule)
             configuration.put(JVMConfigurationKeys.ADD_BUILT_INS_FROM_COMPILER_TO_DEPENDENCIES, arguments.addCompilerBuiltIns)
             configuration.put(JVMConfigurationKeys.CREATE_BUILT_INS_FROM_MODULE_DEPENDENCIES, arguments.loadBuiltInsFromDependencies)
+            configuration.put(JVMConfigurationKeys.RELEASE_BINDINGS_AFTER_CODEGEN, arguments.releaseBindingsAfterCodegen)
+
+            if (arguments.releaseBindingsAfterCodegen &&
+                (configuration.get(JVMConfigurationKeys.PARALLEL_BACKEND_THREADS, 1) > 1 || configuration.getBoolean(JVMConfigurationKeys.IR))) {
+                messageCollector.report(CompilerMessageSeverity.WARNING,
+                                        "The bindings are not released after the code generation with several backend threads or with the IR backend",
+                                        CompilerMessageLocation.NO_LOCATION)
+            }
 
             arguments.declarationsOutputPath?.let { configuration.put(JVMConfigurationKeys.DECLARATIONS_JSON_PATH, it) }
         }
 
+        private fun putThreadCount(
+                configuration: CompilerConfiguration,
+                key: CompilerConfigurationKey<Int>,
+                value: String?,
+                kind: String,
+                messageCollector: MessageCollector
+        ) {
+            if (value == null) return
+
+            val threads = value.toIntOrNull()
+            if (threads != null && threads > 0) {
+                configuration.put(key, threads)
+            }
+            else {
+                messageCollector.report(CompilerMessageSeverity.ERROR,
+                                        "Number of $kind threads should be a positive integer: $value",
+                                        CompilerMessageLocation.NO_LOCATION)
+            }
+        }
+
         private fun getClasspath(paths: KotlinPaths, arguments: K2JVMCompilerArguments): List<File> {
             val classpath = arrayListOf<File>()
             if (arguments.classpath != null) {
@@ -33,6 +33,7 @@ import org.jetbrains.kotlin.asJava.classes.KtLightClassForSourceDeclaration
 import org.jetbrains.kotlin.descriptors.DeclarationDescriptor
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor
 import org.jetbrains.kotlin.descriptors.PackageViewDescriptor
+import org.jetbrains.kotlin.diagnostics.Diagnostic
 import org.jetbrains.kotlin.fileClasses.JvmFileClassUtil
 import org.jetbrains.kotlin.load.kotlin.PackagePartClassUtils
 import org.jetbrains.kotlin.name.FqName
@@ -42,6 +43,7 @@ import org.jetbrains.kotlin.resolve.lazy.KotlinCodeAnalyzer
 import org.jetbrains.kotlin.resolve.lazy.ResolveSessionUtils
 import org.jetbrains.kotlin.resolve.scopes.DescriptorKindFilter
 import org.jetbrains.kotlin.resolve.scopes.MemberScope
+import org.jetbrains.kotlin.types.KotlinType
 import org.jetbrains.kotlin.util.slicedMap.ReadOnlySlice
 import org.jetbrains.kotlin.util.slicedMap.WritableSlice
 import org.jetbrains.kotlin.utils.emptyOrSingletonList
@@ -64,7 +66,9 @@ class CliLightClassGenerationSupport(project: Project) : LightClassGenerationSup
     private var bindingContext: BindingContext by Delegates.notNull()
     private var module: ModuleDescriptor by Delegates.notNull()
 
-    
+    var trace: CliBindingTrace? = null
+        private set
+
     override fun initialize(trace: BindingTrace, module: ModuleDescriptor, codeAnalyzer: KotlinCodeAnalyzer) {
         this.bindingContext = trace.bindingContext
         this.module = module
@@ -74,6 +78,7 @@ class CliLightClassGenerationSupport(project: Project) : LightClassGenerationSup
         }
 
         trace.setKotlinCodeAnalyzer(codeAnalyzer)
+        this.trace = trace
     }
 
     override fun getContextForClassOrObject(classOrObject: KtClassOrObject): LightClassConstructionContext {
@@ -173,7 +178,7 @@ class CliLightClassGenerationSupport(project: Project) : LightClassGenerationSup
     }
 
     // TODO: needs better name + list of keys to skip somewhere
-    class NoScopeRecordCliBindingTrace : CliBindingTrace() {
+    open class NoScopeRecordCliBindingTrace : CliBindingTrace() {
         override fun <K, V> record(slice: WritableSlice<K, V>, key: K, value: V) {
             if (slice === BindingContext.LEXICAL_SCOPE || slice == BindingContext.DATA_FLOW_INFO_BEFORE) {
                 // In the compiler there's no need to keep scopes
@@ -187,6 +192,46 @@ class CliLightClassGenerationSupport(project: Project) : LightClassGenerationSup
         }
     }
 
+    /**
+     * A [NoScopeRecordCliBindingTrace] which may be used by several threads at once, when bodies are resolved in parallel.
+     * The trace's monitor guards only the access to the recorded data: descriptors are resolved on demand outside of it,
+     * because the lazy resolution takes the lock of the storage manager and records into this trace in turn.
+     */
+    class ThreadSafeNoScopeRecordCliBindingTrace : NoScopeRecordCliBindingTrace() {
+        @Synchronized
+        override fun <K, V> record(slice: WritableSlice<K, V>, key: K, value: V) {
+            super.record(slice, key, value)
+        }
+
+        @Synchronized
+        override fun <K> record(slice: WritableSlice<K, Boolean>, key: K) {
+            super.record(slice, key)
+        }
+
+        @Synchronized
+        override fun <K, V> getRecorded(slice: ReadOnlySlice<K, V>, key: K): V? = super.getRecorded(slice, key)
+
+        @Synchronized
+        override fun <K, V> getKeys(slice: WritableSlice<K, V>): Collection<K> = ArrayList(super.getKeys(slice))
+
+        @Synchronized
+        override fun getType(expression: KtExpression): KotlinType? = super.getType(expression)
+
+        @Synchronized
+        override fun recordType(expression: KtExpression, type: KotlinType?) {
+            super.recordType(expression, type)
+        }
+
+        @Synchronized
+        override fun report(diagnostic: Diagnostic) {
+            super.report(diagnostic)
+        }
+
+        override fun toString(): String {
+            return ThreadSafeNoScopeRecordCliBindingTrace::class.java.name
+        }
+    }
+
     open class CliBindingTrace @TestOnly constructor() : BindingTraceContext() {
         private var kotlinCodeAnalyzer: KotlinCodeAnalyzer? = null
 
@@ -199,14 +244,14 @@ class CliLightClassGenerationSupport(project: Project) : LightClassGenerationSup
         }
 
         override fun <K, V> get(slice: ReadOnlySlice<K, V>, key: K): V? {
-            val value = super.get(slice, key)
+            val value = getRecorded(slice, key)
 
             if (value == null) {
                 if (BindingContext.FUNCTION === slice || BindingContext.VARIABLE === slice) {
                     if (key is KtDeclaration) {
                         if (!KtPsiUtil.isLocal(key)) {
                             kotlinCodeAnalyzer!!.resolveToDescriptor(key)
-                            return super.get<K, V>(slice, key)
+                            return getRecorded(slice, key)
                         }
                     }
                 }
@@ -214,6 +259,8 @@ class CliLightClassGenerationSupport(project: Project) : LightClassGenerationSup
 
             return value
         }
+
+        protected open fun <K, V> getRecorded(slice: ReadOnlySlice<K, V>, key: K): V? = super.get(slice, key)
     }
 
     override fun getFacadeClassesInPackage(packageFqName: FqName, scope: GlobalSearchScope): Collection<PsiClass> {
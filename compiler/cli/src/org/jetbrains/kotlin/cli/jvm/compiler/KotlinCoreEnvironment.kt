@@ -120,6 +120,7 @@ class KotlinCoreEnvironment private constructor(
         }
     }
     private val sourceFiles = ArrayList<KtFile>()
+    private var parsedLinesOfCode: Int? = null
     private val rootsIndex: JvmDependenciesDynamicCompoundIndex
 
     val configuration: CompilerConfiguration = configuration.copy()
@@ -136,10 +137,13 @@ class KotlinCoreEnvironment private constructor(
         registerProjectServicesForCLI(projectEnvironment)
         registerProjectServices(projectEnvironment)
 
+        // the PSI of the files is created lazily, so this is mostly the lookup of the source files, see "parse trees" below
+        val loadSourcesMeasurement = configuration.get(CommonConfigurationKeys.PERFORMANCE_TRACE)?.start("load sources")
         sourceFiles.addAll(CompileEnvironmentUtil.getKtFiles(project, getSourceRootsCheckingForDuplicates(), this.configuration, {
             message ->
             report(ERROR, message)
         }))
+        loadSourcesMeasurement?.finish(files = sourceFiles.size)
         sourceFiles.sortedWith(Comparator<KtFile> { o1, o2 -> o1.virtualFile.path.compareTo(o2.virtualFile.path, ignoreCase = true) })
 
         KotlinScriptDefinitionProvider.getInstance(project).let { scriptDefinitionProvider ->
@@ -153,6 +157,15 @@ class KotlinCoreEnvironment private constructor(
             }
         }
 
+        // Script definitions are needed to parse the scripts, so the files are parsed after they are set
+        val parsingThreads = configuration.get(JVMConfigurationKeys.PARALLEL_PARSING_THREADS, 1)
+        if (parsingThreads > 1) {
+            val parseTreesMeasurement = configuration.get(CommonConfigurationKeys.PERFORMANCE_TRACE)?.start("parse trees")
+            val linesOfCode = ParallelKtFilesParser.parse(sourceFiles, parsingThreads)
+            parseTreesMeasurement?.finish(files = sourceFiles.size, lines = linesOfCode)
+            parsedLinesOfCode = linesOfCode
+        }
+
         val initialRoots = configuration.getList(JVMConfigurationKeys.CONTENT_ROOTS).classpathRoots()
 
         if (!configuration.getBoolean(JVMConfigurationKeys.SKIP_RUNTIME_VERSION_CHECK)) {
@@ -201,12 +214,12 @@ class KotlinCoreEnvironment private constructor(
     val project: Project
         get() = projectEnvironment.project
 
-    val sourceLinesOfCode: Int by lazy { countLinesOfCode(sourceFiles) }
+    val sourceLinesOfCode: Int by lazy { parsedLinesOfCode ?: countLinesOfCode(sourceFiles) }
 
     fun countLinesOfCode(sourceFiles: List<KtFile>): Int  =
             sourceFiles.sumBy {
                 val text = it.text
-                StringUtil.getLineBreakCount(it.text) + (if (StringUtil.endsWithLineBreak(text)) 0 else 1)
+                StringUtil.getLineBreakCount(text) + (if (StringUtil.endsWithLineBreak(text)) 0 else 1)
             }
 
     private fun Iterable<ContentRoot>.classpathRoots(): List<JavaRoot> =
@@ -18,6 +18,7 @@ package org.jetbrains.kotlin.cli.jvm.compiler
 
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.components.ServiceManager
 import com.intellij.openapi.util.io.JarUtil
 import com.intellij.openapi.vfs.VfsUtilCore
 import com.intellij.openapi.vfs.VirtualFile
@@ -43,6 +44,7 @@ import org.jetbrains.kotlin.codegen.GeneratedClassLoader
 import org.jetbrains.kotlin.codegen.KotlinCodegenFacade
 import org.jetbrains.kotlin.codegen.state.GenerationState
 import org.jetbrains.kotlin.codegen.state.GenerationStateEventCallback
+import org.jetbrains.kotlin.config.CommonConfigurationKeys
 import org.jetbrains.kotlin.config.CompilerConfiguration
 import org.jetbrains.kotlin.config.JVMConfigurationKeys
 import org.jetbrains.kotlin.config.addKotlinSourceRoots
@@ -332,6 +334,7 @@ object KotlinToJVMBytecodeCompiler {
         val collector = environment.messageCollector
 
         val analysisStart = PerformanceCounter.currentTime()
+        val analysisMeasurement = environment.configuration.get(CommonConfigurationKeys.PERFORMANCE_TRACE)?.start("resolve")
         val analyzerWithCompilerReport = AnalyzerWithCompilerReport(collector)
         analyzerWithCompilerReport.analyzeAndReport(
                 environment.getSourceFiles(), object : AnalyzerWithCompilerReport.Analyzer {
@@ -344,10 +347,18 @@ object KotlinToJVMBytecodeCompiler {
                 // To support partial and incremental compilation, we add the scope which contains binaries from output directories
                 // of the compiled modules (.class) to the list of scopes of the source module
                 val scope = if (moduleOutputs.isEmpty()) sourcesOnly else sourcesOnly.uniteWith(DirectoriesScope(project, moduleOutputs))
+                // Bodies resolved in parallel are recorded into the shared trace concurrently with the lazy resolution,
+                // and parallel codegen reads it from several threads, resolving declarations on demand
+                val trace =
+                        if (environment.configuration.get(CommonConfigurationKeys.PARALLEL_BODY_RESOLVE_THREADS, 1) > 1 ||
+                            environment.configuration.get(JVMConfigurationKeys.PARALLEL_BACKEND_THREADS, 1) > 1)
+                            CliLightClassGenerationSupport.ThreadSafeNoScopeRecordCliBindingTrace()
+                        else
+                            CliLightClassGenerationSupport.NoScopeRecordCliBindingTrace()
                 return TopDownAnalyzerFacadeForJVM.analyzeFilesWithJavaIntegration(
                         project,
                         environment.getSourceFiles(),
-                        CliLightClassGenerationSupport.NoScopeRecordCliBindingTrace(),
+                        trace,
                         environment.configuration,
                         { scope -> JvmPackagePartProvider(environment, scope) },
                         sourceModuleSearchScope = scope
@@ -363,6 +374,7 @@ object KotlinToJVMBytecodeCompiler {
 
         val sourceLinesOfCode = environment.sourceLinesOfCode
         val numberOfFiles = environment.getSourceFiles().size
+        analysisMeasurement?.finish(numberOfFiles, sourceLinesOfCode, targetDescription)
         val time = TimeUnit.NANOSECONDS.toMillis(analysisNanos)
         val speed = sourceLinesOfCode.toFloat() * 1000 / time
 
@@ -397,6 +409,11 @@ object KotlinToJVMBytecodeCompiler {
             module: Module?
     ): GenerationState {
         val isKapt2Enabled = environment.project.getUserData(IS_KAPT2_ENABLED_KEY) ?: false
+        val sharedTrace = getSharedTrace(environment, result)
+        if (configuration.get(JVMConfigurationKeys.PARALLEL_BACKEND_THREADS, 1) > 1 && sharedTrace != null &&
+            sharedTrace !is CliLightClassGenerationSupport.ThreadSafeNoScopeRecordCliBindingTrace) {
+            throw IllegalStateException("Parallel code generation requires a thread-safe analysis trace: $sharedTrace")
+        }
         val generationState = GenerationState(
                 environment.project,
                 ClassBuilderFactories.binaries(isKapt2Enabled),
@@ -408,11 +425,13 @@ object KotlinToJVMBytecodeCompiler {
                 module?.let(::TargetId),
                 module?.let(Module::getModuleName),
                 module?.let { File(it.getOutputDirectory()) },
-                createOutputFilesFlushingCallbackIfPossible(configuration)
+                createOutputFilesFlushingCallbackIfPossible(configuration),
+                analysisTrace = if (configuration.getBoolean(JVMConfigurationKeys.RELEASE_BINDINGS_AFTER_CODEGEN)) sharedTrace else null
         )
         ProgressIndicatorAndCompilationCanceledStatus.checkCanceled()
 
         val generationStart = PerformanceCounter.currentTime()
+        val generationMeasurement = configuration.get(CommonConfigurationKeys.PERFORMANCE_TRACE)?.start("codegen")
 
         KotlinCodegenFacade.compileCorrectFiles(generationState, CompilationErrorHandler.THROW_EXCEPTION)
 
@@ -420,11 +439,15 @@ object KotlinToJVMBytecodeCompiler {
         val desc = if (module != null) "target " + module.getModuleName() + "-" + module.getModuleType() + " " else ""
         val numberOfSourceFiles = sourceFiles.size
         val numberOfLines = environment.countLinesOfCode(sourceFiles)
+        generationMeasurement?.finish(numberOfSourceFiles, numberOfLines, module?.let { "target " + it.getModuleName() + "-" + it.getModuleType() })
         val time = TimeUnit.NANOSECONDS.toMillis(generationNanos)
         val speed = numberOfLines.toFloat() * 1000 / time
         val message = "GENERATE: $numberOfSourceFiles files ($numberOfLines lines) ${desc}in $time ms - ${"%.3f".format(speed)} loc/s"
 
         K2JVMCompiler.reportPerf(environment.configuration, message)
+        generationState.inlineCache.sharedClassBytesCounters?.let {
+            K2JVMCompiler.reportPerf(environment.configuration, "INLINE CACHE: ${desc}$it")
+        }
         ProgressIndicatorAndCompilationCanceledStatus.checkCanceled()
 
         AnalyzerWithCompilerReport.reportDiagnostics(
@@ -443,6 +466,12 @@ object KotlinToJVMBytecodeCompiler {
         return generationState
     }
 
+    // The trace shared with the light classes is the one which has produced the analysis result, unless the analysis has been repeated
+    private fun getSharedTrace(environment: KotlinCoreEnvironment, result: AnalysisResult): CliLightClassGenerationSupport.CliBindingTrace? {
+        val trace = ServiceManager.getService(environment.project, CliLightClassGenerationSupport::class.java).trace
+        return if (trace != null && trace.bindingContext === result.bindingContext) trace else null
+    }
+
     private fun checkKotlinPackageUsage(environment: KotlinCoreEnvironment, files: Collection<KtFile>): Boolean {
         if (environment.configuration.getBoolean(CLIConfigurationKeys.ALLOW_KOTLIN_PACKAGE)) {
             return true
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.compiler
+
+import com.intellij.lang.ASTNode
+import com.intellij.openapi.util.text.StringUtil
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.util.PerformanceCounter
+import org.jetbrains.kotlin.utils.WorkerThreadPools
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+
+/**
+ * Builds the syntax trees of the source files on a thread pool before the analysis, instead of parsing each file lazily
+ * on the first access from the resolution.
+ *
+ * Every file is parsed by exactly one worker, and the workers do not touch PSI of other files. The tree of a file is published
+ * by the file itself, as it is done when the IDE highlights several files at once, and [java.util.concurrent.Future.get]
+ * makes the trees visible to the thread which continues the compilation.
+ */
+object ParallelKtFilesParser {
+    private val parseFileCounter = PerformanceCounter.create("Parse Kotlin file")
+
+    /**
+     * @return the number of lines in the parsed files
+     */
+    fun parse(files: List<KtFile>, threads: Int): Int {
+        if (threads <= 1 || files.size <= 1) {
+            return files.sumBy { parseFile(it) }
+        }
+
+        val executor = WorkerThreadPools.newFixedThreadPool(Math.min(threads, files.size), "Kotlin parsing worker")
+        try {
+            val futures = executor.invokeAll(files.map { file -> Callable { parseFile(file) } })
+            return futures.sumBy { future ->
+                try {
+                    future.get()
+                }
+                catch (e: ExecutionException) {
+                    throw e.cause ?: e
+                }
+            }
+        }
+        finally {
+            executor.shutdown()
+        }
+    }
+
+    private fun parseFile(file: KtFile): Int {
+        parseFileCounter.time { loadTree(file.node) }
+
+        val text = file.viewProvider.contents
+        return StringUtil.getLineBreakCount(text) + (if (StringUtil.endsWithLineBreak(text)) 0 else 1)
+    }
+
+    // Visiting every node parses the lazily parseable elements, such as lambdas and KDoc, as well
+    private fun loadTree(root: ASTNode) {
+        val nodes = ArrayDeque<ASTNode>()
+        nodes.push(root)
+        while (nodes.isNotEmpty()) {
+            var child = nodes.pop().firstChildNode
+            while (child != null) {
+                nodes.push(child)
+                child = child.treeNext
+            }
+        }
+    }
+}
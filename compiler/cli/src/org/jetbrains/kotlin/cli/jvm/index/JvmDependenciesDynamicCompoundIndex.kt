@@ -19,31 +19,26 @@ package org.jetbrains.kotlin.cli.jvm.index
 import com.intellij.openapi.vfs.VirtualFile
 import org.jetbrains.kotlin.name.ClassId
 import org.jetbrains.kotlin.name.FqName
-import java.util.concurrent.locks.ReentrantReadWriteLock
-import kotlin.concurrent.read
-import kotlin.concurrent.write
 
+// the list of indices is replaced on update, so the reads do not need any locking
 class JvmDependenciesDynamicCompoundIndex() : JvmDependenciesIndex {
-    private val indices = arrayListOf<JvmDependenciesIndex>()
-    private val lock = ReentrantReadWriteLock()
+    @Volatile private var indices: List<JvmDependenciesIndex> = emptyList()
 
+    @Synchronized
     fun addIndex(index: JvmDependenciesIndex) {
-        lock.write {
-            indices.add(index)
-        }
+        indices = indices + index
     }
 
-    fun addNewIndexForRoots(roots: Iterable<JavaRoot>): JvmDependenciesIndex? =
-            lock.read {
-                val alreadyIndexed = indexedRoots.toHashSet()
-                val newRoots = roots.filter { !alreadyIndexed.contains(it) }
-                if (newRoots.isEmpty()) null
-                else {
-                    val index = JvmDependenciesIndexImpl(newRoots)
-                    addIndex(index)
-                    index
-                }
-            }
+    @Synchronized
+    fun addNewIndexForRoots(roots: Iterable<JavaRoot>): JvmDependenciesIndex? {
+        val alreadyIndexed = indexedRoots.toHashSet()
+        val newRoots = roots.filter { !alreadyIndexed.contains(it) }
+        if (newRoots.isEmpty()) return null
+
+        val index = JvmDependenciesIndexImpl(newRoots)
+        addIndex(index)
+        return index
+    }
 
     override val indexedRoots: Sequence<JavaRoot> get() = indices.asSequence().flatMap { it.indexedRoots }
 
@@ -52,21 +47,16 @@ class JvmDependenciesDynamicCompoundIndex() : JvmDependenciesIndex {
             acceptedRootTypes: Set<JavaRoot.RootType>,
             findClassGivenDirectory: (VirtualFile, JavaRoot.RootType) -> T?
     ): T? =
-            lock.read {
-                indices.asSequence().mapNotNull { it.findClass(classId, acceptedRootTypes, findClassGivenDirectory) }.firstOrNull()
-            }
+            indices.asSequence().mapNotNull { it.findClass(classId, acceptedRootTypes, findClassGivenDirectory) }.firstOrNull()
 
     override fun traverseDirectoriesInPackage(
             packageFqName: FqName,
             acceptedRootTypes: Set<JavaRoot.RootType>,
             continueSearch: (VirtualFile, JavaRoot.RootType) -> Boolean
     ) {
-        lock.read {
-            indices.forEach { it.traverseDirectoriesInPackage(packageFqName, acceptedRootTypes, continueSearch) }
-        }
+        indices.forEach { it.traverseDirectoriesInPackage(packageFqName, acceptedRootTypes, continueSearch) }
     }
 
-    override fun collectKnownClassNamesInPackage(packageFqName: FqName): Set<String> = lock.read {
-        indices.flatMapTo(hashSetOf()) { it.collectKnownClassNamesInPackage(packageFqName) }
-    }
+    override fun collectKnownClassNamesInPackage(packageFqName: FqName): Set<String> =
+            indices.flatMapTo(hashSetOf()) { it.collectKnownClassNamesInPackage(packageFqName) }
 }
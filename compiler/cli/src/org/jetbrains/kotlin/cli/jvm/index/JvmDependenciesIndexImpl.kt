@@ -18,51 +18,44 @@ package org.jetbrains.kotlin.cli.jvm.index
 
 import com.intellij.ide.highlighter.JavaClassFileType
 import com.intellij.ide.highlighter.JavaFileType
+import com.intellij.openapi.vfs.StandardFileSystems
 import com.intellij.openapi.vfs.VfsUtilCore
 import com.intellij.openapi.vfs.VirtualFile
-import com.intellij.util.containers.IntArrayList
 import org.jetbrains.kotlin.name.ClassId
 import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.utils.WorkerThreadPools
 import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
 
 // speeds up finding files/classes in classpath/java source roots
-// NOT THREADSAFE, needs to be adapted/removed if we want compiler to be multithreaded
 // the main idea of this class is for each package to store roots which contains it to avoid excessive file system traversal
+// thread-safe: the information about a package is computed once (or a few times concurrently, with the same result) and never changes,
+// so the reads do not need any locking
 class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
     //these fields are computed based on _roots passed to constructor which are filled in later
     private val roots: List<JavaRoot> by lazy { _roots.toList() }
 
-    private val maxIndex: Int
-        get() = roots.size
+    // the roots which contain the package in the ascending order of the root indices, and the corresponding package directories
+    private class PackageRoots(val depth: Int, val rootIndices: IntArray, val directories: Array<VirtualFile>)
 
-    // each "Cache" object corresponds to a package
-    private class Cache {
-        private val innerPackageCaches = HashMap<String, Cache>()
+    // the package directories of each jar root (as paths relative to the root, e.g. "java/util"), or null for other roots;
+    // built at once for all the jars in parallel, when the index is first used; the jar file system reads the whole central
+    // directory of a jar anyway, so it is cheap, and then most of the packages which do not exist in a jar are skipped without looking
+    // into the jar directories
+    private val jarPackages: Array<Set<String>?> by lazy { collectJarPackages(roots) }
 
-        operator fun get(name: String) = innerPackageCaches.getOrPut(name) { Cache() }
-
-        // indices of roots that are known to contain this package
-        // if this list contains [1, 3, 5] then roots with indices 1, 3 and 5 are known to contain this package, 2 and 4 are known not to (no information about roots 6 or higher)
-        // if this list contains maxIndex that means that all roots containing this package are known
-        val rootIndices = IntArrayList()
-    }
-
-    // root "Cache" object corresponds to DefaultPackage which exists in every root. Roots with non-default fqname are also listed here but
+    // root entry corresponds to DefaultPackage which exists in every root. Roots with non-default fqname are also listed here but
     // they will be ignored on requests with invalid fqname prefix.
-    private val rootCache: Cache by lazy {
-        with(Cache()) {
-            roots.indices.forEach {
-                rootIndices.add(it)
-            }
-            rootIndices.add(maxIndex)
-            rootIndices.trimToSize()
-            this
-        }
+    private val rootPackageRoots: PackageRoots by lazy {
+        PackageRoots(0, IntArray(roots.size) { it }, Array(roots.size) { roots[it].file })
     }
 
-    // holds the request and the result last time we searched for class
+    private val packageRootsCache = ConcurrentHashMap<FqName, PackageRoots>()
+
+    // holds the request and the result last time we searched for class on the current thread
     // helps improve several scenarios, LazyJavaResolverContext.findClassInJava being the most important
-    private var lastClassSearch: Pair<FindClassRequest, SearchResult>? = null
+    private val lastClassSearch = ThreadLocal<Pair<FindClassRequest, SearchResult>>()
 
     override val indexedRoots by lazy { roots.asSequence() }
 
@@ -113,11 +106,12 @@ class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
             handler: (VirtualFile, JavaRoot.RootType) -> HandleResult<T>
     ): T? {
         // make a decision based on information saved from last class search
-        if (request !is FindClassRequest || lastClassSearch?.first?.classId != request.classId) {
+        val lastSearch = lastClassSearch.get()
+        if (request !is FindClassRequest || lastSearch?.first?.classId != request.classId) {
             return doSearch(request, handler)
         }
-        
-        val (cachedRequest, cachedResult) = lastClassSearch!!
+
+        val (cachedRequest, cachedResult) = lastSearch
         return when (cachedResult) {
             is SearchResult.NotFound -> {
                 val limitedRootTypes = request.acceptedRootTypes.toHashSet()
@@ -143,97 +137,72 @@ class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
     private fun <T : Any> doSearch(request: SearchRequest, handler: (VirtualFile, JavaRoot.RootType) -> HandleResult<T>): T? {
         val findClassRequest = request as? FindClassRequest
 
-        fun <T : Any> found(packageDirectory: VirtualFile, root: JavaRoot, result: T): T {
-            if (findClassRequest != null) {
-                lastClassSearch = Pair(findClassRequest, SearchResult.Found(packageDirectory, root))
-            }
-            return result
-        }
-
-        fun <T : Any> notFound(): T? {
-            if (findClassRequest != null) {
-                lastClassSearch = Pair(findClassRequest, SearchResult.NotFound)
-            }
-            return null
-        }
-
-        fun handle(root: JavaRoot, targetDirInRoot: VirtualFile): T? {
-            if (root.type in request.acceptedRootTypes) {
-                val (result, shouldContinue) = handler(targetDirInRoot, root.type)
-                if (!shouldContinue) {
-                    return result
+        val packageRoots = packageRoots(request.packageFqName)
+        val rootIndices = packageRoots.rootIndices
+        for (i in rootIndices.indices) {
+            val root = roots[rootIndices[i]]
+            if (root.type !in request.acceptedRootTypes) continue
+
+            val directoryInRoot = packageRoots.directories[i]
+            val (result, shouldContinue) = handler(directoryInRoot, root.type)
+            if (!shouldContinue && result != null) {
+                if (findClassRequest != null) {
+                    lastClassSearch.set(Pair(findClassRequest, SearchResult.Found(directoryInRoot, root)))
                 }
+                return result
             }
-            return null
         }
 
-        // a list of package sub names, ["org", "jb", "kotlin"]
-        val packagesPath = request.packageFqName.pathSegments().map { it.identifier }
-        // a list of caches corresponding to packages, [default, "org", "org.jb", "org.jb.kotlin"]
-        val caches = cachesPath(packagesPath)
-
-        var processedRootsUpTo = -1
-        // traverse caches starting from last, which contains most specific information
-
-        // NOTE: indices manipulation instead of using caches.indices.reversed() is here for performance reasons
-        val cachesLastIndex = caches.lastIndex
-        for (cacheIndex in 0..cachesLastIndex) {
-            val reverseCacheIndex = cachesLastIndex - cacheIndex
-            val cacheRootIndices = caches[reverseCacheIndex].rootIndices
-            for (i in 0..cacheRootIndices.size() - 1) {
-                val rootIndex = cacheRootIndices[i]
-                if (rootIndex <= processedRootsUpTo) continue // roots with those indices have been processed by now
-
-                val directoryInRoot = travelPath(rootIndex, packagesPath, reverseCacheIndex, caches) ?: continue
-                val root = roots[rootIndex]
-                val result = handle(root, directoryInRoot)
-                if (result != null) {
-                    return found(directoryInRoot, root, result)
-                }
-            }
-            processedRootsUpTo = if (cacheRootIndices.isEmpty) processedRootsUpTo else cacheRootIndices.get(cacheRootIndices.size() - 1)
+        if (findClassRequest != null) {
+            lastClassSearch.set(Pair(findClassRequest, SearchResult.NotFound))
         }
-        
-        return notFound()
+        return null
     }
 
-    // try to find a target directory corresponding to package represented by packagesPath in a given root reprenting by index
-    // possibly filling "Cache" objects with new information
-    private fun travelPath(rootIndex: Int, packagesPath: List<String>, fillCachesAfter: Int, cachesPath: List<Cache>): VirtualFile? {
-        if (rootIndex >= maxIndex) {
-            for (i in (fillCachesAfter + 1)..(cachesPath.size - 1)) {
-                // we all know roots that contain this package by now
-                cachesPath[i].rootIndices.add(maxIndex)
-                cachesPath[i].rootIndices.trimToSize()
-            }
-            return null
-        }
-
-        val pathRoot = roots[rootIndex]
-        val prefixPathSegments = pathRoot.prefixFqName?.pathSegments()
+    private fun packageRoots(packageFqName: FqName): PackageRoots {
+        if (packageFqName.isRoot) return rootPackageRoots
 
-        var currentFile = pathRoot.file
+        packageRootsCache[packageFqName]?.let { return it }
 
-        for (pathIndex in packagesPath.indices) {
-            val subPackageName = packagesPath[pathIndex]
-            if (prefixPathSegments != null && pathIndex < prefixPathSegments.size) {
-                // Traverse prefix first instead of traversing real directories
-                if (prefixPathSegments[pathIndex].identifier != subPackageName) {
-                    return null
-                }
-            }
-            else {
-                currentFile = currentFile.findChildPackage(subPackageName, pathRoot.type) ?: return null
-            }
+        val computed = computePackageRoots(packageRoots(packageFqName.parent()), packageFqName)
+        return packageRootsCache.putIfAbsent(packageFqName, computed) ?: computed
+    }
 
-            val correspondingCacheIndex = pathIndex + 1
-            if (correspondingCacheIndex > fillCachesAfter) {
-                // subPackageName exists in this root
-                cachesPath[correspondingCacheIndex].rootIndices.add(rootIndex)
+    // the roots containing a package are the ones containing its parent package and a directory for the package
+    private fun computePackageRoots(parent: PackageRoots, packageFqName: FqName): PackageRoots {
+        val subPackageName = packageFqName.shortName().asString()
+        val pathIndex = parent.depth
+        val relativePath = packageFqName.asString().replace('.', '/')
+
+        val rootIndices = IntArray(parent.rootIndices.size)
+        val directories = arrayOfNulls<VirtualFile>(parent.rootIndices.size)
+        var size = 0
+        for (i in parent.rootIndices.indices) {
+            val rootIndex = parent.rootIndices[i]
+            val root = roots[rootIndex]
+            val prefixPathSegments = root.prefixFqName?.pathSegments()
+
+            val directory =
+                    if (prefixPathSegments != null && pathIndex < prefixPathSegments.size) {
+                        // Traverse prefix first instead of traversing real directories
+                        if (prefixPathSegments[pathIndex].identifier != subPackageName) null else parent.directories[i]
+                    }
+                    else if (prefixPathSegments == null && jarPackages[rootIndex]?.contains(relativePath) == false) {
+                        null
+                    }
+                    else {
+                        parent.directories[i].findChildPackage(subPackageName, root.type)
+                    }
+
+            if (directory != null) {
+                rootIndices[size] = rootIndex
+                directories[size] = directory
+                size++
             }
         }
 
-        return currentFile
+        @Suppress("UNCHECKED_CAST")
+        return PackageRoots(pathIndex + 1, rootIndices.copyOf(size), directories.copyOf(size) as Array<VirtualFile>)
     }
 
     private fun VirtualFile.findChildPackage(subPackageName: String, rootType: JavaRoot.RootType): VirtualFile? {
@@ -255,17 +224,6 @@ class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
         return childDirectory
     }
 
-    private fun cachesPath(path: List<String>): List<Cache> {
-        val caches = ArrayList<Cache>(path.size + 1)
-        caches.add(rootCache)
-        var currentCache = rootCache
-        for (subPackageName in path) {
-            currentCache = currentCache[subPackageName]
-            caches.add(currentCache)
-        }
-        return caches
-    }
-
     private data class FindClassRequest(val classId: ClassId, override val acceptedRootTypes: Set<JavaRoot.RootType>) : SearchRequest {
         override val packageFqName: FqName
             get() = classId.packageFqName
@@ -286,4 +244,47 @@ class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
 
         object NotFound : SearchResult()
     }
+
+    private companion object {
+        fun collectJarPackages(roots: List<JavaRoot>): Array<Set<String>?> {
+            val result = arrayOfNulls<Set<String>>(roots.size)
+            val jarRootIndices = roots.indices.filter { roots[it].file.fileSystem.protocol == StandardFileSystems.JAR_PROTOCOL }
+
+            val threads = Math.min(Runtime.getRuntime().availableProcessors(), jarRootIndices.size)
+            if (threads <= 1) {
+                for (rootIndex in jarRootIndices) {
+                    result[rootIndex] = collectPackageDirectories(roots[rootIndex].file)
+                }
+                return result
+            }
+
+            val executor = WorkerThreadPools.newFixedThreadPool(threads, "Kotlin classpath indexing worker")
+            try {
+                val futures = executor.invokeAll(jarRootIndices.map { rootIndex ->
+                    Callable { collectPackageDirectories(roots[rootIndex].file) }
+                })
+                for ((i, rootIndex) in jarRootIndices.withIndex()) {
+                    result[rootIndex] = futures[i].get()
+                }
+            }
+            finally {
+                executor.shutdown()
+            }
+            return result
+        }
+
+        private fun collectPackageDirectories(root: VirtualFile): Set<String> {
+            val result = HashSet<String>()
+            fun collect(directory: VirtualFile, relativePath: String) {
+                for (child in directory.children) {
+                    if (!child.isDirectory) continue
+                    val childPath = if (relativePath.isEmpty()) child.name else relativePath + "/" + child.name
+                    result.add(childPath)
+                    collect(child, childPath)
+                }
+            }
+            collect(root, "")
+            return result
+        }
+    }
 }
@@ -87,6 +87,10 @@ class CliReplAnalyzerEngine(environment: KotlinCoreEnvironment) {
         return doAnalyze(psiFile)
     }
 
+    fun rollbackTo(successfulLinesCount: Int) {
+        replState.rollbackTo(successfulLinesCount)
+    }
+
     private fun doAnalyze(linePsi: KtFile): ReplLineAnalysisResult {
         scriptDeclarationFactory.setDelegateFactory(FileBasedDeclarationProviderFactory(resolveSession.storageManager, listOf(linePsi)))
         replState.submitLine(linePsi)
@@ -118,12 +118,44 @@ open class GenericReplCompiler(
             return@compile ReplCompileResult.HistoryMismatch(descriptorsHistory.lines, it)
         }
 
+        return doCompile(codeLine)
+    }
+
+    /**
+     * Compiles the line against the history kept by this compiler, the caller passes only the digest of the history it expects.
+     */
+    @Synchronized
+    fun compile(codeLine: ReplCodeLine, historyDigest: ReplHistoryDigest): ReplCompileResult {
+        if (!checkAndUpdateReplHistoryCollection(descriptorsHistory, historyDigest)) {
+            return ReplCompileResult.HistoryMismatch(descriptorsHistory.lines, UNKNOWN_REPL_LINE_NO)
+        }
+
+        return doCompile(codeLine)
+    }
+
+    /**
+     * Checks the line against the history kept by this compiler, the caller passes only the digest of the history it expects.
+     */
+    @Synchronized
+    fun check(codeLine: ReplCodeLine, historyDigest: ReplHistoryDigest): ReplCheckResult {
+        if (!descriptorsHistory.isPrefixDigest(historyDigest)) {
+            return ReplCheckResult.HistoryMismatch(descriptorsHistory.lines, UNKNOWN_REPL_LINE_NO)
+        }
+
+        return check(codeLine, descriptorsHistory.lines.take(historyDigest.size))
+    }
+
+    private fun doCompile(codeLine: ReplCodeLine): ReplCompileResult {
+        // the history could be rolled back by the check
+        analyzerEngine.rollbackTo(descriptorsHistory.values.size)
+
         val (psiFile, errorHolder) = run {
             if (lineState == null || lineState!!.codeLine != codeLine) {
-                val res = check(codeLine, history)
+                val res = check(codeLine, descriptorsHistory.lines)
                 when (res) {
-                    is ReplCheckResult.Incomplete -> return@compile ReplCompileResult.Incomplete(res.updatedHistory)
-                    is ReplCheckResult.Error -> return@compile ReplCompileResult.Error(res.updatedHistory, res.message, res.location)
+                    is ReplCheckResult.Incomplete -> return@doCompile ReplCompileResult.Incomplete(res.updatedHistory)
+                    is ReplCheckResult.HistoryMismatch -> return@doCompile ReplCompileResult.HistoryMismatch(res.updatedHistory, res.lineNo)
+                    is ReplCheckResult.Error -> return@doCompile ReplCompileResult.Error(res.updatedHistory, res.message, res.location)
                     is ReplCheckResult.Ok -> {} // continue
                 }
             }
@@ -197,13 +229,19 @@ open class GenericRepl(
 
 
 fun compileAndEval(replCompiler: ReplCompiler, replCompiledEvaluator: ReplCompiledEvaluator, codeLine: ReplCodeLine, history: List<ReplCodeLine>, invokeWrapper: InvokeWrapper?): ReplEvalResult =
-        replCompiler.compile(codeLine, history).let {
-            when (it) {
-                is ReplCompileResult.Incomplete -> ReplEvalResult.Incomplete(it.updatedHistory)
-                is ReplCompileResult.HistoryMismatch -> ReplEvalResult.HistoryMismatch(it.updatedHistory, it.lineNo)
-                is ReplCompileResult.Error -> ReplEvalResult.Error.CompileTime(it.updatedHistory, it.message, it.location)
-                is ReplCompileResult.CompiledClasses -> replCompiledEvaluator.eval(codeLine, history, it.classes, it.hasResult, it.classpathAddendum, invokeWrapper)
-            }
+        compileAndEval(replCompiler.compile(codeLine, history)) {
+            replCompiledEvaluator.eval(codeLine, history, it.classes, it.hasResult, it.classpathAddendum, invokeWrapper)
         }
 
+fun compileAndEval(replCompiler: GenericReplCompiler, replCompiledEvaluator: GenericReplCompiledEvaluator, codeLine: ReplCodeLine, historyDigest: ReplHistoryDigest, invokeWrapper: InvokeWrapper?): ReplEvalResult =
+        compileAndEval(replCompiler.compile(codeLine, historyDigest)) {
+            replCompiledEvaluator.eval(codeLine, historyDigest, it.classes, it.hasResult, it.classpathAddendum, invokeWrapper)
+        }
 
+private inline fun compileAndEval(compileResult: ReplCompileResult, eval: (ReplCompileResult.CompiledClasses) -> ReplEvalResult): ReplEvalResult =
+        when (compileResult) {
+            is ReplCompileResult.Incomplete -> ReplEvalResult.Incomplete(compileResult.updatedHistory)
+            is ReplCompileResult.HistoryMismatch -> ReplEvalResult.HistoryMismatch(compileResult.updatedHistory, compileResult.lineNo)
+            is ReplCompileResult.Error -> ReplEvalResult.Error.CompileTime(compileResult.updatedHistory, compileResult.message, compileResult.location)
+            is ReplCompileResult.CompiledClasses -> eval(compileResult)
+        }
@@ -17,11 +17,11 @@
 package org.jetbrains.kotlin.daemon.client
 
 import com.intellij.openapi.progress.ProcessCanceledException
+import org.jetbrains.kotlin.daemon.common.CompactLookups
 import org.jetbrains.kotlin.daemon.common.CompilerCallbackServicesFacade
 import org.jetbrains.kotlin.daemon.common.LoopbackNetworkInterface
 import org.jetbrains.kotlin.daemon.common.RmiFriendlyCompilationCanceledException
 import org.jetbrains.kotlin.daemon.common.SOCKET_ANY_FREE_PORT
-import org.jetbrains.kotlin.incremental.components.LookupInfo
 import org.jetbrains.kotlin.incremental.components.LookupTracker
 import org.jetbrains.kotlin.load.kotlin.incremental.components.IncrementalCompilationComponents
 import org.jetbrains.kotlin.load.kotlin.incremental.components.JvmPackagePartProto
@@ -67,11 +67,11 @@ open class CompilerCallbackServicesFacadeServer(
 
     override fun lookupTracker_requiresPosition() = incrementalCompilationComponents!!.getLookupTracker().requiresPosition
 
-    override fun lookupTracker_record(lookups: Collection<LookupInfo>) {
+    override fun lookupTracker_record(lookups: CompactLookups) {
         val lookupTracker = incrementalCompilationComponents!!.getLookupTracker()
 
-        for (it in lookups) {
-            lookupTracker.record(it.filePath, it.position, it.scopeFqName, it.scopeKind, it.name)
+        lookups.forEach { filePath, position, scopeFqName, scopeKind, name ->
+            lookupTracker.record(filePath, position, scopeFqName, scopeKind, name)
         }
     }
 
@@ -25,6 +25,7 @@ import org.jetbrains.kotlin.daemon.common.SOCKET_ANY_FREE_PORT
 import java.io.File
 import java.io.InputStream
 import java.io.OutputStream
+import java.io.Serializable
 
 // TODO: reduce number of ports used then SOCKET_ANY_FREE_PORT is passed (same problem with other calls)
 
@@ -71,8 +72,64 @@ open class KotlinRemoteReplClientBase(
         })
     }
 
-    override fun check(codeLine: ReplCodeLine, history: List<ReplCodeLine>): ReplCheckResult {
-        return compileService.remoteReplLineCheck(sessionId, codeLine, history).get()
+    // The history is kept by the daemon session, so only its digest is sent unless the session history doesn't match it.
+    // The client keeps the lines it has digested together with the digests of their prefixes, so that the digest of the
+    // caller's history is extended by the new lines only. The lines list is only appended to, and replaced on rollback,
+    // so the histories returned in the results stay valid as views of its prefixes.
+
+    protected val historyLock = Any()
+    private var historyLines = ArrayList<ReplCodeLine>()
+    private val historyDigests = ArrayList<ReplHistoryDigest>()
+
+    // should be called under the historyLock
+    protected fun digestOf(history: List<ReplCodeLine>): ReplHistoryDigest {
+        // line numbers only grow, so the histories are assumed to share a prefix if they share its last line
+        var known = minOf(history.size, historyLines.size)
+        if (known > 0 && history[known - 1] != historyLines[known - 1]) {
+            known = 0
+        }
+        if (known < historyLines.size) {
+            historyLines = ArrayList(historyLines.subList(0, known))
+            historyDigests.subList(known, historyDigests.size).clear()
+        }
+        appendHistory(history.subList(known, history.size))
+        return historyDigests.lastOrNull() ?: ReplHistoryDigest.EMPTY
+    }
+
+    // should be called under the historyLock, returns the digested history extended by the new lines
+    protected fun extendHistory(newLines: List<ReplCodeLine>): List<ReplCodeLine> {
+        appendHistory(newLines)
+        return HistorySnapshot(historyLines, historyLines.size)
+    }
+
+    // should be called under the historyLock, after the history was sent to the daemon with its lines
+    protected fun resetHistory(lines: List<ReplCodeLine>) {
+        historyLines = ArrayList()
+        historyDigests.clear()
+        appendHistory(lines)
+    }
+
+    private fun appendHistory(lines: List<ReplCodeLine>) {
+        val target = historyLines
+        for (line in lines) {
+            historyDigests.add((historyDigests.lastOrNull() ?: ReplHistoryDigest.EMPTY).next(line))
+            synchronized(target) { target.add(line) }
+        }
+    }
+
+    private class HistorySnapshot(private val lines: ArrayList<ReplCodeLine>, override val size: Int) : AbstractList<ReplCodeLine>(), Serializable {
+        override fun get(index: Int): ReplCodeLine {
+            if (index < 0 || index >= size) throw IndexOutOfBoundsException("Index: $index, size: $size")
+            return synchronized(lines) { lines[index] }
+        }
+
+        private fun writeReplace(): Any = ArrayList(this)
+    }
+
+    override fun check(codeLine: ReplCodeLine, history: List<ReplCodeLine>): ReplCheckResult = synchronized(historyLock) {
+        val res = compileService.remoteReplLineCheck(sessionId, codeLine, digestOf(history)).get()
+        if (res is ReplCheckResult.HistoryMismatch) compileService.remoteReplLineCheck(sessionId, codeLine, history).get().also { resetHistory(it.updatedHistory) }
+        else res.withUpdatedHistory(extendHistory(res.updatedHistory))
     }
 }
 
@@ -102,7 +159,11 @@ class KotlinRemoteReplCompiler(
 ), ReplCompiler {
 
     override fun compile(codeLine: ReplCodeLine, history: List<ReplCodeLine>): ReplCompileResult {
-        return compileService.remoteReplLineCompile(sessionId, codeLine, history).get()
+        synchronized(historyLock) {
+            val res = compileService.remoteReplLineCompile(sessionId, codeLine, digestOf(history)).get()
+            return if (res is ReplCompileResult.HistoryMismatch) compileService.remoteReplLineCompile(sessionId, codeLine, history).get().also { resetHistory(it.updatedHistory) }
+                   else res.withUpdatedHistory(extendHistory(res.updatedHistory))
+        }
     }
 }
 
@@ -143,6 +204,10 @@ class KotlinRemoteReplEvaluator(
 
     // TODO: invokeWrapper is ignored here, and in the daemon the session wrapper is used instead; So consider to make it per call (avoid performance penalties though)
     override fun eval(codeLine: ReplCodeLine, history: List<ReplCodeLine>, invokeWrapper: InvokeWrapper?): ReplEvalResult {
-        return compileService.remoteReplLineEval(sessionId, codeLine, history).get()
+        synchronized(historyLock) {
+            val res = compileService.remoteReplLineEval(sessionId, codeLine, digestOf(history)).get()
+            return if (res is ReplEvalResult.HistoryMismatch) compileService.remoteReplLineEval(sessionId, codeLine, history).get().also { resetHistory(it.updatedHistory) }
+                   else res.withUpdatedHistory(extendHistory(res.updatedHistory))
+        }
     }
 }
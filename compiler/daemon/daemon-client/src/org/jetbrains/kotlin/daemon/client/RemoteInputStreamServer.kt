@@ -34,8 +34,11 @@ class RemoteInputStreamServer(val `in`: InputStream, port: Int = SOCKET_ANY_FREE
     override fun read(length: Int): ByteArray {
         val buf = ByteArray(length)
         val readBytes = `in`.read(buf, 0, length)
-        return if (readBytes == length) buf
-               else buf.copyOfRange(0, readBytes)
+        return when {
+            readBytes == length -> buf
+            readBytes < 0 -> ByteArray(0)
+            else -> buf.copyOfRange(0, readBytes)
+        }
     }
 
     override fun read(): Int =
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.daemon.common
+
+import org.jetbrains.kotlin.incremental.components.Position
+import org.jetbrains.kotlin.incremental.components.ScopeKind
+import java.io.Serializable
+import java.util.*
+
+/**
+ * A batch of lookups in a form that is cheap to pass over RMI: every string is sent once in [strings],
+ * and each lookup is a tuple in [tuples] consisting of the file path, scope fq name and name indices in [strings],
+ * the scope kind ordinal and, if [withPositions], the line and the column.
+ */
+class CompactLookups(
+        val strings: Array<String>,
+        val tuples: IntArray,
+        val withPositions: Boolean
+) : Serializable {
+    val size: Int
+        get() = tuples.size / tupleSize(withPositions)
+
+    inline fun forEach(body: (filePath: String, position: Position, scopeFqName: String, scopeKind: ScopeKind, name: String) -> Unit) {
+        val scopeKinds = ScopeKind.values()
+        val tupleSize = tupleSize(withPositions)
+        var i = 0
+        while (i < tuples.size) {
+            val position = if (withPositions) Position(tuples[i + 4], tuples[i + 5]) else Position.NO_POSITION
+            body(strings[tuples[i]], position, strings[tuples[i + 1]], scopeKinds[tuples[i + 2]], strings[tuples[i + 3]])
+            i += tupleSize
+        }
+    }
+
+    companion object {
+        const val serialVersionUID: Long = 0
+
+        fun tupleSize(withPositions: Boolean): Int = if (withPositions) 6 else 4
+    }
+}
+
+/**
+ * Collects lookups for a [CompactLookups] batch, skipping duplicates within the batch.
+ */
+class CompactLookupsBuilder(val withPositions: Boolean) {
+    private val stringIds = HashMap<String, Int>()
+    private val strings = ArrayList<String>()
+    private val recorded = HashSet<LookupTuple>()
+    private var tuples = IntArray(INITIAL_CAPACITY)
+    private var tuplesSize = 0
+
+    val size: Int
+        get() = recorded.size
+
+    fun isEmpty(): Boolean = recorded.isEmpty()
+
+    fun add(filePath: String, position: Position, scopeFqName: String, scopeKind: ScopeKind, name: String) {
+        val line = if (withPositions) position.line else 0
+        val column = if (withPositions) position.column else 0
+        val tuple = LookupTuple(id(filePath), id(scopeFqName), scopeKind.ordinal, id(name), line, column)
+        if (!recorded.add(tuple)) return
+
+        val tupleSize = CompactLookups.tupleSize(withPositions)
+        if (tuplesSize + tupleSize > tuples.size) {
+            tuples = tuples.copyOf(tuples.size * 2)
+        }
+
+        tuples[tuplesSize++] = tuple.filePath
+        tuples[tuplesSize++] = tuple.scopeFqName
+        tuples[tuplesSize++] = tuple.scopeKind
+        tuples[tuplesSize++] = tuple.name
+        if (withPositions) {
+            tuples[tuplesSize++] = tuple.line
+            tuples[tuplesSize++] = tuple.column
+        }
+    }
+
+    fun build(): CompactLookups =
+            CompactLookups(strings.toTypedArray(), tuples.copyOf(tuplesSize), withPositions)
+
+    fun clear() {
+        stringIds.clear()
+        strings.clear()
+        recorded.clear()
+        tuples = IntArray(INITIAL_CAPACITY)
+        tuplesSize = 0
+    }
+
+    private fun id(string: String): Int =
+            stringIds.getOrPut(string) {
+                strings.add(string)
+                strings.size - 1
+            }
+
+    private data class LookupTuple(val filePath: Int, val scopeFqName: Int, val scopeKind: Int, val name: Int, val line: Int, val column: Int)
+
+    private companion object {
+        const val INITIAL_CAPACITY = 1024
+    }
+}
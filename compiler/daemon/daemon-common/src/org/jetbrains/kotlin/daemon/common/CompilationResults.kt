@@ -26,5 +26,7 @@ interface CompilationResults : Remote {
 }
 
 enum class CompilationResultCategory(val code: Int) {
-    IC_COMPILE_ITERATION(0)
+    IC_COMPILE_ITERATION(0),
+    /** The list of [org.jetbrains.kotlin.util.PerformanceSpan]s of the compilation, reported once it is finished */
+    PERFORMANCE_TRACE(1)
 }
\ No newline at end of file
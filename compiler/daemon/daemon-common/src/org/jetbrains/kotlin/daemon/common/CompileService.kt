@@ -180,4 +180,29 @@ interface CompileService : Remote {
             codeLine: ReplCodeLine,
             history: List<ReplCodeLine>
     ): CallResult<ReplEvalResult>
+
+    // The overloads below take the digest of the client history instead of the history itself; the session keeps the lines.
+    // If the digest matches the session history or its prefix, the session is rolled back to it, and the results contain only
+    // the lines added to the client history, otherwise HistoryMismatch is returned and the client should call the overload with the history.
+
+    @Throws(RemoteException::class)
+    fun remoteReplLineCheck(
+            sessionId: Int,
+            codeLine: ReplCodeLine,
+            historyDigest: ReplHistoryDigest
+    ): CallResult<ReplCheckResult>
+
+    @Throws(RemoteException::class)
+    fun remoteReplLineCompile(
+            sessionId: Int,
+            codeLine: ReplCodeLine,
+            historyDigest: ReplHistoryDigest
+    ): CallResult<ReplCompileResult>
+
+    @Throws(RemoteException::class)
+    fun remoteReplLineEval(
+            sessionId: Int,
+            codeLine: ReplCodeLine,
+            historyDigest: ReplHistoryDigest
+    ): CallResult<ReplEvalResult>
 }
@@ -16,7 +16,6 @@
 
 package org.jetbrains.kotlin.daemon.common
 
-import org.jetbrains.kotlin.incremental.components.LookupInfo
 import org.jetbrains.kotlin.load.kotlin.incremental.components.JvmPackagePartProto
 import org.jetbrains.kotlin.modules.TargetId
 import java.io.Serializable
@@ -72,7 +71,7 @@ interface CompilerCallbackServicesFacade : Remote {
     fun lookupTracker_requiresPosition(): Boolean
 
     @Throws(RemoteException::class)
-    fun lookupTracker_record(lookups: Collection<LookupInfo>)
+    fun lookupTracker_record(lookups: CompactLookups)
 
     @Throws(RemoteException::class)
     fun lookupTracker_isDoNothing(): Boolean
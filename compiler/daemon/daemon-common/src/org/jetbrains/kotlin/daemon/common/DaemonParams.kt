@@ -48,6 +48,10 @@ val COMPILE_DAEMON_DEFAULT_SHUTDOWN_DELAY_MS: Long = 1000L // 1 sec
 val COMPILE_DAEMON_MEMORY_THRESHOLD_INFINITE: Long = 0L
 val COMPILE_DAEMON_FORCE_SHUTDOWN_DEFAULT_TIMEOUT_MS: Long = 10000L // 10 secs
 val COMPILE_DAEMON_TIMEOUT_INFINITE_MS: Long = 0L
+val COMPILE_DAEMON_DEFAULT_INLINE_CACHE_SIZE_MB: Int = 32
+val COMPILE_DAEMON_DEFAULT_BINARY_CLASS_CACHE_ENTRIES: Int = 100000
+val COMPILE_DAEMON_DEFAULT_MAX_PARALLEL_COMPILATIONS: Int = 0 // meaning the number of available processors
+val COMPILE_DAEMON_DEFAULT_MEMORY_BUDGET_PERCENT: Int = 75 // of the old generation, 0 disables the cache eviction under memory pressure
 
 val COMPILE_DAEMON_DEFAULT_RUN_DIR_PATH: String get() =
     FileSystem.getRuntimeStateFilesPath("kotlin", "daemon")
@@ -207,7 +211,12 @@ data class DaemonOptions(
         var shutdownDelayMilliseconds: Long = COMPILE_DAEMON_DEFAULT_SHUTDOWN_DELAY_MS,
         var forceShutdownTimeoutMilliseconds: Long = COMPILE_DAEMON_FORCE_SHUTDOWN_DEFAULT_TIMEOUT_MS,
         var verbose: Boolean = false,
-        var reportPerf: Boolean = false
+        var reportPerf: Boolean = false,
+        var inlineCacheSizeMb: Int = COMPILE_DAEMON_DEFAULT_INLINE_CACHE_SIZE_MB,
+        var binaryClassCacheEntries: Int = COMPILE_DAEMON_DEFAULT_BINARY_CLASS_CACHE_ENTRIES,
+        var maxParallelCompilations: Int = COMPILE_DAEMON_DEFAULT_MAX_PARALLEL_COMPILATIONS,
+        var memoryBudgetPercent: Int = COMPILE_DAEMON_DEFAULT_MEMORY_BUDGET_PERCENT,
+        var mapInlineJars: Boolean = false
 ) : OptionsGroup {
 
     override val mappers: List<PropMapper<*, *, *>>
@@ -219,13 +228,21 @@ data class DaemonOptions(
                        PropMapper(this, DaemonOptions::shutdownDelayMilliseconds, fromString = { it.toLong() }, skipIf = { it == COMPILE_DAEMON_DEFAULT_SHUTDOWN_DELAY_MS }, mergeDelimiter = "="),
                        PropMapper(this, DaemonOptions::forceShutdownTimeoutMilliseconds, fromString = { it.toLong() }, skipIf = { it == COMPILE_DAEMON_FORCE_SHUTDOWN_DEFAULT_TIMEOUT_MS }, mergeDelimiter = "="),
                        BoolPropMapper(this, DaemonOptions::verbose),
-                       BoolPropMapper(this, DaemonOptions::reportPerf))
+                       BoolPropMapper(this, DaemonOptions::reportPerf),
+                       PropMapper(this, DaemonOptions::inlineCacheSizeMb, fromString = { it.toInt() }, skipIf = { it == COMPILE_DAEMON_DEFAULT_INLINE_CACHE_SIZE_MB }, mergeDelimiter = "="),
+                       PropMapper(this, DaemonOptions::binaryClassCacheEntries, fromString = { it.toInt() }, skipIf = { it == COMPILE_DAEMON_DEFAULT_BINARY_CLASS_CACHE_ENTRIES }, mergeDelimiter = "="),
+                       PropMapper(this, DaemonOptions::maxParallelCompilations, fromString = { it.toInt() }, skipIf = { it == COMPILE_DAEMON_DEFAULT_MAX_PARALLEL_COMPILATIONS }, mergeDelimiter = "="),
+                       PropMapper(this, DaemonOptions::memoryBudgetPercent, fromString = { it.toInt() }, skipIf = { it == COMPILE_DAEMON_DEFAULT_MEMORY_BUDGET_PERCENT }, mergeDelimiter = "="),
+                       BoolPropMapper(this, DaemonOptions::mapInlineJars))
 }
 
 // TODO: consider implementing generic approach to it or may be replace getters with ones returning default if necessary
 val DaemonOptions.runFilesPathOrDefault: String
     get() = if (runFilesPath.isBlank()) COMPILE_DAEMON_DEFAULT_RUN_DIR_PATH else runFilesPath
 
+val DaemonOptions.maxParallelCompilationsOrDefault: Int
+    get() = if (maxParallelCompilations > 0) maxParallelCompilations else Runtime.getRuntime().availableProcessors()
+
 
 fun Iterable<String>.distinctStringsDigest(): ByteArray =
         MessageDigest.getInstance(CLASSPATH_ID_DIGEST)
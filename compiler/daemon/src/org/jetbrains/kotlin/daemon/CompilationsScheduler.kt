@@ -0,0 +1,140 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.daemon
+
+import java.util.*
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Limits the number of compilations running on the daemon in parallel to [maxParallelCompilations],
+ * the compilations over the limit wait in a queue and are started in the order of arrival.
+ * Compilations of different [CompilationKind]s never run at the same time.
+ */
+class CompilationsScheduler(val maxParallelCompilations: Int) {
+    /**
+     * A kind of compilations depending on a global state, which is set up by [enter] when the first compilation of the kind
+     * starts, and restored by [leave] when the last running one finishes
+     */
+    open class CompilationKind {
+        open fun enter() {}
+        open fun leave() {}
+    }
+
+    private class Ticket(val kind: CompilationKind)
+
+    private val lock = ReentrantLock()
+    private val stateChanged = lock.newCondition()
+    private val waiting = ArrayDeque<Ticket>()
+    private var running = 0
+    private var runningKind: CompilationKind? = null
+
+    private val compilations = AtomicLong()
+    private val queuedCompilations = AtomicLong()
+    private val totalQueueWaitNanos = AtomicLong()
+    private val maxQueueWaitNanos = AtomicLong()
+
+    class Statistics(
+            val compilations: Long,
+            val queuedCompilations: Long,
+            val totalQueueWaitNanos: Long,
+            val maxQueueWaitNanos: Long,
+            val queueLength: Int
+    ) {
+        override fun toString(): String {
+            fun Long.ms() = TimeUnit.NANOSECONDS.toMillis(this)
+            return "$compilations compilations, $queuedCompilations queued, queue wait: total ${totalQueueWaitNanos.ms()} ms, " +
+                   "max ${maxQueueWaitNanos.ms()} ms; waiting now: $queueLength"
+        }
+    }
+
+    /**
+     * Runs [body] when a slot for a compilation of the [kind] is available, passing the time the compilation waited for it
+     */
+    fun <R> withCompilationSlot(kind: CompilationKind = DEFAULT_KIND, body: (queueWaitNanos: Long) -> R): R {
+        val start = System.nanoTime()
+        acquire(kind)
+        val queueWaitNanos = System.nanoTime() - start
+
+        compilations.incrementAndGet()
+        totalQueueWaitNanos.addAndGet(queueWaitNanos)
+        updateMax(maxQueueWaitNanos, queueWaitNanos)
+
+        try {
+            return body(queueWaitNanos)
+        }
+        finally {
+            release()
+        }
+    }
+
+    fun getStatistics(): Statistics =
+            Statistics(compilations.get(), queuedCompilations.get(), totalQueueWaitNanos.get(), maxQueueWaitNanos.get(), lock.withLock { waiting.size })
+
+    private fun acquire(kind: CompilationKind) {
+        lock.withLock {
+            if (waiting.isEmpty() && canStart(kind)) {
+                start(kind)
+                return
+            }
+            queuedCompilations.incrementAndGet()
+            val ticket = Ticket(kind)
+            waiting.addLast(ticket)
+            // only the first waiting compilation may start, so that the compilations of one kind don't starve the other ones
+            while (waiting.peekFirst() !== ticket || !canStart(kind)) {
+                stateChanged.awaitUninterruptibly()
+            }
+            waiting.removeFirst()
+            start(kind)
+            // the next one may be able to start too
+            stateChanged.signalAll()
+        }
+    }
+
+    private fun canStart(kind: CompilationKind) = running == 0 || (running < maxParallelCompilations && runningKind === kind)
+
+    private fun start(kind: CompilationKind) {
+        if (running == 0) {
+            kind.enter()
+            runningKind = kind
+        }
+        running++
+    }
+
+    private fun release() {
+        lock.withLock {
+            if (--running == 0) {
+                runningKind!!.leave()
+                runningKind = null
+            }
+            stateChanged.signalAll()
+        }
+    }
+
+    private fun updateMax(max: AtomicLong, value: Long) {
+        while (true) {
+            val current = max.get()
+            if (value <= current || max.compareAndSet(current, value)) return
+        }
+    }
+
+    companion object {
+        val DEFAULT_KIND = CompilationKind()
+    }
+}
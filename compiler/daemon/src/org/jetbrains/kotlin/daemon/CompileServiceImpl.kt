@@ -30,19 +30,24 @@ import org.jetbrains.kotlin.cli.common.repl.ReplCheckResult
 import org.jetbrains.kotlin.cli.common.repl.ReplCodeLine
 import org.jetbrains.kotlin.cli.common.repl.ReplCompileResult
 import org.jetbrains.kotlin.cli.common.repl.ReplEvalResult
+import org.jetbrains.kotlin.cli.common.repl.ReplHistoryDigest
 import org.jetbrains.kotlin.cli.js.K2JSCompiler
 import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler
 import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
 import org.jetbrains.kotlin.cli.metadata.K2MetadataCompiler
+import org.jetbrains.kotlin.codegen.inline.InlineClassBytesCache
+import org.jetbrains.kotlin.codegen.inline.MappedJarClassBytesSource
 import org.jetbrains.kotlin.config.IncrementalCompilation
 import org.jetbrains.kotlin.config.Services
 import org.jetbrains.kotlin.daemon.common.*
 import org.jetbrains.kotlin.daemon.incremental.*
 import org.jetbrains.kotlin.daemon.report.*
 import org.jetbrains.kotlin.incremental.*
+import org.jetbrains.kotlin.load.kotlin.KotlinJarBinaryClassCache
 import org.jetbrains.kotlin.load.kotlin.incremental.components.IncrementalCompilationComponents
 import org.jetbrains.kotlin.modules.Module
 import org.jetbrains.kotlin.progress.CompilationCanceledStatus
+import org.jetbrains.kotlin.util.PerformanceTrace
 import org.jetbrains.kotlin.utils.addToStdlib.check
 import org.jetbrains.kotlin.utils.stackTraceStr
 import java.io.*
@@ -61,11 +66,13 @@ import kotlin.concurrent.read
 import kotlin.concurrent.schedule
 import kotlin.concurrent.write
 
-const val REMOTE_STREAM_BUFFER_SIZE = 4096
-
 fun nowSeconds() = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime())
 
+// a rough estimate of a binary class with the parsed metadata, used to size the binary class cache for the memory pressure eviction
+private val BINARY_CLASS_CACHE_ENTRY_ESTIMATED_BYTES = 4 * 1024L
+
 interface CompilerSelector {
+    // compilations may run in parallel, so a new compiler instance should be returned for each of them
     operator fun get(targetPlatform: CompileService.TargetPlatform): CLICompiler<*>
 }
 
@@ -95,8 +102,27 @@ class CompileServiceImpl(
         val timer: Timer,
         val onShutdown: () -> Unit
 ) : CompileService {
+    // inline functions bytecode from the libraries is reused by all compilations on the daemon
+    private val inlineClassBytesCache: InlineClassBytesCache? =
+            if (daemonOptions.inlineCacheSizeMb > 0) InlineClassBytesCache(daemonOptions.inlineCacheSizeMb * 1024L * 1024L) else null
+
+    // binary classes and their metadata from the jars (the JDK, the runtime and other libraries) are reused as well
+    private val jarBinaryClassCache: KotlinJarBinaryClassCache? =
+            if (daemonOptions.binaryClassCacheEntries > 0) KotlinJarBinaryClassCache(daemonOptions.binaryClassCacheEntries) else null
+
+    // inline functions bytecode is read from memory-mapped jars, which can't be deleted on Windows while mapped
+    private val mappedJarClassBytesSource: MappedJarClassBytesSource? =
+            if (daemonOptions.mapInlineJars) MappedJarClassBytesSource() else null
+
+    // the caches above and the jar file system caches are evicted when the heap occupancy exceeds the budget
+    private val memoryPressureMonitor: MemoryPressureMonitor? =
+            if (daemonOptions.memoryBudgetPercent in 1..100) MemoryPressureMonitor(daemonOptions.memoryBudgetPercent) else null
+
     init {
         System.setProperty(KOTLIN_COMPILER_ENVIRONMENT_KEEPALIVE_PROPERTY, "true")
+        InlineClassBytesCache.shared = inlineClassBytesCache
+        MappedJarClassBytesSource.shared = mappedJarClassBytesSource
+        KotlinJarBinaryClassCache.shared = jarBinaryClassCache
     }
 
     // wrapped in a class to encapsulate alive check logic
@@ -114,6 +140,28 @@ class CompileServiceImpl(
 
     private val compilationsCounter = AtomicInteger(0)
 
+    // compilations from different sessions run in parallel, each one with its own compiler instance, see CompilerSelector
+    private val compilationsScheduler = CompilationsScheduler(daemonOptions.maxParallelCompilationsOrDefault)
+
+    // the experimental incremental compilation is enabled by the global flags, so the incremental compilations don't run
+    // together with the other ones, and the flags are set while any of them is running
+    private object IncrementalCompilationKind : CompilationsScheduler.CompilationKind() {
+        private var isEnabledBackup = false
+        private var isExperimentalBackup = false
+
+        override fun enter() {
+            isEnabledBackup = IncrementalCompilation.isEnabled()
+            isExperimentalBackup = IncrementalCompilation.isExperimental()
+            IncrementalCompilation.setIsEnabled(true)
+            IncrementalCompilation.setIsExperimental(true)
+        }
+
+        override fun leave() {
+            IncrementalCompilation.setIsEnabled(isEnabledBackup)
+            IncrementalCompilation.setIsExperimental(isExperimentalBackup)
+        }
+    }
+
     private val classpathWatcher = LazyClasspathWatcher(compilerId.compilerClasspath)
 
     enum class Aliveness {
@@ -257,7 +305,14 @@ class CompileServiceImpl(
             !classpathWatcher.isChanged
 
     override fun getUsedMemory(): CompileService.CallResult<Long> =
-            ifAlive { CompileService.CallResult.Good(usedMemory(withGC = true)) }
+            ifAlive {
+                val usedMemory = usedMemory(withGC = true)
+                memoryPressureMonitor?.let {
+                    it.check()
+                    log.info("Used memory: ${usedMemory / 1024} kb; memory pressure: ${it.getStatistics()}")
+                }
+                CompileService.CallResult.Good(usedMemory)
+            }
 
     override fun shutdown(): CompileService.CallResult<Nothing> = ifAliveExclusive(minAliveness = Aliveness.LastSession, ignoreCompilerChanged = true) {
         shutdownImpl()
@@ -338,18 +393,41 @@ class CompileServiceImpl(
             return CompileService.CallResult.Error("Could not deserialize compiler arguments")
         }
 
+        val performanceTrace =
+                if (compilationResults != null && CompilationResultCategory.PERFORMANCE_TRACE.code in compilationOptions.requestedCompilationResults)
+                    PerformanceTrace()
+                else null
+
+        // reported also when the compilation throws, so the client sees the phases up to the failure
+        fun reportPerformanceTrace() {
+            if (performanceTrace != null) {
+                compilationResults!!.add(CompilationResultCategory.PERFORMANCE_TRACE.code, ArrayList(performanceTrace.getSpans()))
+            }
+        }
+
         return when (compilerMode) {
             CompilerMode.JPS_COMPILER -> {
                 val jpsServicesFacade = servicesFacade as JpsCompilerServicesFacade
 
                 doCompile(sessionId, daemonReporter, tracer = null) { eventManger, profiler ->
-                    val services = createCompileServices(jpsServicesFacade, eventManger, profiler)
-                    execCompiler(compilationOptions.targetPlatform, services, k2PlatformArgs, messageCollector)
+                    val services = createCompileServices(jpsServicesFacade, eventManger, profiler, performanceTrace)
+                    try {
+                        execCompiler(compilationOptions.targetPlatform, services, k2PlatformArgs, messageCollector)
+                    }
+                    finally {
+                        reportPerformanceTrace()
+                    }
                 }
             }
             CompilerMode.NON_INCREMENTAL_COMPILER -> {
                 doCompile(sessionId, daemonReporter, tracer = null) { eventManger, profiler ->
-                    execCompiler(targetPlatform, Services.EMPTY, k2PlatformArgs, messageCollector)
+                    val services = performanceTrace?.let { Services.Builder().register(PerformanceTrace::class.java, it).build() } ?: Services.EMPTY
+                    try {
+                        execCompiler(targetPlatform, services, k2PlatformArgs, messageCollector)
+                    }
+                    finally {
+                        reportPerformanceTrace()
+                    }
                 }
             }
             CompilerMode.INCREMENTAL_COMPILER -> {
@@ -361,10 +439,13 @@ class CompileServiceImpl(
                 val gradleIncrementalArgs = compilationOptions as IncrementalCompilationOptions
                 val gradleIncrementalServicesFacade = servicesFacade as IncrementalCompilerServicesFacade
 
-                withIC {
-                    doCompile(sessionId, daemonReporter, tracer = null) { eventManger, profiler ->
+                doCompile(sessionId, daemonReporter, tracer = null, compilationKind = IncrementalCompilationKind) { eventManger, profiler ->
+                    try {
                         execIncrementalCompiler(k2jvmArgs, gradleIncrementalArgs, gradleIncrementalServicesFacade, compilationResults!!,
-                                                messageCollector, daemonReporter)
+                                                messageCollector, daemonReporter, performanceTrace)
+                    }
+                    finally {
+                        reportPerformanceTrace()
                     }
                 }
 
@@ -397,7 +478,8 @@ class CompileServiceImpl(
             servicesFacade: IncrementalCompilerServicesFacade,
             compilationResults: CompilationResults,
             compilerMessageCollector: MessageCollector,
-            daemonMessageReporter: DaemonMessageReporter
+            daemonMessageReporter: DaemonMessageReporter,
+            performanceTrace: PerformanceTrace?
     ): ExitCode {
         val reporter = RemoteICReporter(servicesFacade, compilationResults, incrementalCompilationOptions)
         val annotationFileUpdater = if (servicesFacade.hasAnnotationsFileUpdater()) RemoteAnnotationsFileUpdater(servicesFacade) else null
@@ -435,7 +517,7 @@ class CompileServiceImpl(
                        customCacheVersion(incrementalCompilationOptions.customCacheVersion, incrementalCompilationOptions.customCacheVersionFileName, workingDir, forceEnable = true)
 
         return IncrementalJvmCompilerRunner(workingDir, javaSourceRoots, versions, reporter, annotationFileUpdater,
-                                            artifactChanges, changesRegistry)
+                                            artifactChanges, changesRegistry, performanceTrace)
                 .compile(allKotlinFiles, k2jvmArgs, compilerMessageCollector, { changedFiles })
     }
 
@@ -492,6 +574,27 @@ class CompileServiceImpl(
                 }
             }
 
+    override fun remoteReplLineCheck(sessionId: Int, codeLine: ReplCodeLine, historyDigest: ReplHistoryDigest): CompileService.CallResult<ReplCheckResult> =
+            ifAlive(minAliveness = Aliveness.Alive) {
+                withValidRepl(sessionId) {
+                    check(codeLine, historyDigest)
+                }
+            }
+
+    override fun remoteReplLineCompile(sessionId: Int, codeLine: ReplCodeLine, historyDigest: ReplHistoryDigest): CompileService.CallResult<ReplCompileResult> =
+            ifAlive(minAliveness = Aliveness.Alive) {
+                withValidRepl(sessionId) {
+                    compile(codeLine, historyDigest)
+                }
+            }
+
+    override fun remoteReplLineEval(sessionId: Int, codeLine: ReplCodeLine, historyDigest: ReplHistoryDigest): CompileService.CallResult<ReplEvalResult> =
+            ifAlive(minAliveness = Aliveness.Alive) {
+                withValidRepl(sessionId) {
+                    eval(codeLine, historyDigest, null)
+                }
+            }
+
     // internal implementation stuff
 
     // TODO: consider matching compilerId coming from outside with actual one
@@ -520,12 +623,28 @@ class CompileServiceImpl(
         val stub = UnicastRemoteObject.exportObject(this, port, LoopbackNetworkInterface.clientLoopbackSocketFactory, LoopbackNetworkInterface.serverLoopbackSocketFactory) as CompileService
         registry.rebind (COMPILER_SERVICE_RMI_NAME, stub)
 
+        memoryPressureMonitor?.apply {
+            // cheapest to restore first: the inline bytecode is just read again, the binary classes are parsed again,
+            // and dropping the jar file system caches invalidates all the virtual files from the jars
+            inlineClassBytesCache?.let { cache ->
+                register("inline cache", priority = 0, estimatedBytes = { cache.getStatistics().cachedBytes }, trimTo = { cache.trimTo(it) })
+            }
+            jarBinaryClassCache?.let { cache ->
+                register("binary class cache", priority = 1,
+                         estimatedBytes = { cache.getStatistics().entries * BINARY_CLASS_CACHE_ENTRY_ESTIMATED_BYTES },
+                         trimTo = { cache.trimTo((it / BINARY_CLASS_CACHE_ENTRY_ESTIMATED_BYTES).toInt()) })
+            }
+            register("jar caches", priority = 2, estimatedBytes = { null }, trimTo = { clearJarCacheIfIdle() })
+            start()
+        }
+
         timer.schedule(0) {
             initiateElections()
         }
         timer.schedule(delay = DAEMON_PERIODIC_CHECK_INTERVAL_MS, period = DAEMON_PERIODIC_CHECK_INTERVAL_MS) {
             try {
                 periodicAndAfterSessionCheck()
+                memoryPressureMonitor?.check()
             }
             catch (e: Exception) {
                 System.err.println("Exception in timer thread: " + e.message)
@@ -632,6 +751,7 @@ class CompileServiceImpl(
     private fun shutdownImpl() {
         log.info("Shutdown started")
         state.alive.set(Aliveness.Dying.ordinal)
+        memoryPressureMonitor?.stop()
 
         UnicastRemoteObject.unexportObject(this, true)
         log.info("Shutdown complete")
@@ -673,10 +793,12 @@ class CompileServiceImpl(
                     operationsTracer?.before("compile")
                     val rpcProfiler = if (daemonOptions.reportPerf) WallAndThreadTotalProfiler() else DummyProfiler()
                     val eventManger = EventManagerImpl()
-                    val compilerMessagesStream = PrintStream(BufferedOutputStream(RemoteOutputStreamClient(compilerMessagesStreamProxy, rpcProfiler), REMOTE_STREAM_BUFFER_SIZE))
-                    val serviceOutputStream = PrintStream(BufferedOutputStream(RemoteOutputStreamClient(serviceOutputStreamProxy, rpcProfiler), REMOTE_STREAM_BUFFER_SIZE))
+                    val compilerMessagesStreamClient = RemoteOutputStreamClient(compilerMessagesStreamProxy, rpcProfiler)
+                    val serviceOutputStreamClient = RemoteOutputStreamClient(serviceOutputStreamProxy, rpcProfiler)
+                    val compilerMessagesStream = PrintStream(compilerMessagesStreamClient)
+                    val serviceOutputStream = PrintStream(serviceOutputStreamClient)
+                    val compileServiceReporter = DaemonMessageReporterPrintStreamAdapter(serviceOutputStream)
                     try {
-                        val compileServiceReporter = DaemonMessageReporterPrintStreamAdapter(serviceOutputStream)
                         if (args.none())
                             throw IllegalArgumentException("Error: empty arguments list.")
                         log.info("Starting compilation with args: " + args.joinToString(" "))
@@ -686,8 +808,14 @@ class CompileServiceImpl(
                         CompileService.CallResult.Good(exitCode)
                     }
                     finally {
-                        serviceOutputStream.flush()
-                        compilerMessagesStream.flush()
+                        compilerMessagesStream.close()
+                        if (daemonOptions.reportPerf) {
+                            "PERF: compiler messages stream: ${compilerMessagesStreamClient.statistics}; service output stream: ${serviceOutputStreamClient.statistics}".let {
+                                compileServiceReporter.report(ReportSeverity.INFO, it)
+                                log.info(it)
+                            }
+                        }
+                        serviceOutputStream.close()
                         eventManger.fireCompilationFinished()
                         operationsTracer?.after("compile")
                     }
@@ -697,6 +825,7 @@ class CompileServiceImpl(
     private fun doCompile(sessionId: Int,
                           daemonMessageReporter: DaemonMessageReporter,
                           tracer: RemoteOperationsTracer?,
+                          compilationKind: CompilationsScheduler.CompilationKind = CompilationsScheduler.DEFAULT_KIND,
                           body: (EventManager, Profiler) -> ExitCode): CompileService.CallResult<Int> =
             ifAlive {
                 withValidClientOrSessionProxy(sessionId) { session ->
@@ -704,7 +833,7 @@ class CompileServiceImpl(
                     val rpcProfiler = if (daemonOptions.reportPerf) WallAndThreadTotalProfiler() else DummyProfiler()
                     val eventManger = EventManagerImpl()
                     try {
-                        val exitCode = checkedCompile(daemonMessageReporter, rpcProfiler) {
+                        val exitCode = checkedCompile(daemonMessageReporter, rpcProfiler, compilationKind) {
                             body(eventManger, rpcProfiler).code
                         }
                         CompileService.CallResult.Good(exitCode)
@@ -716,7 +845,12 @@ class CompileServiceImpl(
                 }
             }
 
-    private fun createCompileServices(facade: CompilerCallbackServicesFacade, eventManager: EventManager, rpcProfiler: Profiler): Services {
+    private fun createCompileServices(
+            facade: CompilerCallbackServicesFacade,
+            eventManager: EventManager,
+            rpcProfiler: Profiler,
+            performanceTrace: PerformanceTrace? = null
+    ): Services {
         val builder = Services.Builder()
         if (facade.hasIncrementalCaches() || facade.hasLookupTracker()) {
             builder.register(IncrementalCompilationComponents::class.java, RemoteIncrementalCompilationComponentsClient(facade, eventManager, rpcProfiler))
@@ -724,13 +858,32 @@ class CompileServiceImpl(
         if (facade.hasCompilationCanceledStatus()) {
             builder.register(CompilationCanceledStatus::class.java, RemoteCompilationCanceledStatusClient(facade, rpcProfiler))
         }
+        if (performanceTrace != null) {
+            builder.register(PerformanceTrace::class.java, performanceTrace)
+        }
         return builder.build()
     }
 
 
-    private fun<R> checkedCompile(daemonMessageReporter: DaemonMessageReporter, rpcProfiler: Profiler, body: () -> R): R {
+    private fun<R> checkedCompile(daemonMessageReporter: DaemonMessageReporter,
+                                  rpcProfiler: Profiler,
+                                  compilationKind: CompilationsScheduler.CompilationKind = CompilationsScheduler.DEFAULT_KIND,
+                                  body: () -> R): R =
+            compilationsScheduler.withCompilationSlot(compilationKind) { queueWaitNanos ->
+                if (daemonOptions.reportPerf) {
+                    "PERF: Queue wait on daemon: ${TimeUnit.NANOSECONDS.toMillis(queueWaitNanos)} ms; ${compilationsScheduler.getStatistics()}".let {
+                        daemonMessageReporter.report(ReportSeverity.INFO, it)
+                        log.info(it)
+                    }
+                }
+                doCheckedCompile(daemonMessageReporter, rpcProfiler, body)
+            }
+
+    private fun<R> doCheckedCompile(daemonMessageReporter: DaemonMessageReporter, rpcProfiler: Profiler, body: () -> R): R {
         try {
             val profiler = if (daemonOptions.reportPerf) WallAndThreadAndMemoryTotalProfiler(withGC = false) else DummyProfiler()
+            val jarBinaryClassCacheStatisticsBefore = jarBinaryClassCache?.getStatistics()
+            val memoryPressureStatisticsBefore = memoryPressureMonitor?.getStatistics()
 
             val res = profiler.withMeasure(null, body)
 
@@ -749,6 +902,42 @@ class CompileServiceImpl(
                     log.info(it)
                 }
 
+                // the cache is shared by concurrent compilations, so the totals are reported here, and the lookups of each
+                // compilation are reported by the compiler itself (-Xreport-perf)
+                if (inlineClassBytesCache != null) {
+                    "PERF: inline cache since daemon start: ${inlineClassBytesCache.getStatistics()}".let {
+                        daemonMessageReporter.report(ReportSeverity.INFO, it)
+                        log.info(it)
+                    }
+                }
+
+                if (mappedJarClassBytesSource != null) {
+                    "PERF: mapped inline jars: ${mappedJarClassBytesSource.mappedJarsCount}".let {
+                        daemonMessageReporter.report(ReportSeverity.INFO, it)
+                        log.info(it)
+                    }
+                }
+
+                if (jarBinaryClassCache != null && jarBinaryClassCacheStatisticsBefore != null) {
+                    "PERF: binary class cache: ${jarBinaryClassCache.getStatistics() - jarBinaryClassCacheStatisticsBefore}".let {
+                        daemonMessageReporter.report(ReportSeverity.INFO, it)
+                        log.info(it)
+                    }
+                }
+
+                if (memoryPressureMonitor != null && memoryPressureStatisticsBefore != null) {
+                    "PERF: memory pressure: ${memoryPressureMonitor.getStatistics() - memoryPressureStatisticsBefore}".let {
+                        daemonMessageReporter.report(ReportSeverity.INFO, it)
+                        log.info(it)
+                    }
+                }
+
+                // the check before a compilation is made outside of it, so the totals are reported
+                "PERF: compiler classpath checks since daemon start: ${classpathWatcher.getStatistics()}".let {
+                    daemonMessageReporter.report(ReportSeverity.INFO, it)
+                    log.info(it)
+                }
+
                 // this will only be reported if if appropriate (e.g. ByClass) profiler is used
                 for ((obj, counters) in rpcProfiler.getCounters()) {
                     "PERF: rpc by $obj: ${counters.count} calls, ${counters.time.ms()} ms, thread ${counters.threadTime.ms()} ms".let {
@@ -771,6 +960,18 @@ class CompileServiceImpl(
         (KotlinCoreEnvironment.applicationEnvironment?.jarFileSystem as? CoreJarFileSystem)?.clearHandlersCache()
     }
 
+    // the jar caches could be cleared only when no compilation uses them, so the clearing is skipped if any call is running
+    private fun clearJarCacheIfIdle() {
+        if (rwlock.writeLock().tryLock()) {
+            try {
+                clearJarCache()
+            }
+            finally {
+                rwlock.writeLock().unlock()
+            }
+        }
+    }
+
     private fun<R> ifAlive(minAliveness: Aliveness = Aliveness.Alive,
                            ignoreCompilerChanged: Boolean = false,
                            body: () -> CompileService.CallResult<R>
@@ -124,13 +124,10 @@ object KotlinCompileDaemon {
             val (registry, port) = findPortAndCreateRegistry(COMPILE_DAEMON_FIND_PORT_ATTEMPTS, COMPILE_DAEMON_PORTS_RANGE_START, COMPILE_DAEMON_PORTS_RANGE_END)
 
             val compilerSelector = object : CompilerSelector {
-                private val jvm by lazy { K2JVMCompiler() }
-                private val js by lazy { K2JSCompiler() }
-                private val metadata by lazy { K2MetadataCompiler() }
                 override fun get(targetPlatform: CompileService.TargetPlatform): CLICompiler<*> = when (targetPlatform) {
-                    CompileService.TargetPlatform.JVM -> jvm
-                    CompileService.TargetPlatform.JS -> js
-                    CompileService.TargetPlatform.METADATA -> metadata
+                    CompileService.TargetPlatform.JVM -> K2JVMCompiler()
+                    CompileService.TargetPlatform.JS -> K2JSCompiler()
+                    CompileService.TargetPlatform.METADATA -> K2MetadataCompiler()
                 }
             }
             // timer with a daemon thread, meaning it should not prevent JVM to exit normally
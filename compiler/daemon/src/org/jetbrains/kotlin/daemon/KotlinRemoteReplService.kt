@@ -31,7 +31,6 @@ import org.jetbrains.kotlin.daemon.common.RemoteOutputStream
 import org.jetbrains.kotlin.script.KotlinScriptDefinition
 import org.jetbrains.kotlin.script.KotlinScriptDefinitionFromAnnotatedTemplate
 import org.jetbrains.kotlin.utils.PathUtil
-import java.io.BufferedOutputStream
 import java.io.File
 import java.io.PrintStream
 import java.net.URLClassLoader
@@ -46,7 +45,7 @@ open class KotlinJvmReplService(
         val operationsTracer: RemoteOperationsTracer?
 ) : ReplCompiler, ReplEvaluator {
 
-    protected val compilerMessagesStream = PrintStream(BufferedOutputStream(RemoteOutputStreamClient(compilerOutputStreamProxy, DummyProfiler()), REMOTE_STREAM_BUFFER_SIZE))
+    protected val compilerMessagesStream = PrintStream(RemoteOutputStreamClient(compilerOutputStreamProxy, DummyProfiler()))
 
     protected class KeepFirstErrorMessageCollector(compilerMessagesStream: PrintStream) : MessageCollector {
 
@@ -125,6 +124,7 @@ open class KotlinJvmReplService(
                                             messageCollector.firstErrorLocation ?: CompilerMessageLocation.NO_LOCATION)
         }
         finally {
+            compilerMessagesStream.flush()
             operationsTracer?.after("check")
         }
     }
@@ -138,6 +138,7 @@ open class KotlinJvmReplService(
                                               messageCollector.firstErrorLocation ?: CompilerMessageLocation.NO_LOCATION)
         }
         finally {
+            compilerMessagesStream.flush()
             operationsTracer?.after("compile")
         }
     }
@@ -151,6 +152,57 @@ open class KotlinJvmReplService(
                                                        messageCollector.firstErrorLocation ?: CompilerMessageLocation.NO_LOCATION)
         }
         finally {
+            compilerMessagesStream.flush()
+            operationsTracer?.after("eval")
+        }
+    }
+
+    // The methods below check the history against the digest sent by the client, and return only the lines added to it in the results
+
+    fun check(codeLine: ReplCodeLine, historyDigest: ReplHistoryDigest): ReplCheckResult {
+        operationsTracer?.before("check")
+        try {
+            val res = replCompiler?.check(codeLine, historyDigest)
+                      ?: ReplCheckResult.Error(emptyList(),
+                                               messageCollector.firstErrorMessage ?: "Unknown error",
+                                               messageCollector.firstErrorLocation ?: CompilerMessageLocation.NO_LOCATION)
+            return if (res is ReplCheckResult.HistoryMismatch) res
+                   else res.withUpdatedHistory(res.updatedHistory.drop(historyDigest.size))
+        }
+        finally {
+            compilerMessagesStream.flush()
+            operationsTracer?.after("check")
+        }
+    }
+
+    fun compile(codeLine: ReplCodeLine, historyDigest: ReplHistoryDigest): ReplCompileResult {
+        operationsTracer?.before("compile")
+        try {
+            val res = replCompiler?.compile(codeLine, historyDigest)
+                      ?: ReplCompileResult.Error(emptyList(),
+                                                 messageCollector.firstErrorMessage ?: "Unknown error",
+                                                 messageCollector.firstErrorLocation ?: CompilerMessageLocation.NO_LOCATION)
+            return if (res is ReplCompileResult.HistoryMismatch) res
+                   else res.withUpdatedHistory(res.updatedHistory.drop(historyDigest.size))
+        }
+        finally {
+            compilerMessagesStream.flush()
+            operationsTracer?.after("compile")
+        }
+    }
+
+    fun eval(codeLine: ReplCodeLine, historyDigest: ReplHistoryDigest, invokeWrapper: InvokeWrapper?): ReplEvalResult = synchronized(this) {
+        operationsTracer?.before("eval")
+        try {
+            val res = replCompiler?.let { compileAndEval(it, compiledEvaluator, codeLine, historyDigest, invokeWrapper) }
+                      ?: ReplEvalResult.Error.CompileTime(emptyList(),
+                                                          messageCollector.firstErrorMessage ?: "Unknown error",
+                                                          messageCollector.firstErrorLocation ?: CompilerMessageLocation.NO_LOCATION)
+            return if (res is ReplEvalResult.HistoryMismatch) res
+                   else res.withUpdatedHistory(res.updatedHistory.drop(historyDigest.size))
+        }
+        finally {
+            compilerMessagesStream.flush()
             operationsTracer?.after("eval")
         }
     }
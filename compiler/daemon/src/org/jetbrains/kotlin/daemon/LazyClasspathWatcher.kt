@@ -16,11 +16,14 @@
 
 package org.jetbrains.kotlin.daemon
 
+import org.jetbrains.kotlin.utils.WorkerThreadPools
 import java.io.File
 import java.io.IOException
 import java.security.DigestInputStream
 import java.security.MessageDigest
 import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
 import java.util.concurrent.Semaphore
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
@@ -37,20 +40,35 @@ val DEFAULT_CLASSPATH_DIGEST_WATCH_PERIOD_MS = 300000L // 5 min
 
 /**
  * Class for lazy (on demand) check if any relevant file in the classpath is changed
- * poor-man watcher in the absence of NIO
+ * poor-man watcher in the absence of NIO: a check compares the modification time and the size of the files and directories,
+ * and digests only the files that look modified (in parallel), so the checks are cheap unless something is actually changed.
+ * The periodic check of all the digests (for modifications preserving the time and the size) is performed in the background.
  * TODO: replace with NIO watching when switching to java 7+
  */
 class LazyClasspathWatcher(classpath: Iterable<String>,
                            val checkPeriod: Long = DEFAULT_CLASSPATH_WATCH_PERIOD_MS,
                            val digestCheckPeriod: Long = DEFAULT_CLASSPATH_DIGEST_WATCH_PERIOD_MS) {
 
-    private data class FileId(val file: File, val lastModified: Long, val digest: ByteArray)
+    // the time and the size are updated when a file with the same digest is touched, so it is not digested on every check
+    private class FileId(val file: File, @Volatile var lastModified: Long, @Volatile var length: Long, val digest: ByteArray)
+
+    private data class DirId(val dir: File, val lastModified: Long, val classpathFiles: Set<String>)
+
+    class Statistics(val checks: Long, val checkNanos: Long, val digestedFiles: Long) {
+        override fun toString(): String =
+                "$checks checks, ${TimeUnit.NANOSECONDS.toMillis(checkNanos)} ms, $digestedFiles files digested"
+    }
 
     private val fileIdsLock = Semaphore(1) // a barrier for ensuring ids are initialized, using semaphore to allow modifications from another thread
     private var fileIds: List<FileId>? = null
+    private var dirIds: List<DirId>? = null
     private val lastChangedStatus = AtomicBoolean(false)
     private val lastUpdate = AtomicLong(0)
     private val lastDigestUpdate = AtomicLong(0)
+    private val digestCheckInProgress = AtomicBoolean(false)
+    private val checks = AtomicLong()
+    private val checkNanos = AtomicLong()
+    private val digestedFiles = AtomicLong()
     private val log by lazy { Logger.getLogger("classpath watcher") }
 
     init {
@@ -58,12 +76,15 @@ class LazyClasspathWatcher(classpath: Iterable<String>,
         fileIdsLock.acquire()
         thread(isDaemon = true, start = true) {
             try {
-                fileIds = classpath
-                        .map { File(it) }
-                        .asSequence()
-                        .flatMap { it.walk().filter(::isClasspathFile) }
-                        .map { FileId(it, it.lastModified(), it.md5Digest()) }
-                        .toList()
+                val roots = classpath.map { File(it) }
+                val files = roots.flatMap { root -> root.walk().filter(::isClasspathFile).toList() }
+                // the time and the size are taken before the digest, so a file modified while it is digested looks changed on the next check
+                val lastModifiedAndLength = files.map { Pair(it.lastModified(), it.length()) }
+                val digests = digestAll(files)
+                fileIds = files.zip(lastModifiedAndLength) { file, stat ->
+                    FileId(file, stat.first, stat.second, digests[file] ?: throw IOException("Cannot digest $file"))
+                }
+                dirIds = roots.flatMap { root -> root.walk().filter { it.isDirectory }.map { it.toDirId() }.toList() }
                 val nowMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime())
                 lastUpdate.set(nowMs)
                 lastDigestUpdate.set(nowMs)
@@ -83,33 +104,126 @@ class LazyClasspathWatcher(classpath: Iterable<String>,
         val nowMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime())
         if (nowMs - lastUpdate.get() < checkPeriod) return false
 
-        val checkDigest = nowMs - lastDigestUpdate.get() > digestCheckPeriod
         // making sure that fieldIds are initialized
         fileIdsLock.acquire()
         fileIdsLock.release()
-        val changed =
-            fileIds?.find {
+
+        val start = System.nanoTime()
+        val changed = (fileIds?.let { checkFiles(it, checkAll = false) } ?: false) ||
+                      (dirIds?.any { it.isModified() } ?: false)
+        checks.incrementAndGet()
+        checkNanos.addAndGet(System.nanoTime() - start)
+
+        lastUpdate.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()))
+        if (changed) {
+            lastChangedStatus.set(true)
+        }
+        else if (lastUpdate.get() - lastDigestUpdate.get() > digestCheckPeriod) {
+            scheduleDigestCheck()
+        }
+
+        return changed
+    }
+
+    fun getStatistics(): Statistics = Statistics(checks.get(), checkNanos.get(), digestedFiles.get())
+
+    private fun scheduleDigestCheck() {
+        if (!digestCheckInProgress.compareAndSet(false, true)) return
+
+        thread(isDaemon = true, start = true) {
+            try {
+                if (fileIds?.let { checkFiles(it, checkAll = true) } ?: false) {
+                    lastChangedStatus.set(true)
+                }
+                lastDigestUpdate.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()))
+            }
+            finally {
+                digestCheckInProgress.set(false)
+            }
+        }
+    }
+
+    // if the modification time or the size is changed, or if enforced by param - checking the digest
+    private fun checkFiles(ids: List<FileId>, checkAll: Boolean): Boolean {
+        val suspected = arrayListOf<FileId>()
+        // the time and the size of the suspected files, taken before the digest as in the initial walk
+        val suspectedStats = arrayListOf<Pair<Long, Long>>()
+        for (id in ids) {
+            if (!id.file.exists()) {
+                log.info("cp changed: ${id.file} doesn't exist any more")
+                return true
+            }
+            val lastModified = id.file.lastModified()
+            val length = id.file.length()
+            if (checkAll || lastModified != id.lastModified || length != id.length) {
+                suspected.add(id)
+                suspectedStats.add(Pair(lastModified, length))
+            }
+        }
+        if (suspected.isEmpty()) return false
+
+        val digests = digestAll(suspected.map { it.file })
+        return suspected.zip(suspectedStats).any {
+            val (id, stat) = it
+            val digest = digests[id.file]
+            when {
+                digest == null -> {
+                    log.info("cp changed: ${id.file} access throws the exception")
+                    true // io error considered as change
+                }
+                !Arrays.equals(id.digest, digest) -> {
+                    log.info("cp changed: ${id.file} digests differ")
+                    true
+                }
+                else -> {
+                    id.lastModified = stat.first
+                    id.length = stat.second
+                    false
+                }
+            }
+        }
+    }
+
+    // a new class file in a directory changes its modification time, while modified files are checked separately
+    private fun DirId.isModified(): Boolean {
+        if (dir.lastModified() == lastModified) return false
+
+        val newClasspathFiles = dir.listClasspathFiles()
+        if (newClasspathFiles != classpathFiles) {
+            log.info("cp changed: files in $dir are added or removed")
+            return true
+        }
+        return false
+    }
+
+    private fun File.toDirId() = DirId(this, lastModified(), listClasspathFiles())
+
+    private fun File.listClasspathFiles(): Set<String> =
+            listFiles()?.filter(::isClasspathFile)?.map { it.name }?.toSet() ?: emptySet()
+
+    // returns null digests for files which cannot be read
+    private fun digestAll(files: List<File>): Map<File, ByteArray?> {
+        digestedFiles.addAndGet(files.size.toLong())
+
+        fun digestOrNull(file: File): ByteArray? =
                 try {
-                    if (!it.file.exists()) {
-                        log.info("cp changed: ${it.file} doesn't exist any more")
-                        true
-                    }
-                    // if last modified changed or if enforced by param - checking the digest
-                    else if ((it.file.lastModified() != it.lastModified || checkDigest) && !Arrays.equals(it.digest, it.file.md5Digest())) {
-                        log.info("cp changed: ${it.file} digests differ")
-                        true
-                    }
-                    else false
+                    file.md5Digest()
                 }
                 catch (e: IOException) {
-                    log.log(Level.INFO, "cp changed: ${it.file} access throws the exception", e)
-                    true // io error considered as change
+                    log.log(Level.INFO, "cp: cannot digest $file", e)
+                    null
                 }
-            } != null
-        lastUpdate.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()))
-        if (checkDigest) lastDigestUpdate.set(lastUpdate.get())
 
-        return changed
+        if (files.size == 1) return mapOf(files.single() to digestOrNull(files.single()))
+
+        val futures = digestExecutor.invokeAll(files.map { file -> Callable { digestOrNull(file) } })
+        return files.zip(futures.map { it.get() }).toMap()
+    }
+
+    private companion object {
+        val digestExecutor: ExecutorService by lazy {
+            WorkerThreadPools.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), "classpath digest worker")
+        }
     }
 }
 
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.daemon
+
+import java.lang.management.ManagementFactory
+import java.lang.management.MemoryNotificationInfo
+import java.lang.management.MemoryPoolMXBean
+import java.lang.management.MemoryType
+import java.util.*
+import java.util.logging.Logger
+import javax.management.Notification
+import javax.management.NotificationEmitter
+import javax.management.NotificationListener
+
+/**
+ * Keeps the heap occupancy of the daemon under the budget by evicting the registered caches.
+ *
+ * The occupancy is measured after GC in the heap pools holding the long-lived objects (the ones supporting usage thresholds,
+ * i.e. the old generation), their collection usage thresholds are set to [budgetPercent] of the pool size. When a threshold
+ * is exceeded, the JVM notification triggers an eviction; [check] does the same for the cases when no notification was received.
+ *
+ * The caches are evicted in the order of their priority, the larger ones first among the caches with the same priority:
+ * at first the caches are trimmed to a half of their size, and only if the estimated released memory is not enough
+ * to get under the budget, the caches are cleared.
+ */
+class MemoryPressureMonitor(val budgetPercent: Int) {
+
+    private class Cache(val name: String, val priority: Int, val estimatedBytes: () -> Long?, val trimTo: (Long) -> Unit) {
+        var evictions = 0L
+    }
+
+    class Statistics(
+            val evictions: Long,
+            val releasedBytes: Long,
+            val occupiedBytes: Long,
+            val budgetBytes: Long,
+            val evictionsByCache: Map<String, Long>
+    ) {
+        operator fun minus(other: Statistics): Statistics =
+                Statistics(evictions - other.evictions, releasedBytes - other.releasedBytes, occupiedBytes, budgetBytes,
+                           evictionsByCache.mapValues { it.value - (other.evictionsByCache[it.key] ?: 0L) })
+
+        override fun toString(): String {
+            val byCache = evictionsByCache.filterValues { it > 0 }.entries.joinToString { "${it.key}: ${it.value}" }
+            return "$evictions evictions${if (byCache.isEmpty()) "" else " ($byCache)"}, ~${releasedBytes / 1024} kb released; " +
+                   "heap after GC: ${occupiedBytes / 1024} kb, budget ${budgetBytes / 1024} kb"
+        }
+    }
+
+    private val log by lazy { Logger.getLogger("compiler") }
+
+    private val pools: List<MemoryPoolMXBean> =
+            ManagementFactory.getMemoryPoolMXBeans().filter {
+                it.type == MemoryType.HEAP && it.isUsageThresholdSupported && it.isCollectionUsageThresholdSupported
+            }
+
+    private val caches = ArrayList<Cache>()
+    private val handledThresholdCounts = HashMap<String, Long>()
+
+    private var evictions = 0L
+    private var releasedBytes = 0L
+
+    private val listener = NotificationListener { notification: Notification, _ ->
+        if (notification.type == MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED) {
+            check()
+        }
+    }
+
+    /**
+     * Registers a cache to evict under memory pressure, the caches with the lower [priority] are evicted first.
+     * [estimatedBytes] returns the memory retained by the cache or null if it is unknown, such caches are only cleared;
+     * [trimTo] reduces the cache to the given size in bytes, 0 meaning clear.
+     */
+    @Synchronized
+    fun register(name: String, priority: Int, estimatedBytes: () -> Long?, trimTo: (Long) -> Unit) {
+        caches.add(Cache(name, priority, estimatedBytes, trimTo))
+    }
+
+    fun start() {
+        for (pool in pools) {
+            pool.collectionUsageThreshold = budgetBytes(pool)
+        }
+        (ManagementFactory.getMemoryMXBean() as? NotificationEmitter)?.addNotificationListener(listener, null, null)
+        log.info("Memory pressure monitor started, budget ${budgetPercent}% of ${pools.joinToString { "${it.name} (${budgetBytes(it) / 1024} kb)" }}")
+    }
+
+    fun stop() {
+        try {
+            (ManagementFactory.getMemoryMXBean() as? NotificationEmitter)?.removeNotificationListener(listener)
+        }
+        catch (e: Exception) {
+            // the listener is not registered - ignoring
+        }
+        for (pool in pools) {
+            pool.collectionUsageThreshold = 0
+        }
+    }
+
+    /**
+     * Evicts the caches if the occupancy after the GC, which has not been handled yet, exceeds the budget
+     */
+    @Synchronized
+    fun check() {
+        var excessBytes = 0L
+        for (pool in pools) {
+            val thresholdCount = pool.collectionUsageThresholdCount
+            if (thresholdCount == (handledThresholdCounts[pool.name] ?: 0L)) continue
+            handledThresholdCounts[pool.name] = thresholdCount
+            val occupied = pool.collectionUsage?.used ?: continue
+            excessBytes += maxOf(0L, occupied - budgetBytes(pool))
+        }
+        if (excessBytes > 0) {
+            evict(excessBytes)
+        }
+    }
+
+    @Synchronized
+    fun getStatistics(): Statistics =
+            Statistics(evictions, releasedBytes, pools.sumByLong { it.collectionUsage?.used ?: 0L }, pools.sumByLong { budgetBytes(it) },
+                       caches.associate { it.name to it.evictions })
+
+    /**
+     * Evicts the caches until the estimated released memory reaches [excessBytes]
+     */
+    @Synchronized
+    internal fun evict(excessBytes: Long) {
+        val ordered = caches.map { it to it.estimatedBytes() }
+                .sortedWith(compareBy<Pair<Cache, Long?>> { it.first.priority }.thenByDescending { it.second ?: 0L })
+
+        val evicted = ArrayList<String>()
+        var released = 0L
+
+        // halving the caches with the known size first
+        for ((cache, size) in ordered) {
+            if (released >= excessBytes) break
+            if (size == null || size == 0L) continue
+            cache.trimTo(size / 2)
+            released += size - size / 2
+            cache.evictions++
+            evicted.add("${cache.name} halved")
+        }
+        // clearing all of them if it was not enough
+        for ((cache, size) in ordered) {
+            if (released >= excessBytes) break
+            cache.trimTo(0)
+            released += if (size == null) 0L else size / 2
+            cache.evictions++
+            evicted.add("${cache.name} cleared")
+        }
+
+        evictions++
+        releasedBytes += released
+        log.info("Memory pressure: heap after GC exceeds the budget by ${excessBytes / 1024} kb, " +
+                 "evicted ${evicted.joinToString()}, ~${released / 1024} kb released")
+    }
+
+    private fun budgetBytes(pool: MemoryPoolMXBean): Long {
+        val max = if (pool.usage.max > 0) pool.usage.max else Runtime.getRuntime().maxMemory()
+        return max / 100 * budgetPercent
+    }
+
+    private inline fun <T> Iterable<T>.sumByLong(selector: (T) -> Long): Long = fold(0L) { acc, it -> acc + selector(it) }
+}
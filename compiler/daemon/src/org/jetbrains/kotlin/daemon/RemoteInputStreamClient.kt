@@ -21,17 +21,48 @@ import org.jetbrains.kotlin.daemon.common.Profiler
 import org.jetbrains.kotlin.daemon.common.RemoteInputStream
 import java.io.InputStream
 
-class RemoteInputStreamClient(val remote: RemoteInputStream, val profiler: Profiler = DummyProfiler()): InputStream() {
+const val REMOTE_STREAM_READ_AHEAD_SIZE = 16 * 1024
+
+/**
+ * Reads ahead up to [readAheadSize] bytes per RMI call, so that reading single bytes or small arrays doesn't make a call each.
+ */
+class RemoteInputStreamClient(
+        val remote: RemoteInputStream,
+        val profiler: Profiler = DummyProfiler(),
+        private val readAheadSize: Int = REMOTE_STREAM_READ_AHEAD_SIZE
+) : InputStream() {
+    private var buffer = ByteArray(0)
+    private var position = 0
+
     override fun read(data: ByteArray): Int = read(data, 0, data.size)
 
-    override fun read(data: ByteArray, offset: Int, length: Int): Int =
-            profiler.withMeasure(this) {
-                val bytes = remote.read(length)
-                assert(bytes.size <= length)
-                System.arraycopy(bytes, 0, data, offset, length)
-                bytes.size
-            }
+    @Synchronized
+    override fun read(data: ByteArray, offset: Int, length: Int): Int {
+        if (length == 0) return 0
+        if (!fillBufferIfEmpty(length)) return -1
+
+        val size = minOf(length, buffer.size - position)
+        System.arraycopy(buffer, position, data, offset, size)
+        position += size
+        return size
+    }
+
+    @Synchronized
+    override fun read(): Int {
+        if (!fillBufferIfEmpty(1)) return -1
+
+        return buffer[position++].toInt() and 0xFF
+    }
+
+    @Synchronized
+    override fun available(): Int = buffer.size - position
+
+    // returns false on the end of the stream
+    private fun fillBufferIfEmpty(requested: Int): Boolean {
+        if (position < buffer.size) return true
 
-    override fun read(): Int =
-            profiler.withMeasure(this) { remote.read() }
+        buffer = profiler.withMeasure(this) { remote.read(maxOf(requested, readAheadSize)) }
+        position = 0
+        return buffer.isNotEmpty()
+    }
 }
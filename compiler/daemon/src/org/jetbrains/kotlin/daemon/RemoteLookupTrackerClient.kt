@@ -16,45 +16,73 @@
 
 package org.jetbrains.kotlin.daemon
 
-import com.intellij.util.containers.StringInterner
+import org.jetbrains.kotlin.daemon.common.CompactLookupsBuilder
 import org.jetbrains.kotlin.daemon.common.CompilerCallbackServicesFacade
 import org.jetbrains.kotlin.daemon.common.DummyProfiler
 import org.jetbrains.kotlin.daemon.common.Profiler
-import org.jetbrains.kotlin.incremental.components.LookupInfo
 import org.jetbrains.kotlin.incremental.components.LookupTracker
 import org.jetbrains.kotlin.incremental.components.Position
 import org.jetbrains.kotlin.incremental.components.ScopeKind
+import java.util.logging.Logger
 
+const val LOOKUPS_BATCH_SIZE = 50000
 
-class RemoteLookupTrackerClient(val facade: CompilerCallbackServicesFacade, eventManager: EventManager, val profiler: Profiler = DummyProfiler()) : LookupTracker {
+/**
+ * Sends lookups to the client in batches of [batchSize] while the compilation goes on,
+ * so that the daemon never holds more than one batch of lookups in memory.
+ */
+class RemoteLookupTrackerClient(
+        val facade: CompilerCallbackServicesFacade,
+        eventManager: EventManager,
+        val profiler: Profiler = DummyProfiler(),
+        private val batchSize: Int = LOOKUPS_BATCH_SIZE
+) : LookupTracker {
     private val isDoNothing = profiler.withMeasure(this) { facade.lookupTracker_isDoNothing() }
 
-    private val lookups = hashSetOf<LookupInfo>()
-    private val interner = StringInterner()
-
     override val requiresPosition: Boolean = profiler.withMeasure(this) { facade.lookupTracker_requiresPosition() }
 
+    private val lookups = CompactLookupsBuilder(withPositions = requiresPosition)
+
+    private var batchesSent = 0
+    private var lookupsSent = 0L
+
+    @Synchronized
     override fun record(filePath: String, position: Position, scopeFqName: String, scopeKind: ScopeKind, name: String) {
         if (isDoNothing) return
 
-        val internedFilePath = interner.intern(filePath)
-        val internedScopeFqName = interner.intern(scopeFqName)
-        val internedName = interner.intern(name)
+        lookups.add(filePath, position, scopeFqName, scopeKind, name)
 
-        lookups.add(LookupInfo(internedFilePath, position, internedScopeFqName, scopeKind, internedName))
+        if (lookups.size >= batchSize) {
+            flush()
+        }
     }
 
     init {
-        eventManager.onCompilationFinished { flush() }
+        eventManager.onCompilationFinished {
+            synchronized(this) {
+                flush()
+            }
+            if (batchesSent > 0) {
+                log.info("Lookups sent: $lookupsSent in $batchesSent batches")
+            }
+        }
     }
 
     private fun flush() {
         if (isDoNothing || lookups.isEmpty()) return
 
+        val batch = lookups.build()
+        lookups.clear()
+
         profiler.withMeasure(this) {
-            facade.lookupTracker_record(lookups)
+            facade.lookupTracker_record(batch)
         }
 
-        lookups.clear()
+        batchesSent++
+        lookupsSent += batch.size
+    }
+
+    private companion object {
+        val log = Logger.getLogger("RemoteLookupTrackerClient")
     }
 }
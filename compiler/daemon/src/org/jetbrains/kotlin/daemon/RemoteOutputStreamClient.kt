@@ -20,17 +20,130 @@ import org.jetbrains.kotlin.daemon.common.DummyProfiler
 import org.jetbrains.kotlin.daemon.common.Profiler
 import org.jetbrains.kotlin.daemon.common.RemoteOutputStream
 import java.io.OutputStream
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.logging.Logger
+
+const val REMOTE_STREAM_CHUNK_SIZE = 64 * 1024
+const val REMOTE_STREAM_FLUSH_DELAY_MS = 100L
+
+/**
+ * Coalesces writes into chunks of at most [chunkSize] bytes, so that an RMI call carries a chunk instead of a single write.
+ * A chunk is sent when it is full, on [flush] and at most [flushDelayMs] after the first write into it.
+ * Chunks are sent on the writing thread, so a slow client slows down the writers instead of piling output up in the daemon.
+ * The delayed flush is cancelled when the stream is closed.
+ */
+class RemoteOutputStreamClient(
+        val remote: RemoteOutputStream,
+        val profiler: Profiler = DummyProfiler(),
+        private val chunkSize: Int = REMOTE_STREAM_CHUNK_SIZE,
+        private val flushDelayMs: Long = REMOTE_STREAM_FLUSH_DELAY_MS
+) : OutputStream() {
+    private val buffer = ByteArray(chunkSize)
+    private var count = 0
+    private var scheduledFlush: ScheduledFuture<*>? = null
+    private var closed = false
+
+    val writes = AtomicLong()
+    val roundTrips = AtomicLong()
+    val bytesSent = AtomicLong()
 
-class RemoteOutputStreamClient(val remote: RemoteOutputStream, val profiler: Profiler = DummyProfiler()): OutputStream() {
     override fun write(data: ByteArray) {
-        profiler.withMeasure(this) { remote.write(data, 0, data.size) }
+        write(data, 0, data.size)
     }
 
+    @Synchronized
     override fun write(data: ByteArray, offset: Int, length: Int) {
-        profiler.withMeasure(this) { remote.write(data, offset, length) }
+        writes.incrementAndGet()
+
+        if (count + length > chunkSize) {
+            sendBuffer()
+        }
+
+        if (length >= chunkSize) {
+            send(data, offset, length)
+        }
+        else {
+            System.arraycopy(data, offset, buffer, count, length)
+            count += length
+            scheduleFlushIfNeeded()
+        }
     }
 
+    @Synchronized
     override fun write(byte: Int) {
-        profiler.withMeasure(this) { remote.write(byte) }
+        writes.incrementAndGet()
+
+        if (count == chunkSize) {
+            sendBuffer()
+        }
+
+        buffer[count++] = byte.toByte()
+        scheduleFlushIfNeeded()
+    }
+
+    @Synchronized
+    override fun flush() {
+        sendBuffer()
+    }
+
+    @Synchronized
+    override fun close() {
+        closed = true
+        scheduledFlush?.cancel(false)
+        scheduledFlush = null
+        sendBuffer()
+    }
+
+    val statistics: String
+        get() = "${writes.get()} writes, ${roundTrips.get()} calls, ${bytesSent.get()} bytes"
+
+    private fun sendBuffer() {
+        if (count == 0) return
+
+        send(buffer, 0, count)
+        count = 0
+    }
+
+    private fun send(data: ByteArray, offset: Int, length: Int) {
+        var sent = 0
+        while (sent < length) {
+            // RMI serializes the whole array, so only the bytes to be sent are passed
+            val chunk = data.copyOfRange(offset + sent, offset + sent + minOf(chunkSize, length - sent))
+            profiler.withMeasure(this) { remote.write(chunk, 0, chunk.size) }
+            roundTrips.incrementAndGet()
+            sent += chunk.size
+        }
+        bytesSent.addAndGet(length.toLong())
+    }
+
+    private fun scheduleFlushIfNeeded() {
+        if (scheduledFlush != null || closed || count == 0) return
+
+        scheduledFlush = flushScheduler.schedule(Runnable {
+            synchronized(this) {
+                scheduledFlush = null
+                try {
+                    sendBuffer()
+                }
+                catch (e: Exception) {
+                    // nobody waits for the scheduled flush, so the failure is only logged; the next write or flush retries
+                    log.info("Cannot flush remote stream: $e")
+                }
+            }
+        }, flushDelayMs, TimeUnit.MILLISECONDS)
+    }
+
+    companion object {
+        private val log = Logger.getLogger("RemoteOutputStreamClient")
+
+        private val flushScheduler: ScheduledExecutorService by lazy {
+            Executors.newSingleThreadScheduledExecutor { runnable ->
+                Thread(runnable, "remote-stream-flusher").apply { isDaemon = true }
+            }
+        }
     }
 }
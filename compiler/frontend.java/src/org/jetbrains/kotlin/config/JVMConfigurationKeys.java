@@ -107,4 +107,16 @@ public class JVMConfigurationKeys {
 
     public static final CompilerConfigurationKey<Boolean> IR =
             CompilerConfigurationKey.create("IR");
+
+    public static final CompilerConfigurationKey<Integer> PARALLEL_BACKEND_THREADS =
+            CompilerConfigurationKey.create("number of threads used to generate packages and multifile classes in parallel");
+
+    public static final CompilerConfigurationKey<Integer> PARALLEL_OPTIMIZATION_THREADS =
+            CompilerConfigurationKey.create("number of threads used to optimize methods of a class in parallel");
+
+    public static final CompilerConfigurationKey<Integer> PARALLEL_PARSING_THREADS =
+            CompilerConfigurationKey.create("number of threads used to parse source files before the analysis");
+
+    public static final CompilerConfigurationKey<Boolean> RELEASE_BINDINGS_AFTER_CODEGEN =
+            CompilerConfigurationKey.create("release the binding data of the files after their code is generated");
 }
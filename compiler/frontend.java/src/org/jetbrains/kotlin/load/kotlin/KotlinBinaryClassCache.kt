@@ -63,8 +63,10 @@ class KotlinBinaryClassCache : Disposable {
             }
 
             val aClass = ApplicationManager.getApplication().runReadAction(Computable {
+                val sharedCache = KotlinJarBinaryClassCache.shared
                 //noinspection deprecation
-                VirtualFileKotlinClass.create(file, fileContent)
+                if (sharedCache != null) sharedCache.getOrCreate(file) { VirtualFileKotlinClass.create(it, fileContent) }
+                else VirtualFileKotlinClass.create(file, fileContent)
             })
 
             return requestCache.cache(file, aClass)
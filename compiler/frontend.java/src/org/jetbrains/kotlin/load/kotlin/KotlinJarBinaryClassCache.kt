@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.load.kotlin
+
+import com.intellij.openapi.vfs.StandardFileSystems
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.util.io.URLUtil
+import java.io.File
+import java.util.*
+
+/**
+ * Binary classes read from jars (e.g. the JDK and the Kotlin runtime), shared between compilations performed in the same process
+ * with the same application environment, e.g. by the compile daemon, which installs the [shared] instance.
+ *
+ * Both Kotlin classes, which keep their parsed metadata (see [KotlinJvmBinaryClassWithParsedMetadata]), and the fact that a class
+ * is not a Kotlin class are cached, so the class files are not read and scanned for the metadata again.
+ * An entry is keyed by the jar path, the jar length and modification time, and the entry path, so it survives clearing
+ * the jar file system caches, and a rebuilt jar is never served stale. The entries don't keep the virtual files, a class found
+ * in the cache is bound to the virtual file it is requested for.
+ * The number of entries is limited by [maxEntries], the least recently used entries are evicted first.
+ */
+class KotlinJarBinaryClassCache(val maxEntries: Int) {
+    private data class Key(val jarPath: String, val jarLength: Long, val jarTimestamp: Long, val entryPath: String)
+
+    private class Entry(val kotlinClass: VirtualFileKotlinClass.Data?)
+
+    class Statistics(val hits: Long, val misses: Long, val evicted: Long, val entries: Int) {
+        val hitRate: Double
+            get() = if (hits + misses == 0L) 0.0 else hits.toDouble() / (hits + misses)
+
+        operator fun minus(other: Statistics): Statistics =
+                Statistics(hits - other.hits, misses - other.misses, evicted - other.evicted, entries)
+
+        override fun toString(): String =
+                "$hits hits, $misses misses (hit rate ${"%.1f".format(hitRate * 100)}%), evicted $evicted, cached $entries entries"
+    }
+
+    private val entries = LinkedHashMap<Key, Entry>(16, 0.75f, true)
+    private var hits = 0L
+    private var misses = 0L
+    private var evicted = 0L
+
+    fun getOrCreate(file: VirtualFile, create: (VirtualFile) -> VirtualFileKotlinClass?): VirtualFileKotlinClass? {
+        val key = createKey(file) ?: return create(file)
+
+        synchronized(this) {
+            val cached = entries[key]
+            if (cached != null) {
+                hits++
+                return cached.kotlinClass?.let { VirtualFileKotlinClass(file, it) }
+            }
+            misses++
+        }
+
+        // The class is read outside of the lock, so two threads may read it simultaneously, and the last one wins
+        val kotlinClass = create(file)
+
+        synchronized(this) {
+            entries.put(key, Entry(kotlinClass?.data))
+            trimTo(maxEntries)
+        }
+
+        return kotlinClass
+    }
+
+    @Synchronized
+    fun trimTo(maxEntries: Int) {
+        val iterator = entries.values.iterator()
+        while (entries.size > maxEntries && iterator.hasNext()) {
+            iterator.next()
+            iterator.remove()
+            evicted++
+        }
+    }
+
+    @Synchronized
+    fun clear() {
+        trimTo(0)
+    }
+
+    @Synchronized
+    fun getStatistics(): Statistics = Statistics(hits, misses, evicted, entries.size)
+
+    private fun createKey(file: VirtualFile): Key? {
+        if (file.fileSystem.protocol != StandardFileSystems.JAR_PROTOCOL) return null
+
+        val path = file.path
+        val separatorIndex = path.indexOf(URLUtil.JAR_SEPARATOR)
+        if (separatorIndex < 0) return null
+
+        val jar = File(path.substring(0, separatorIndex))
+        val jarTimestamp = jar.lastModified()
+        if (jarTimestamp == 0L) return null
+
+        return Key(jar.path, jar.length(), jarTimestamp, path.substring(separatorIndex + URLUtil.JAR_SEPARATOR.length))
+    }
+
+    companion object {
+        @JvmStatic
+        @Volatile
+        var shared: KotlinJarBinaryClassCache? = null
+    }
+}
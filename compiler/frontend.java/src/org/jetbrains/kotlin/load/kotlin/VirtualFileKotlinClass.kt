@@ -26,13 +26,24 @@ import org.jetbrains.kotlin.utils.rethrow
 import java.io.FileNotFoundException
 import java.io.IOException
 
-class VirtualFileKotlinClass private constructor(
+class VirtualFileKotlinClass internal constructor(
         val file: VirtualFile,
-        className: ClassId,
-        classVersion: Int,
-        classHeader: KotlinClassHeader,
-        innerClasses: InnerClassesInfo
-) : FileBasedKotlinClass(className, classVersion, classHeader, innerClasses) {
+        internal val data: Data
+) : FileBasedKotlinClass(data.classId, data.classVersion, data.classHeader, data.innerClasses), KotlinJvmBinaryClassWithParsedMetadata {
+
+    /**
+     * The class read from a class file, which doesn't depend on the virtual file, so it can be shared by the instances created
+     * for the same class file found again after the file system caches were cleared, see [KotlinJarBinaryClassCache]
+     */
+    internal class Data(
+            val classId: ClassId,
+            val classVersion: Int,
+            val classHeader: KotlinClassHeader,
+            val innerClasses: FileBasedKotlinClass.InnerClassesInfo
+    ) {
+        // the class is either a class or a package part, so it has one kind of metadata only
+        @Volatile var parsedMetadata: Any? = null
+    }
 
     override val location: String
         get() = file.path
@@ -47,6 +58,11 @@ class VirtualFileKotlinClass private constructor(
         }
     }
 
+    override fun <T : Any> getOrParseMetadata(parse: () -> T): T {
+        @Suppress("UNCHECKED_CAST")
+        return data.parsedMetadata as T? ?: parse().also { data.parsedMetadata = it }
+    }
+
     override fun equals(other: Any?) = other is VirtualFileKotlinClass && other.file == file
     override fun hashCode() = file.hashCode()
     override fun toString() = "${javaClass.simpleName}: $file"
@@ -65,7 +81,7 @@ class VirtualFileKotlinClass private constructor(
                     if (!byteContent.isEmpty()) {
                         return@time FileBasedKotlinClass.create(byteContent) {
                             name, classVersion, header, innerClasses ->
-                            VirtualFileKotlinClass(file, name, classVersion, header, innerClasses)
+                            VirtualFileKotlinClass(file, Data(name, classVersion, header, innerClasses))
                         }
                     }
                 }
@@ -44,6 +44,8 @@ import org.jetbrains.kotlin.frontend.java.di.createContainerForTopDownAnalyzerFo
 import org.jetbrains.kotlin.frontend.java.di.initJvmBuiltInsForTopDownAnalysis
 import org.jetbrains.kotlin.frontend.java.di.initialize
 import org.jetbrains.kotlin.incremental.components.LookupTracker
+import org.jetbrains.kotlin.incremental.components.Position
+import org.jetbrains.kotlin.incremental.components.ScopeKind
 import org.jetbrains.kotlin.load.java.lazy.ModuleClassResolver
 import org.jetbrains.kotlin.load.java.structure.JavaClass
 import org.jetbrains.kotlin.load.java.structure.impl.JavaClassImpl
@@ -127,7 +129,11 @@ object TopDownAnalyzerFacadeForJVM {
         val module = moduleContext.module
 
         val incrementalComponents = configuration.get(JVMConfigurationKeys.INCREMENTAL_COMPILATION_COMPONENTS)
-        val lookupTracker = incrementalComponents?.getLookupTracker() ?: LookupTracker.DO_NOTHING
+        val lookupTracker = incrementalComponents?.getLookupTracker()?.let { lookupTracker ->
+            // Lookups are recorded concurrently when bodies are resolved in parallel
+            if (configuration.get(CommonConfigurationKeys.PARALLEL_BODY_RESOLVE_THREADS, 1) > 1) SynchronizedLookupTracker(lookupTracker)
+            else lookupTracker
+        } ?: LookupTracker.DO_NOTHING
         val targetIds = configuration.get(JVMConfigurationKeys.MODULES)?.map(::TargetId)
 
         val separateModules = !configuration.getBoolean(JVMConfigurationKeys.USE_SINGLE_MODULE)
@@ -271,3 +277,13 @@ object TopDownAnalyzerFacadeForJVM {
         }
     }
 }
+
+private class SynchronizedLookupTracker(private val delegate: LookupTracker) : LookupTracker {
+    override val requiresPosition: Boolean
+        get() = delegate.requiresPosition
+
+    @Synchronized
+    override fun record(filePath: String, position: Position, scopeFqName: String, scopeKind: ScopeKind, name: String) {
+        delegate.record(filePath, position, scopeFqName, scopeKind, name)
+    }
+}
@@ -16,6 +16,8 @@
 
 package org.jetbrains.kotlin.config;
 
+import org.jetbrains.kotlin.util.PerformanceTrace;
+
 public class CommonConfigurationKeys {
     private CommonConfigurationKeys() {
     }
@@ -28,4 +30,11 @@ public class CommonConfigurationKeys {
 
     public static final CompilerConfigurationKey<String> MODULE_NAME =
             CompilerConfigurationKey.create("module name");
+
+    // The binding trace of the analysis should be thread-safe when this is more than 1
+    public static final CompilerConfigurationKey<Integer> PARALLEL_BODY_RESOLVE_THREADS =
+            CompilerConfigurationKey.create("number of threads used to resolve function bodies of different files in parallel");
+
+    public static final CompilerConfigurationKey<PerformanceTrace> PERFORMANCE_TRACE =
+            CompilerConfigurationKey.create("performance trace");
 }
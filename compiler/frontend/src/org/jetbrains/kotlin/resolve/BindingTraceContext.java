@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.resolve;
 
 import com.google.common.collect.ImmutableMap;
+import kotlin.jvm.functions.Function1;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
@@ -115,6 +116,10 @@ public class BindingTraceContext implements BindingTrace {
         }
     }
 
+    public void removeKeys(@NotNull Function1<Object, Boolean> predicate) {
+        map.removeKeys(predicate);
+    }
+
     @Override
     public boolean wantsDiagnostics() {
         return mutableDiagnostics != null;
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.resolve;
+
+/**
+ * Settings of {@link BodyResolver} which come from the compiler options.
+ * The containers which don't register the settings get the ones created by the public constructor,
+ * with the function bodies resolved sequentially.
+ */
+public class BodyResolveSettings {
+    private final int parallelThreads;
+
+    public BodyResolveSettings() {
+        this(1);
+    }
+
+    private BodyResolveSettings(int parallelThreads) {
+        this.parallelThreads = parallelThreads;
+    }
+
+    /**
+     * @param parallelThreads the number of threads resolving the function bodies of different files, 1 to resolve them sequentially
+     */
+    public static BodyResolveSettings withParallelThreads(int parallelThreads) {
+        return new BodyResolveSettings(Math.max(1, parallelThreads));
+    }
+
+    public int getParallelThreads() {
+        return parallelThreads;
+    }
+}
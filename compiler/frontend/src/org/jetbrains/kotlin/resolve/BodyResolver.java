@@ -18,7 +18,9 @@ package org.jetbrains.kotlin.resolve;
 
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
 import com.intellij.util.containers.Queue;
 import kotlin.Unit;
 import kotlin.jvm.functions.Function1;
@@ -32,6 +34,7 @@ import org.jetbrains.kotlin.descriptors.*;
 import org.jetbrains.kotlin.descriptors.impl.SyntheticFieldDescriptor;
 import org.jetbrains.kotlin.diagnostics.Errors;
 import org.jetbrains.kotlin.lexer.KtTokens;
+import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStatus;
 import org.jetbrains.kotlin.psi.*;
 import org.jetbrains.kotlin.psi.psiUtil.PsiUtilsKt;
 import org.jetbrains.kotlin.resolve.calls.CallResolver;
@@ -49,8 +52,15 @@ import org.jetbrains.kotlin.types.expressions.typeInfoFactory.TypeInfoFactoryKt;
 import org.jetbrains.kotlin.util.Box;
 import org.jetbrains.kotlin.util.ReenteringLazyValueComputationException;
 import org.jetbrains.kotlin.util.slicedMap.WritableSlice;
+import org.jetbrains.kotlin.utils.WorkerThreadPools;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.jetbrains.kotlin.config.LanguageFeature.TopLevelSealedInheritance;
 import static org.jetbrains.kotlin.diagnostics.Errors.*;
@@ -58,6 +68,8 @@ import static org.jetbrains.kotlin.resolve.BindingContext.*;
 import static org.jetbrains.kotlin.types.TypeUtils.NO_EXPECTED_TYPE;
 
 public class BodyResolver {
+    private static final long CHECK_CANCELED_INTERVAL_MS = 50;
+
     @NotNull private final AnnotationChecker annotationChecker;
     @NotNull private final ExpressionTypingServices expressionTypingServices;
     @NotNull private final CallResolver callResolver;
@@ -72,6 +84,7 @@ public class BodyResolver {
     @NotNull private final KotlinBuiltIns builtIns;
     @NotNull private final OverloadChecker overloadChecker;
     @NotNull private final LanguageVersionSettings languageVersionSettings;
+    private final int parallelThreads;
 
     public BodyResolver(
             @NotNull AnnotationResolver annotationResolver,
@@ -87,7 +100,8 @@ public class BodyResolver {
             @NotNull AnnotationChecker annotationChecker,
             @NotNull KotlinBuiltIns builtIns,
             @NotNull OverloadChecker overloadChecker,
-            @NotNull LanguageVersionSettings languageVersionSettings
+            @NotNull LanguageVersionSettings languageVersionSettings,
+            @NotNull BodyResolveSettings bodyResolveSettings
     ) {
         this.annotationResolver = annotationResolver;
         this.bodyResolveCache = bodyResolveCache;
@@ -103,6 +117,7 @@ public class BodyResolver {
         this.valueParameterResolver = valueParameterResolver;
         this.builtIns = builtIns;
         this.languageVersionSettings = languageVersionSettings;
+        this.parallelThreads = bodyResolveSettings.getParallelThreads();
     }
 
     private void resolveBehaviorDeclarationBodies(@NotNull BodiesResolveContext c) {
@@ -758,22 +773,133 @@ public class BodyResolver {
     }
 
     private void resolveFunctionBodies(@NotNull BodiesResolveContext c) {
+        if (parallelThreads > 1 && !c.getTopDownAnalysisMode().isLocalDeclarations() &&
+            bodyResolveCache instanceof BodyResolveCache.ThrowException) {
+            resolveFunctionBodiesInParallel(c);
+            return;
+        }
+
         for (Map.Entry<KtNamedFunction, SimpleFunctionDescriptor> entry : c.getFunctions().entrySet()) {
             KtNamedFunction declaration = entry.getKey();
 
-            LexicalScope scope = c.getDeclaringScope(declaration);
-            assert scope != null : "Scope is null: " + PsiUtilsKt.getElementTextWithContext(declaration);
-
             if (!c.getTopDownAnalysisMode().isLocalDeclarations() && !(bodyResolveCache instanceof BodyResolveCache.ThrowException) &&
                 expressionTypingServices.getStatementFilter() != StatementFilter.NONE) {
                 bodyResolveCache.resolveFunctionBody(declaration).addOwnDataTo(trace, true);
             }
             else {
-                resolveFunctionBody(c.getOuterDataFlowInfo(), trace, declaration, entry.getValue(), scope);
+                resolveFunctionBody(c, trace, declaration, entry.getValue());
+            }
+        }
+    }
+
+    private void resolveFunctionBody(
+            @NotNull BodiesResolveContext c,
+            @NotNull BindingTrace trace,
+            @NotNull KtNamedFunction declaration,
+            @NotNull SimpleFunctionDescriptor descriptor
+    ) {
+        LexicalScope scope = c.getDeclaringScope(declaration);
+        assert scope != null : "Scope is null: " + PsiUtilsKt.getElementTextWithContext(declaration);
+
+        resolveFunctionBody(c.getOuterDataFlowInfo(), trace, declaration, descriptor, scope);
+    }
+
+    /**
+     * Resolves function bodies of each file on a separate worker, recording into a temporary trace of the file.
+     * The temporary traces are committed in the order of files after all workers finish, so the data recorded for the bodies
+     * is added to the shared trace in the same order as in the serial mode.
+     *
+     * Headers are resolved lazily on demand as in the serial mode, and they record into the shared trace directly from the workers:
+     * that's why the shared trace should be thread-safe (see
+     * {@link org.jetbrains.kotlin.config.CommonConfigurationKeys#PARALLEL_BODY_RESOLVE_THREADS}). The order of the diagnostics
+     * reported while resolving the headers depends on the scheduling; the compiler sorts the diagnostics by position before
+     * reporting them anyway.
+     */
+    private void resolveFunctionBodiesInParallel(@NotNull final BodiesResolveContext c) {
+        Map<PsiFile, List<Map.Entry<KtNamedFunction, SimpleFunctionDescriptor>>> functionsByFile =
+                new LinkedHashMap<PsiFile, List<Map.Entry<KtNamedFunction, SimpleFunctionDescriptor>>>();
+        for (Map.Entry<KtNamedFunction, SimpleFunctionDescriptor> entry : c.getFunctions().entrySet()) {
+            PsiFile file = entry.getKey().getContainingFile();
+            List<Map.Entry<KtNamedFunction, SimpleFunctionDescriptor>> functions = functionsByFile.get(file);
+            if (functions == null) {
+                functions = new ArrayList<Map.Entry<KtNamedFunction, SimpleFunctionDescriptor>>();
+                functionsByFile.put(file, functions);
+            }
+            functions.add(entry);
+        }
+
+        final AtomicBoolean canceled = new AtomicBoolean();
+        List<TemporaryBindingTrace> fileTraces = new ArrayList<TemporaryBindingTrace>(functionsByFile.size());
+        List<Future<?>> futures = new ArrayList<Future<?>>(functionsByFile.size());
+
+        int threads = Math.max(1, Math.min(parallelThreads, functionsByFile.size()));
+        ExecutorService executor = WorkerThreadPools.newFixedThreadPool(threads, "Kotlin body resolve worker");
+        try {
+            for (final List<Map.Entry<KtNamedFunction, SimpleFunctionDescriptor>> functions : functionsByFile.values()) {
+                final TemporaryBindingTrace fileTrace = TemporaryBindingTrace.create(trace, "Trace for resolving function bodies of a file");
+                fileTraces.add(fileTrace);
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Map.Entry<KtNamedFunction, SimpleFunctionDescriptor> entry : functions) {
+                            if (canceled.get()) return;
+                            resolveFunctionBody(c, fileTrace, entry.getKey(), entry.getValue());
+                        }
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                awaitResolution(future, canceled);
+            }
+        }
+        finally {
+            canceled.set(true);
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+
+        for (TemporaryBindingTrace fileTrace : fileTraces) {
+            fileTrace.commit();
+        }
+    }
+
+    private static void awaitResolution(@NotNull Future<?> future, @NotNull AtomicBoolean canceled) {
+        while (true) {
+            try {
+                ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
+                future.get(CHECK_CANCELED_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                return;
+            }
+            catch (TimeoutException ignored) {
+            }
+            catch (InterruptedException e) {
+                canceled.set(true);
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException();
+            }
+            catch (ExecutionException e) {
+                canceled.set(true);
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IllegalStateException(cause);
             }
         }
     }
 
+    private static void awaitTermination(@NotNull ExecutorService executor) {
+        // Bodies which are being resolved at the moment still use the shared trace, so they should finish before it's read
+        try {
+            while (!executor.awaitTermination(CHECK_CANCELED_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                // wait for the running workers
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     public void resolveFunctionBody(
             @NotNull DataFlowInfo outerDataFlowInfo,
             @NotNull BindingTrace trace,
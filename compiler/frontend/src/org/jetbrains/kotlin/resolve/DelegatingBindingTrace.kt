@@ -88,7 +88,7 @@ open class DelegatingBindingTrace(private val parentContext: BindingContext,
     }
 
     override fun <K, V> get(slice: ReadOnlySlice<K, V>, key: K): V? {
-        val value = map.get(slice, key)
+        val value = getOwn(slice, key)
         if (slice is SetSlice<*>) {
             assert(value != null)
             if (value != SetSlice.DEFAULT) return value
@@ -100,8 +100,10 @@ open class DelegatingBindingTrace(private val parentContext: BindingContext,
         return parentContext.get(slice, key)
     }
 
+    protected open fun <K, V> getOwn(slice: ReadOnlySlice<K, V>, key: K): V? = map.get(slice, key)
+
     override fun <K, V> getKeys(slice: WritableSlice<K, V>): Collection<K> {
-        val keys = map.getKeys(slice)
+        val keys = getOwnKeys(slice)
         val fromParent = parentContext.getKeys(slice)
         if (keys.isEmpty()) return fromParent
         if (fromParent.isEmpty()) return keys
@@ -109,6 +111,8 @@ open class DelegatingBindingTrace(private val parentContext: BindingContext,
         return keys + fromParent
     }
 
+    protected open fun <K, V> getOwnKeys(slice: WritableSlice<K, V>): Collection<K> = map.getKeys(slice)
+
     override fun getType(expression: KtExpression): KotlinType? {
         val typeInfo = get(BindingContext.EXPRESSION_TYPE_INFO, expression)
         return typeInfo?.type
@@ -139,6 +143,10 @@ open class DelegatingBindingTrace(private val parentContext: BindingContext,
         mutableDiagnostics?.clear()
     }
 
+    fun removeKeys(predicate: (Any?) -> Boolean) {
+        map.removeKeys(predicate)
+    }
+
     override fun report(diagnostic: Diagnostic) {
         if (mutableDiagnostics == null) {
             return
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.resolve
+
+import org.jetbrains.kotlin.diagnostics.Diagnostic
+import org.jetbrains.kotlin.psi.KtExpression
+import org.jetbrains.kotlin.types.KotlinType
+import org.jetbrains.kotlin.util.slicedMap.ReadOnlySlice
+import org.jetbrains.kotlin.util.slicedMap.WritableSlice
+
+/**
+ * A [DelegatingBindingTrace] which may be read and written from several threads at once.
+ * Every access to the own data of the trace is guarded by the trace's monitor. The parent context is read outside of it,
+ * because reading it may resolve declarations lazily, so the parent must support concurrent access itself
+ * (see CliLightClassGenerationSupport.ThreadSafeNoScopeRecordCliBindingTrace).
+ */
+class ThreadSafeDelegatingBindingTrace(
+        parentContext: BindingContext,
+        name: String,
+        withParentDiagnostics: Boolean = true,
+        filter: BindingTraceFilter = BindingTraceFilter.ACCEPT_ALL
+) : DelegatingBindingTrace(parentContext, name, withParentDiagnostics, filter) {
+    @Synchronized
+    override fun <K, V> record(slice: WritableSlice<K, V>, key: K, value: V) {
+        super.record(slice, key, value)
+    }
+
+    @Synchronized
+    override fun <K> record(slice: WritableSlice<K, Boolean>, key: K) {
+        super.record(slice, key)
+    }
+
+    @Synchronized
+    override fun <K, V> getOwn(slice: ReadOnlySlice<K, V>, key: K): V? = super.getOwn(slice, key)
+
+    @Synchronized
+    override fun <K, V> getOwnKeys(slice: WritableSlice<K, V>): Collection<K> = ArrayList(super.getOwnKeys(slice))
+
+    @Synchronized
+    override fun recordType(expression: KtExpression, type: KotlinType?) {
+        super.recordType(expression, type)
+    }
+
+    @Synchronized
+    override fun report(diagnostic: Diagnostic) {
+        super.report(diagnostic)
+    }
+}
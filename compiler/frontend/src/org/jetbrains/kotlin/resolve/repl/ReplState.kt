@@ -54,6 +54,13 @@ class ReplState {
         lines[ktFile] = LineInfo.FailedLine(ktFile, successfulLines.lastOrNull())
     }
 
+    // lines submitted after the rollback see only the first successfulLinesCount successful lines
+    fun rollbackTo(successfulLinesCount: Int) {
+        while (successfulLines.size > successfulLinesCount) {
+            lines.remove(successfulLines.removeAt(successfulLines.size - 1).linePsi)
+        }
+    }
+
     private fun lineInfo(ktFile: KtFile) = lines[ktFile]
 
     // use sealed?
@@ -74,8 +74,9 @@ abstract class PerformanceCounter protected constructor(val name: String) {
 
     internal val excludedFrom: MutableList<CounterWithExclude> = ArrayList()
 
-    private var count: Int = 0
-    private var totalTimeNanos: Long = 0
+    // Counters are updated from several threads when the source files are parsed in parallel
+    private val count = AtomicInteger()
+    private val totalTimeNanos = AtomicLong()
 
     init {
         synchronized(allCounters) {
@@ -84,11 +85,11 @@ abstract class PerformanceCounter protected constructor(val name: String) {
     }
 
     fun increment() {
-        count++
+        count.incrementAndGet()
     }
 
     fun <T> time(block: () -> T): T {
-        count++
+        count.incrementAndGet()
         if (!enabled) return block()
 
         excludedFrom.forEach { it.enterExcludedMethod() }
@@ -101,17 +102,19 @@ abstract class PerformanceCounter protected constructor(val name: String) {
     }
 
     fun reset() {
-        count = 0
-        totalTimeNanos = 0
+        count.set(0)
+        totalTimeNanos.set(0)
     }
 
     protected fun incrementTime(delta: Long) {
-        totalTimeNanos += delta
+        totalTimeNanos.addAndGet(delta)
     }
 
     protected abstract fun <T> countTime(block: () -> T): T
 
     fun report(consumer: (String) -> Unit) {
+        val count = this.count.get()
+        val totalTimeNanos = this.totalTimeNanos.get()
         if (totalTimeNanos == 0L) {
             consumer("$name performed $count times")
         }
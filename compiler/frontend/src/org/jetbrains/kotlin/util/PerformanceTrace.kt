@@ -0,0 +1,209 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.util
+
+import java.io.File
+import java.io.Serializable
+import java.lang.management.ManagementFactory
+import java.util.*
+
+/**
+ * A span of a compilation phase (e.g. load sources, resolve, codegen) with the resources it used.
+ * The aggregated spans sum up all the (non-nested) executions of a fine-grained phase (e.g. inline, optimization) on a thread,
+ * [count] is the number of executions and [startNanos] is the start of the first one. So the [wallNanos] of an aggregated span is
+ * the time the thread spent in the phase, not the duration of an interval starting at [startNanos].
+ */
+class PerformanceSpan(
+        val phase: String,
+        val description: String?,
+        /** Relative to the start of the trace */
+        val startNanos: Long,
+        val wallNanos: Long,
+        /** 0 if the thread CPU time is not supported by the JVM */
+        val cpuNanos: Long,
+        /** 0 if the thread allocations are not tracked by the JVM */
+        val allocatedBytes: Long,
+        val files: Int,
+        val lines: Int,
+        val threadId: Long,
+        val threadName: String,
+        val aggregated: Boolean,
+        val count: Int
+) : Serializable {
+    override fun toString(): String =
+            "$phase${description?.let { " ($it)" } ?: ""}: ${wallNanos / 1000000} ms, cpu ${cpuNanos / 1000000} ms, " +
+            "allocated ${allocatedBytes / 1024} kb" +
+            (if (files > 0) ", $files files ($lines lines)" else "") +
+            (if (aggregated) ", $count times" else "")
+
+    companion object {
+        const val serialVersionUID: Long = 0
+    }
+}
+
+/**
+ * Collects the [PerformanceSpan]s of a compilation, which could then be written in the Chrome trace format (see [writeChromeTrace])
+ * or passed elsewhere, e.g. to the daemon client. Unlike [PerformanceCounter] a trace belongs to a single compilation,
+ * it is accessible to the compiler via [org.jetbrains.kotlin.config.CommonConfigurationKeys.PERFORMANCE_TRACE].
+ *
+ * The trace is thread-safe, a phase could be measured on any thread.
+ */
+class PerformanceTrace {
+    private val traceStartNanos = System.nanoTime()
+    private val spans = ArrayList<PerformanceSpan>()
+    private val aggregates = LinkedHashMap<AggregateKey, Aggregate>()
+    private val enteredAggregatedPhases = ThreadLocal<MutableSet<String>>()
+
+    private data class AggregateKey(val phase: String, val threadId: Long)
+
+    private class Aggregate(val startNanos: Long, val threadName: String) {
+        var wallNanos = 0L
+        var cpuNanos = 0L
+        var allocatedBytes = 0L
+        var count = 0
+    }
+
+    inner class Measurement internal constructor(private val phase: String, private val aggregated: Boolean) {
+        private val thread = Thread.currentThread()
+        private val startNanos = System.nanoTime()
+        private val startCpuNanos = currentThreadCpuNanos()
+        private val startAllocatedBytes = currentThreadAllocatedBytes()
+
+        /**
+         * Should be called on the thread where the measurement was started
+         */
+        @JvmOverloads
+        fun finish(files: Int = 0, lines: Int = 0, description: String? = null) {
+            val wallNanos = System.nanoTime() - startNanos
+            val cpuNanos = currentThreadCpuNanos() - startCpuNanos
+            val allocatedBytes = currentThreadAllocatedBytes() - startAllocatedBytes
+            if (aggregated) {
+                enteredAggregatedPhases.get()?.remove(phase)
+                addToAggregate(phase, thread, startNanos, wallNanos, cpuNanos, allocatedBytes)
+            }
+            else {
+                add(PerformanceSpan(phase, description, startNanos - traceStartNanos, wallNanos, cpuNanos, allocatedBytes, files, lines,
+                                    thread.id, thread.name, aggregated = false, count = 1))
+            }
+        }
+    }
+
+    fun start(phase: String): Measurement = Measurement(phase, aggregated = false)
+
+    /**
+     * Returns null if the [phase] is already measured on the current thread, so the nested executions are not counted twice
+     */
+    fun startAggregated(phase: String): Measurement? {
+        val entered = enteredAggregatedPhases.get() ?: HashSet<String>().apply { enteredAggregatedPhases.set(this) }
+        return if (entered.add(phase)) Measurement(phase, aggregated = true) else null
+    }
+
+    inline fun <T> measure(phase: String, files: Int = 0, lines: Int = 0, description: String? = null, body: () -> T): T {
+        val measurement = start(phase)
+        try {
+            return body()
+        }
+        finally {
+            measurement.finish(files, lines, description)
+        }
+    }
+
+    @Synchronized
+    fun add(span: PerformanceSpan) {
+        spans.add(span)
+    }
+
+    /**
+     * The spans in the order of their completion, followed by the aggregated ones of each thread
+     */
+    @Synchronized
+    fun getSpans(): List<PerformanceSpan> =
+            spans + aggregates.map {
+                val (key, aggregate) = it
+                PerformanceSpan(key.phase, null, aggregate.startNanos - traceStartNanos, aggregate.wallNanos, aggregate.cpuNanos, aggregate.allocatedBytes,
+                                0, 0, key.threadId, aggregate.threadName, aggregated = true, count = aggregate.count)
+            }
+
+    fun writeChromeTrace(file: File) {
+        file.parentFile?.mkdirs()
+        file.writeText(renderChromeTrace(getSpans()))
+    }
+
+    @Synchronized
+    private fun addToAggregate(phase: String, thread: Thread, startNanos: Long, wallNanos: Long, cpuNanos: Long, allocatedBytes: Long) {
+        val aggregate = aggregates.getOrPut(AggregateKey(phase, thread.id)) { Aggregate(startNanos, thread.name) }
+        aggregate.wallNanos += wallNanos
+        aggregate.cpuNanos += cpuNanos
+        aggregate.allocatedBytes += allocatedBytes
+        aggregate.count++
+    }
+
+    companion object {
+        private val threadMXBean = ManagementFactory.getThreadMXBean()
+
+        private val allocationsMXBean: com.sun.management.ThreadMXBean? =
+                try {
+                    (threadMXBean as? com.sun.management.ThreadMXBean)?.let { if (it.isThreadAllocatedMemorySupported) it else null }
+                }
+                catch (e: LinkageError) {
+                    // not a HotSpot-based JVM
+                    null
+                }
+
+        private fun currentThreadCpuNanos(): Long =
+                if (threadMXBean.isCurrentThreadCpuTimeSupported) threadMXBean.currentThreadCpuTime else 0L
+
+        private fun currentThreadAllocatedBytes(): Long =
+                allocationsMXBean?.getThreadAllocatedBytes(Thread.currentThread().id) ?: 0L
+
+        /**
+         * Renders the spans as complete ("X") events of the Chrome trace event format, which could be opened in chrome://tracing
+         */
+        fun renderChromeTrace(spans: List<PerformanceSpan>): String {
+            fun String.quote(): String {
+                val sb = StringBuilder(length + 2).append('"')
+                for (c in this) {
+                    when {
+                        c == '"' || c == '\\' -> sb.append('\\').append(c)
+                        c < ' ' -> sb.append("\\u%04x".format(c.toInt()))
+                        else -> sb.append(c)
+                    }
+                }
+                return sb.append('"').toString()
+            }
+
+            val events = ArrayList<String>()
+            for ((threadId, threadName) in spans.map { it.threadId to it.threadName }.distinct()) {
+                events.add("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":$threadId,\"args\":{\"name\":${threadName.quote()}}}")
+            }
+            for (span in spans) {
+                val args = listOf("\"cpuMs\":${span.cpuNanos / 1000000}",
+                                  "\"allocatedBytes\":${span.allocatedBytes}",
+                                  "\"files\":${span.files}",
+                                  "\"lines\":${span.lines}",
+                                  "\"count\":${span.count}") +
+                           listOfNotNull(span.description?.let { "\"description\":${it.quote()}" },
+                                         // drawn from the first execution, with the total time of the executions on the thread
+                                         if (span.aggregated) "\"cumulative\":true" else null)
+                events.add("{\"name\":${span.phase.quote()},\"cat\":\"${if (span.aggregated) "aggregated" else "phase"}\",\"ph\":\"X\"," +
+                           "\"ts\":${span.startNanos / 1000},\"dur\":${span.wallNanos / 1000},\"pid\":1,\"tid\":${span.threadId}," +
+                           "\"args\":{${args.joinToString(",")}}}")
+            }
+            return events.joinToString(",\n", prefix = "{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n", postfix = "\n]}\n")
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.util.slicedMap;
 
 import com.google.common.collect.ImmutableMap;
+import kotlin.jvm.functions.Function1;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.TestOnly;
 
@@ -26,6 +27,11 @@ public interface MutableSlicedMap extends SlicedMap {
 
     void clear();
 
+    /**
+     * Removes the values of all slices recorded for the keys matching the predicate
+     */
+    void removeKeys(@NotNull Function1<Object, Boolean> predicate);
+
     @NotNull
     @TestOnly
     <K, V> ImmutableMap<K, V> getSliceContents(@NotNull ReadOnlySlice<K, V> slice);
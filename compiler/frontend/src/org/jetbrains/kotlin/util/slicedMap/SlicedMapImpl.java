@@ -20,13 +20,14 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
 import com.intellij.openapi.util.Key;
-import com.intellij.openapi.util.UserDataHolder;
 import gnu.trove.THashMap;
+import kotlin.jvm.functions.Function1;
 import kotlin.jvm.functions.Function3;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
 
 public class SlicedMapImpl implements MutableSlicedMap {
@@ -35,7 +36,9 @@ public class SlicedMapImpl implements MutableSlicedMap {
         return new SlicedMapImpl();
     }
 
-    private final Map<Object, UserDataHolderImpl> map = new THashMap<Object, UserDataHolderImpl>(0);
+    // Memory optimization: an open addressing map per slice instead of a user data holder per key,
+    // a key costs only two slots in the map of each slice it is recorded in
+    private final Map<Key<?>, Map<Object, Object>> sliceMaps = new THashMap<Key<?>, Map<Object, Object>>(0);
     private Multimap<WritableSlice<?, ?>, Object> collectiveSliceKeys = null;
 
     @Override
@@ -44,17 +47,18 @@ public class SlicedMapImpl implements MutableSlicedMap {
             return;
         }
 
-        UserDataHolderImpl holder = map.get(key);
-        if (holder == null) {
-            holder = new UserDataHolderImpl();
-            map.put(key, holder);
-        }
-
         Key<V> sliceKey = slice.getKey();
 
+        Map<Object, Object> sliceMap = sliceMaps.get(sliceKey);
+        if (sliceMap == null) {
+            sliceMap = new THashMap<Object, Object>(0);
+            sliceMaps.put(sliceKey, sliceMap);
+        }
+
         RewritePolicy rewritePolicy = slice.getRewritePolicy();
         if (rewritePolicy.rewriteProcessingNeeded(key)) {
-            V oldValue = holder.getUserData(sliceKey);
+            //noinspection unchecked
+            V oldValue = (V) sliceMap.get(key);
             if (oldValue != null) {
                 //noinspection unchecked
                 if (!rewritePolicy.processRewrite(slice, key, oldValue, value)) {
@@ -71,21 +75,47 @@ public class SlicedMapImpl implements MutableSlicedMap {
             collectiveSliceKeys.put(slice, key);
         }
 
-        holder.putUserData(sliceKey, value);
+        sliceMap.put(key, value);
         slice.afterPut(this, key, value);
     }
 
     @Override
     public void clear() {
-        map.clear();
+        sliceMaps.clear();
         collectiveSliceKeys = null;
     }
 
+    @Override
+    public void removeKeys(@NotNull Function1<Object, Boolean> predicate) {
+        for (Iterator<Map<Object, Object>> sliceIterator = sliceMaps.values().iterator(); sliceIterator.hasNext(); ) {
+            Map<Object, Object> sliceMap = sliceIterator.next();
+
+            for (Iterator<Object> keyIterator = sliceMap.keySet().iterator(); keyIterator.hasNext(); ) {
+                if (predicate.invoke(keyIterator.next())) {
+                    keyIterator.remove();
+                }
+            }
+
+            if (sliceMap.isEmpty()) {
+                sliceIterator.remove();
+            }
+        }
+
+        if (collectiveSliceKeys != null) {
+            for (Iterator<Map.Entry<WritableSlice<?, ?>, Object>> iterator = collectiveSliceKeys.entries().iterator(); iterator.hasNext(); ) {
+                if (predicate.invoke(iterator.next().getValue())) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
     @Override
     public <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
-        UserDataHolderImpl holder = map.get(key);
+        Map<Object, Object> sliceMap = sliceMaps.get(slice.getKey());
 
-        V value = holder == null ? null : holder.getUserData(slice.getKey());
+        //noinspection unchecked
+        V value = sliceMap == null ? null : (V) sliceMap.get(key);
 
         return slice.computeValue(this, key, value, value == null);
     }
@@ -101,16 +131,11 @@ public class SlicedMapImpl implements MutableSlicedMap {
 
     @Override
     public void forEach(@NotNull Function3<WritableSlice, Object, Object, Void> f) {
-        for (Map.Entry<Object, UserDataHolderImpl> entry : map.entrySet()) {
-            Object key = entry.getKey();
-            UserDataHolderImpl holder = entry.getValue();
+        for (Map.Entry<Key<?>, Map<Object, Object>> sliceEntry : sliceMaps.entrySet()) {
+            WritableSlice slice = ((AbstractWritableSlice) sliceEntry.getKey()).getSlice();
 
-            if (holder == null) continue;
-
-            for (Key<?> sliceKey : holder.getKeys()) {
-                Object value = holder.getUserData(sliceKey);
-
-                f.invoke(((AbstractWritableSlice) sliceKey).getSlice(), key, value);
+            for (Map.Entry<Object, Object> entry : sliceEntry.getValue().entrySet()) {
+                f.invoke(slice, entry.getKey(), entry.getValue());
             }
         }
     }
@@ -118,17 +143,17 @@ public class SlicedMapImpl implements MutableSlicedMap {
     @NotNull
     @Override
     public <K, V> ImmutableMap<K, V> getSliceContents(@NotNull ReadOnlySlice<K, V> slice) {
-        ImmutableMap.Builder<K, V> builder = ImmutableMap.builder();
+        Map<Object, Object> sliceMap = sliceMaps.get(slice.getKey());
+        if (sliceMap == null) return ImmutableMap.of();
 
-        for (Map.Entry<Object, UserDataHolderImpl> entry : map.entrySet()) {
-
-            UserDataHolder holder = entry.getValue();
+        ImmutableMap.Builder<K, V> builder = ImmutableMap.builder();
 
-            V value = holder.getUserData(slice.getKey());
+        for (Map.Entry<Object, Object> entry : sliceMap.entrySet()) {
+            Object value = entry.getValue();
 
             if (value != null) {
                 //noinspection unchecked
-                builder.put((K) entry.getKey(), value);
+                builder.put((K) entry.getKey(), (V) value);
             }
         }
         return builder.build();
@@ -17,6 +17,8 @@
 package org.jetbrains.kotlin.incremental
 
 import org.jetbrains.kotlin.build.GeneratedJvmClass
+import org.jetbrains.kotlin.incremental.snapshots.ClasspathEntryClassesMap
+import org.jetbrains.kotlin.incremental.snapshots.ClasspathSnapshotMap
 import org.jetbrains.kotlin.incremental.snapshots.FileSnapshotMap
 import org.jetbrains.kotlin.incremental.storage.BasicStringMap
 import org.jetbrains.kotlin.incremental.storage.PathStringDescriptor
@@ -34,11 +36,15 @@ class GradleIncrementalCacheImpl(
         private val SOURCES_TO_CLASSFILES = "sources-to-classfiles"
         private val GENERATED_SOURCE_SNAPSHOTS = "generated-source-snapshot"
         private val SOURCE_SNAPSHOTS = "source-snapshot"
+        private val CLASSPATH_SNAPSHOTS = "classpath-snapshot"
+        private val CLASSPATH_ENTRY_CLASSES = "classpath-entry-classes"
     }
 
     internal val sourceToClassfilesMap = registerMap(SourceToClassfilesMap(SOURCES_TO_CLASSFILES.storageFile))
     internal val generatedSourceSnapshotMap = registerMap(FileSnapshotMap(GENERATED_SOURCE_SNAPSHOTS.storageFile))
     internal val sourceSnapshotMap = registerMap(FileSnapshotMap(SOURCE_SNAPSHOTS.storageFile))
+    private val classpathEntryClassesMap = registerMap(ClasspathEntryClassesMap(CLASSPATH_ENTRY_CLASSES.storageFile))
+    internal val classpathSnapshotMap = registerMap(ClasspathSnapshotMap(CLASSPATH_SNAPSHOTS.storageFile, classpathEntryClassesMap))
 
     fun removeClassfilesBySources(sources: Iterable<File>): Unit =
             sources.forEach { sourceToClassfilesMap.remove(it) }
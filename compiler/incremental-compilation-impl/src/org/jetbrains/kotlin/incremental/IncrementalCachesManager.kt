@@ -66,6 +66,7 @@ class IncrementalCachesManager (
         lookupCacheField?.let {
             if (flush) {
                 it.flush(false)
+                it.reportCounters(reporter)
             }
             it.close()
             lookupCacheField = null
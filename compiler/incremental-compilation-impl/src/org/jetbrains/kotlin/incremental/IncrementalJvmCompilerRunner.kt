@@ -26,6 +26,7 @@ import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity
 import org.jetbrains.kotlin.cli.common.messages.MessageCollector
 import org.jetbrains.kotlin.cli.common.messages.OutputMessageUtil
 import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler
+import com.intellij.openapi.util.io.FileUtil
 import com.intellij.util.io.PersistentEnumeratorBase
 import org.jetbrains.kotlin.compilerRunner.ArgumentUtils
 import org.jetbrains.kotlin.compilerRunner.OutputItemsCollector
@@ -38,6 +39,7 @@ import org.jetbrains.kotlin.load.kotlin.header.KotlinClassHeader
 import org.jetbrains.kotlin.modules.TargetId
 import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.kotlin.progress.CompilationCanceledStatus
+import org.jetbrains.kotlin.util.PerformanceTrace
 import java.io.File
 import java.io.IOException
 import java.util.*
@@ -93,7 +95,8 @@ class IncrementalJvmCompilerRunner(
         private val reporter: ICReporter,
         private var kaptAnnotationsFileUpdater: AnnotationFileUpdater? = null,
         private val artifactChangesProvider: ArtifactChangesProvider? = null,
-        private val changesRegistry: ChangesRegistry? = null
+        private val changesRegistry: ChangesRegistry? = null,
+        private val performanceTrace: PerformanceTrace? = null
 ) {
     var anyClassesCompiled: Boolean = false
             private set
@@ -134,7 +137,9 @@ class IncrementalJvmCompilerRunner(
             onError(e)
         }
         finally {
+            val flushMeasurement = performanceTrace?.start("IC cache flush")
             caches.close(flush = true)
+            flushMeasurement?.finish()
             reporter.report { "flushed incremental caches" }
         }
     }
@@ -162,19 +167,11 @@ class IncrementalJvmCompilerRunner(
 
         if (changedFiles !is ChangedFiles.Known) return rebuild {"inputs' changes are unknown (first or clean build)"}
 
-        val removedClassFiles = changedFiles.removed.filter(File::isClassFile)
-        if (removedClassFiles.any()) return rebuild {"Removed class files: ${reporter.pathsAsString(removedClassFiles)}"}
-
-        val modifiedClassFiles = changedFiles.modified.filter(File::isClassFile)
-        if (modifiedClassFiles.any()) return rebuild {"Modified class files: ${reporter.pathsAsString(modifiedClassFiles)}"}
-
-        val classpathSet = args.classpathAsList.toHashSet()
-        val modifiedClasspathEntries = changedFiles.modified.filter {it in classpathSet}
         val lastBuildInfo = BuildInfo.read(lastBuildInfoFile)
         reporter.report { "Last Kotlin Build info -- $lastBuildInfo" }
-        val classpathChanges = getClasspathChanges(modifiedClasspathEntries, lastBuildInfo)
+        val classpathChanges = getClasspathChanges(caches, args.classpathAsList, changedFiles, lastBuildInfo)
         if (classpathChanges !is ChangesEither.Known) {
-            return rebuild {"could not get changes from modified classpath entries: ${reporter.pathsAsString(modifiedClasspathEntries)}"}
+            return rebuild {"could not get changes from modified classpath entries or class files"}
         }
 
         val javaFilesChanges = javaFilesProcessor.process(changedFiles)
@@ -216,10 +213,17 @@ class IncrementalJvmCompilerRunner(
     }
 
     private fun getClasspathChanges(
-            modifiedClasspath: List<File>,
+            caches: IncrementalCachesManager,
+            classpath: List<File>,
+            changedFiles: ChangedFiles.Known,
             lastBuildInfo: BuildInfo?
     ): ChangesEither {
-        if (modifiedClasspath.isEmpty()) {
+        val classpathSet = classpath.toHashSet()
+        val modifiedClasspath = changedFiles.modified.filter { it in classpathSet }
+        val modifiedClassFiles = changedFiles.modified.filter(File::isClassFile)
+        val removedClassFiles = changedFiles.removed.filter(File::isClassFile)
+
+        if (modifiedClasspath.isEmpty() && modifiedClassFiles.isEmpty() && removedClassFiles.isEmpty()) {
             reporter.report {"No classpath changes"}
             return ChangesEither.Known()
         }
@@ -227,25 +231,62 @@ class IncrementalJvmCompilerRunner(
         val lastBuildTS = lastBuildInfo?.startTS
         if (lastBuildTS == null) {
             reporter.report {"Could not determine last build timestamp"}
-            return ChangesEither.Unknown()
         }
 
+        val classpathSnapshots = caches.incrementalCache.classpathSnapshotMap
         val symbols = HashSet<LookupSymbol>()
         val fqNames = HashSet<FqName>()
+        val abiChanges = ArrayList<ChangeInfo>()
+        var hasUnknownChanges = false
+
         for (file in modifiedClasspath) {
-            val diffs = artifactChangesProvider?.getChanges(file, lastBuildTS)
+            val diffs = lastBuildTS?.let { artifactChangesProvider?.getChanges(file, it) }
 
-            if (diffs == null) {
+            if (diffs != null) {
+                diffs.forEach {
+                    symbols.addAll(it.dirtyLookupSymbols)
+                    fqNames.addAll(it.dirtyClassesFqNames)
+                }
+                // the snapshot is outdated now, a fresh one is recorded after the compilation
+                classpathSnapshots.remove(file)
+                continue
+            }
+
+            val fileAbiChanges = classpathSnapshots.compareAndUpdate(file)
+            if (fileAbiChanges == null) {
                 reporter.report {"Could not get changes for file: $file"}
-                return ChangesEither.Unknown()
+                hasUnknownChanges = true
+                continue
             }
+            abiChanges.addAll(fileAbiChanges)
+        }
 
-            diffs.forEach {
-                symbols.addAll(it.dirtyLookupSymbols)
-                fqNames.addAll(it.dirtyClassesFqNames)
+        if (modifiedClassFiles.isNotEmpty() || removedClassFiles.isNotEmpty()) {
+            val classpathDirs = classpath.filter(File::isDirectory)
+            val modifiedClassFilesSet = modifiedClassFiles.toHashSet()
+            val classFilesByRoot = (modifiedClassFiles + removedClassFiles).groupBy { classFile ->
+                classpathDirs.firstOrNull { FileUtil.isAncestor(it, classFile, true) }
+            }
+
+            for ((root, classFiles) in classFilesByRoot) {
+                val (modified, removed) = classFiles.partition { it in modifiedClassFilesSet }
+                val rootAbiChanges = root?.let { classpathSnapshots.compareAndUpdate(it, modified, removed) }
+                if (rootAbiChanges == null) {
+                    reporter.report {"Could not get changes for class files: ${reporter.pathsAsString(classFiles)}"}
+                    hasUnknownChanges = true
+                    continue
+                }
+                abiChanges.addAll(rootAbiChanges)
             }
         }
 
+        // compareAndUpdate snapshots the entries seen modified for the first time, so all of them are checked before a rebuild
+        if (hasUnknownChanges) return ChangesEither.Unknown()
+
+        val (abiLookupSymbols, abiFqNames) = CompilationResult(changes = abiChanges.asSequence()).getDirtyData(listOf(caches.incrementalCache), reporter)
+        symbols.addAll(abiLookupSymbols)
+        fqNames.addAll(abiFqNames)
+
         return ChangesEither.Known(symbols, fqNames)
     }
 
@@ -439,7 +480,7 @@ class IncrementalJvmCompilerRunner(
 
             reporter.report { "compiling with args: ${ArgumentUtils.convertArgumentsToStringList(args)}" }
             reporter.report { "compiling with classpath: ${classpath.toList().sorted().joinToString()}" }
-            val compileServices = makeCompileServices(incrementalCaches, lookupTracker, compilationCanceledStatus)
+            val compileServices = makeCompileServices(incrementalCaches, lookupTracker, compilationCanceledStatus, performanceTrace)
             val exitCode = compiler.exec(messageCollector, compileServices, args)
             val generatedFiles = outputItemCollector.generatedFiles(targets, targets.first(), {sourcesToCompile}, {outputDir})
             reporter.reportCompileIteration(sourcesToCompile, exitCode)
@@ -21,10 +21,16 @@ import java.io.File
 
 internal const val STANDALONE_CACHE_VERSION = 0
 internal const val STANDALONE_VERSION_FILE_NAME = "standalone-ic-format-version.txt"
+internal const val FILE_SNAPSHOT_VERSION = 1
+internal const val FILE_SNAPSHOT_VERSION_FILE_NAME = "file-snapshot-format-version.txt"
 
 fun standaloneCacheVersion(dataRoot: File): CacheVersion =
         customCacheVersion(STANDALONE_CACHE_VERSION, STANDALONE_VERSION_FILE_NAME, dataRoot)
 
+// The format of FileSnapshotExternalizer
+fun fileSnapshotCacheVersion(dataRoot: File): CacheVersion =
+        customCacheVersion(FILE_SNAPSHOT_VERSION, FILE_SNAPSHOT_VERSION_FILE_NAME, dataRoot, forceEnable = true)
+
 fun customCacheVersion(version: Int, fileName: String, dataRoot: File, forceEnable: Boolean = false): CacheVersion =
         CacheVersion(ownVersion = version,
                 versionFile = File(dataRoot, fileName),
@@ -36,4 +42,5 @@ fun customCacheVersion(version: Int, fileName: String, dataRoot: File, forceEnab
 fun commonCacheVersions(cachesDir: File): List<CacheVersion> =
         listOf(normalCacheVersion(cachesDir),
                experimentalCacheVersion(cachesDir),
-               dataContainerCacheVersion(cachesDir))
\ No newline at end of file
+               dataContainerCacheVersion(cachesDir),
+               fileSnapshotCacheVersion(cachesDir))
\ No newline at end of file
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.incremental.snapshots
+
+import org.jetbrains.kotlin.incremental.md5
+import org.jetbrains.kotlin.incremental.storage.ProtoMapValue
+import org.jetbrains.kotlin.inline.inlineFunctionsJvmNames
+import org.jetbrains.kotlin.load.kotlin.FileBasedKotlinClass
+import org.jetbrains.kotlin.load.kotlin.header.KotlinClassHeader
+import org.jetbrains.kotlin.name.ClassId
+import org.jetbrains.kotlin.resolve.jvm.JvmClassName
+import org.jetbrains.kotlin.serialization.jvm.BitEncoding
+import org.jetbrains.org.objectweb.asm.*
+import java.util.*
+
+/**
+ * ABI of a single class file from the classpath.
+ *
+ * [protoData] is the Kotlin metadata of a class, file facade or multifile class part and is compared with [difference];
+ * it is null for Java classes. [signatureHash] covers everything that affects the class as a whole (Java class header),
+ * [memberHashes] maps member names to the hash of all their non-private signatures (Java members),
+ * inline function bodies and constant values (Kotlin classes).
+ */
+class ClassAbiSnapshot(
+        val protoData: ProtoMapValue?,
+        val signatureHash: Long,
+        val memberHashes: Map<String, Long>
+) {
+    fun isSameAbi(other: ClassAbiSnapshot): Boolean =
+            signatureHash == other.signatureHash &&
+            memberHashes == other.memberHashes &&
+            isSameProto(protoData, other.protoData)
+
+    override fun toString(): String =
+            "ClassAbiSnapshot(kotlin=${protoData != null}, signatureHash=$signatureHash, members=${memberHashes.size})"
+
+    companion object {
+        /**
+         * Returns the internal name of the class and its ABI snapshot,
+         * or null if the class can't be referenced from sources (synthetic classes, lambdas, multifile facades).
+         */
+        fun create(bytes: ByteArray): Pair<String, ClassAbiSnapshot>? {
+            val kotlinClass = FileBasedKotlinClass.create(bytes) {
+                classId, classVersion, header, innerClasses ->
+                BytesKotlinClass(bytes, classId, classVersion, header, innerClasses)
+            }
+
+            return if (kotlinClass != null) createForKotlinClass(kotlinClass) else createForJavaClass(bytes)
+        }
+
+        private fun createForKotlinClass(kotlinClass: BytesKotlinClass): Pair<String, ClassAbiSnapshot>? {
+            val header = kotlinClass.classHeader
+            val data = header.data ?: return null
+            val strings = header.strings ?: return null
+
+            val isPackageFacade = when (header.kind) {
+                KotlinClassHeader.Kind.CLASS -> false
+                KotlinClassHeader.Kind.FILE_FACADE,
+                KotlinClassHeader.Kind.MULTIFILE_CLASS_PART -> true
+                else -> return null
+            }
+
+            val protoData = ProtoMapValue(isPackageFacade, BitEncoding.decodeBytes(data), strings)
+            val internalName = JvmClassName.byClassId(kotlinClass.classId).internalName
+            val memberHashes = kotlinMemberHashes(kotlinClass.fileContents, inlineFunctionsJvmNames(header))
+            return internalName to ClassAbiSnapshot(protoData, 0, memberHashes)
+        }
+
+        // Kotlin sources see the class through its metadata, except for the things inlined into them:
+        // bodies of inline functions and values of constants
+        private fun kotlinMemberHashes(bytes: ByteArray, inlineFunctions: Set<String>): Map<String, Long> {
+            val members = MemberSignatures()
+
+            ClassReader(bytes).accept(object : ClassVisitor(Opcodes.ASM5) {
+                override fun visitField(access: Int, name: String, desc: String, signature: String?, value: Any?): FieldVisitor? {
+                    if (value != null && access and Opcodes.ACC_PRIVATE == 0) {
+                        members.add(name, "$desc=$value")
+                    }
+                    return null
+                }
+
+                override fun visitMethod(access: Int, name: String, desc: String, signature: String?, exceptions: Array<out String>?): MethodVisitor? {
+                    if (name + desc !in inlineFunctions) return null
+
+                    val dummyClassWriter = ClassWriter(Opcodes.ASM5)
+                    return object : MethodVisitor(Opcodes.ASM5, dummyClassWriter.visitMethod(0, name, desc, null, exceptions)) {
+                        override fun visitEnd() {
+                            members.add(name, desc + ":" + dummyClassWriter.toByteArray().md5())
+                        }
+                    }
+                }
+            }, if (inlineFunctions.isEmpty()) SKIP_ALL_BUT_SIGNATURES else 0)
+
+            return members.toHashes()
+        }
+
+        private fun createForJavaClass(bytes: ByteArray): Pair<String, ClassAbiSnapshot>? {
+            var internalName: String? = null
+            var isSynthetic = false
+            val header = StringBuilder()
+            val members = MemberSignatures()
+
+            ClassReader(bytes).accept(object : ClassVisitor(Opcodes.ASM5) {
+                override fun visit(version: Int, access: Int, name: String, signature: String?, superName: String?, interfaces: Array<out String>?) {
+                    internalName = name
+                    isSynthetic = access and Opcodes.ACC_SYNTHETIC != 0
+                    header.append(access).append(':').append(signature).append(':').append(superName)
+                    interfaces?.sorted()?.forEach { header.append(':').append(it) }
+                }
+
+                override fun visitAnnotation(desc: String, visible: Boolean): AnnotationVisitor? {
+                    header.append("@").append(desc)
+                    return null
+                }
+
+                override fun visitField(access: Int, name: String, desc: String, signature: String?, value: Any?): FieldVisitor? {
+                    if (access and (Opcodes.ACC_PRIVATE or Opcodes.ACC_SYNTHETIC) != 0) return null
+
+                    val field = StringBuilder("field:$access:$desc:$signature=$value")
+                    return object : FieldVisitor(Opcodes.ASM5) {
+                        override fun visitAnnotation(desc: String, visible: Boolean): AnnotationVisitor? {
+                            field.append("@").append(desc)
+                            return null
+                        }
+
+                        override fun visitEnd() {
+                            members.add(name, field.toString())
+                        }
+                    }
+                }
+
+                override fun visitMethod(access: Int, name: String, desc: String, signature: String?, exceptions: Array<out String>?): MethodVisitor? {
+                    if (name == "<clinit>" || access and (Opcodes.ACC_PRIVATE or Opcodes.ACC_SYNTHETIC or Opcodes.ACC_BRIDGE) != 0) return null
+
+                    val method = StringBuilder("method:$access:$desc:$signature")
+                    exceptions?.sorted()?.forEach { method.append(':').append(it) }
+                    return object : MethodVisitor(Opcodes.ASM5) {
+                        override fun visitAnnotation(desc: String, visible: Boolean): AnnotationVisitor? {
+                            method.append("@").append(desc)
+                            return null
+                        }
+
+                        override fun visitParameterAnnotation(parameter: Int, desc: String, visible: Boolean): AnnotationVisitor? {
+                            method.append("@").append(parameter).append(desc)
+                            return null
+                        }
+
+                        override fun visitEnd() {
+                            members.add(name, method.toString())
+                        }
+                    }
+                }
+            }, SKIP_ALL_BUT_SIGNATURES)
+
+            val name = internalName
+            if (name == null || isSynthetic) return null
+
+            return name to ClassAbiSnapshot(null, header.toString().toByteArray().md5(), members.toHashes())
+        }
+
+        private val SKIP_ALL_BUT_SIGNATURES = ClassReader.SKIP_CODE or ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES
+    }
+}
+
+internal fun isSameProto(old: ProtoMapValue?, new: ProtoMapValue?): Boolean {
+    if (old == null || new == null) return old == new
+
+    return old.isPackageFacade == new.isPackageFacade &&
+           Arrays.equals(old.bytes, new.bytes) &&
+           Arrays.equals(old.strings, new.strings)
+}
+
+private class MemberSignatures {
+    private val signatures = HashMap<String, MutableList<String>>()
+
+    fun add(name: String, signature: String) {
+        signatures.getOrPut(name) { ArrayList() }.add(signature)
+    }
+
+    // overloads share one hash, so the order of methods in the class file doesn't matter
+    fun toHashes(): Map<String, Long> =
+            signatures.mapValues { it.value.sorted().joinToString("\n").toByteArray().md5() }
+}
+
+private class BytesKotlinClass(
+        private val bytes: ByteArray,
+        classId: ClassId,
+        classVersion: Int,
+        classHeader: KotlinClassHeader,
+        innerClasses: InnerClassesInfo
+) : FileBasedKotlinClass(classId, classVersion, classHeader, innerClasses) {
+    override val location: String
+        get() = classId.asString()
+
+    public override fun getFileContents(): ByteArray = bytes
+
+    override fun hashCode(): Int = classId.hashCode()
+    override fun equals(other: Any?): Boolean = other is BytesKotlinClass && classId == other.classId
+    override fun toString(): String = "$javaClass: $classId"
+}
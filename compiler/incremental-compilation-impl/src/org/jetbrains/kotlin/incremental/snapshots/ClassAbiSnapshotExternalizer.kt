@@ -0,0 +1,42 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.incremental.snapshots
+
+import com.intellij.util.io.DataExternalizer
+import org.jetbrains.kotlin.incremental.storage.ProtoMapValueExternalizer
+import org.jetbrains.kotlin.incremental.storage.StringToLongMapExternalizer
+import java.io.DataInput
+import java.io.DataOutput
+
+object ClassAbiSnapshotExternalizer : DataExternalizer<ClassAbiSnapshot> {
+    override fun save(out: DataOutput, value: ClassAbiSnapshot) {
+        val protoData = value.protoData
+        out.writeBoolean(protoData != null)
+        if (protoData != null) {
+            ProtoMapValueExternalizer.save(out, protoData)
+        }
+        out.writeLong(value.signatureHash)
+        StringToLongMapExternalizer.save(out, value.memberHashes)
+    }
+
+    override fun read(input: DataInput): ClassAbiSnapshot {
+        val protoData = if (input.readBoolean()) ProtoMapValueExternalizer.read(input) else null
+        val signatureHash = input.readLong()
+        val memberHashes = StringToLongMapExternalizer.read(input)!!
+        return ClassAbiSnapshot(protoData, signatureHash, memberHashes)
+    }
+}
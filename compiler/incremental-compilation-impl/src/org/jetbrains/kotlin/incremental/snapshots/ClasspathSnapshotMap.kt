@@ -0,0 +1,188 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.incremental.snapshots
+
+import com.intellij.openapi.util.io.FileUtil
+import org.jetbrains.kotlin.incremental.ChangeInfo
+import org.jetbrains.kotlin.incremental.dumpCollection
+import org.jetbrains.kotlin.incremental.isClassFile
+import org.jetbrains.kotlin.incremental.storage.BasicStringMap
+import org.jetbrains.kotlin.incremental.storage.PathStringDescriptor
+import org.jetbrains.kotlin.incremental.storage.StringCollectionExternalizer
+import java.io.File
+import java.util.*
+import java.util.zip.ZipFile
+
+/**
+ * Stores ABI snapshots of the classes of classpath entries (jars and class directories), one [ClassAbiSnapshot] per class,
+ * keyed by the entry path and the internal class name. The names of the classes of each entry are kept in [entryClasses].
+ *
+ * An entry is snapshotted only when it is seen modified for the first time, so that its next modification can be diffed;
+ * the entries which never change are never read.
+ */
+class ClasspathSnapshotMap(
+        storageFile: File,
+        private val entryClasses: ClasspathEntryClassesMap
+) : BasicStringMap<ClassAbiSnapshot>(storageFile, PathStringDescriptor, ClassAbiSnapshotExternalizer) {
+    override fun dumpValue(value: ClassAbiSnapshot): String =
+            value.toString()
+
+    operator fun contains(entry: File): Boolean =
+            entry.canonicalPath in entryClasses
+
+    fun remove(entry: File) {
+        val path = entry.canonicalPath
+        for (internalName in entryClasses[path]) {
+            storage.remove(classKey(path, internalName))
+        }
+        entryClasses.remove(path)
+    }
+
+    /**
+     * Returns the ABI changes of the modified entry and updates the snapshots of its changed classes,
+     * or records the snapshot of the entry and returns null if it has not been snapshotted before.
+     */
+    fun compareAndUpdate(entry: File): List<ChangeInfo>? {
+        val path = entry.canonicalPath
+        val newSnapshot = snapshotClasspathEntry(entry)
+        if (path !in entryClasses) {
+            record(path, newSnapshot)
+            return null
+        }
+
+        val oldClasses = entryClasses[path]
+        val changes = ArrayList<ChangeInfo>()
+        for (internalName in oldClasses + newSnapshot.keys) {
+            changes.addAll(compareAndUpdateClass(path, internalName, newSnapshot[internalName]))
+        }
+        if (oldClasses != newSnapshot.keys) {
+            entryClasses[path] = newSnapshot.keys
+        }
+        return changes
+    }
+
+    /**
+     * Returns the ABI changes of the given class files of the class directory [root] and updates their snapshots,
+     * or records the snapshot of the whole directory and returns null if it has not been snapshotted before.
+     */
+    fun compareAndUpdate(root: File, modifiedClassFiles: Iterable<File>, removedClassFiles: Iterable<File>): List<ChangeInfo>? {
+        val path = root.canonicalPath
+        if (path !in entryClasses) {
+            record(path, snapshotClasspathEntry(root))
+            return null
+        }
+
+        val newSnapshot = HashMap<String, ClassAbiSnapshot?>()
+        for (classFile in removedClassFiles + modifiedClassFiles) {
+            internalNameByPath(root, classFile)?.let { newSnapshot[it] = null }
+        }
+        for (classFile in modifiedClassFiles) {
+            val (internalName, snapshot) = ClassAbiSnapshot.create(classFile.readBytes()) ?: continue
+            newSnapshot[internalName] = snapshot
+        }
+
+        val changes = ArrayList<ChangeInfo>()
+        for ((internalName, snapshot) in newSnapshot) {
+            changes.addAll(compareAndUpdateClass(path, internalName, snapshot))
+        }
+
+        val oldClasses = entryClasses[path]
+        val newClasses = HashSet(oldClasses)
+        for ((internalName, snapshot) in newSnapshot) {
+            if (snapshot != null) newClasses.add(internalName) else newClasses.remove(internalName)
+        }
+        if (oldClasses != newClasses) {
+            entryClasses[path] = newClasses
+        }
+        return changes
+    }
+
+    private fun record(path: String, snapshot: Map<String, ClassAbiSnapshot>) {
+        for ((internalName, classSnapshot) in snapshot) {
+            storage[classKey(path, internalName)] = classSnapshot
+        }
+        entryClasses[path] = snapshot.keys
+    }
+
+    private fun compareAndUpdateClass(path: String, internalName: String, newSnapshot: ClassAbiSnapshot?): List<ChangeInfo> {
+        val key = classKey(path, internalName)
+        val oldSnapshot = storage[key]
+        if (oldSnapshot != null && newSnapshot != null && oldSnapshot.isSameAbi(newSnapshot)) return emptyList()
+
+        if (newSnapshot != null) {
+            storage[key] = newSnapshot
+        }
+        else {
+            storage.remove(key)
+        }
+        return classAbiChanges(internalName, oldSnapshot, newSnapshot)
+    }
+
+    private fun classKey(entryPath: String, internalName: String): String =
+            entryPath + "!/" + internalName
+
+    private fun internalNameByPath(root: File, classFile: File): String? =
+            FileUtil.getRelativePath(root, classFile, '/')?.removeSuffix(".class")
+}
+
+/**
+ * Internal names of the classes of classpath entries which have been snapshotted by [ClasspathSnapshotMap].
+ */
+class ClasspathEntryClassesMap(storageFile: File) : BasicStringMap<Collection<String>>(storageFile, PathStringDescriptor, StringCollectionExternalizer) {
+    override fun dumpValue(value: Collection<String>): String =
+            value.dumpCollection()
+
+    operator fun contains(path: String): Boolean =
+            path in storage
+
+    operator fun get(path: String): Set<String> =
+            storage[path].orEmpty().toSet()
+
+    operator fun set(path: String, classes: Collection<String>) {
+        storage[path] = classes
+    }
+
+    fun remove(path: String) {
+        storage.remove(path)
+    }
+}
+
+fun snapshotClasspathEntry(entry: File): Map<String, ClassAbiSnapshot> {
+    val result = HashMap<String, ClassAbiSnapshot>()
+
+    fun add(bytes: ByteArray) {
+        val (internalName, snapshot) = ClassAbiSnapshot.create(bytes) ?: return
+        result[internalName] = snapshot
+    }
+
+    when {
+        entry.isDirectory -> {
+            entry.walk().filter { it.isFile && it.isClassFile() }.forEach { add(it.readBytes()) }
+        }
+        entry.isFile -> {
+            ZipFile(entry).use { zip ->
+                for (zipEntry in zip.entries()) {
+                    if (zipEntry.isDirectory || !zipEntry.name.endsWith(".class")) continue
+
+                    add(zip.getInputStream(zipEntry).use { it.readBytes() })
+                }
+            }
+        }
+    }
+
+    return result
+}
@@ -19,9 +19,14 @@ package org.jetbrains.kotlin.incremental.snapshots
 import java.io.File
 import java.util.*
 
+/**
+ * [lastModified] is not taken into account by [equals]: it only allows to skip hashing of the file if it's unchanged,
+ * see [ParallelFileSnapshotProvider].
+ */
 class FileSnapshot(
         val file: File,
         val length: Long,
+        val lastModified: Long,
         val hash: ByteArray
 ) {
     init {
@@ -49,6 +54,10 @@ class FileSnapshot(
     }
 
     override fun toString(): String {
-        return "FileSnapshot(file=$file, length=$length, hash=${Arrays.toString(hash)})"
+        return "FileSnapshot(file=$file, length=$length, lastModified=$lastModified, hash=${Arrays.toString(hash)})"
+    }
+
+    companion object {
+        const val NO_TIMESTAMP = -1L
     }
-}
+}
\ No newline at end of file
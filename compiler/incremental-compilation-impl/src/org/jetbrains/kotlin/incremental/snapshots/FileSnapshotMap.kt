@@ -27,7 +27,7 @@ class FileSnapshotMap(storageFile: File) : BasicStringMap<FileSnapshot>(storageF
             value.toString()
 
     fun compareAndUpdate(newFiles: Iterable<File>): ChangedFiles.Known {
-        val snapshotProvider = SimpleFileSnapshotProviderImpl()
+        val snapshotProvider = ParallelFileSnapshotProvider()
         val newOrModified = ArrayList<File>()
         val removed = ArrayList<File>()
 
@@ -39,14 +39,19 @@ class FileSnapshotMap(storageFile: File) : BasicStringMap<FileSnapshot>(storageF
             }
         }
 
-        for (path in newPaths) {
-            val file = File(path)
-            val oldSnapshot = storage[path]
-            val newSnapshot = snapshotProvider[file]
+        val oldSnapshots = newPaths.associate { it to storage[it] }
+        val newSnapshots = snapshotProvider.getSnapshots(newPaths.map(::File)) { oldSnapshots[it.path] }
+
+        for (newSnapshot in newSnapshots) {
+            val file = newSnapshot.file
+            val oldSnapshot = oldSnapshots[file.path]
 
             if (oldSnapshot == null || oldSnapshot != newSnapshot) {
                 newOrModified.add(file)
-                storage[path] = newSnapshot
+            }
+            // The timestamp is updated even if the contents is the same, so the file is not hashed next time
+            if (oldSnapshot !== newSnapshot) {
+                storage[file.path] = newSnapshot
             }
         }
 
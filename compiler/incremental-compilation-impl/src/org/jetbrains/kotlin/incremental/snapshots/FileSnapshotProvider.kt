@@ -16,16 +16,84 @@
 
 package org.jetbrains.kotlin.incremental.snapshots
 
+import org.jetbrains.kotlin.utils.WorkerThreadPools
 import java.io.File
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
 
 interface FileSnapshotProvider {
     operator fun get(file: File): FileSnapshot
 }
 
 class SimpleFileSnapshotProviderImpl : FileSnapshotProvider {
-    override fun get(file: File): FileSnapshot {
-        val length = file.length()
-        val hash = file.md5
-        return FileSnapshot(file, length, hash)
+    override fun get(file: File): FileSnapshot = createSnapshot(file)
+}
+
+/**
+ * Takes snapshots of many files at once.
+ *
+ * A file with the same length and modification time as in its previous snapshot is not read at all,
+ * the other files are hashed on a pool of at most [threads] threads.
+ */
+class ParallelFileSnapshotProvider(private val threads: Int = DEFAULT_THREADS) : FileSnapshotProvider {
+    override fun get(file: File): FileSnapshot = createSnapshot(file)
+
+    fun getSnapshots(files: Collection<File>, previousSnapshot: (File) -> FileSnapshot?): List<FileSnapshot> {
+        val result = arrayOfNulls<FileSnapshot>(files.size)
+        val filesToHash = ArrayList<Pair<Int, File>>()
+
+        for ((i, file) in files.withIndex()) {
+            val previous = previousSnapshot(file)
+            if (previous != null && previous.lastModified != FileSnapshot.NO_TIMESTAMP &&
+                previous.lastModified == file.lastModified() && previous.length == file.length()) {
+                result[i] = previous
+            }
+            else {
+                filesToHash.add(i to file)
+            }
+        }
+
+        if (threads <= 1 || filesToHash.size <= 1) {
+            for ((i, file) in filesToHash) {
+                result[i] = createSnapshot(file)
+            }
+        }
+        else {
+            val executor = WorkerThreadPools.newFixedThreadPool(Math.min(threads, filesToHash.size), "Kotlin file snapshot worker")
+            try {
+                val futures = filesToHash.map { (i, file) -> i to executor.submit(Callable { createSnapshot(file) }) }
+                for ((i, future) in futures) {
+                    result[i] = try {
+                        future.get()
+                    }
+                    catch (e: ExecutionException) {
+                        throw e.cause ?: e
+                    }
+                }
+            }
+            finally {
+                executor.shutdownNow()
+            }
+        }
+
+        return result.map { it!! }
+    }
+
+    companion object {
+        private val DEFAULT_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors())
     }
-}
\ No newline at end of file
+}
+
+// A file modified shortly before it's hashed can be modified again without a change of its timestamp
+// (which resolution is up to 2 seconds on some file systems), so such timestamp can't be used to skip hashing next time
+private const val TIMESTAMP_RESOLUTION_MS = 2000L
+
+private fun createSnapshot(file: File): FileSnapshot {
+    val lastModified = file.lastModified()
+    val length = file.length()
+    val hash = file.xxHash64.toByteArray()
+    val reliableLastModified =
+            if (System.currentTimeMillis() - lastModified < TIMESTAMP_RESOLUTION_MS) FileSnapshot.NO_TIMESTAMP else lastModified
+    return FileSnapshot(file, length, reliableLastModified, hash)
+}
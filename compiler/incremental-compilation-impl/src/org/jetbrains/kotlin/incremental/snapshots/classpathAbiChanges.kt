@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.incremental.snapshots
+
+import org.jetbrains.kotlin.incremental.ChangeInfo
+import org.jetbrains.kotlin.incremental.difference
+import org.jetbrains.kotlin.incremental.storage.ProtoMapValue
+import org.jetbrains.kotlin.resolve.jvm.JvmClassName
+import org.jetbrains.kotlin.serialization.Flags
+import org.jetbrains.kotlin.serialization.ProtoBuf
+import org.jetbrains.kotlin.serialization.jvm.JvmProtoBufUtil
+import java.util.*
+
+fun classAbiChanges(internalName: String, oldClass: ClassAbiSnapshot?, newClass: ClassAbiSnapshot?): List<ChangeInfo> {
+    if (oldClass != null && newClass != null && oldClass.isSameAbi(newClass)) return emptyList()
+
+    return classAbiChanges(JvmClassName.byInternalName(internalName), oldClass, newClass)
+}
+
+private fun classAbiChanges(className: JvmClassName, oldClass: ClassAbiSnapshot?, newClass: ClassAbiSnapshot?): List<ChangeInfo> {
+    if (oldClass == null || newClass == null) {
+        return listOfNotNull(oldClass, newClass).map { addedOrRemoved(className, it) }
+    }
+
+    val oldProto = oldClass.protoData
+    val newProto = newClass.protoData
+    if (oldProto?.isPackageFacade != newProto?.isPackageFacade) {
+        // Java class became a Kotlin one (or vice versa), or a class became a file facade
+        return listOf(addedOrRemoved(className, oldClass), addedOrRemoved(className, newClass))
+    }
+
+    val fqName = if (newProto?.isPackageFacade ?: false) className.packageFqName else className.fqNameForClassNameWithoutDollars
+    val changes = ArrayList<ChangeInfo>()
+
+    if (oldProto != null && newProto != null && !isSameProto(oldProto, newProto)) {
+        val difference = difference(oldProto, newProto)
+
+        if (difference.isClassAffected) {
+            changes.add(ChangeInfo.SignatureChanged(fqName, difference.areSubclassesAffected))
+        }
+
+        if (difference.changedMembersNames.isNotEmpty()) {
+            changes.add(ChangeInfo.MembersChanged(fqName, difference.changedMembersNames))
+        }
+    }
+
+    if (oldClass.signatureHash != newClass.signatureHash) {
+        changes.add(ChangeInfo.SignatureChanged(fqName, areSubclassesAffected = true))
+    }
+
+    val oldMembers = oldClass.memberHashes
+    val newMembers = newClass.memberHashes
+    val changedMembers = (oldMembers.keys + newMembers.keys).filter { oldMembers[it] != newMembers[it] }
+    if (changedMembers.isNotEmpty()) {
+        changes.add(ChangeInfo.MembersChanged(fqName, changedMembers))
+    }
+
+    return changes
+}
+
+private fun addedOrRemoved(className: JvmClassName, snapshot: ClassAbiSnapshot): ChangeInfo {
+    val protoData = snapshot.protoData
+
+    return if (protoData != null && protoData.isPackageFacade) {
+        ChangeInfo.MembersChanged(className.packageFqName, packageMemberNames(protoData) + snapshot.memberHashes.keys)
+    }
+    else {
+        ChangeInfo.SignatureChanged(className.fqNameForClassNameWithoutDollars, areSubclassesAffected = true)
+    }
+}
+
+private fun packageMemberNames(protoData: ProtoMapValue): List<String> {
+    val (nameResolver, packageProto) = JvmProtoBufUtil.readPackageDataFrom(protoData.bytes, protoData.strings)
+
+    fun isNotPrivate(flags: Int) = Flags.VISIBILITY.get(flags) != ProtoBuf.Visibility.PRIVATE
+
+    return packageProto.functionList.filter { isNotPrivate(it.flags) }.map { nameResolver.getString(it.name) } +
+           packageProto.propertyList.filter { isNotPrivate(it.flags) }.map { nameResolver.getString(it.name) } +
+           packageProto.typeAliasList.filter { isNotPrivate(it.flags) }.map { nameResolver.getString(it.name) }
+}
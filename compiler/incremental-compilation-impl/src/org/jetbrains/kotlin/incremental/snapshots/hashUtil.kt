@@ -17,20 +17,141 @@
 package org.jetbrains.kotlin.incremental.snapshots
 
 import java.io.File
-import java.security.MessageDigest
-
-internal val File.md5: ByteArray
-    get() {
-        val messageDigest = MessageDigest.getInstance("MD5")
-        val buffer = ByteArray(4048)
-        inputStream().use { input ->
-            while (true) {
-                val len = input.read(buffer)
-                if (len < 0) {
-                    break
-                }
-                messageDigest.update(buffer, 0, len)
-            }
-        }
-        return messageDigest.digest()
+import java.io.FileInputStream
+
+// Files are read through a buffer reused by each thread. They are not mapped into memory: a mapped file can't be replaced
+// or deleted on Windows until the mapping is garbage collected, and the hashed files include the jars of the classpath
+private val READ_BUFFER = object : ThreadLocal<ByteArray>() {
+    override fun initialValue() = ByteArray(64 * 1024)
+}
+
+internal val File.xxHash64: Long
+    get() = FileInputStream(this).use { input ->
+        val hash = XxHash64()
+        val buffer = READ_BUFFER.get()
+        while (true) {
+            val count = input.read(buffer)
+            if (count < 0) break
+            hash.update(buffer, 0, count)
+        }
+        hash.digest()
+    }
+
+private const val PRIME64_1 = -7046029288634856825L // 0x9E3779B185EBCA87
+private const val PRIME64_2 = -4417276706812531889L // 0xC2B2AE3D27D4EB4F
+private const val PRIME64_3 = 1609587929392839161L  // 0x165667B19E3779F9
+private const val PRIME64_4 = -8796714831421723037L // 0x85EBCA77C2B2AE63
+private const val PRIME64_5 = 2870177450012600261L  // 0x27D4EB2F165667C5
+
+private const val STRIPE_SIZE = 32
+
+internal fun xxHash64(bytes: ByteArray): Long = XxHash64().apply { update(bytes, 0, bytes.size) }.digest()
+
+/**
+ * XXH64 with the zero seed (see http://cyan4973.github.io/xxHash/), computed over the bytes given in one or several parts.
+ */
+internal class XxHash64 {
+    private var v1 = PRIME64_1 + PRIME64_2
+    private var v2 = PRIME64_2
+    private var v3 = 0L
+    private var v4 = -PRIME64_1
+    private var totalLength = 0L
+
+    // The bytes of an incomplete stripe, which are processed when the stripe is completed or in the end
+    private val pending = ByteArray(STRIPE_SIZE)
+    private var pendingLength = 0
+
+    fun update(bytes: ByteArray, offset: Int, length: Int) {
+        var position = offset
+        val end = offset + length
+        totalLength += length
+
+        if (pendingLength > 0) {
+            val count = Math.min(STRIPE_SIZE - pendingLength, length)
+            System.arraycopy(bytes, position, pending, pendingLength, count)
+            pendingLength += count
+            position += count
+            if (pendingLength < STRIPE_SIZE) return
+
+            processStripe(pending, 0)
+            pendingLength = 0
+        }
+
+        while (position <= end - STRIPE_SIZE) {
+            processStripe(bytes, position)
+            position += STRIPE_SIZE
+        }
+
+        pendingLength = end - position
+        System.arraycopy(bytes, position, pending, 0, pendingLength)
+    }
+
+    private fun processStripe(bytes: ByteArray, offset: Int) {
+        v1 = round(v1, getLong(bytes, offset))
+        v2 = round(v2, getLong(bytes, offset + 8))
+        v3 = round(v3, getLong(bytes, offset + 16))
+        v4 = round(v4, getLong(bytes, offset + 24))
+    }
+
+    fun digest(): Long {
+        var hash: Long
+        if (totalLength >= STRIPE_SIZE) {
+            hash = java.lang.Long.rotateLeft(v1, 1) + java.lang.Long.rotateLeft(v2, 7) +
+                   java.lang.Long.rotateLeft(v3, 12) + java.lang.Long.rotateLeft(v4, 18)
+            hash = mergeRound(hash, v1)
+            hash = mergeRound(hash, v2)
+            hash = mergeRound(hash, v3)
+            hash = mergeRound(hash, v4)
+        }
+        else {
+            hash = PRIME64_5
+        }
+
+        hash += totalLength
+
+        var offset = 0
+        val end = pendingLength
+        while (offset <= end - 8) {
+            hash = hash xor round(0, getLong(pending, offset))
+            hash = java.lang.Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4
+            offset += 8
+        }
+
+        if (offset <= end - 4) {
+            hash = hash xor (getInt(pending, offset).toLong() and 0xFFFFFFFFL) * PRIME64_1
+            hash = java.lang.Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3
+            offset += 4
+        }
+
+        while (offset < end) {
+            hash = hash xor (pending[offset].toLong() and 0xFFL) * PRIME64_5
+            hash = java.lang.Long.rotateLeft(hash, 11) * PRIME64_1
+            offset++
+        }
+
+        hash = hash xor (hash ushr 33)
+        hash *= PRIME64_2
+        hash = hash xor (hash ushr 29)
+        hash *= PRIME64_3
+        hash = hash xor (hash ushr 32)
+        return hash
     }
+}
+
+private fun getLong(bytes: ByteArray, offset: Int): Long =
+        (getInt(bytes, offset).toLong() and 0xFFFFFFFFL) or (getInt(bytes, offset + 4).toLong() shl 32)
+
+private fun getInt(bytes: ByteArray, offset: Int): Int =
+        (bytes[offset].toInt() and 0xFF) or
+        ((bytes[offset + 1].toInt() and 0xFF) shl 8) or
+        ((bytes[offset + 2].toInt() and 0xFF) shl 16) or
+        ((bytes[offset + 3].toInt() and 0xFF) shl 24)
+
+private fun round(acc: Long, input: Long): Long =
+        java.lang.Long.rotateLeft(acc + input * PRIME64_2, 31) * PRIME64_1
+
+private fun mergeRound(acc: Long, value: Long): Long =
+        (acc xor round(0, value)) * PRIME64_1 + PRIME64_4
+
+internal fun Long.toByteArray(): ByteArray =
+        ByteArray(8) { i -> (this ushr (56 - 8 * i)).toByte() }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.incremental
+
+import org.jetbrains.kotlin.TestWithWorkingDir
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.File
+import java.util.*
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class LookupStorageTest : TestWithWorkingDir() {
+    private val foo = LookupSymbol("foo", "a")
+    private val bar = LookupSymbol("bar", "a.B")
+
+    @Test
+    fun testBufferedLookupsAreVisibleBeforeFlush() {
+        val storage = LookupStorage(File(workingDir, "lookups"))
+        storage.addAll(lookups(foo to listOf(path("1.kt"), path("2.kt"))), setOf(path("1.kt"), path("2.kt")))
+
+        assertEquals(listOf(path("1.kt"), path("2.kt")), storage.get(foo).sorted())
+        assertEquals(emptyList<String>(), storage.get(bar).sorted())
+
+        storage.addAll(lookups(foo to listOf(path("3.kt")), bar to listOf(path("3.kt"))), setOf(path("3.kt")))
+        storage.removeLookupsFrom(sequenceOf(File(path("1.kt"))))
+
+        assertEquals(listOf(path("2.kt"), path("3.kt")), storage.get(foo).sorted())
+        assertEquals(listOf(path("3.kt")), storage.get(bar).sorted())
+        storage.close()
+    }
+
+    @Test
+    fun testBufferedLookupsAreWrittenOnClose() {
+        val dir = File(workingDir, "lookups")
+        val storage = LookupStorage(dir)
+        storage.addAll(lookups(foo to listOf(path("1.kt")), bar to listOf(path("2.kt"))), setOf(path("1.kt"), path("2.kt")))
+        storage.flush(false)
+        storage.addAll(lookups(foo to listOf(path("2.kt"))), setOf(path("2.kt")))
+        storage.close()
+
+        val reopened = LookupStorage(dir)
+        assertEquals(listOf(path("1.kt"), path("2.kt")), reopened.get(foo).sorted())
+        assertEquals(listOf(path("2.kt")), reopened.get(bar).sorted())
+        assertEquals(3L, storage.counters.addedLookups.get())
+        reopened.close()
+    }
+
+    @Test
+    fun testCompactionPurgesStaleIds() {
+        val dir = File(workingDir, "lookups")
+        val storage = LookupStorage(dir)
+        storage.addAll(lookups(foo to listOf(path("1.kt"), path("2.kt")), bar to listOf(path("1.kt"))), setOf(path("1.kt"), path("2.kt")))
+        storage.flush(false)
+        storage.removeLookupsFrom(sequenceOf(File(path("1.kt"))))
+        storage.forceGC()
+
+        assertEquals(2L, storage.counters.purgedIds.get())
+        assertEquals(listOf(path("2.kt")), storage.get(foo).sorted())
+        assertEquals(emptyList<String>(), storage.get(bar))
+        storage.close()
+
+        val reopened = LookupStorage(dir)
+        reopened.forceGC()
+        assertEquals(0L, reopened.counters.purgedIds.get())
+        reopened.close()
+    }
+
+    @Test
+    fun testCompactionPassContinuesAfterReopen() {
+        val dir = File(workingDir, "lookups")
+        val storage = LookupStorage(dir)
+        val symbols = (0..9).map { LookupSymbol("name$it", "scope") }
+        storage.addAll(lookups(*symbols.map { it to listOf(path("1.kt"), path("2.kt")) }.toTypedArray()), setOf(path("1.kt"), path("2.kt")))
+        storage.flush(false)
+        storage.removeLookupsFrom(sequenceOf(File(path("1.kt"))))
+
+        storage.compactStep(maxKeys = 4)
+        assertEquals("4 of 10 keys", storage.counters.compactionProgress)
+        // Keys added after the pass has started are not compacted by it
+        storage.addAll(lookups(LookupSymbol("other", "scope") to listOf(path("2.kt"))), setOf(path("2.kt")))
+        storage.close()
+
+        val reopened = LookupStorage(dir)
+        reopened.compactStep(maxKeys = 4)
+        assertEquals("8 of 10 keys", reopened.counters.compactionProgress)
+        reopened.compactStep(maxKeys = 4)
+        assertEquals("finished", reopened.counters.compactionProgress)
+
+        assertEquals(6L, reopened.counters.purgedIds.get())
+        for (symbol in symbols) {
+            assertEquals(listOf(path("2.kt")), reopened.get(symbol))
+        }
+        reopened.close()
+    }
+
+    @Test
+    fun testConcurrentAddAll() {
+        val storage = LookupStorage(File(workingDir, "lookups"))
+        val executor = Executors.newFixedThreadPool(4)
+        val symbols = (0..99).map { LookupSymbol("name$it", "scope${it % 7}") }
+
+        for (thread in 0..3) {
+            executor.execute {
+                val filePath = path("$thread.kt")
+                storage.addAll(lookups(*symbols.map { it to listOf(filePath) }.toTypedArray()), setOf(filePath))
+            }
+        }
+        executor.shutdown()
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES))
+
+        val expected = listOf(path("0.kt"), path("1.kt"), path("2.kt"), path("3.kt"))
+        for (symbol in symbols) {
+            assertEquals(expected, storage.get(symbol).sorted())
+        }
+
+        storage.flush(false)
+        for (symbol in symbols) {
+            assertEquals(expected, storage.get(symbol).sorted())
+        }
+        storage.close()
+    }
+
+    private fun path(name: String): String =
+            File(workingDir, name).path
+
+    private fun lookups(vararg lookups: Pair<LookupSymbol, Collection<String>>): Set<Map.Entry<LookupSymbol, Collection<String>>> =
+            LinkedHashMap<LookupSymbol, Collection<String>>().apply { putAll(lookups) }.entries
+}
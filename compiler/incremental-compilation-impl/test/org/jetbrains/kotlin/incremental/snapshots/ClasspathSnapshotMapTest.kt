@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.incremental.snapshots
+
+import org.jetbrains.kotlin.TestWithWorkingDir
+import org.jetbrains.kotlin.incremental.ChangeInfo
+import org.jetbrains.org.objectweb.asm.ClassWriter
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+import kotlin.properties.Delegates
+
+class ClasspathSnapshotMapTest : TestWithWorkingDir() {
+    private var entryClassesMap: ClasspathEntryClassesMap by Delegates.notNull()
+    private var snapshotMap: ClasspathSnapshotMap by Delegates.notNull()
+
+    @Before
+    override fun setUp() {
+        super.setUp()
+        val caches = File(workingDir, "caches").apply { mkdirs() }
+        entryClassesMap = ClasspathEntryClassesMap(File(caches, "classpath-entry-classes.tab"))
+        snapshotMap = ClasspathSnapshotMap(File(caches, "classpath-snapshot.tab"), entryClassesMap)
+    }
+
+    @After
+    override fun tearDown() {
+        snapshotMap.flush(false)
+        snapshotMap.close()
+        entryClassesMap.flush(false)
+        entryClassesMap.close()
+        super.tearDown()
+    }
+
+    @Test
+    fun testClassDirectory() {
+        val classes = File(workingDir, "classes")
+        val a = writeClass(classes, "foo/A", "public:foo()V", "private:bar()V")
+        val b = writeClass(classes, "foo/B")
+
+        assertFalse(classes in snapshotMap)
+        assertNull(snapshotMap.compareAndUpdate(classes, listOf(a), emptyList()))
+        assertTrue("the directory is snapshotted when it is seen modified for the first time", classes in snapshotMap)
+
+        writeClass(classes, "foo/A", "public:foo()V", "private:bar(I)V")
+        assertEquals("private members are not a part of ABI", "", snapshotMap.compareAndUpdate(classes, listOf(a), emptyList()).dump())
+
+        writeClass(classes, "foo/A", "public:foo(I)V", "private:bar(I)V")
+        assertEquals("MembersChanged(fqName = foo.A, names = [foo])", snapshotMap.compareAndUpdate(classes, listOf(a), emptyList()).dump())
+
+        b.delete()
+        val c = writeClass(classes, "foo/C")
+        assertEquals(
+                "SignatureChanged(fqName = foo.B)\nSignatureChanged(fqName = foo.C)",
+                snapshotMap.compareAndUpdate(classes, listOf(c), listOf(b)).dump()
+        )
+    }
+
+    @Test
+    fun testJar() {
+        val jar = File(workingDir, "lib.jar")
+        writeJar(jar, "foo/A" to createClass("foo/A", "public:foo()V"), "foo/B" to createClass("foo/B"))
+
+        assertNull(snapshotMap.compareAndUpdate(jar))
+        assertTrue("the jar is snapshotted when it is seen modified for the first time", jar in snapshotMap)
+
+        writeJar(jar, "foo/A" to createClass("foo/A", "public:foo()V"), "foo/B" to createClass("foo/B"))
+        assertEquals("", snapshotMap.compareAndUpdate(jar).dump())
+
+        writeJar(jar, "foo/A" to createClass("foo/A", "public:foo()V", "public:baz()V"), "foo/B" to createClass("foo/B", superName = "foo/A"))
+        assertEquals(
+                "MembersChanged(fqName = foo.A, names = [baz])\nSignatureChanged(fqName = foo.B)",
+                snapshotMap.compareAndUpdate(jar).dump()
+        )
+
+        writeJar(jar, "foo/A" to createClass("foo/A", "public:foo()V", "public:baz()V"))
+        assertEquals("SignatureChanged(fqName = foo.B)", snapshotMap.compareAndUpdate(jar).dump())
+        assertEquals("", snapshotMap.compareAndUpdate(jar).dump())
+
+        snapshotMap.remove(jar)
+        assertFalse(jar in snapshotMap)
+        assertNull(snapshotMap.compareAndUpdate(jar))
+    }
+
+    private fun List<ChangeInfo>?.dump(): String =
+            this!!.map { it.toString() }.sorted().joinToString("\n")
+
+    private fun writeClass(root: File, internalName: String, vararg methods: String): File {
+        val classFile = File(root, "$internalName.class")
+        classFile.parentFile.mkdirs()
+        classFile.writeBytes(createClass(internalName, *methods))
+        return classFile
+    }
+
+    private fun writeJar(jar: File, vararg classes: Pair<String, ByteArray>) {
+        JarOutputStream(jar.outputStream()).use { output ->
+            for ((internalName, bytes) in classes) {
+                output.putNextEntry(JarEntry("$internalName.class"))
+                output.write(bytes)
+                output.closeEntry()
+            }
+        }
+    }
+
+    // methods are "<visibility>:<name><descriptor>"
+    private fun createClass(internalName: String, vararg methods: String, superName: String = "java/lang/Object"): ByteArray {
+        val writer = ClassWriter(0)
+        writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, internalName, null, superName, null)
+        for (method in methods) {
+            val access = if (method.startsWith("private:")) Opcodes.ACC_PRIVATE else Opcodes.ACC_PUBLIC
+            val signature = method.substringAfter(':')
+            val name = signature.substringBefore('(')
+            writer.visitMethod(access or Opcodes.ACC_ABSTRACT, name, signature.substring(name.length), null, null).visitEnd()
+        }
+        writer.visitEnd()
+        return writer.toByteArray()
+    }
+}
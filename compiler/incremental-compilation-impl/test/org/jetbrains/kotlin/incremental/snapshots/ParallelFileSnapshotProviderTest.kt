@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.incremental.snapshots
+
+import org.jetbrains.kotlin.TestWithWorkingDir
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.*
+
+class FileSnapshotTest : TestWithWorkingDir() {
+    private val fileSnapshotProvider: FileSnapshotProvider
+            get() = SimpleFileSnapshotProviderImpl()
+
+    @Test
+    fun testExternalizer() {
+        val file = File(workingDir, "1.txt")
+        file.writeText("test")
+        val snapshot = fileSnapshotProvider[file]
+package org.jetbrains.kotlin.incremental.snapshots
+
+import org.jetbrains.kotlin.TestWithWorkingDir
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.File
+
+class ParallelFileSnapshotProviderTest : TestWithWorkingDir() {
+    @Test
+    fun testXxHash64() {
+        assertEquals(-1205034819632174695L /* 0xEF46DB3751D8E999 */, xxHash64("".toByteArray()))
+        assertEquals(-3292477735350538661L /* 0xD24EC4F1A98C6E5B */, xxHash64("a".toByteArray()))
+    }
+
+    @Test
+    fun testSameHashForAnySplitOfBytes() {
+        val bytes = (1..1000).joinToString("").toByteArray()
+        for (partSize in listOf(1, 7, 31, 32, 33, 100, 999)) {
+            val hash = XxHash64()
+            for (offset in 0..bytes.size - 1 step partSize) {
+                hash.update(bytes, offset, Math.min(partSize, bytes.size - offset))
+            }
+            assertEquals("Part size: $partSize", xxHash64(bytes), hash.digest())
+        }
+    }
+
+    @Test
+    fun testSameHashForFileReadInParts() {
+        val text = (1..100000).joinToString("")
+        val file = File(workingDir, "1.txt").apply { writeText(text) }
+        assertEquals(xxHash64(text.toByteArray()), file.xxHash64)
+    }
+
+    @Test
+    fun testUnchangedTimestampSkipsHashing() {
+        val file = File(workingDir, "1.txt").apply { writeText("file") }
+        file.setLastModified(file.lastModified() - 10000)
+        val provider = ParallelFileSnapshotProvider(threads = 2)
+        val oldSnapshot = provider[file]
+        assertNotEquals(FileSnapshot.NO_TIMESTAMP, oldSnapshot.lastModified)
+
+        // The contents is not read if the length and the timestamp are the same
+        val lastModified = file.lastModified()
+        file.writeText("main")
+        file.setLastModified(lastModified)
+        assertSame(oldSnapshot, provider.getSnapshots(listOf(file)) { oldSnapshot }.single())
+
+        file.setLastModified(lastModified + 1000)
+        val newSnapshot = provider.getSnapshots(listOf(file)) { oldSnapshot }.single()
+        assertNotEquals(oldSnapshot, newSnapshot)
+    }
+
+    @Test
+    fun testRecentlyModifiedFileIsHashedAgain() {
+        val file = File(workingDir, "1.txt").apply { writeText("file") }
+        val provider = ParallelFileSnapshotProvider(threads = 2)
+        val oldSnapshot = provider[file]
+        assertEquals(FileSnapshot.NO_TIMESTAMP, oldSnapshot.lastModified)
+
+        file.writeText("main")
+        val newSnapshot = provider.getSnapshots(listOf(file)) { oldSnapshot }.single()
+        assertNotEquals(oldSnapshot, newSnapshot)
+    }
+
+    @Test
+    fun testManyFiles() {
+        val files = (1..20).map { i -> File(workingDir, "$i.txt").apply { writeText("file $i") } }
+        val provider = ParallelFileSnapshotProvider(threads = 4)
+        val snapshots = provider.getSnapshots(files) { null }
+        assertEquals(files, snapshots.map { it.file })
+        assertEquals(files.map { SimpleFileSnapshotProviderImpl()[it] }, snapshots)
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.incremental.storage
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.util.*
+
+class CompactIntArrayExternalizerTest {
+    @Test
+    fun testEmpty() {
+        assertArrayEquals(intArrayOf(), read(write(intArrayOf())))
+    }
+
+    @Test
+    fun testSparseIds() {
+        val ids = intArrayOf(100000, 3, 70, 3, Int.MAX_VALUE, 0)
+        val bytes = write(ids)
+
+        assertArrayEquals(intArrayOf(0, 3, 70, 100000, Int.MAX_VALUE), read(bytes))
+        assertTrue("Sparse ids should be stored as deltas: ${bytes.size} bytes", bytes.size < 5 * 4)
+    }
+
+    @Test
+    fun testDenseIds() {
+        val ids = (1000..2999).filter { it % 3 != 0 }.toIntArray()
+        val bytes = write(ids)
+
+        assertArrayEquals(ids, read(bytes))
+        assertTrue("Dense ids should be stored as a bitmap: ${bytes.size} bytes", bytes.size <= 2000 / 8 + 16)
+    }
+
+    @Test
+    fun testAppendedChunksAreMerged() {
+        val bytes = write(intArrayOf(5, 1, 3)) + write((100..400).toList().toIntArray()) + write(intArrayOf(3, 200, 1000))
+
+        val expected = (listOf(1, 3, 5, 1000) + (100..400)).sorted().toIntArray()
+        assertArrayEquals(expected, read(bytes))
+    }
+
+    @Test
+    fun testRandomSets() {
+        val random = Random(42)
+
+        repeat(100) {
+            val ids = IntArray(random.nextInt(500)) { random.nextInt(1 + random.nextInt(100000)) }
+            assertArrayEquals(ids.toSortedSet().toIntArray(), read(write(ids)))
+        }
+    }
+
+    private fun write(ids: IntArray): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use { CompactIntArrayExternalizer.save(it, ids) }
+        return bytes.toByteArray()
+    }
+
+    private fun read(bytes: ByteArray): IntArray =
+            CompactIntArrayExternalizer.read(DataInputStream(ByteArrayInputStream(bytes)))
+}
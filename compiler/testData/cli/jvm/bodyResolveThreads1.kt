@@ -0,0 +1,5 @@
+fun first() = second()
+
+fun firstUnresolved() {
+    unresolvedInFirst()
+}
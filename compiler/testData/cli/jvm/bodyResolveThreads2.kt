@@ -0,0 +1,5 @@
+fun second(): Int = first()
+
+fun secondUnresolved() {
+    unresolvedInSecond()
+}
@@ -0,0 +1,6 @@
+package first
+
+/**
+ * Sum of the squares of [numbers]
+ */
+fun sumOfSquares(numbers: List<Int>): Int = numbers.map { it * it }.sum()
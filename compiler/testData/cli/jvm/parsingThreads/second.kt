@@ -0,0 +1,8 @@
+package second
+
+import first.sumOfSquares
+
+fun main(args: Array<String>) {
+    val run = { println(sumOfSquares(args.map { it.length })) }
+    run()
+}
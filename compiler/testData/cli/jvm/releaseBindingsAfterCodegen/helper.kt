@@ -0,0 +1,6 @@
+package helper
+
+fun helper(x: Int): Int {
+    val square = { y: Int -> y * y }
+    return square(x) + 1
+}
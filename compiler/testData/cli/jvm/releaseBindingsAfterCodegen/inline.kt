@@ -0,0 +1,5 @@
+package inline
+
+import helper.helper
+
+inline fun twice(f: (Int) -> Int): Int = f(helper(1)) + f(helper(2))
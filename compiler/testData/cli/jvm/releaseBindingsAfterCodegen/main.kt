@@ -0,0 +1,7 @@
+package main
+
+import inline.twice
+import utils.first
+import utils.second
+
+fun result(): String = first() + second() + twice { it * 2 }
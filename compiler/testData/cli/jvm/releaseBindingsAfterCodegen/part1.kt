@@ -0,0 +1,10 @@
+@file:JvmName("Utils")
+@file:JvmMultifileClass
+package utils
+
+fun first(): String {
+    val local = object {
+        fun get() = "first"
+    }
+    return local.get()
+}
@@ -0,0 +1,10 @@
+@file:JvmName("Utils")
+@file:JvmMultifileClass
+package utils
+
+fun second(): String {
+    class Local(val value: String)
+
+    val create = { value: String -> Local(value) }
+    return create("second").value
+}
@@ -0,0 +1,18 @@
+package suppression
+
+fun suppressed(): Int {
+    @Suppress("CONFLICTING_JVM_DECLARATIONS")
+    class Local {
+        fun getA(): Int = 1
+        val a: Int = 2
+    }
+    return Local().a
+}
+
+fun reported(): Int {
+    class Local {
+        fun getB(): Int = 1
+        val b: Int = 2
+    }
+    return Local().b
+}
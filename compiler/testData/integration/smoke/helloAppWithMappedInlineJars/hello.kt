@@ -0,0 +1,5 @@
+package Hello
+
+fun main(args : Array<String>) {
+    System.out.println(listOf("Hello", "from", "inline").map { it.length }.filter { it > 0 }.joinToString())
+}
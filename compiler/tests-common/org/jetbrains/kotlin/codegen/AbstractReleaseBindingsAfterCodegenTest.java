@@ -1,5 +1,5 @@
 /*
- * Copyright 2010-2015 JetBrains s.r.o.
+ * Copyright 2010-2017 JetBrains s.r.o.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -14,12 +14,14 @@
  * limitations under the License.
  */
 
-package org.jetbrains.kotlin.util.slicedMap
+package org.jetbrains.kotlin.codegen;
 
-import com.intellij.openapi.util.Key
-import com.intellij.openapi.util.UserDataHolderBase
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+import org.jetbrains.kotlin.config.JVMConfigurationKeys;
 
-class UserDataHolderImpl : UserDataHolderBase() {
-    val keys: Array<Key<*>>
-        get() = userMap.keys
+public abstract class AbstractReleaseBindingsAfterCodegenTest extends AbstractBlackBoxCodegenTest {
+    @Override
+    protected void updateConfiguration(CompilerConfiguration configuration) {
+        configuration.put(JVMConfigurationKeys.RELEASE_BINDINGS_AFTER_CODEGEN, true);
+    }
 }
@@ -18,10 +18,12 @@ package org.jetbrains.kotlin.codegen
 
 import com.intellij.psi.search.GlobalSearchScope
 import org.jetbrains.kotlin.cli.common.output.outputUtils.writeAllTo
+import org.jetbrains.kotlin.cli.jvm.compiler.CliLightClassGenerationSupport
 import org.jetbrains.kotlin.cli.jvm.compiler.JvmPackagePartProvider
 import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
 import org.jetbrains.kotlin.codegen.state.GenerationState
 import org.jetbrains.kotlin.config.CompilerConfiguration
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
 import org.jetbrains.kotlin.descriptors.PackagePartProvider
 import org.jetbrains.kotlin.psi.KtFile
 import org.jetbrains.kotlin.resolve.AnalyzingUtils
@@ -49,12 +51,15 @@ object GenerationUtils {
             configuration: CompilerConfiguration,
             packagePartProvider: (GlobalSearchScope) -> PackagePartProvider
     ): GenerationState {
-        val analysisResult = JvmResolveUtil.analyzeAndCheckForErrors(files.first().project, files, configuration, packagePartProvider)
+        val analysisTrace = CliLightClassGenerationSupport.CliBindingTrace()
+        val analysisResult =
+                JvmResolveUtil.analyzeAndCheckForErrors(files.first().project, files, configuration, packagePartProvider, analysisTrace)
         analysisResult.throwIfError()
 
         val state = GenerationState(
                 files.first().project, ClassBuilderFactories.TEST, analysisResult.moduleDescriptor, analysisResult.bindingContext,
-                files, configuration
+                files, configuration,
+                analysisTrace = if (configuration.getBoolean(JVMConfigurationKeys.RELEASE_BINDINGS_AFTER_CODEGEN)) analysisTrace else null
         )
         KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION)
 
@@ -68,6 +68,24 @@ public class CliTestGenerated extends AbstractCliTest {
             doJvmTest(fileName);
         }
 
+        @TestMetadata("backendThreads.args")
+        public void testBackendThreads() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/cli/jvm/backendThreads.args");
+            doJvmTest(fileName);
+        }
+
+        @TestMetadata("backendThreadsInvalid.args")
+        public void testBackendThreadsInvalid() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/cli/jvm/backendThreadsInvalid.args");
+            doJvmTest(fileName);
+        }
+
+        @TestMetadata("bodyResolveThreads.args")
+        public void testBodyResolveThreads() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/cli/jvm/bodyResolveThreads.args");
+            doJvmTest(fileName);
+        }
+
         @TestMetadata("classAndFileClassClash.args")
         public void testClassAndFileClassClash() throws Exception {
             String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/cli/jvm/classAndFileClassClash.args");
@@ -272,6 +290,18 @@ public class CliTestGenerated extends AbstractCliTest {
             doJvmTest(fileName);
         }
 
+        @TestMetadata("optimizationThreads.args")
+        public void testOptimizationThreads() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/cli/jvm/optimizationThreads.args");
+            doJvmTest(fileName);
+        }
+
+        @TestMetadata("parsingThreads.args")
+        public void testParsingThreads() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/cli/jvm/parsingThreads.args");
+            doJvmTest(fileName);
+        }
+
         @TestMetadata("pluginSimple.args")
         public void testPluginSimple() throws Exception {
             String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/cli/jvm/pluginSimple.args");
@@ -284,6 +314,12 @@ public class CliTestGenerated extends AbstractCliTest {
             doJvmTest(fileName);
         }
 
+        @TestMetadata("releaseBindingsAfterCodegen.args")
+        public void testReleaseBindingsAfterCodegen() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/cli/jvm/releaseBindingsAfterCodegen.args");
+            doJvmTest(fileName);
+        }
+
         @TestMetadata("returnAsWhenKey.args")
         public void testReturnAsWhenKey() throws Exception {
             String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/cli/jvm/returnAsWhenKey.args");
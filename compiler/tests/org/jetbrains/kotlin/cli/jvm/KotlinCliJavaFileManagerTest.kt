@@ -24,6 +24,8 @@ import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
 import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCliJavaFileManagerImpl
 import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
 import org.jetbrains.kotlin.cli.jvm.config.JavaSourceRoot
+import org.jetbrains.kotlin.cli.jvm.config.JvmClasspathRoot
+import org.jetbrains.kotlin.cli.jvm.config.jvmClasspathRoots
 import org.jetbrains.kotlin.cli.jvm.index.JavaRoot
 import org.jetbrains.kotlin.cli.jvm.index.JvmDependenciesIndexImpl
 import org.jetbrains.kotlin.load.kotlin.JvmVirtualFileFinder
@@ -34,6 +36,8 @@ import org.jetbrains.kotlin.test.KotlinTestUtils
 import org.jetbrains.kotlin.test.KotlinTestWithEnvironment
 import org.jetbrains.kotlin.test.TestJdkKind
 import java.io.File
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
 
 class KotlinCliJavaFileManagerTest : KotlinTestWithEnvironment() {
     private var javaFilesDir: File? = null
@@ -178,6 +182,36 @@ class KotlinCliJavaFileManagerTest : KotlinTestWithEnvironment() {
         TestCase.assertNull("Should not find class in empty scope", manager.findClass("foo.Test", GlobalSearchScope.EMPTY_SCOPE))
     }
 
+    fun testConcurrentIndexSearch() {
+        configureManager("package foo;\n\n" + "public class Test {}\n", "Test")
+
+        val roots = listOf(JavaRoot(environment.contentRootToVirtualFile(JavaSourceRoot(javaFilesDir!!, null))!!, JavaRoot.RootType.SOURCE)) +
+                    environment.configuration.jvmClasspathRoots.map {
+                        JavaRoot(environment.contentRootToVirtualFile(JvmClasspathRoot(it))!!, JavaRoot.RootType.BINARY)
+                    }
+        val index = JvmDependenciesIndexImpl(roots)
+
+        val requests = listOf("foo/Test.java", "java/lang/String.class", "java/util/List.class", "java/lang/Missing.class", "foo/Missing.java")
+        fun findAll() = requests.map { path ->
+            val classId = ClassId.topLevel(FqName(path.substringBeforeLast('.').replace('/', '.')))
+            index.findClass(classId) { dir, _ -> dir.findChild(path.substringAfterLast('/')) }
+        }
+
+        val expected = findAll()
+        TestCase.assertEquals(listOf(true, true, true, false, false), expected.map { it != null })
+
+        val executor = Executors.newFixedThreadPool(4)
+        try {
+            val results = executor.invokeAll((1..16).map { Callable { findAll() } }).map { it.get() }
+            for (result in results) {
+                TestCase.assertEquals(expected, result)
+            }
+        }
+        finally {
+            executor.shutdown()
+        }
+    }
+
     override fun createEnvironment(): KotlinCoreEnvironment {
         javaFilesDir = KotlinTestUtils.tmpDir("java-file-manager-test")
 
@@ -75,7 +75,7 @@ class GenericReplTest : TestCase() {
         val res4c = res4 as? ReplCompileResult.CompiledClasses
         TestCase.assertNotNull("Unexpected compile result: $res4", res4c)
 
-        val res41 = repl.compiledEvaluator.eval(codeLine2, emptyList(), res4c!!.classes, res4c.hasResult, res4c.classpathAddendum)
+        val res41 = repl.compiledEvaluator.eval(codeLine2, listOf(codeLine0, codeLine1), res4c!!.classes, res4c.hasResult, res4c.classpathAddendum)
         val res41e = res41 as? ReplEvalResult.ValueResult
         TestCase.assertNotNull("Unexpected eval result: $res41", res41e)
         TestCase.assertEquals(7, res41e!!.value)
@@ -83,6 +83,50 @@ class GenericReplTest : TestCase() {
         Disposer.dispose(disposable)
     }
 
+    @Test
+    fun testReplHistoryDigest() {
+
+        val disposable = Disposer.newDisposable()
+
+        val repl = TestRepl(disposable,
+                            listOf(File(KotlinIntegrationTestBase.getCompilerLib(), "kotlin-runtime.jar")),
+                            "kotlin.script.templates.standard.ScriptTemplateWithArgs")
+
+        fun evalLine(codeLine: ReplCodeLine, history: List<ReplCodeLine>): ReplEvalResult =
+                compileAndEval(repl.replCompiler!!, repl.compiledEvaluator, codeLine, ReplHistoryDigest.of(history), null)
+
+        val codeLine0 = ReplCodeLine(0, "val x = 1")
+        val res0 = evalLine(codeLine0, emptyList())
+        TestCase.assertTrue("Unexpected eval result: $res0", res0 is ReplEvalResult.UnitResult)
+
+        val codeLine1 = ReplCodeLine(1, "val y = x + 1")
+        val res1 = evalLine(codeLine1, listOf(codeLine0))
+        TestCase.assertTrue("Unexpected eval result: $res1", res1 is ReplEvalResult.UnitResult)
+
+        val res2c = repl.replCompiler!!.check(ReplCodeLine(2, "x"), ReplHistoryDigest.of(listOf(ReplCodeLine(0, "val x = 2"))))
+        TestCase.assertTrue("Unexpected check result: $res2c", res2c is ReplCheckResult.HistoryMismatch)
+
+        // "Aa" and "BB" have the same String.hashCode
+        TestCase.assertFalse(ReplHistoryDigest.of(listOf(ReplCodeLine(0, "Aa"))) == ReplHistoryDigest.of(listOf(ReplCodeLine(0, "BB"))))
+
+        val res2x = evalLine(ReplCodeLine(2, "x"), listOf(ReplCodeLine(0, "val x = 2")))
+        TestCase.assertTrue("Unexpected eval result: $res2x", res2x is ReplEvalResult.HistoryMismatch)
+
+        // the session is rolled back to the first line, so y is not visible anymore
+        val res2y = evalLine(ReplCodeLine(2, "y"), listOf(codeLine0))
+        TestCase.assertTrue("Unexpected eval result: $res2y", res2y is ReplEvalResult.Error.CompileTime)
+        TestCase.assertEquals(listOf(codeLine0), res2y.updatedHistory)
+
+        val codeLine2 = ReplCodeLine(2, "x + 2")
+        val res2 = evalLine(codeLine2, listOf(codeLine0))
+        val res2v = res2 as? ReplEvalResult.ValueResult
+        TestCase.assertNotNull("Unexpected eval result: $res2", res2v)
+        TestCase.assertEquals(3, res2v!!.value)
+        TestCase.assertEquals(listOf(codeLine0, codeLine2), res2v.updatedHistory)
+
+        Disposer.dispose(disposable)
+    }
+
     @Test
     fun testRepPackage() {
 
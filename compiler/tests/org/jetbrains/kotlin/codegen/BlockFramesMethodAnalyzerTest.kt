@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import org.jetbrains.kotlin.codegen.optimization.boxing.RedundantBoxingMethodTransformer
+import org.jetbrains.kotlin.codegen.optimization.common.BlockFramesMethodAnalyzer
+import org.jetbrains.kotlin.codegen.optimization.common.OptimizationBasicInterpreter
+import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+import org.jetbrains.org.objectweb.asm.ClassReader
+import org.jetbrains.org.objectweb.asm.tree.ClassNode
+
+/**
+ * Checks that frames recomputed from the basic block entries are the same as the ones computed for each instruction.
+ */
+class BlockFramesMethodAnalyzerTest : KtUsefulTestCase() {
+    fun testExpressionCodegen() {
+        doTest(ExpressionCodegen::class.java)
+    }
+
+    fun testRedundantBoxingMethodTransformer() {
+        doTest(RedundantBoxingMethodTransformer::class.java)
+    }
+
+    fun testStdlibCollections() {
+        doTest(Class.forName("kotlin.collections.CollectionsKt___CollectionsKt"))
+    }
+
+    private fun doTest(klass: Class<*>) {
+        val classNode = ClassNode()
+        klass.getResourceAsStream("/" + klass.name.replace('.', '/') + ".class").use {
+            ClassReader(it).accept(classNode, 0)
+        }
+
+        for (method in classNode.methods) {
+            if (method.instructions.size() == 0) continue
+
+            val methodName = "${classNode.name}.${method.name}${method.desc}"
+            val expected = MethodTransformer.analyze(classNode.name, method, OptimizationBasicInterpreter())
+            val actual = BlockFramesMethodAnalyzer(classNode.name, method, OptimizationBasicInterpreter()).analyze()
+
+            assertEquals(methodName, expected.size, actual.size)
+            for (i in expected.indices) {
+                assertEquals("Reachability of #$i in $methodName", expected[i] != null, actual.isReachable(i))
+                assertEquals("Frame of #$i in $methodName", expected[i]?.toString(), actual[i]?.toString())
+            }
+            // Random access should not depend on the previously requested frame
+            for (i in expected.indices.reversed()) {
+                assertEquals("Frame of #$i in $methodName", expected[i]?.toString(), actual[i]?.toString())
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import com.intellij.core.CoreJarFileSystem
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.openapi.vfs.impl.ZipHandler
+import org.jetbrains.kotlin.codegen.inline.InlineClassBytesCache
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+import java.io.File
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+class InlineClassBytesCacheTest : KtUsefulTestCase() {
+    private lateinit var jar: File
+
+    override fun setUp() {
+        super.setUp()
+        jar = File(KotlinTestUtils.tmpDirForTest(this), "lib.jar")
+        writeJar(jar, "a/A.class" to ByteArray(100) { 1 }, "b/B.class" to ByteArray(200) { 2 })
+    }
+
+    fun testHitsAndMisses() {
+        val cache = InlineClassBytesCache(1024)
+        val fileSystem = CoreJarFileSystem()
+
+        assertEquals(100, cache.getOrLoad(fileSystem.entry("a/A.class")).size)
+        assertEquals(100, cache.getOrLoad(fileSystem.entry("a/A.class")).size)
+        assertEquals(200, cache.getOrLoad(fileSystem.entry("b/B.class")).size)
+
+        val statistics = cache.getStatistics()
+        assertEquals(1, statistics.hits)
+        assertEquals(2, statistics.misses)
+        assertEquals(300, statistics.loadedBytes)
+        assertEquals(300, statistics.cachedBytes)
+        assertEquals(2, statistics.entries)
+    }
+
+    fun testCountersOfCompilations() {
+        val cache = InlineClassBytesCache(1024)
+        val fileSystem = CoreJarFileSystem()
+        val first = InlineClassBytesCache.Counters()
+        val second = InlineClassBytesCache.Counters()
+
+        cache.getOrLoad(fileSystem.entry("a/A.class"), first)
+        cache.getOrLoad(fileSystem.entry("a/A.class"), second)
+        cache.getOrLoad(fileSystem.entry("b/B.class"), second)
+
+        assertEquals(0, first.hitCount)
+        assertEquals(1, first.missCount)
+        assertEquals(100, first.loadedByteCount)
+        assertEquals(1, second.hitCount)
+        assertEquals(1, second.missCount)
+        assertEquals(200, second.loadedByteCount)
+        assertEquals(1, cache.getStatistics().hits)
+        assertEquals(2, cache.getStatistics().misses)
+    }
+
+    fun testLeastRecentlyUsedEntryIsEvicted() {
+        val cache = InlineClassBytesCache(250)
+        val fileSystem = CoreJarFileSystem()
+
+        cache.getOrLoad(fileSystem.entry("a/A.class"))
+        cache.getOrLoad(fileSystem.entry("b/B.class"))
+
+        val statistics = cache.getStatistics()
+        assertEquals(100, statistics.evictedBytes)
+        assertEquals(200, statistics.cachedBytes)
+        assertEquals(1, statistics.entries)
+
+        cache.getOrLoad(fileSystem.entry("b/B.class"))
+        assertEquals(1, cache.getStatistics().hits)
+    }
+
+    fun testChangedJarIsReloaded() {
+        val cache = InlineClassBytesCache(1024)
+        assertEquals(100, cache.getOrLoad(CoreJarFileSystem().entry("a/A.class")).size)
+
+        writeJar(jar, "a/A.class" to ByteArray(50) { 3 })
+        jar.setLastModified(jar.lastModified() + 2000)
+        ZipHandler.clearFileAccessorCache()
+
+        val bytes = cache.getOrLoad(CoreJarFileSystem().entry("a/A.class"))
+        assertEquals(50, bytes.size)
+        assertEquals(0, cache.getStatistics().hits)
+    }
+
+    private fun CoreJarFileSystem.entry(path: String): VirtualFile =
+            findFileByPath(jar.path + "!/" + path) ?: throw AssertionError("No $path in $jar")
+
+    private fun writeJar(file: File, vararg entries: Pair<String, ByteArray>) {
+        JarOutputStream(file.outputStream()).use { output ->
+            for ((name, bytes) in entries) {
+                output.putNextEntry(JarEntry(name))
+                output.write(bytes)
+                output.closeEntry()
+            }
+        }
+    }
+}
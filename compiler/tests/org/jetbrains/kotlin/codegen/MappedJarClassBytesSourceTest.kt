@@ -0,0 +1,80 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import com.intellij.core.CoreJarFileSystem
+import org.jetbrains.kotlin.codegen.inline.MappedJarClassBytesSource
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+import java.io.File
+import java.util.*
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+
+class MappedJarClassBytesSourceTest : KtUsefulTestCase() {
+    private val classBytes: ByteArray
+        get() = javaClass.getResourceAsStream("/" + ExpressionCodegen::class.java.name.replace('.', '/') + ".class").readBytes()
+
+    fun testStoredAndDeflatedEntries() {
+        val classBytes = classBytes
+        val jar = File(KotlinTestUtils.tmpDirForTest(this), "lib.jar")
+        JarOutputStream(jar.outputStream()).use { output ->
+            output.putNextEntry(JarEntry("deflated/A.class"))
+            output.write(classBytes)
+            output.closeEntry()
+
+            output.putNextEntry(JarEntry("stored/B.class").apply {
+                method = ZipEntry.STORED
+                size = classBytes.size.toLong()
+                crc = CRC32().apply { update(classBytes) }.value
+            })
+            output.write(classBytes)
+            output.closeEntry()
+        }
+
+        val source = MappedJarClassBytesSource()
+        val fileSystem = CoreJarFileSystem()
+        for (path in listOf("deflated/A.class", "stored/B.class")) {
+            val file = fileSystem.findFileByPath(jar.path + "!/" + path) ?: throw AssertionError("No $path in $jar")
+            val bytes = source.read(file) ?: throw AssertionError("$path is not read from the mapped jar")
+            assertTrue("Different contents of $path", Arrays.equals(file.contentsToByteArray(), bytes))
+        }
+    }
+
+    fun testLeastRecentlyUsedJarsAreUnmapped() {
+        val classBytes = classBytes
+        val directory = KotlinTestUtils.tmpDirForTest(this)
+        val source = MappedJarClassBytesSource(maxMappedJars = 2)
+        val fileSystem = CoreJarFileSystem()
+
+        for (i in 1..3) {
+            val jar = File(directory, "lib$i.jar")
+            JarOutputStream(jar.outputStream()).use { output ->
+                output.putNextEntry(JarEntry("A.class"))
+                output.write(classBytes)
+                output.closeEntry()
+            }
+
+            val file = fileSystem.findFileByPath(jar.path + "!/A.class") ?: throw AssertionError("No A.class in $jar")
+            assertNotNull("A.class is not read from $jar", source.read(file))
+        }
+
+        assertEquals(2, source.mappedJarsCount)
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import com.intellij.openapi.util.Disposer
+import org.jetbrains.kotlin.analyzer.AnalysisResult
+import org.jetbrains.kotlin.codegen.state.GenerationState
+import org.jetbrains.kotlin.config.CompilerConfiguration
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
+import org.jetbrains.kotlin.diagnostics.Severity
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.utils.ifEmpty
+import java.io.File
+
+/**
+ * Measures the code generation of box tests with the bytecode optimization of the methods of each class done serially
+ * and in parallel (-Xoptimization-threads).
+ *
+ * The first argument is the directory of the tests (compiler/testData/codegen/box by default), the rest are the numbers
+ * of optimization threads to measure (1, 2 and 4 by default). Each test file is analyzed once and generated as a module
+ * of its own; the time of the code generation of all files is reported.
+ */
+object ParallelMethodOptimizationBenchmark {
+    private const val WARMUP_ITERATIONS = 3
+    private const val MEASUREMENT_ITERATIONS = 5
+
+    private val SKIPPED_DIRECTIVES = listOf("// FILE:", "// IGNORE_BACKEND", "// LANGUAGE_VERSION", "// FULL_JDK", "// WITH_REFLECT")
+
+    @JvmStatic
+    fun main(args: Array<String>) {
+        val root = File(args.getOrElse(0) { "compiler/testData/codegen/box" })
+        val threadCounts = args.drop(1).map(String::toInt).ifEmpty { listOf(1, 2, 4) }
+
+        val disposable = Disposer.newDisposable()
+        try {
+            val environment = KotlinTestUtils.createEnvironmentWithMockJdkAndIdeaAnnotations(disposable, ConfigurationKind.ALL)
+
+            val files = root.walk()
+                    .filter { it.isFile && it.extension == "kt" }
+                    .sortedBy { it.path }
+                    .map { it to it.readText() }
+                    .filter { (_, text) -> SKIPPED_DIRECTIVES.none { it in text } }
+                    .map { (file, text) -> KotlinTestUtils.createFile(file.name, text, environment.project) }
+                    .mapNotNull { ktFile ->
+                        val analysisResult = JvmResolveUtil.analyze(ktFile, environment)
+                        val hasErrors = analysisResult.isError() ||
+                                        analysisResult.bindingContext.diagnostics.noSuppression().any { it.severity == Severity.ERROR }
+                        if (hasErrors) null else ktFile to analysisResult
+                    }
+                    .toList()
+
+            println("Files: ${files.size}")
+            for (threads in threadCounts) {
+                val configuration = environment.configuration.copy().apply {
+                    put(JVMConfigurationKeys.PARALLEL_OPTIMIZATION_THREADS, threads)
+                }
+
+                repeat(WARMUP_ITERATIONS) { generateAll(files, configuration) }
+
+                val start = System.nanoTime()
+                repeat(MEASUREMENT_ITERATIONS) { generateAll(files, configuration) }
+                val millis = (System.nanoTime() - start) / 1e6 / MEASUREMENT_ITERATIONS
+
+                println(String.format("Optimization threads: %2d  %10.2f ms per iteration", threads, millis))
+            }
+        }
+        finally {
+            Disposer.dispose(disposable)
+        }
+    }
+
+    private fun generateAll(files: List<Pair<KtFile, AnalysisResult>>, configuration: CompilerConfiguration) {
+        for ((ktFile, analysisResult) in files) {
+            val state = GenerationState(
+                    ktFile.project, ClassBuilderFactories.binaries(false), analysisResult.moduleDescriptor,
+                    analysisResult.bindingContext, listOf(ktFile), configuration
+            )
+            try {
+                KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION)
+            }
+            finally {
+                state.destroy()
+            }
+        }
+    }
+}
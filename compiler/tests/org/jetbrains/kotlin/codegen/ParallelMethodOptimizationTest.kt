@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import org.jetbrains.kotlin.analyzer.AnalysisResult
+import org.jetbrains.kotlin.codegen.state.GenerationState
+import org.jetbrains.kotlin.config.CompilerConfiguration
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
+import org.jetbrains.kotlin.diagnostics.Severity
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+import java.io.File
+import java.util.*
+
+/**
+ * Checks that methods optimized in parallel produce exactly the same class files as the serial optimization
+ * over the given box tests.
+ */
+class ParallelMethodOptimizationTest : KtUsefulTestCase() {
+    fun testBoxingOptimization() {
+        doTest("boxingOptimization")
+    }
+
+    fun testCoroutines() {
+        doTest("coroutines")
+    }
+
+    fun testWhen() {
+        doTest("when")
+    }
+
+    private fun doTest(boxTestDirectory: String) {
+        val environment = KotlinTestUtils.createEnvironmentWithMockJdkAndIdeaAnnotations(testRootDisposable, ConfigurationKind.ALL)
+        val serialConfiguration = environment.configuration
+        val parallelConfiguration = serialConfiguration.copy().apply {
+            put(JVMConfigurationKeys.PARALLEL_OPTIMIZATION_THREADS, THREADS)
+        }
+
+        val testFiles = File(KotlinTestUtils.getTestDataPathBase(), "codegen/box/$boxTestDirectory").walk()
+                .filter { it.isFile && it.extension == "kt" }
+                .sortedBy { it.path }
+                .map { it to it.readText() }
+                .filter { (_, text) -> SKIPPED_DIRECTIVES.none { it in text } }
+                .toList()
+
+        var compiledTests = 0
+        for ((file, text) in testFiles) {
+            val ktFile = KotlinTestUtils.createFile(file.name, text, environment.project)
+            val analysisResult = JvmResolveUtil.analyze(ktFile, environment)
+            if (analysisResult.isError() ||
+                analysisResult.bindingContext.diagnostics.noSuppression().any { it.severity == Severity.ERROR }) continue
+
+            val serialOutput = generate(ktFile, analysisResult, serialConfiguration)
+            val parallelOutput = generate(ktFile, analysisResult, parallelConfiguration)
+
+            assertEquals("Different class files are generated for ${file.path}", serialOutput.keys.toList(), parallelOutput.keys.toList())
+            for ((path, bytes) in serialOutput) {
+                assertTrue("Different bytecode is generated for $path in ${file.path}", Arrays.equals(bytes, parallelOutput[path]))
+            }
+
+            compiledTests++
+        }
+
+        assertTrue("No tests are compiled in $boxTestDirectory", compiledTests > 0)
+    }
+
+    private fun generate(ktFile: KtFile, analysisResult: AnalysisResult, configuration: CompilerConfiguration): Map<String, ByteArray> {
+        val state = GenerationState(
+                ktFile.project, ClassBuilderFactories.binaries(false), analysisResult.moduleDescriptor, analysisResult.bindingContext,
+                listOf(ktFile), configuration
+        )
+        try {
+            KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION)
+
+            return state.factory.asList().associateTo(LinkedHashMap<String, ByteArray>()) { it.relativePath to it.asByteArray() }
+        }
+        finally {
+            state.destroy()
+        }
+    }
+
+    companion object {
+        private const val THREADS = 4
+
+        private val SKIPPED_DIRECTIVES = listOf("// FILE:", "// IGNORE_BACKEND", "// LANGUAGE_VERSION", "// FULL_JDK", "// WITH_REFLECT")
+    }
+}
@@ -0,0 +1,686 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen;
+
+import com.intellij.testFramework.TestDataPath;
+import org.jetbrains.kotlin.test.JUnit3RunnerWithInners;
+import org.jetbrains.kotlin.test.KotlinTestUtils;
+import org.jetbrains.kotlin.test.TargetBackend;
+import org.jetbrains.kotlin.test.TestMetadata;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.regex.Pattern;
+
+/** This class is generated by {@link org.jetbrains.kotlin.generators.tests.TestsPackage}. DO NOT MODIFY MANUALLY */
+@SuppressWarnings("all")
+@RunWith(JUnit3RunnerWithInners.class)
+public class ReleaseBindingsAfterCodegenTestGenerated extends AbstractReleaseBindingsAfterCodegenTest {
+    @TestMetadata("compiler/testData/codegen/box/closures")
+    @TestDataPath("$PROJECT_ROOT")
+    @RunWith(JUnit3RunnerWithInners.class)
+    public static class Closures extends AbstractReleaseBindingsAfterCodegenTest {
+        public void testAllFilesPresentInClosures() throws Exception {
+            KotlinTestUtils.assertAllTestsPresentByMetadata(this.getClass(), new File("compiler/testData/codegen/box/closures"), Pattern.compile("^(.+)\\.kt$"), TargetBackend.JVM, true);
+        }
+
+        @TestMetadata("captureExtensionReceiver.kt")
+        public void testCaptureExtensionReceiver() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/captureExtensionReceiver.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("capturedLocalGenericFun.kt")
+        public void testCapturedLocalGenericFun() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/capturedLocalGenericFun.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("closureInsideConstrucor.kt")
+        public void testClosureInsideConstrucor() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/closureInsideConstrucor.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("closureOnTopLevel1.kt")
+        public void testClosureOnTopLevel1() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/closureOnTopLevel1.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("closureOnTopLevel2.kt")
+        public void testClosureOnTopLevel2() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/closureOnTopLevel2.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("closureWithParameter.kt")
+        public void testClosureWithParameter() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/closureWithParameter.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("closureWithParameterAndBoxing.kt")
+        public void testClosureWithParameterAndBoxing() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/closureWithParameterAndBoxing.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("doubleEnclosedLocalVariable.kt")
+        public void testDoubleEnclosedLocalVariable() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/doubleEnclosedLocalVariable.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("enclosingLocalVariable.kt")
+        public void testEnclosingLocalVariable() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/enclosingLocalVariable.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("enclosingThis.kt")
+        public void testEnclosingThis() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/enclosingThis.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("extensionClosure.kt")
+        public void testExtensionClosure() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/extensionClosure.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt10044.kt")
+        public void testKt10044() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/kt10044.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt11634.kt")
+        public void testKt11634() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/kt11634.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt11634_2.kt")
+        public void testKt11634_2() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/kt11634_2.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt11634_3.kt")
+        public void testKt11634_3() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/kt11634_3.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt11634_4.kt")
+        public void testKt11634_4() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/kt11634_4.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt2151.kt")
+        public void testKt2151() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/kt2151.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt3152.kt")
+        public void testKt3152() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/kt3152.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt3523.kt")
+        public void testKt3523() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/kt3523.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt3738.kt")
+        public void testKt3738() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/kt3738.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt3905.kt")
+        public void testKt3905() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/kt3905.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt4106.kt")
+        public void testKt4106() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/kt4106.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt4137.kt")
+        public void testKt4137() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/kt4137.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt5589.kt")
+        public void testKt5589() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/kt5589.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("localClassFunClosure.kt")
+        public void testLocalClassFunClosure() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/localClassFunClosure.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("localClassLambdaClosure.kt")
+        public void testLocalClassLambdaClosure() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/localClassLambdaClosure.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("localFunctionInFunction.kt")
+        public void testLocalFunctionInFunction() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/localFunctionInFunction.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("localFunctionInInitializer.kt")
+        public void testLocalFunctionInInitializer() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/localFunctionInInitializer.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("localGenericFun.kt")
+        public void testLocalGenericFun() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/localGenericFun.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("localReturn.kt")
+        public void testLocalReturn() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/localReturn.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("localReturnWithAutolabel.kt")
+        public void testLocalReturnWithAutolabel() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/localReturnWithAutolabel.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("noRefToOuter.kt")
+        public void testNoRefToOuter() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/noRefToOuter.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("recursiveClosure.kt")
+        public void testRecursiveClosure() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/recursiveClosure.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("simplestClosure.kt")
+        public void testSimplestClosure() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/simplestClosure.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("simplestClosureAndBoxing.kt")
+        public void testSimplestClosureAndBoxing() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/simplestClosureAndBoxing.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("subclosuresWithinInitializers.kt")
+        public void testSubclosuresWithinInitializers() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/subclosuresWithinInitializers.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("underscoreParameters.kt")
+        public void testUnderscoreParameters() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/underscoreParameters.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("compiler/testData/codegen/box/closures/captureOuterProperty")
+        @TestDataPath("$PROJECT_ROOT")
+        @RunWith(JUnit3RunnerWithInners.class)
+        public static class CaptureOuterProperty extends AbstractReleaseBindingsAfterCodegenTest {
+            public void testAllFilesPresentInCaptureOuterProperty() throws Exception {
+                KotlinTestUtils.assertAllTestsPresentByMetadata(this.getClass(), new File("compiler/testData/codegen/box/closures/captureOuterProperty"), Pattern.compile("^(.+)\\.kt$"), TargetBackend.JVM, true);
+            }
+
+            @TestMetadata("captureFunctionInProperty.kt")
+            public void testCaptureFunctionInProperty() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/captureOuterProperty/captureFunctionInProperty.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("inFunction.kt")
+            public void testInFunction() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/captureOuterProperty/inFunction.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("inProperty.kt")
+            public void testInProperty() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/captureOuterProperty/inProperty.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("inPropertyDeepObjectChain.kt")
+            public void testInPropertyDeepObjectChain() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/captureOuterProperty/inPropertyDeepObjectChain.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("inPropertyFromSuperClass.kt")
+            public void testInPropertyFromSuperClass() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/captureOuterProperty/inPropertyFromSuperClass.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("inPropertyFromSuperSuperClass.kt")
+            public void testInPropertyFromSuperSuperClass() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/captureOuterProperty/inPropertyFromSuperSuperClass.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("kt4176.kt")
+            public void testKt4176() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/captureOuterProperty/kt4176.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("kt4656.kt")
+            public void testKt4656() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/captureOuterProperty/kt4656.kt");
+                doTest(fileName);
+            }
+        }
+
+        @TestMetadata("compiler/testData/codegen/box/closures/closureInsideClosure")
+        @TestDataPath("$PROJECT_ROOT")
+        @RunWith(JUnit3RunnerWithInners.class)
+        public static class ClosureInsideClosure extends AbstractReleaseBindingsAfterCodegenTest {
+            public void testAllFilesPresentInClosureInsideClosure() throws Exception {
+                KotlinTestUtils.assertAllTestsPresentByMetadata(this.getClass(), new File("compiler/testData/codegen/box/closures/closureInsideClosure"), Pattern.compile("^(.+)\\.kt$"), TargetBackend.JVM, true);
+            }
+
+            @TestMetadata("localFunInsideLocalFun.kt")
+            public void testLocalFunInsideLocalFun() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/closureInsideClosure/localFunInsideLocalFun.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("localFunInsideLocalFunDifferentSignatures.kt")
+            public void testLocalFunInsideLocalFunDifferentSignatures() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/closureInsideClosure/localFunInsideLocalFunDifferentSignatures.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("propertyAndFunctionNameClash.kt")
+            public void testPropertyAndFunctionNameClash() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/closureInsideClosure/propertyAndFunctionNameClash.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("threeLevels.kt")
+            public void testThreeLevels() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/closureInsideClosure/threeLevels.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("threeLevelsDifferentSignatures.kt")
+            public void testThreeLevelsDifferentSignatures() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/closureInsideClosure/threeLevelsDifferentSignatures.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("varAsFunInsideLocalFun.kt")
+            public void testVarAsFunInsideLocalFun() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/closureInsideClosure/varAsFunInsideLocalFun.kt");
+                doTest(fileName);
+            }
+        }
+    }
+
+    @TestMetadata("compiler/testData/codegen/box/localClasses")
+    @TestDataPath("$PROJECT_ROOT")
+    @RunWith(JUnit3RunnerWithInners.class)
+    public static class LocalClasses extends AbstractReleaseBindingsAfterCodegenTest {
+        public void testAllFilesPresentInLocalClasses() throws Exception {
+            KotlinTestUtils.assertAllTestsPresentByMetadata(this.getClass(), new File("compiler/testData/codegen/box/localClasses"), Pattern.compile("^(.+)\\.kt$"), TargetBackend.JVM, true);
+        }
+
+        @TestMetadata("anonymousObjectInInitializer.kt")
+        public void testAnonymousObjectInInitializer() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/anonymousObjectInInitializer.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("anonymousObjectInParameterInitializer.kt")
+        public void testAnonymousObjectInParameterInitializer() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/anonymousObjectInParameterInitializer.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("closureOfLambdaInLocalClass.kt")
+        public void testClosureOfLambdaInLocalClass() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/closureOfLambdaInLocalClass.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("inExtensionFunction.kt")
+        public void testInExtensionFunction() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/inExtensionFunction.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("inExtensionProperty.kt")
+        public void testInExtensionProperty() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/inExtensionProperty.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("inLocalExtensionFunction.kt")
+        public void testInLocalExtensionFunction() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/inLocalExtensionFunction.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("inLocalExtensionProperty.kt")
+        public void testInLocalExtensionProperty() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/inLocalExtensionProperty.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("innerClassInLocalClass.kt")
+        public void testInnerClassInLocalClass() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/innerClassInLocalClass.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("innerOfLocalCaptureExtensionReceiver.kt")
+        public void testInnerOfLocalCaptureExtensionReceiver() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/innerOfLocalCaptureExtensionReceiver.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt2700.kt")
+        public void testKt2700() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/kt2700.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt2873.kt")
+        public void testKt2873() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/kt2873.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt3210.kt")
+        public void testKt3210() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/kt3210.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt3389.kt")
+        public void testKt3389() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/kt3389.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt3584.kt")
+        public void testKt3584() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/kt3584.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("kt4174.kt")
+        public void testKt4174() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/kt4174.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("localClass.kt")
+        public void testLocalClass() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/localClass.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("localClassCaptureExtensionReceiver.kt")
+        public void testLocalClassCaptureExtensionReceiver() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/localClassCaptureExtensionReceiver.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("localClassInInitializer.kt")
+        public void testLocalClassInInitializer() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/localClassInInitializer.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("localClassInParameterInitializer.kt")
+        public void testLocalClassInParameterInitializer() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/localClassInParameterInitializer.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("localDataClass.kt")
+        public void testLocalDataClass() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/localDataClass.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("localExtendsInnerAndReferencesOuterMember.kt")
+        public void testLocalExtendsInnerAndReferencesOuterMember() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/localExtendsInnerAndReferencesOuterMember.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("noclosure.kt")
+        public void testNoclosure() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/noclosure.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("object.kt")
+        public void testObject() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/object.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("ownClosureOfInnerLocalClass.kt")
+        public void testOwnClosureOfInnerLocalClass() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/ownClosureOfInnerLocalClass.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("withclosure.kt")
+        public void testWithclosure() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/localClasses/withclosure.kt");
+            doTest(fileName);
+        }
+    }
+
+    @TestMetadata("compiler/testData/codegen/box/multifileClasses")
+    @TestDataPath("$PROJECT_ROOT")
+    @RunWith(JUnit3RunnerWithInners.class)
+    public static class MultifileClasses extends AbstractReleaseBindingsAfterCodegenTest {
+        public void testAllFilesPresentInMultifileClasses() throws Exception {
+            KotlinTestUtils.assertAllTestsPresentByMetadata(this.getClass(), new File("compiler/testData/codegen/box/multifileClasses"), Pattern.compile("^(.+)\\.kt$"), TargetBackend.JVM, true);
+        }
+
+        @TestMetadata("callMultifileClassMemberFromOtherPackage.kt")
+        public void testCallMultifileClassMemberFromOtherPackage() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/callMultifileClassMemberFromOtherPackage.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("callsToMultifileClassFromOtherPackage.kt")
+        public void testCallsToMultifileClassFromOtherPackage() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/callsToMultifileClassFromOtherPackage.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("constPropertyReferenceFromMultifileClass.kt")
+        public void testConstPropertyReferenceFromMultifileClass() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/constPropertyReferenceFromMultifileClass.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("inlineMultifileClassMemberFromOtherPackage.kt")
+        public void testInlineMultifileClassMemberFromOtherPackage() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/inlineMultifileClassMemberFromOtherPackage.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("multifileClassPartsInitialization.kt")
+        public void testMultifileClassPartsInitialization() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/multifileClassPartsInitialization.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("multifileClassWith2Files.kt")
+        public void testMultifileClassWith2Files() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/multifileClassWith2Files.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("multifileClassWithCrossCall.kt")
+        public void testMultifileClassWithCrossCall() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/multifileClassWithCrossCall.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("multifileClassWithPrivate.kt")
+        public void testMultifileClassWithPrivate() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/multifileClassWithPrivate.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("privateConstVal.kt")
+        public void testPrivateConstVal() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/privateConstVal.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("samePartNameDifferentFacades.kt")
+        public void testSamePartNameDifferentFacades() throws Exception {
+            String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/samePartNameDifferentFacades.kt");
+            doTest(fileName);
+        }
+
+        @TestMetadata("compiler/testData/codegen/box/multifileClasses/optimized")
+        @TestDataPath("$PROJECT_ROOT")
+        @RunWith(JUnit3RunnerWithInners.class)
+        public static class Optimized extends AbstractReleaseBindingsAfterCodegenTest {
+            public void testAllFilesPresentInOptimized() throws Exception {
+                KotlinTestUtils.assertAllTestsPresentByMetadata(this.getClass(), new File("compiler/testData/codegen/box/multifileClasses/optimized"), Pattern.compile("^(.+)\\.kt$"), TargetBackend.JVM, true);
+            }
+
+            @TestMetadata("callableRefToFun.kt")
+            public void testCallableRefToFun() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/optimized/callableRefToFun.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("callableRefToInternalValInline.kt")
+            public void testCallableRefToInternalValInline() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/optimized/callableRefToInternalValInline.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("callableRefToPrivateVal.kt")
+            public void testCallableRefToPrivateVal() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/optimized/callableRefToPrivateVal.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("callableRefToVal.kt")
+            public void testCallableRefToVal() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/optimized/callableRefToVal.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("calls.kt")
+            public void testCalls() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/optimized/calls.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("deferredStaticInitialization.kt")
+            public void testDeferredStaticInitialization() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/optimized/deferredStaticInitialization.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("delegatedVal.kt")
+            public void testDelegatedVal() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/optimized/delegatedVal.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("initializePrivateVal.kt")
+            public void testInitializePrivateVal() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/optimized/initializePrivateVal.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("initializePublicVal.kt")
+            public void testInitializePublicVal() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/optimized/initializePublicVal.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("overlappingFuns.kt")
+            public void testOverlappingFuns() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/optimized/overlappingFuns.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("overlappingVals.kt")
+            public void testOverlappingVals() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/optimized/overlappingVals.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("valAccessFromInlineFunCalledFromJava.kt")
+            public void testValAccessFromInlineFunCalledFromJava() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/optimized/valAccessFromInlineFunCalledFromJava.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("valAccessFromInlinedToDifferentPackage.kt")
+            public void testValAccessFromInlinedToDifferentPackage() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/optimized/valAccessFromInlinedToDifferentPackage.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("valWithAccessor.kt")
+            public void testValWithAccessor() throws Exception {
+                String fileName = KotlinTestUtils.navigationMetadata("compiler/testData/codegen/box/multifileClasses/optimized/valWithAccessor.kt");
+                doTest(fileName);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.daemon
+
+import junit.framework.TestCase
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+
+class CompilationsSchedulerTest : TestCase() {
+
+    fun testQueuedCompilationsStartInOrderOfArrival() {
+        val scheduler = CompilationsScheduler(1)
+        val started = Collections.synchronizedList(ArrayList<Int>())
+        val firstStarted = CountDownLatch(1)
+        val releaseFirst = CountDownLatch(1)
+
+        val first = thread {
+            scheduler.withCompilationSlot {
+                firstStarted.countDown()
+                releaseFirst.await()
+            }
+        }
+        firstStarted.await()
+
+        val queued = (1..3).map { n ->
+            val t = thread { scheduler.withCompilationSlot { started.add(n) } }
+            // the next compilation arrives only when this one is waiting in the queue
+            waitFor { scheduler.getStatistics().queueLength == n }
+            t
+        }
+
+        releaseFirst.countDown()
+        first.join()
+        queued.forEach { it.join() }
+
+        assertEquals(listOf(1, 2, 3), started)
+
+        val statistics = scheduler.getStatistics()
+        assertEquals(4, statistics.compilations)
+        assertEquals(3, statistics.queuedCompilations)
+        assertEquals(0, statistics.queueLength)
+        assertTrue(statistics.maxQueueWaitNanos > 0)
+        assertTrue(statistics.totalQueueWaitNanos >= statistics.maxQueueWaitNanos)
+    }
+
+    fun testNumberOfParallelCompilationsIsLimited() {
+        val scheduler = CompilationsScheduler(2)
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+
+        val threads = (1..8).map {
+            thread {
+                scheduler.withCompilationSlot {
+                    val current = running.incrementAndGet()
+                    while (true) {
+                        val max = maxRunning.get()
+                        if (current <= max || maxRunning.compareAndSet(max, current)) break
+                    }
+                    Thread.sleep(20)
+                    running.decrementAndGet()
+                }
+            }
+        }
+        threads.forEach { it.join() }
+
+        assertEquals(2, maxRunning.get())
+        assertEquals(8, scheduler.getStatistics().compilations)
+    }
+
+    fun testCompilationWithinLimitIsNotQueued() {
+        val scheduler = CompilationsScheduler(2)
+        val result = scheduler.withCompilationSlot { queueWaitNanos -> queueWaitNanos }
+
+        assertTrue(result >= 0)
+        val statistics = scheduler.getStatistics()
+        assertEquals(1, statistics.compilations)
+        assertEquals(0, statistics.queuedCompilations)
+    }
+
+    fun testCompilationsOfDifferentKindsDontRunTogether() {
+        val scheduler = CompilationsScheduler(4)
+        val events = Collections.synchronizedList(ArrayList<String>())
+        val incremental = object : CompilationsScheduler.CompilationKind() {
+            override fun enter() { events.add("enter") }
+            override fun leave() { events.add("leave") }
+        }
+        val firstStarted = CountDownLatch(1)
+        val releaseFirst = CountDownLatch(1)
+
+        val first = thread {
+            scheduler.withCompilationSlot {
+                events.add("start default 1")
+                firstStarted.countDown()
+                releaseFirst.await()
+                events.add("finish default 1")
+            }
+        }
+        firstStarted.await()
+
+        val incrementalThread = thread { scheduler.withCompilationSlot(incremental) { events.add("run incremental") } }
+        waitFor { scheduler.getStatistics().queueLength == 1 }
+        // there is a free slot, but the compilation waits for the incremental one queued before it
+        val second = thread { scheduler.withCompilationSlot { events.add("run default 2") } }
+        waitFor { scheduler.getStatistics().queueLength == 2 }
+
+        releaseFirst.countDown()
+        listOf(first, incrementalThread, second).forEach { it.join() }
+
+        assertEquals(listOf("start default 1", "finish default 1", "enter", "run incremental", "leave", "run default 2"), events)
+    }
+
+    fun testCompilationsOfOneKindRunTogether() {
+        val scheduler = CompilationsScheduler(2)
+        val entered = AtomicInteger()
+        val left = AtomicInteger()
+        val incremental = object : CompilationsScheduler.CompilationKind() {
+            override fun enter() { entered.incrementAndGet() }
+            override fun leave() { left.incrementAndGet() }
+        }
+        val bothStarted = CountDownLatch(2)
+
+        val threads = (1..2).map {
+            thread {
+                scheduler.withCompilationSlot(incremental) {
+                    bothStarted.countDown()
+                    bothStarted.await(10, TimeUnit.SECONDS)
+                }
+            }
+        }
+        threads.forEach { it.join() }
+
+        assertEquals(1, entered.get())
+        assertEquals(1, left.get())
+        // the second compilation started while the first one was running
+        assertEquals(0, scheduler.getStatistics().queuedCompilations)
+    }
+
+    private fun waitFor(condition: () -> Boolean) {
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10)
+        while (!condition()) {
+            if (System.nanoTime() > deadline) fail("Timed out waiting for the scheduler")
+            Thread.sleep(1)
+        }
+    }
+}
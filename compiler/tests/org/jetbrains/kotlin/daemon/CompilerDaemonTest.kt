@@ -123,6 +123,40 @@ class CompilerDaemonTest : KotlinIntegrationTestBase() {
         }
     }
 
+    fun testHelloAppWithMappedInlineJars() {
+        withFlagFile(getTestName(true), ".alive") { flagFile ->
+            val daemonOptions = DaemonOptions(runFilesPath = File(tmpdir, getTestName(true)).absolutePath,
+                                              reportPerf = true,
+                                              mapInlineJars = true)
+
+            KotlinCompilerClient.shutdownCompileService(compilerId, daemonOptions)
+
+            val logFile = createTempFile("kotlin-daemon-test.", ".log")
+
+            val daemonJVMOptions = configureDaemonJVMOptions("D$COMPILE_DAEMON_LOG_PATH_PROPERTY=\"${logFile.loggerCompatiblePath}\"",
+                                                             inheritMemoryLimits = false, inheritAdditionalProperties = false)
+            var daemonShotDown = false
+
+            try {
+                val jar = tmpdir.absolutePath + File.separator + "hello.jar"
+                runDaemonCompilerTwice(flagFile, compilerId, daemonJVMOptions, daemonOptions,
+                                       "-include-runtime", File(getTestBaseDir(), "hello.kt").absolutePath, "-d", jar)
+
+                KotlinCompilerClient.shutdownCompileService(compilerId, daemonOptions)
+                daemonShotDown = true
+                logFile.assertLogContainsSequence("Starting compilation with args: ",
+                                                  "mapped inline jars: [1-9]",
+                                                  "Shutdown complete")
+                logFile.delete()
+                run("hello.run", "-cp", jar, "Hello.HelloKt")
+            }
+            finally {
+                if (!daemonShotDown)
+                    KotlinCompilerClient.shutdownCompileService(compilerId, daemonOptions)
+            }
+        }
+    }
+
     fun testDaemonJvmOptionsParsing() {
         val backupJvmOptions = System.getProperty(COMPILE_DAEMON_JVM_OPTIONS_PROPERTY)
         try {
@@ -141,10 +175,11 @@ class CompilerDaemonTest : KotlinIntegrationTestBase() {
     fun testDaemonOptionsParsing() {
         val backupOptions = System.getProperty(COMPILE_DAEMON_OPTIONS_PROPERTY)
         try {
-            System.setProperty(COMPILE_DAEMON_OPTIONS_PROPERTY, "runFilesPath=abcd,autoshutdownIdleSeconds=1111")
+            System.setProperty(COMPILE_DAEMON_OPTIONS_PROPERTY, "runFilesPath=abcd,autoshutdownIdleSeconds=1111,mapInlineJars")
             val opts = configureDaemonOptions()
             assertEquals("abcd", opts.runFilesPath)
             assertEquals(1111, opts.autoshutdownIdleSeconds)
+            assertTrue(opts.mapInlineJars)
         }
         finally {
             restoreSystemProperty(COMPILE_DAEMON_OPTIONS_PROPERTY, backupOptions)
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.daemon
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import java.io.File
+
+class LazyClasspathWatcherTest : TestCase() {
+
+    private lateinit var classpathDir: File
+
+    override fun setUp() {
+        super.setUp()
+        classpathDir = KotlinTestUtils.tmpDir("classpath")
+    }
+
+    override fun tearDown() {
+        classpathDir.deleteRecursively()
+        super.tearDown()
+    }
+
+    fun testOnlySuspectedFilesAreDigested() {
+        val files = (1..10).map { File(classpathDir, "C$it.class").apply { writeText("class $it") } }
+        val watcher = LazyClasspathWatcher(listOf(classpathDir.absolutePath), checkPeriod = 0, digestCheckPeriod = Long.MAX_VALUE)
+
+        assertFalse(watcher.isChanged)
+        assertEquals(files.size.toLong(), watcher.getStatistics().digestedFiles)
+
+        // touched files with the same contents are digested, but not reported as changed
+        files.take(3).forEach { it.setLastModified(it.lastModified() - 10000) }
+        assertFalse(watcher.isChanged)
+        assertEquals(files.size + 3L, watcher.getStatistics().digestedFiles)
+
+        // the new time of the touched files is remembered, so they are not digested again
+        assertFalse(watcher.isChanged)
+        assertEquals(files.size + 3L, watcher.getStatistics().digestedFiles)
+
+        files[5].writeText("class 5 modified")
+        assertTrue(watcher.isChanged)
+        assertTrue(watcher.isChanged)
+    }
+
+    fun testModificationWithSameTimeAndSizeIsFoundByDigestCheck() {
+        val file = File(classpathDir, "A.class").apply { writeText("class A") }
+        val watcher = LazyClasspathWatcher(listOf(classpathDir.absolutePath), checkPeriod = 0, digestCheckPeriod = 0)
+        assertFalse(watcher.isChanged)
+
+        val lastModified = file.lastModified()
+        file.writeText("class B")
+        file.setLastModified(lastModified)
+
+        // the digest check of all files runs in the background after a check
+        val deadline = System.currentTimeMillis() + 10000
+        while (!watcher.isChanged) {
+            if (System.currentTimeMillis() > deadline) fail("The modification was not detected")
+            Thread.sleep(10)
+        }
+    }
+}
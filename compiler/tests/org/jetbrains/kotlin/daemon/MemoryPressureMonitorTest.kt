@@ -0,0 +1,84 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.daemon
+
+import junit.framework.TestCase
+import java.util.*
+
+class MemoryPressureMonitorTest : TestCase() {
+
+    private class TestCache(var size: Long?) {
+        val trims = ArrayList<Long>()
+
+        fun trimTo(bytes: Long) {
+            trims.add(bytes)
+            if (size != null) size = bytes
+        }
+    }
+
+    private val monitor = MemoryPressureMonitor(budgetPercent = 50)
+    private val small = TestCache(100)
+    private val large = TestCache(300)
+    private val important = TestCache(1000)
+    private val unknown = TestCache(null)
+
+    override fun setUp() {
+        super.setUp()
+        register("small", 0, small)
+        register("large", 0, large)
+        register("important", 1, important)
+        register("unknown", 2, unknown)
+    }
+
+    private fun register(name: String, priority: Int, cache: TestCache) {
+        monitor.register(name, priority, { cache.size }, { cache.trimTo(it) })
+    }
+
+    fun testLargerCacheIsHalvedFirst() {
+        monitor.evict(100)
+
+        assertEquals(listOf(150L), large.trims)
+        assertTrue(small.trims.isEmpty())
+        assertTrue(important.trims.isEmpty())
+        assertTrue(unknown.trims.isEmpty())
+    }
+
+    fun testCachesAreHalvedInPriorityOrder() {
+        monitor.evict(700)
+
+        assertEquals(listOf(150L), large.trims)
+        assertEquals(listOf(50L), small.trims)
+        assertEquals(listOf(500L), important.trims)
+        // the halved caches have released enough
+        assertTrue(unknown.trims.isEmpty())
+    }
+
+    fun testCachesAreClearedWhenHalvingIsNotEnough() {
+        monitor.evict(10000)
+
+        assertEquals(listOf(150L, 0L), large.trims)
+        assertEquals(listOf(50L, 0L), small.trims)
+        assertEquals(listOf(500L, 0L), important.trims)
+        // the cache of unknown size is only cleared
+        assertEquals(listOf(0L), unknown.trims)
+
+        val statistics = monitor.getStatistics()
+        assertEquals(1, statistics.evictions)
+        assertEquals(1400, statistics.releasedBytes)
+        assertEquals(mapOf("small" to 2L, "large" to 2L, "important" to 2L, "unknown" to 1L), statistics.evictionsByCache)
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.daemon
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.daemon.common.RemoteOutputStream
+import java.io.ByteArrayOutputStream
+
+class RemoteOutputStreamClientTest : TestCase() {
+    private class RecordingRemoteStream : RemoteOutputStream {
+        val received = ByteArrayOutputStream()
+        @Volatile var calls = 0
+        @Volatile var failure: RuntimeException? = null
+
+        override fun close() {}
+
+        @Synchronized
+        override fun write(data: ByteArray, offset: Int, length: Int) {
+            calls++
+            failure?.let { failure = null; throw it }
+            received.write(data, offset, length)
+        }
+
+        @Synchronized
+        override fun write(dataByte: Int) {
+            write(byteArrayOf(dataByte.toByte()), 0, 1)
+        }
+
+        val text: String
+            @Synchronized get() = received.toString()
+    }
+
+    fun testWritesAreCoalescedUntilFlush() {
+        val remote = RecordingRemoteStream()
+        val client = RemoteOutputStreamClient(remote, flushDelayMs = 60000)
+
+        "abc".toByteArray().forEach { client.write(it.toInt()) }
+        client.write("def".toByteArray())
+        assertEquals(0, remote.calls)
+
+        client.flush()
+        assertEquals(1, remote.calls)
+        assertEquals("abcdef", remote.text)
+        client.close()
+    }
+
+    fun testBufferedOutputIsFlushedAfterDelay() {
+        val remote = RecordingRemoteStream()
+        val client = RemoteOutputStreamClient(remote, flushDelayMs = 10)
+
+        client.write("abc".toByteArray())
+        waitFor { remote.text == "abc" }
+        client.close()
+    }
+
+    fun testScheduledFlushIsCancelledOnClose() {
+        val remote = RecordingRemoteStream()
+        val client = RemoteOutputStreamClient(remote, flushDelayMs = 50)
+
+        client.write("abc".toByteArray())
+        client.close()
+        assertEquals(1, remote.calls)
+
+        Thread.sleep(200)
+        assertEquals(1, remote.calls)
+        assertEquals("abc", remote.text)
+    }
+
+    fun testFailedScheduledFlushIsRetried() {
+        val remote = RecordingRemoteStream()
+        remote.failure = IllegalStateException("connection lost")
+        val client = RemoteOutputStreamClient(remote, flushDelayMs = 10)
+
+        client.write("abc".toByteArray())
+        waitFor { remote.calls == 1 }
+
+        client.write("def".toByteArray())
+        waitFor { remote.text == "abcdef" }
+        client.close()
+    }
+
+    private fun waitFor(condition: () -> Boolean) {
+        val deadline = System.currentTimeMillis() + 10000
+        while (!condition()) {
+            assertTrue("condition is not met in time", System.currentTimeMillis() < deadline)
+            Thread.sleep(10)
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.jvm.compiler
+
+import com.intellij.core.CoreJarFileSystem
+import com.intellij.core.CoreLocalFileSystem
+import com.intellij.openapi.vfs.VirtualFile
+import org.jetbrains.kotlin.load.kotlin.KotlinJarBinaryClassCache
+import org.jetbrains.kotlin.load.kotlin.VirtualFileKotlinClass
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+import java.io.File
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+class KotlinJarBinaryClassCacheTest : KtUsefulTestCase() {
+    private lateinit var jar: File
+    private var created = 0
+
+    override fun setUp() {
+        super.setUp()
+        jar = File(KotlinTestUtils.tmpDirForTest(this), "lib.jar")
+        JarOutputStream(jar.outputStream()).use { output ->
+            for (name in listOf("a/A.class", "b/B.class")) {
+                output.putNextEntry(JarEntry(name))
+                output.write(ByteArray(10))
+                output.closeEntry()
+            }
+        }
+    }
+
+    fun testNonKotlinClassIsCached() {
+        val cache = KotlinJarBinaryClassCache(10)
+        val fileSystem = CoreJarFileSystem()
+
+        assertNull(cache.getOrCreate(fileSystem.entry("a/A.class"), { create(it) }))
+        assertNull(cache.getOrCreate(fileSystem.entry("a/A.class"), { create(it) }))
+
+        assertEquals(1, created)
+        val statistics = cache.getStatistics()
+        assertEquals(1, statistics.hits)
+        assertEquals(1, statistics.misses)
+        assertEquals(1, statistics.entries)
+    }
+
+    fun testLeastRecentlyUsedEntryIsEvicted() {
+        val cache = KotlinJarBinaryClassCache(1)
+        val fileSystem = CoreJarFileSystem()
+
+        cache.getOrCreate(fileSystem.entry("a/A.class"), { create(it) })
+        cache.getOrCreate(fileSystem.entry("b/B.class"), { create(it) })
+        cache.getOrCreate(fileSystem.entry("a/A.class"), { create(it) })
+
+        assertEquals(3, created)
+        assertEquals(2, cache.getStatistics().evicted)
+    }
+
+    fun testOnlyClassesFromJarsAreCached() {
+        val cache = KotlinJarBinaryClassCache(10)
+        val file = CoreLocalFileSystem().findFileByPath(jar.path) ?: throw AssertionError("No $jar")
+
+        cache.getOrCreate(file) { create(it) }
+        cache.getOrCreate(file) { create(it) }
+
+        assertEquals(2, created)
+        assertEquals(0, cache.getStatistics().entries)
+    }
+
+    fun testEntryIsFoundAfterJarCachesAreCleared() {
+        val cache = KotlinJarBinaryClassCache(10)
+        val fileSystem = CoreJarFileSystem()
+
+        cache.getOrCreate(fileSystem.entry("a/A.class")) { create(it) }
+        // the daemon clears the jar caches after each session, so the next session gets new virtual files
+        fileSystem.clearHandlersCache()
+        cache.getOrCreate(fileSystem.entry("a/A.class")) { create(it) }
+        cache.getOrCreate(CoreJarFileSystem().entry("a/A.class")) { create(it) }
+
+        assertEquals(1, created)
+        assertEquals(2, cache.getStatistics().hits)
+    }
+
+    fun testRebuiltJarIsReadAgain() {
+        val cache = KotlinJarBinaryClassCache(10)
+        cache.getOrCreate(CoreJarFileSystem().entry("a/A.class")) { create(it) }
+
+        JarOutputStream(jar.outputStream()).use { output ->
+            output.putNextEntry(JarEntry("a/A.class"))
+            output.write(ByteArray(20))
+            output.closeEntry()
+        }
+        cache.getOrCreate(CoreJarFileSystem().entry("a/A.class")) { create(it) }
+
+        assertEquals(2, created)
+        assertEquals(0, cache.getStatistics().hits)
+    }
+
+    fun testClear() {
+        val cache = KotlinJarBinaryClassCache(10)
+        cache.getOrCreate(CoreJarFileSystem().entry("a/A.class")) { create(it) }
+        assertEquals(1, cache.getStatistics().entries)
+
+        cache.clear()
+        assertEquals(0, cache.getStatistics().entries)
+    }
+
+    // the test jar contains no real classes
+    private fun create(@Suppress("UNUSED_PARAMETER") file: VirtualFile): VirtualFileKotlinClass? {
+        created++
+        return null
+    }
+
+    private fun CoreJarFileSystem.entry(path: String): VirtualFile =
+            findFileByPath(jar.path + "!/" + path) ?: throw AssertionError("No $path in $jar")
+}
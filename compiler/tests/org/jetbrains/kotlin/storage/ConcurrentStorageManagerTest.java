@@ -0,0 +1,250 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.storage;
+
+import kotlin.jvm.functions.Function0;
+import kotlin.jvm.functions.Function1;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConcurrentStorageManagerTest extends StorageManagerTest {
+    private static final int THREADS = 8;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private ExecutorService executor;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        super.tearDown();
+    }
+
+    @NotNull
+    @Override
+    protected StorageManager createStorageManager() {
+        return new ConcurrentStorageManager();
+    }
+
+    public void testLazyValueComputedOnceByConcurrentThreads() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        final NotNullLazyValue<Integer> value = createStorageManager().createLazyValue(new Function0<Integer>() {
+            @Override
+            public Integer invoke() {
+                sleep();
+                return counter.incrementAndGet();
+            }
+        });
+
+        for (Integer result : invokeConcurrently(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return value.invoke();
+            }
+        })) {
+            assertEquals(1, result.intValue());
+        }
+        assertEquals(1, counter.get());
+    }
+
+    public void testMemoizedFunctionComputedOnceByConcurrentThreads() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        final MemoizedFunctionToNotNull<String, String> f = createStorageManager().createMemoizedFunction(new Function1<String, String>() {
+            @Override
+            public String invoke(String s) {
+                sleep();
+                return s + counter.incrementAndGet();
+            }
+        });
+
+        for (String result : invokeConcurrently(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return f.invoke("ok");
+            }
+        })) {
+            assertEquals("ok1", result);
+        }
+        assertEquals(1, counter.get());
+    }
+
+    public void testDifferentKeysAreComputedConcurrently() throws Exception {
+        final CountDownLatch allStarted = new CountDownLatch(THREADS);
+        final AtomicInteger key = new AtomicInteger();
+        final MemoizedFunctionToNotNull<Integer, Integer> f = createStorageManager().createMemoizedFunction(new Function1<Integer, Integer>() {
+            @Override
+            public Integer invoke(Integer i) {
+                allStarted.countDown();
+                await(allStarted);
+                return i;
+            }
+        });
+
+        // Every computation waits for all the others to start, so this would hang if the keys were computed one by one
+        invokeConcurrently(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return f.invoke(key.getAndIncrement());
+            }
+        });
+    }
+
+    public void testCycleBetweenThreadsIsReportedAsRecursion() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final StorageManager storageManager = createStorageManager();
+
+        class C {
+            NotNullLazyValue<String> first = createValue("first", new Function0<String>() {
+                @Override
+                public String invoke() {
+                    return second.invoke();
+                }
+            });
+            NotNullLazyValue<String> second = createValue("second", new Function0<String>() {
+                @Override
+                public String invoke() {
+                    return first.invoke();
+                }
+            });
+
+            @NotNull
+            private NotNullLazyValue<String> createValue(final String name, final Function0<String> dependency) {
+                return storageManager.createRecursionTolerantLazyValue(new Function0<String>() {
+                    @Override
+                    public String invoke() {
+                        bothStarted.countDown();
+                        await(bothStarted);
+                        return name + " -> " + dependency.invoke();
+                    }
+                }, "recursion");
+            }
+        }
+
+        final C c = new C();
+        Future<String> first = executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return c.first.invoke();
+            }
+        });
+        Future<String> second = executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return c.second.invoke();
+            }
+        });
+
+        String firstResult = first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        String secondResult = second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        // Exactly one of the threads breaks the cycle, the other one gets the value computed by it
+        assertTrue(firstResult + ", " + secondResult,
+                   firstResult.equals("first -> recursion") && secondResult.equals("second -> first -> recursion") ||
+                   firstResult.equals("first -> second -> recursion") && secondResult.equals("second -> recursion"));
+        assertEquals(firstResult, c.first.invoke());
+        assertEquals(secondResult, c.second.invoke());
+    }
+
+    public void testComputeWaitingForValueWhichComputesOnAnotherThread() throws Exception {
+        final StorageManager storageManager = createStorageManager();
+        final CountDownLatch valueStarted = new CountDownLatch(1);
+        final CountDownLatch lockTaken = new CountDownLatch(1);
+        final NotNullLazyValue<String> value = storageManager.createLazyValue(new Function0<String>() {
+            @Override
+            public String invoke() {
+                valueStarted.countDown();
+                await(lockTaken);
+                return storageManager.compute(new Function0<String>() {
+                    @Override
+                    public String invoke() {
+                        return "value";
+                    }
+                });
+            }
+        });
+
+        Future<String> computingValue = executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return value.invoke();
+            }
+        });
+        await(valueStarted);
+        // The compute block holds the lock while waiting for the value, whose computation needs the lock
+        Future<String> computingWithLock = executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return storageManager.compute(new Function0<String>() {
+                    @Override
+                    public String invoke() {
+                        lockTaken.countDown();
+                        return "compute -> " + value.invoke();
+                    }
+                });
+            }
+        });
+
+        assertEquals("value", computingValue.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("compute -> value", computingWithLock.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @NotNull
+    private <T> List<T> invokeConcurrently(@NotNull Callable<T> callable) throws Exception {
+        List<Future<T>> futures = new ArrayList<Future<T>>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(callable));
+        }
+
+        List<T> results = new ArrayList<T>();
+        for (Future<T> future : futures) {
+            results.add(future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(50);
+        }
+        catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void await(@NotNull CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.storage;
+
+import kotlin.jvm.functions.Function0;
+import kotlin.jvm.functions.Function1;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the throughput of {@link LockBasedStorageManager} and {@link ConcurrentStorageManager} when several threads
+ * compute a graph of memoized functions and lazy values which depend on each other, like the lazy resolve does.
+ *
+ * Run it with the main method, the arguments are the numbers of threads to measure (1, 2, 4 and 8 by default).
+ */
+public class StorageManagerContentionBenchmark {
+    private static final int KEYS = 20000;
+    private static final int DEPENDENCY_STRIDE = 64;
+    private static final int WORK_PER_VALUE = 200;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASUREMENT_ITERATIONS = 10;
+
+    private interface StorageManagerFactory {
+        @NotNull
+        StorageManager create();
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        for (String arg : args) {
+            threadCounts.add(Integer.parseInt(arg));
+        }
+        if (threadCounts.isEmpty()) {
+            threadCounts.add(1);
+            threadCounts.add(2);
+            threadCounts.add(4);
+            threadCounts.add(8);
+        }
+
+        StorageManagerFactory lockBased = new StorageManagerFactory() {
+            @NotNull
+            @Override
+            public StorageManager create() {
+                return new LockBasedStorageManager();
+            }
+
+            @Override
+            public String toString() {
+                return "LockBasedStorageManager";
+            }
+        };
+        StorageManagerFactory concurrent = new StorageManagerFactory() {
+            @NotNull
+            @Override
+            public StorageManager create() {
+                return new ConcurrentStorageManager();
+            }
+
+            @Override
+            public String toString() {
+                return "ConcurrentStorageManager";
+            }
+        };
+
+        for (int threads : threadCounts) {
+            for (StorageManagerFactory factory : new StorageManagerFactory[] {lockBased, concurrent}) {
+                double millis = measure(factory, threads);
+                System.out.println(String.format("%-26s threads: %2d  %8.2f ms/op", factory, threads, millis));
+            }
+        }
+    }
+
+    private static double measure(@NotNull StorageManagerFactory factory, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                runIteration(factory.create(), executor, threads);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+                runIteration(factory.create(), executor, threads);
+            }
+            return (System.nanoTime() - start) / 1e6 / MEASUREMENT_ITERATIONS;
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void runIteration(@NotNull StorageManager storageManager, @NotNull ExecutorService executor, final int threads)
+            throws Exception {
+        final Graph graph = new Graph(storageManager);
+
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for (int thread = 0; thread < threads; thread++) {
+            final int offset = thread * (KEYS / threads);
+            futures.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    long sum = 0;
+                    // Each thread starts from its own part of the keys and then goes through the rest, as the workers of body resolve do
+                    for (int i = 0; i < KEYS; i++) {
+                        sum += graph.value((offset + i) % KEYS);
+                    }
+                    return sum;
+                }
+            }));
+        }
+
+        Long expected = null;
+        for (Future<Long> future : futures) {
+            Long sum = future.get();
+            if (expected != null && !expected.equals(sum)) {
+                throw new IllegalStateException("Threads have observed different values: " + expected + " and " + sum);
+            }
+            expected = sum;
+        }
+    }
+
+    private static class Graph {
+        private final MemoizedFunctionToNotNull<Integer, Long> values;
+        private final List<NotNullLazyValue<Long>> lazyValues = new ArrayList<NotNullLazyValue<Long>>(KEYS);
+
+        Graph(@NotNull StorageManager storageManager) {
+            values = storageManager.createMemoizedFunction(new Function1<Integer, Long>() {
+                @Override
+                public Long invoke(Integer key) {
+                    long dependency = key >= DEPENDENCY_STRIDE ? values.invoke(key - DEPENDENCY_STRIDE) : 0;
+                    return work(key) + dependency % 1000;
+                }
+            });
+            for (int i = 0; i < KEYS; i++) {
+                final int key = i;
+                lazyValues.add(storageManager.createLazyValue(new Function0<Long>() {
+                    @Override
+                    public Long invoke() {
+                        return values.invoke(key) + work(key);
+                    }
+                }));
+            }
+        }
+
+        long value(int key) {
+            return lazyValues.get(key).invoke();
+        }
+
+        private static long work(int seed) {
+            long result = seed;
+            for (int i = 0; i < WORK_PER_VALUE; i++) {
+                result = result * 6364136223846793005L + 1442695040888963407L;
+            }
+            return result >>> 40;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.util
+
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+
+class PerformanceTraceTest : KtUsefulTestCase() {
+
+    fun testSpans() {
+        val trace = PerformanceTrace()
+        trace.measure("resolve", files = 2, lines = 10, description = "in targets [m]") {}
+        trace.start("codegen").finish(2, 10)
+
+        val spans = trace.getSpans()
+        assertEquals(listOf("resolve", "codegen"), spans.map { it.phase })
+        assertEquals(2, spans[0].files)
+        assertEquals(10, spans[0].lines)
+        assertEquals("in targets [m]", spans[0].description)
+        assertTrue(spans.none { it.aggregated })
+        assertTrue(spans[1].startNanos >= spans[0].startNanos)
+    }
+
+    fun testNestedAggregatedPhaseIsCountedOnce() {
+        val trace = PerformanceTrace()
+        val outer = trace.startAggregated("inline")!!
+        assertNull(trace.startAggregated("inline"))
+        outer.finish()
+        trace.startAggregated("inline")!!.finish()
+
+        val inline = trace.getSpans().single()
+        assertTrue(inline.aggregated)
+        assertEquals(2, inline.count)
+    }
+
+    fun testAggregatedPhaseIsReportedPerThread() {
+        val trace = PerformanceTrace()
+        trace.startAggregated("optimization")!!.finish()
+        val worker = Thread { trace.startAggregated("optimization")!!.finish() }
+        worker.start()
+        worker.join()
+        trace.startAggregated("optimization")!!.finish()
+
+        val spans = trace.getSpans()
+        assertEquals(listOf(Thread.currentThread().id, worker.id), spans.map { it.threadId })
+        assertEquals(listOf(2, 1), spans.map { it.count })
+        assertEquals(worker.name, spans[1].threadName)
+    }
+
+    fun testChromeTrace() {
+        val trace = PerformanceTrace()
+        trace.measure("parse", description = "\"quoted\"") {}
+        trace.startAggregated("optimization")!!.finish()
+
+        val json = PerformanceTrace.renderChromeTrace(trace.getSpans())
+        assertTrue(json, json.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["))
+        assertTrue(json, json.contains("\"name\":\"parse\",\"cat\":\"phase\",\"ph\":\"X\""))
+        assertTrue(json, json.contains("\"name\":\"optimization\",\"cat\":\"aggregated\",\"ph\":\"X\""))
+        assertTrue(json, json.contains("\"description\":\"\\\"quoted\\\"\""))
+        assertTrue(json, json.contains("\"cumulative\":true"))
+        assertTrue(json, json.contains("\"ph\":\"M\""))
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.util.slicedMap;
+
+import junit.framework.TestCase;
+import kotlin.jvm.functions.Function1;
+import kotlin.jvm.functions.Function3;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class SlicedMapImplTest extends TestCase {
+    private static final WritableSlice<String, Integer> NUMBER = Slices.<String, Integer>sliceBuilder().setDebugName("NUMBER").build();
+    private static final WritableSlice<String, String> NAME = Slices.<String, String>sliceBuilder().setDebugName("NAME").build();
+    private static final WritableSlice<String, Integer> ORDERED = Slices.createCollectiveSlice();
+
+    public void testSlicesAreIndependent() {
+        SlicedMapImpl map = SlicedMapImpl.create();
+        map.put(NUMBER, "a", 1);
+        map.put(NAME, "a", "first");
+        map.put(NUMBER, "b", 2);
+
+        assertEquals(1, (int) map.get(NUMBER, "a"));
+        assertEquals("first", map.get(NAME, "a"));
+        assertEquals(2, (int) map.get(NUMBER, "b"));
+        assertNull(map.get(NAME, "b"));
+    }
+
+    public void testKeysAreComparedByEquality() {
+        SlicedMapImpl map = SlicedMapImpl.create();
+        map.put(NUMBER, new String("a"), 1);
+
+        assertEquals(1, (int) map.get(NUMBER, "a"));
+    }
+
+    public void testSliceContents() {
+        SlicedMapImpl map = SlicedMapImpl.create();
+        map.put(NUMBER, "a", 1);
+        map.put(NUMBER, "b", 2);
+        map.put(NAME, "a", "first");
+
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        expected.put("a", 1);
+        expected.put("b", 2);
+        assertEquals(expected, map.getSliceContents(NUMBER));
+        assertTrue(map.getSliceContents(ORDERED).isEmpty());
+    }
+
+    public void testForEach() {
+        SlicedMapImpl map = SlicedMapImpl.create();
+        map.put(NUMBER, "a", 1);
+        map.put(NAME, "a", "first");
+
+        final Map<String, Object> recorded = new HashMap<String, Object>();
+        map.forEach(new Function3<WritableSlice, Object, Object, Void>() {
+            @Override
+            public Void invoke(WritableSlice slice, Object key, Object value) {
+                recorded.put(slice + ":" + key, value);
+                return null;
+            }
+        });
+
+        Map<String, Object> expected = new HashMap<String, Object>();
+        expected.put("NUMBER:a", 1);
+        expected.put("NAME:a", "first");
+        assertEquals(expected, recorded);
+    }
+
+    public void testCollectiveSliceKeepsInsertionOrder() {
+        SlicedMapImpl map = SlicedMapImpl.create();
+        map.put(ORDERED, "c", 1);
+        map.put(ORDERED, "a", 2);
+        map.put(ORDERED, "b", 3);
+
+        assertEquals(Arrays.asList("c", "a", "b"), map.getKeys(ORDERED));
+    }
+
+    public void testClear() {
+        SlicedMapImpl map = SlicedMapImpl.create();
+        map.put(NUMBER, "a", 1);
+        map.put(ORDERED, "a", 1);
+        map.clear();
+
+        assertNull(map.get(NUMBER, "a"));
+        assertTrue(map.getKeys(ORDERED).isEmpty());
+    }
+
+    public void testRemoveKeys() {
+        SlicedMapImpl map = SlicedMapImpl.create();
+        map.put(NUMBER, "a", 1);
+        map.put(NUMBER, "b", 2);
+        map.put(NAME, "a", "first");
+        map.put(ORDERED, "a", 1);
+        map.put(ORDERED, "b", 2);
+
+        map.removeKeys(new Function1<Object, Boolean>() {
+            @Override
+            public Boolean invoke(Object key) {
+                return "a".equals(key);
+            }
+        });
+
+        assertNull(map.get(NUMBER, "a"));
+        assertNull(map.get(NAME, "a"));
+        assertEquals(2, (int) map.get(NUMBER, "b"));
+        assertEquals(Arrays.asList("b"), map.getKeys(ORDERED));
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.util.slicedMap;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimap;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.UserDataHolderBase;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.Processor;
+import gnu.trove.THashMap;
+import kotlin.jvm.functions.Function1;
+import kotlin.jvm.functions.Function3;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.resolve.BindingContext;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.jetbrains.kotlin.test.ConfigurationKind;
+import org.jetbrains.kotlin.test.KotlinTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Compares the memory used by {@link SlicedMapImpl} (a map per slice) and by the previous layout of a user data holder per key,
+ * kept here as {@link HolderPerKeySlicedMap}, on the binding context of the given test data.
+ *
+ * The test data (compiler/testData/codegen/box by default) is analyzed as one module, and the bytes allocated by the analysis
+ * on the current thread are reported; the analysis itself uses {@link SlicedMapImpl}, so compare this number between revisions.
+ * Then for each layout:
+ * <ul>
+ *     <li>the contents of the slices declared in {@link BindingContext} are copied to a new map. The keys and values are shared
+ *     with the binding context which stays alive, so the difference in the used heap is the size of the map itself;</li>
+ *     <li>the same entries are replayed into short-lived maps of {@link #KEYS_PER_TRACE} keys each, the way a temporary trace
+ *     records the resolution of a call, and the bytes allocated per map are reported.</li>
+ * </ul>
+ */
+public class SlicedMapMemoryBenchmark {
+    private static final int KEYS_PER_TRACE = 4;
+
+    private enum Layout {
+        SLICE_MAPS {
+            @Override
+            MutableSlicedMap create() {
+                return SlicedMapImpl.create();
+            }
+        },
+        HOLDER_PER_KEY {
+            @Override
+            MutableSlicedMap create() {
+                return new HolderPerKeySlicedMap();
+            }
+        };
+
+        abstract MutableSlicedMap create();
+    }
+
+    public static void main(String[] args) throws Exception {
+        File root = new File(args.length > 0 ? args[0] : "compiler/testData/codegen/box");
+
+        Disposable disposable = Disposer.newDisposable();
+        try {
+            KotlinCoreEnvironment environment =
+                    KotlinTestUtils.createEnvironmentWithMockJdkAndIdeaAnnotations(disposable, ConfigurationKind.JDK_ONLY);
+
+            List<KtFile> files = loadFiles(environment, root);
+
+            long allocatedBefore = allocatedBytes();
+            BindingContext bindingContext = JvmResolveUtil.analyze(files, environment).getBindingContext();
+            long allocatedByAnalysis = allocatedBytes() - allocatedBefore;
+
+            Map<Object, List<Entry>> entriesByKey = collectEntries(bindingContext, getBindingContextSlices());
+            int entries = 0;
+            for (List<Entry> keyEntries : entriesByKey.values()) {
+                entries += keyEntries.size();
+            }
+
+            System.out.println("Files: " + files.size() + ", keys: " + entriesByKey.size() + ", entries: " + entries);
+            System.out.println("Allocated by analysis: " + allocatedByAnalysis / (1024 * 1024) + " MB");
+
+            for (Layout layout : Layout.values()) {
+                long usedBefore = usedHeap();
+                MutableSlicedMap map = layout.create();
+                putAll(map, entriesByKey.values());
+                long retained = usedHeap() - usedBefore;
+
+                int traces = 0;
+                long allocatedBeforeTraces = allocatedBytes();
+                List<List<Entry>> traceEntries = new ArrayList<List<Entry>>(KEYS_PER_TRACE);
+                for (List<Entry> keyEntries : entriesByKey.values()) {
+                    traceEntries.add(keyEntries);
+                    if (traceEntries.size() == KEYS_PER_TRACE) {
+                        putAll(layout.create(), traceEntries);
+                        traceEntries.clear();
+                        traces++;
+                    }
+                }
+                long allocatedByTraces = allocatedBytes() - allocatedBeforeTraces;
+
+                System.out.println(layout + ": retained by " + map.getClass().getSimpleName() + ": " + retained / 1024 + " KB" +
+                                   " (" + (entries == 0 ? 0 : retained / entries) + " bytes per entry)" +
+                                   ", allocated per short-lived map: " + (traces == 0 ? 0 : allocatedByTraces / traces) + " bytes");
+            }
+        }
+        finally {
+            Disposer.dispose(disposable);
+        }
+    }
+
+    @NotNull
+    private static List<KtFile> loadFiles(@NotNull final KotlinCoreEnvironment environment, @NotNull File root) {
+        final List<KtFile> files = new ArrayList<KtFile>();
+        FileUtil.processFilesRecursively(root, new Processor<File>() {
+            @Override
+            public boolean process(File file) {
+                if (file.isFile() && file.getName().endsWith(".kt")) {
+                    try {
+                        files.add(KotlinTestUtils.loadJetFile(environment.getProject(), file));
+                    }
+                    catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return true;
+            }
+        });
+        return files;
+    }
+
+    @NotNull
+    @SuppressWarnings("unchecked")
+    private static List<WritableSlice<Object, Object>> getBindingContextSlices() throws IllegalAccessException {
+        List<WritableSlice<Object, Object>> slices = new ArrayList<WritableSlice<Object, Object>>();
+        for (Field field : BindingContext.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && WritableSlice.class.isAssignableFrom(field.getType())) {
+                slices.add((WritableSlice<Object, Object>) field.get(null));
+            }
+        }
+        return slices;
+    }
+
+    @NotNull
+    private static Map<Object, List<Entry>> collectEntries(
+            @NotNull BindingContext bindingContext,
+            @NotNull List<WritableSlice<Object, Object>> slices
+    ) {
+        Map<Object, List<Entry>> entriesByKey = new LinkedHashMap<Object, List<Entry>>();
+        for (WritableSlice<Object, Object> slice : slices) {
+            for (Map.Entry<Object, Object> entry : bindingContext.getSliceContents(slice).entrySet()) {
+                List<Entry> keyEntries = entriesByKey.get(entry.getKey());
+                if (keyEntries == null) {
+                    keyEntries = new ArrayList<Entry>(1);
+                    entriesByKey.put(entry.getKey(), keyEntries);
+                }
+                keyEntries.add(new Entry(slice, entry.getKey(), entry.getValue()));
+            }
+        }
+        return entriesByKey;
+    }
+
+    private static void putAll(@NotNull MutableSlicedMap map, @NotNull Collection<List<Entry>> entries) {
+        for (List<Entry> keyEntries : entries) {
+            for (Entry entry : keyEntries) {
+                map.put(entry.slice, entry.key, entry.value);
+            }
+        }
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static class Entry {
+        final WritableSlice<Object, Object> slice;
+        final Object key;
+        final Object value;
+
+        Entry(@NotNull WritableSlice<Object, Object> slice, @NotNull Object key, Object value) {
+            this.slice = slice;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * The layout of {@link SlicedMapImpl} before the map per slice: a user data holder per key, holding the values of all slices
+     */
+    private static class HolderPerKeySlicedMap implements MutableSlicedMap {
+        private final Map<Object, KeyHolder> map = new THashMap<Object, KeyHolder>(0);
+        private Multimap<WritableSlice<?, ?>, Object> collectiveSliceKeys = null;
+
+        @Override
+        public <K, V> void put(WritableSlice<K, V> slice, K key, V value) {
+            if (!slice.check(key, value)) {
+                return;
+            }
+
+            KeyHolder holder = map.get(key);
+            if (holder == null) {
+                holder = new KeyHolder();
+                map.put(key, holder);
+            }
+
+            Key<V> sliceKey = slice.getKey();
+
+            RewritePolicy rewritePolicy = slice.getRewritePolicy();
+            if (rewritePolicy.rewriteProcessingNeeded(key)) {
+                V oldValue = holder.getUserData(sliceKey);
+                if (oldValue != null) {
+                    //noinspection unchecked
+                    if (!rewritePolicy.processRewrite(slice, key, oldValue, value)) {
+                        return;
+                    }
+                }
+            }
+
+            if (slice.isCollective()) {
+                if (collectiveSliceKeys == null) {
+                    collectiveSliceKeys = ArrayListMultimap.create();
+                }
+
+                collectiveSliceKeys.put(slice, key);
+            }
+
+            holder.putUserData(sliceKey, value);
+            slice.afterPut(this, key, value);
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+            collectiveSliceKeys = null;
+        }
+
+        @Override
+        public void removeKeys(@NotNull Function1<Object, Boolean> predicate) {
+            for (Iterator<Object> iterator = map.keySet().iterator(); iterator.hasNext(); ) {
+                if (predicate.invoke(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+
+            if (collectiveSliceKeys != null) {
+                for (Iterator<Map.Entry<WritableSlice<?, ?>, Object>> iterator = collectiveSliceKeys.entries().iterator(); iterator.hasNext(); ) {
+                    if (predicate.invoke(iterator.next().getValue())) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
+            KeyHolder holder = map.get(key);
+
+            V value = holder == null ? null : holder.getUserData(slice.getKey());
+
+            return slice.computeValue(this, key, value, value == null);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <K, V> Collection<K> getKeys(WritableSlice<K, V> slice) {
+            assert slice.isCollective() : "Keys are not collected for slice " + slice;
+
+            if (collectiveSliceKeys == null) return Collections.emptyList();
+            return (Collection<K>) collectiveSliceKeys.get(slice);
+        }
+
+        @Override
+        public void forEach(@NotNull Function3<WritableSlice, Object, Object, Void> f) {
+            for (Map.Entry<Object, KeyHolder> entry : map.entrySet()) {
+                KeyHolder holder = entry.getValue();
+
+                for (Key<?> sliceKey : holder.getKeys()) {
+                    f.invoke(((AbstractWritableSlice) sliceKey).getSlice(), entry.getKey(), holder.getUserData(sliceKey));
+                }
+            }
+        }
+
+        @NotNull
+        @Override
+        public <K, V> ImmutableMap<K, V> getSliceContents(@NotNull ReadOnlySlice<K, V> slice) {
+            ImmutableMap.Builder<K, V> builder = ImmutableMap.builder();
+
+            for (Map.Entry<Object, KeyHolder> entry : map.entrySet()) {
+                V value = entry.getValue().getUserData(slice.getKey());
+
+                if (value != null) {
+                    //noinspection unchecked
+                    builder.put((K) entry.getKey(), value);
+                }
+            }
+            return builder.build();
+        }
+
+        private static class KeyHolder extends UserDataHolderBase {
+            @NotNull
+            Key<?>[] getKeys() {
+                return getUserMap().getKeys();
+            }
+        }
+    }
+}
@@ -48,7 +48,7 @@ class DeserializedDescriptorResolver {
         val data = readData(kotlinClass, KOTLIN_CLASS) ?: return null
         val strings = kotlinClass.classHeader.strings ?: return null
         val classData = parseProto(kotlinClass) {
-            JvmProtoBufUtil.readClassDataFrom(data, strings)
+            kotlinClass.getOrParseMetadata { JvmProtoBufUtil.readClassDataFrom(data, strings) }
         } ?: return null
         val source = KotlinJvmBinarySourceElement(kotlinClass, kotlinClass.incompatibility, kotlinClass.isPreReleaseInvisible)
         return ClassDataWithSource(classData, source)
@@ -58,7 +58,7 @@ class DeserializedDescriptorResolver {
         val data = readData(kotlinClass, KOTLIN_FILE_FACADE_OR_MULTIFILE_CLASS_PART) ?: return null
         val strings = kotlinClass.classHeader.strings ?: return null
         val (nameResolver, packageProto) = parseProto(kotlinClass) {
-            JvmProtoBufUtil.readPackageDataFrom(data, strings)
+            kotlinClass.getOrParseMetadata { JvmProtoBufUtil.readPackageDataFrom(data, strings) }
         } ?: return null
         val source = JvmPackagePartSource(kotlinClass, kotlinClass.incompatibility, kotlinClass.isPreReleaseInvisible)
         return DeserializedPackageMemberScope(descriptor, packageProto, nameResolver, source, components) {
@@ -83,6 +83,9 @@ class DeserializedDescriptorResolver {
         return (header.data ?: header.incompatibleData)?.check { header.kind in expectedKinds }
     }
 
+    private fun <T : Any> KotlinJvmBinaryClass.getOrParseMetadata(parse: () -> T): T =
+            (this as? KotlinJvmBinaryClassWithParsedMetadata)?.getOrParseMetadata(parse) ?: parse()
+
     private inline fun <T : Any> parseProto(klass: KotlinJvmBinaryClass, block: () -> T): T? {
         try {
             try {
@@ -74,3 +74,11 @@ interface KotlinJvmBinaryClass {
         fun visitEnd()
     }
 }
+
+/**
+ * A binary class that keeps its metadata once it's parsed, so that the metadata of a class shared between compilations is parsed once.
+ * The parsed metadata is immutable and may be used from several threads.
+ */
+interface KotlinJvmBinaryClassWithParsedMetadata : KotlinJvmBinaryClass {
+    fun <T : Any> getOrParseMetadata(parse: () -> T): T
+}
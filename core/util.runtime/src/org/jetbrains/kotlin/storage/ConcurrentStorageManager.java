@@ -0,0 +1,654 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.storage;
+
+import kotlin.Unit;
+import kotlin.jvm.functions.Function0;
+import kotlin.jvm.functions.Function1;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.storage.LockBasedStorageManager.ExceptionHandlingStrategy;
+import org.jetbrains.kotlin.storage.LockBasedStorageManager.KeyWithComputation;
+import org.jetbrains.kotlin.storage.LockBasedStorageManager.RecursionDetectedResult;
+import org.jetbrains.kotlin.utils.ExceptionUtilsKt;
+import org.jetbrains.kotlin.utils.WrappedValues;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import static org.jetbrains.kotlin.storage.LockBasedStorageManager.sanitizeStackTrace;
+
+/**
+ * A storage manager which does not serialize all computations on one lock, unlike {@link LockBasedStorageManager}.
+ *
+ * A lazy value or a key of a memoized function is computed by the thread which has claimed it first (with a CAS or
+ * {@link ConcurrentMap#putIfAbsent}), other threads requesting the same value wait for this computation only.
+ * A recursive call on the computing thread is handled the same way as in {@link LockBasedStorageManager}.
+ * A thread which would wait for a computation that (transitively) waits for this thread treats the call as recursive
+ * instead of deadlocking: sequentially, such a cycle would be a recursion on the same thread.
+ *
+ * Blocks passed to {@link #compute} exclude only each other. The thread holding the compute lock is a part of the same
+ * wait-for graph: a thread which would wait for the lock held by a thread that (transitively) waits for it runs the block
+ * as a nested one instead, as it would be run sequentially; the holder stays blocked until the block is finished.
+ */
+public class ConcurrentStorageManager implements StorageManager {
+    private static final long WAIT_INTERVAL_MS = 10;
+
+    // The computation each blocked thread is waiting for, it is the graph where cycles between threads are looked for
+    private static final ConcurrentMap<Thread, Computation> WAITING = new ConcurrentHashMap<Thread, Computation>();
+
+    @NotNull
+    public static ConcurrentStorageManager createWithExceptionHandling(@NotNull ExceptionHandlingStrategy exceptionHandlingStrategy) {
+        return new ConcurrentStorageManager(exceptionHandlingStrategy);
+    }
+
+    // The compute lock is held while the computation is not finished, so the threads waiting for it are seen in the wait-for graph
+    private final AtomicReference<Computation> computeLockHolder = new AtomicReference<Computation>();
+    private final ExceptionHandlingStrategy exceptionHandlingStrategy;
+
+    public ConcurrentStorageManager() {
+        this(ExceptionHandlingStrategy.THROW);
+    }
+
+    protected ConcurrentStorageManager(@NotNull ExceptionHandlingStrategy exceptionHandlingStrategy) {
+        this.exceptionHandlingStrategy = exceptionHandlingStrategy;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(hashCode());
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNotNull<K, V> createMemoizedFunction(@NotNull Function1<? super K, ? extends V> compute) {
+        return createMemoizedFunction(compute, LockBasedStorageManager.<K>createConcurrentHashMap());
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNotNull<K, V> createMemoizedFunction(
+            @NotNull Function1<? super K, ? extends V> compute,
+            @NotNull ConcurrentMap<K, Object> map
+    ) {
+        return new ConcurrentMemoizedFunctionToNotNull<K, V>(this, map, compute);
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNullable<K, V> createMemoizedFunctionWithNullableValues(@NotNull Function1<? super K, ? extends V> compute) {
+        return createMemoizedFunctionWithNullableValues(compute, LockBasedStorageManager.<K>createConcurrentHashMap());
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNullable<K, V> createMemoizedFunctionWithNullableValues(
+            @NotNull Function1<? super K, ? extends V> compute,
+            @NotNull ConcurrentMap<K, Object> map
+    ) {
+        return new ConcurrentMemoizedFunction<K, V>(this, map, compute);
+    }
+
+    @NotNull
+    @Override
+    public <T> NotNullLazyValue<T> createLazyValue(@NotNull Function0<? extends T> computable) {
+        return new ConcurrentNotNullLazyValue<T>(this, computable);
+    }
+
+    @NotNull
+    @Override
+    public <T> NotNullLazyValue<T> createRecursionTolerantLazyValue(
+            @NotNull Function0<? extends T> computable, @NotNull final T onRecursiveCall
+    ) {
+        return new ConcurrentNotNullLazyValue<T>(this, computable) {
+            @NotNull
+            @Override
+            protected RecursionDetectedResult<T> recursionDetected(boolean firstTime) {
+                return RecursionDetectedResult.value(onRecursiveCall);
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NotNullLazyValue<T> createLazyValueWithPostCompute(
+            @NotNull Function0<? extends T> computable,
+            final Function1<? super Boolean, ? extends T> onRecursiveCall,
+            @NotNull final Function1<? super T, Unit> postCompute
+    ) {
+        return new ConcurrentNotNullLazyValue<T>(this, computable) {
+            @NotNull
+            @Override
+            protected RecursionDetectedResult<T> recursionDetected(boolean firstTime) {
+                if (onRecursiveCall == null) {
+                    return super.recursionDetected(firstTime);
+                }
+                return RecursionDetectedResult.value(onRecursiveCall.invoke(firstTime));
+            }
+
+            @Override
+            protected void postCompute(@NotNull T value) {
+                postCompute.invoke(value);
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NullableLazyValue<T> createNullableLazyValue(@NotNull Function0<? extends T> computable) {
+        return new ConcurrentLazyValue<T>(this, computable);
+    }
+
+    @NotNull
+    @Override
+    public <T> NullableLazyValue<T> createRecursionTolerantNullableLazyValue(@NotNull Function0<? extends T> computable, final T onRecursiveCall) {
+        return new ConcurrentLazyValue<T>(this, computable) {
+            @NotNull
+            @Override
+            protected RecursionDetectedResult<T> recursionDetected(boolean firstTime) {
+                return RecursionDetectedResult.value(onRecursiveCall);
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NullableLazyValue<T> createNullableLazyValueWithPostCompute(
+            @NotNull Function0<? extends T> computable, @NotNull final Function1<? super T, Unit> postCompute
+    ) {
+        return new ConcurrentLazyValue<T>(this, computable) {
+            @Override
+            protected void postCompute(@Nullable T value) {
+                postCompute.invoke(value);
+            }
+        };
+    }
+
+    @Override
+    public <T> T compute(@NotNull Function0<? extends T> computable) {
+        Computation lock = lockCompute();
+        try {
+            return computable.invoke();
+        }
+        catch (Throwable throwable) {
+            throw exceptionHandlingStrategy.handleException(throwable);
+        }
+        finally {
+            if (lock != null) {
+                unlockCompute(lock);
+            }
+        }
+    }
+
+    /**
+     * @return the held lock, or {@code null} if the holder of the lock (transitively) waits for the current thread
+     */
+    @Nullable
+    private Computation lockCompute() {
+        while (true) {
+            Computation holder = computeLockHolder.get();
+            if (holder == null) {
+                Computation lock = new Computation(/* isComputeLock = */ true);
+                if (computeLockHolder.compareAndSet(null, lock)) {
+                    lock.holdCount = 1;
+                    return lock;
+                }
+            }
+            else if (holder.owner == Thread.currentThread()) {
+                holder.holdCount++;
+                return holder;
+            }
+            else if (!holder.await()) {
+                return null;
+            }
+        }
+    }
+
+    private void unlockCompute(@NotNull Computation lock) {
+        if (--lock.holdCount == 0) {
+            computeLockHolder.set(null);
+            lock.finish();
+        }
+    }
+
+    @NotNull
+    protected <T> RecursionDetectedResult<T> recursionDetectedDefault() {
+        throw sanitizeStackTrace(new IllegalStateException("Recursive call in a lazy value under " + this));
+    }
+
+    private enum NotValue {
+        NOT_COMPUTED,
+        RECURSION_WAS_DETECTED
+    }
+
+    /**
+     * A value which is being computed by the {@link #owner} thread, or the compute lock held by it.
+     * Other threads requesting the value (or the lock) wait until the computation is finished.
+     */
+    private static final class Computation {
+        final Thread owner = Thread.currentThread();
+        final boolean isComputeLock;
+
+        // The number of nested compute blocks of the owner thread, for the compute lock only
+        int holdCount;
+
+        // The value which has been computed, but has not been published yet (a lazy value is being post-computed).
+        // Only the owner thread accesses these fields
+        boolean hasResult;
+        Object result;
+
+        private boolean recursionDetected;
+        private volatile boolean finished;
+
+        Computation() {
+            this(false);
+        }
+
+        Computation(boolean isComputeLock) {
+            this.isComputeLock = isComputeLock;
+        }
+
+        /**
+         * @return {@code true} if this is the first recursive call in this computation
+         */
+        synchronized boolean markRecursionDetected() {
+            boolean firstTime = !recursionDetected;
+            recursionDetected = true;
+            return firstTime;
+        }
+
+        synchronized boolean isRecursionDetected() {
+            return recursionDetected;
+        }
+
+        synchronized void finish() {
+            finished = true;
+            notifyAll();
+        }
+
+        /**
+         * @return {@code false} if the computation cannot be waited for, because its owner (transitively) waits for the current thread
+         */
+        boolean await() {
+            if (finished) return true;
+
+            Thread current = Thread.currentThread();
+            // Registering before looking for a cycle guarantees that the cycle is complete when its last thread starts waiting
+            WAITING.put(current, this);
+            try {
+                synchronized (this) {
+                    while (!finished) {
+                        if (shouldBreakCycleOf(current)) return false;
+                        wait(WAIT_INTERVAL_MS);
+                    }
+                }
+                return true;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw ExceptionUtilsKt.rethrow(e);
+            }
+            finally {
+                WAITING.remove(current);
+            }
+        }
+
+        /**
+         * Every thread of a cycle finds it sooner or later, only one of them breaks it: the one waiting for the compute lock,
+         * since running its block doesn't change the results, otherwise the one with the greatest id.
+         * The others keep waiting and get the values computed after the recursion has been reported.
+         */
+        private boolean shouldBreakCycleOf(@NotNull Thread thread) {
+            List<Thread> waiters = new ArrayList<Thread>();
+            List<Computation> computations = new ArrayList<Computation>();
+            long maxId = thread.getId();
+
+            Thread waiter = thread;
+            Computation computation = this;
+            // The graph is modified concurrently, the bound protects from looping over a cycle which does not contain the thread
+            for (int steps = WAITING.size(); computation != null && !computation.finished && steps >= 0; steps--) {
+                waiters.add(waiter);
+                computations.add(computation);
+
+                waiter = computation.owner;
+                if (waiter == thread) {
+                    Thread breaker = lockWaiter(waiters, computations);
+                    return (breaker != null ? breaker == thread : thread.getId() == maxId) && isStillWaiting(waiters, computations);
+                }
+                maxId = Math.max(maxId, waiter.getId());
+                computation = WAITING.get(waiter);
+            }
+            return false;
+        }
+
+        // The cycle may go through the locks of several storage managers, the choice shouldn't depend on where the cycle was entered
+        @Nullable
+        private static Thread lockWaiter(@NotNull List<Thread> waiters, @NotNull List<Computation> computations) {
+            Thread result = null;
+            for (int i = 0; i < waiters.size(); i++) {
+                Thread waiter = waiters.get(i);
+                if (computations.get(i).isComputeLock && (result == null || waiter.getId() > result.getId())) {
+                    result = waiter;
+                }
+            }
+            return result;
+        }
+
+        // The edges of the cycle have been read at different moments and some of them may have been stale. Threads leave
+        // the computations they wait for only after they are finished, so if no edge has changed since, all the threads
+        // have been waiting at the same moment, which means the cycle will never be resolved by itself
+        private static boolean isStillWaiting(@NotNull List<Thread> waiters, @NotNull List<Computation> computations) {
+            for (int i = 0; i < waiters.size(); i++) {
+                Computation computation = computations.get(i);
+                if (computation.finished || WAITING.get(waiters.get(i)) != computation) return false;
+            }
+            return true;
+        }
+    }
+
+    // Being static is memory optimization to prevent capturing outer-class reference at each level of inheritance hierarchy
+    private static class ConcurrentLazyValue<T> implements NullableLazyValue<T> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<ConcurrentLazyValue, Object> VALUE =
+                AtomicReferenceFieldUpdater.newUpdater(ConcurrentLazyValue.class, Object.class, "value");
+
+        private final ConcurrentStorageManager storageManager;
+        private final Function0<? extends T> computable;
+
+        @Nullable
+        private volatile Object value = NotValue.NOT_COMPUTED;
+
+        public ConcurrentLazyValue(@NotNull ConcurrentStorageManager storageManager, @NotNull Function0<? extends T> computable) {
+            this.storageManager = storageManager;
+            this.computable = computable;
+        }
+
+        @Override
+        public boolean isComputed() {
+            Object _value = value;
+            return _value != NotValue.NOT_COMPUTED && !(_value instanceof Computation);
+        }
+
+        @Override
+        public boolean isComputing() {
+            return value instanceof Computation;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T invoke() {
+            while (true) {
+                Object _value = value;
+                if (!(_value instanceof NotValue) && !(_value instanceof Computation)) return WrappedValues.unescapeThrowable(_value);
+
+                if (_value instanceof Computation) {
+                    Computation computation = (Computation) _value;
+                    if (computation.owner == Thread.currentThread()) {
+                        if (computation.hasResult) return (T) computation.result;
+                    }
+                    else if (computation.await()) {
+                        continue;
+                    }
+
+                    RecursionDetectedResult<T> result = recursionDetected(computation.markRecursionDetected());
+                    if (!result.isFallThrough()) {
+                        return result.getValue();
+                    }
+
+                    // The computation in progress publishes its own value
+                    try {
+                        return computable.invoke();
+                    }
+                    catch (Throwable throwable) {
+                        throw storageManager.exceptionHandlingStrategy.handleException(throwable);
+                    }
+                }
+
+                if (_value == NotValue.RECURSION_WAS_DETECTED) {
+                    RecursionDetectedResult<T> result = recursionDetected(/*firstTime = */ false);
+                    if (!result.isFallThrough()) {
+                        return result.getValue();
+                    }
+                }
+
+                Computation computation = new Computation();
+                if (VALUE.compareAndSet(this, _value, computation)) {
+                    return computeAndPublish(computation);
+                }
+            }
+        }
+
+        private T computeAndPublish(@NotNull Computation computation) {
+            try {
+                T typedValue = computable.invoke();
+                computation.result = typedValue;
+                computation.hasResult = true;
+                postCompute(typedValue);
+                value = typedValue;
+                return typedValue;
+            }
+            catch (Throwable throwable) {
+                if (computation.hasResult) {
+                    value = computation.result;
+                }
+                else if (computation.isRecursionDetected()) {
+                    // Store only a genuine result, not something thrown through recursionDetected()
+                    value = NotValue.RECURSION_WAS_DETECTED;
+                }
+                else {
+                    value = WrappedValues.escapeThrowable(throwable);
+                }
+                throw storageManager.exceptionHandlingStrategy.handleException(throwable);
+            }
+            finally {
+                computation.finish();
+            }
+        }
+
+        /**
+         * @param firstTime {@code true} when recursion has been just detected, {@code false} otherwise
+         * @return a value to be returned on a recursive call or subsequent calls
+         */
+        @NotNull
+        protected RecursionDetectedResult<T> recursionDetected(boolean firstTime) {
+            return storageManager.recursionDetectedDefault();
+        }
+
+        protected void postCompute(T value) {
+            // Doing something in post-compute helps prevent infinite recursion
+        }
+    }
+
+    private static class ConcurrentNotNullLazyValue<T> extends ConcurrentLazyValue<T> implements NotNullLazyValue<T> {
+
+        public ConcurrentNotNullLazyValue(@NotNull ConcurrentStorageManager storageManager, @NotNull Function0<? extends T> computable) {
+            super(storageManager, computable);
+        }
+
+        @Override
+        @NotNull
+        public T invoke() {
+            T result = super.invoke();
+            assert result != null : "compute() returned null";
+            return result;
+        }
+    }
+
+    private static class ConcurrentMemoizedFunction<K, V> implements MemoizedFunctionToNullable<K, V> {
+        private final ConcurrentStorageManager storageManager;
+        private final ConcurrentMap<K, Object> cache;
+        private final Function1<? super K, ? extends V> compute;
+
+        public ConcurrentMemoizedFunction(
+                @NotNull ConcurrentStorageManager storageManager,
+                @NotNull ConcurrentMap<K, Object> map,
+                @NotNull Function1<? super K, ? extends V> compute
+        ) {
+            this.storageManager = storageManager;
+            this.cache = map;
+            this.compute = compute;
+        }
+
+        @Override
+        @Nullable
+        public V invoke(K input) {
+            while (true) {
+                Object value = cache.get(input);
+                if (value instanceof Computation) {
+                    Computation computation = (Computation) value;
+                    if (computation.owner == Thread.currentThread() || !computation.await()) {
+                        throw recursionDetected(input);
+                    }
+                    continue;
+                }
+                if (value != null) return WrappedValues.unescapeExceptionOrNull(value);
+
+                Computation computation = new Computation();
+                if (cache.putIfAbsent(input, computation) == null) {
+                    return computeAndPublish(input, computation);
+                }
+            }
+        }
+
+        private V computeAndPublish(K input, @NotNull Computation computation) {
+            AssertionError error = null;
+            try {
+                V typedValue = compute.invoke(input);
+
+                // See the comment in LockBasedStorageManager.MapBasedMemoizedFunction: this is the only exception which shouldn't be stored
+                if (!cache.replace(input, computation, WrappedValues.escapeNull(typedValue))) {
+                    error = raceCondition(input, cache.get(input));
+                    throw error;
+                }
+
+                return typedValue;
+            }
+            catch (Throwable throwable) {
+                if (throwable == error) throw storageManager.exceptionHandlingStrategy.handleException(throwable);
+
+                if (!cache.replace(input, computation, WrappedValues.escapeThrowable(throwable))) {
+                    throw raceCondition(input, cache.get(input));
+                }
+
+                throw storageManager.exceptionHandlingStrategy.handleException(throwable);
+            }
+            finally {
+                computation.finish();
+            }
+        }
+
+        @NotNull
+        private AssertionError recursionDetected(K input) {
+            return sanitizeStackTrace(
+                    new AssertionError("Recursion detected on input: " + input + " under " + storageManager)
+            );
+        }
+
+        @NotNull
+        private AssertionError raceCondition(K input, Object oldValue) {
+            return sanitizeStackTrace(
+                    new AssertionError("Race condition detected on input " + input + ". Old value is " + oldValue +
+                                       " under " + storageManager)
+            );
+        }
+
+        @Override
+        public boolean isComputed(K key) {
+            Object value = cache.get(key);
+            return value != null && !(value instanceof Computation);
+        }
+
+        protected ConcurrentStorageManager getStorageManager() {
+            return storageManager;
+        }
+    }
+
+    private static class ConcurrentMemoizedFunctionToNotNull<K, V> extends ConcurrentMemoizedFunction<K, V> implements MemoizedFunctionToNotNull<K, V> {
+
+        public ConcurrentMemoizedFunctionToNotNull(
+                @NotNull ConcurrentStorageManager storageManager, @NotNull ConcurrentMap<K, Object> map,
+                @NotNull Function1<? super K, ? extends V> compute
+        ) {
+            super(storageManager, map, compute);
+        }
+
+        @NotNull
+        @Override
+        public V invoke(K input) {
+            V result = super.invoke(input);
+            assert result != null : "compute() returned null under " + getStorageManager();
+            return result;
+        }
+    }
+
+    @NotNull
+    @Override
+    public <K, V> CacheWithNullableValues<K, V> createCacheWithNullableValues() {
+        return new CacheWithNullableValuesBasedOnMemoizedFunction<K, V>(
+                this, LockBasedStorageManager.<KeyWithComputation<K, V>>createConcurrentHashMap());
+    }
+
+    private static class CacheWithNullableValuesBasedOnMemoizedFunction<K, V> extends ConcurrentMemoizedFunction<KeyWithComputation<K, V>, V> implements CacheWithNullableValues<K, V> {
+
+        private CacheWithNullableValuesBasedOnMemoizedFunction(
+                @NotNull ConcurrentStorageManager storageManager,
+                @NotNull ConcurrentMap<KeyWithComputation<K, V>, Object> map
+        ) {
+            super(storageManager, map, new Function1<KeyWithComputation<K, V>, V>() {
+                @Override
+                public V invoke(KeyWithComputation<K, V> computation) {
+                    return computation.computation.invoke();
+                }
+            });
+        }
+
+        @Nullable
+        @Override
+        public V computeIfAbsent(K key, @NotNull Function0<? extends V> computation) {
+            return invoke(new KeyWithComputation<K, V>(key, computation));
+        }
+    }
+
+    @NotNull
+    @Override
+    public <K, V> CacheWithNotNullValues<K, V> createCacheWithNotNullValues() {
+        return new CacheWithNotNullValuesBasedOnMemoizedFunction<K, V>(
+                this, LockBasedStorageManager.<KeyWithComputation<K, V>>createConcurrentHashMap());
+    }
+
+    private static class CacheWithNotNullValuesBasedOnMemoizedFunction<K, V> extends CacheWithNullableValuesBasedOnMemoizedFunction<K, V> implements CacheWithNotNullValues<K, V> {
+
+        private CacheWithNotNullValuesBasedOnMemoizedFunction(
+                @NotNull ConcurrentStorageManager storageManager,
+                @NotNull ConcurrentMap<KeyWithComputation<K, V>, Object> map
+        ) {
+            super(storageManager, map);
+        }
+
+        @NotNull
+        @Override
+        public V computeIfAbsent(K key, @NotNull Function0<? extends V> computation) {
+            V result = super.computeIfAbsent(key, computation);
+            assert result != null : "computeIfAbsent() returned null under " + getStorageManager();
+            return result;
+        }
+    }
+}
@@ -219,7 +219,7 @@ public class LockBasedStorageManager implements StorageManager {
     }
 
     @NotNull
-    private static <K> ConcurrentMap<K, Object> createConcurrentHashMap() {
+    static <K> ConcurrentMap<K, Object> createConcurrentHashMap() {
         // memory optimization: fewer segments and entries stored
         return new ConcurrentHashMap<K, Object>(3, 1, 2);
     }
@@ -229,7 +229,7 @@ public class LockBasedStorageManager implements StorageManager {
         throw sanitizeStackTrace(new IllegalStateException("Recursive call in a lazy value under " + this));
     }
 
-    private static class RecursionDetectedResult<T> {
+    static class RecursionDetectedResult<T> {
 
         @NotNull
         public static <T> RecursionDetectedResult<T> value(T value) {
@@ -482,7 +482,7 @@ public class LockBasedStorageManager implements StorageManager {
     }
 
     @NotNull
-    private static <T extends Throwable> T sanitizeStackTrace(@NotNull T throwable) {
+    static <T extends Throwable> T sanitizeStackTrace(@NotNull T throwable) {
         StackTraceElement[] stackTrace = throwable.getStackTrace();
         int size = stackTrace.length;
 
@@ -494,7 +494,7 @@ public class LockBasedStorageManager implements StorageManager {
                 break;
             }
         }
-        assert firstNonStorage >= 0 : "This method should only be called on exceptions created in LockBasedStorageManager";
+        assert firstNonStorage >= 0 : "This method should only be called on exceptions created in a storage manager";
 
         List<StackTraceElement> list = Arrays.asList(stackTrace).subList(firstNonStorage, size);
         throwable.setStackTrace(list.toArray(new StackTraceElement[list.size()]));
@@ -554,9 +554,9 @@ public class LockBasedStorageManager implements StorageManager {
     }
 
     // equals and hashCode use only key
-    private static class KeyWithComputation<K, V> {
+    static class KeyWithComputation<K, V> {
         private final K key;
-        private final Function0<? extends V> computation;
+        final Function0<? extends V> computation;
 
         public KeyWithComputation(K key, Function0<? extends V> computation) {
             this.key = key;
@@ -41,6 +41,8 @@ import org.jetbrains.kotlin.codegen.*
 import org.jetbrains.kotlin.codegen.defaultConstructor.AbstractDefaultArgumentsReflectionTest
 import org.jetbrains.kotlin.codegen.flags.AbstractWriteFlagsTest
 import org.jetbrains.kotlin.codegen.ir.AbstractIrBlackBoxCodegenTest
+import org.jetbrains.kotlin.codegen.optimization.transformer.AbstractBlockFramesBlackBoxCodegenTest
+import org.jetbrains.kotlin.codegen.optimization.transformer.AbstractBlockFramesBytecodeTextTest
 import org.jetbrains.kotlin.findUsages.AbstractFindUsagesTest
 import org.jetbrains.kotlin.findUsages.AbstractKotlinFindUsagesWithLibraryTest
 import org.jetbrains.kotlin.formatter.AbstractFormatterTest
@@ -239,6 +241,17 @@ fun main(args: Array<String>) {
             model("codegen/box", targetBackend = TargetBackend.JVM)
         }
 
+        testClass<AbstractReleaseBindingsAfterCodegenTest> {
+            model("codegen/box/closures", targetBackend = TargetBackend.JVM)
+            model("codegen/box/localClasses", targetBackend = TargetBackend.JVM)
+            model("codegen/box/multifileClasses", targetBackend = TargetBackend.JVM)
+        }
+
+        testClass<AbstractBlockFramesBlackBoxCodegenTest> {
+            model("codegen/box/boxingOptimization", targetBackend = TargetBackend.JVM)
+            model("codegen/box/deadCodeElimination", targetBackend = TargetBackend.JVM)
+        }
+
         testClass<AbstractIrBlackBoxCodegenTest>("IrOnlyBoxCodegenTestGenerated") {
             model("ir/box", targetBackend = TargetBackend.JVM)
         }
@@ -263,6 +276,12 @@ fun main(args: Array<String>) {
             model("codegen/bytecodeText")
         }
 
+        testClass<AbstractBlockFramesBytecodeTextTest> {
+            model("codegen/bytecodeText/boxingOptimization")
+            model("codegen/bytecodeText/coercionToUnitOptimization")
+            model("codegen/bytecodeText/deadCodeElimination")
+        }
+
         testClass<AbstractIrTextTestCase> {
             model("ir/irText")
         }